@@ -0,0 +1,111 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.bytesoft.bytejta.TransactionBeanFactoryImpl;
+import org.bytesoft.transaction.archive.TransactionArchive;
+import org.bytesoft.transaction.archive.XAResourceArchive;
+import org.bytesoft.transaction.logging.ArchiveDeserializer;
+import org.bytesoft.transaction.xa.TransactionXid;
+import org.bytesoft.transaction.xa.XidFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Round trips of transaction and resource archives through ArchiveDeserializerImpl, using both the byte[] and the
+ * ByteBuffer serialization.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArchiveDeserializerBenchmark {
+
+	@Param({ "1", "4" })
+	private int resources;
+
+	private ArchiveDeserializer deserializer;
+	private TransactionXid globalXid;
+	private TransactionArchive transactionArchive;
+	private XAResourceArchive resourceArchive;
+	private byte[] transactionByteArray;
+	private byte[] resourceByteArray;
+	private ByteBuffer buffer;
+
+	@Setup
+	public void setup() throws Exception {
+		TransactionBeanFactoryImpl beanFactory = BenchmarkBeanFactory.initialize(null);
+		XidFactory xidFactory = beanFactory.getXidFactory();
+		this.deserializer = beanFactory.getArchiveDeserializer();
+
+		this.transactionArchive = BenchmarkBeanFactory.createTransactionArchive(xidFactory, this.resources);
+		this.globalXid = (TransactionXid) this.transactionArchive.getXid();
+		this.resourceArchive = this.transactionArchive.getNativeResources().get(0);
+
+		this.transactionByteArray = this.deserializer.serialize(this.globalXid, this.transactionArchive);
+		this.resourceByteArray = this.deserializer.serialize(this.globalXid, this.resourceArchive);
+		this.buffer = ByteBuffer.allocate(1024 * 4);
+	}
+
+	@Benchmark
+	public byte[] serializeTransaction() {
+		return this.deserializer.serialize(this.globalXid, this.transactionArchive);
+	}
+
+	@Benchmark
+	public ByteBuffer serializeTransactionIntoBuffer() {
+		this.buffer.clear();
+		this.deserializer.serialize(this.globalXid, this.transactionArchive, this.buffer);
+		return this.buffer;
+	}
+
+	@Benchmark
+	public Object deserializeTransaction() {
+		return this.deserializer.deserialize(this.globalXid, this.transactionByteArray);
+	}
+
+	@Benchmark
+	public Object roundTripTransaction() {
+		byte[] byteArray = this.deserializer.serialize(this.globalXid, this.transactionArchive);
+		return this.deserializer.deserialize(this.globalXid, byteArray);
+	}
+
+	@Benchmark
+	public Object roundTripResource() {
+		byte[] byteArray = this.deserializer.serialize(this.globalXid, this.resourceArchive);
+		return this.deserializer.deserialize(this.globalXid, byteArray);
+	}
+
+	@Benchmark
+	public Object deserializeResource() {
+		return this.deserializer.deserialize(this.globalXid, this.resourceByteArray);
+	}
+
+}
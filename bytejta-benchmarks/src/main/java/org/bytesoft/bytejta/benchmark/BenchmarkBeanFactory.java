@@ -0,0 +1,180 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.transaction.Status;
+import javax.transaction.xa.XAResource;
+
+import org.bytesoft.bytejta.TransactionBeanFactoryImpl;
+import org.bytesoft.bytejta.TransactionCoordinator;
+import org.bytesoft.bytejta.TransactionManagerImpl;
+import org.bytesoft.bytejta.TransactionRepositoryImpl;
+import org.bytesoft.bytejta.VacantTransactionLock;
+import org.bytesoft.bytejta.logging.ArchiveDeserializerImpl;
+import org.bytesoft.bytejta.logging.SampleTransactionLogger;
+import org.bytesoft.bytejta.logging.deserializer.TransactionArchiveDeserializer;
+import org.bytesoft.bytejta.logging.deserializer.XAResourceArchiveDeserializer;
+import org.bytesoft.bytejta.supports.resource.CommonResourceDescriptor;
+import org.bytesoft.bytejta.xa.XidFactoryImpl;
+import org.bytesoft.transaction.archive.TransactionArchive;
+import org.bytesoft.transaction.archive.XAResourceArchive;
+import org.bytesoft.transaction.logging.TransactionLogger;
+import org.bytesoft.transaction.recovery.TransactionRecoveryCallback;
+import org.bytesoft.transaction.supports.resource.XAResourceDescriptor;
+import org.bytesoft.transaction.supports.serialize.XAResourceDeserializer;
+import org.bytesoft.transaction.xa.TransactionXid;
+import org.bytesoft.transaction.xa.XidFactory;
+
+/**
+ * Wires the core components into the shared {@link TransactionBeanFactoryImpl} the way the Spring configuration of
+ * bytejta-supports does, without any container.
+ */
+public class BenchmarkBeanFactory {
+	static final String ENDPOINT = "127.0.0.1:bytejta-benchmark:8080";
+
+	public static TransactionBeanFactoryImpl initialize(File directory) throws IOException {
+		TransactionBeanFactoryImpl beanFactory = TransactionBeanFactoryImpl.getInstance();
+
+		XidFactoryImpl xidFactory = new XidFactoryImpl();
+		beanFactory.setXidFactory(xidFactory);
+
+		TransactionManagerImpl transactionManager = new TransactionManagerImpl();
+		transactionManager.setBeanFactory(beanFactory);
+		beanFactory.setTransactionManager(transactionManager);
+		beanFactory.setTransactionTimer(transactionManager);
+
+		TransactionCoordinator transactionCoordinator = new TransactionCoordinator();
+		transactionCoordinator.setBeanFactory(beanFactory);
+		transactionCoordinator.setEndpoint(ENDPOINT);
+		beanFactory.setTransactionCoordinator(transactionCoordinator);
+
+		beanFactory.setTransactionRepository(new TransactionRepositoryImpl());
+		beanFactory.setTransactionLock(new VacantTransactionLock());
+
+		XAResourceArchiveDeserializer resourceArchiveDeserializer = new XAResourceArchiveDeserializer();
+		resourceArchiveDeserializer.setBeanFactory(beanFactory);
+		TransactionArchiveDeserializer transactionArchiveDeserializer = new TransactionArchiveDeserializer();
+		transactionArchiveDeserializer.setResourceArchiveDeserializer(resourceArchiveDeserializer);
+		ArchiveDeserializerImpl archiveDeserializer = new ArchiveDeserializerImpl();
+		archiveDeserializer.setTransactionArchiveDeserializer(transactionArchiveDeserializer);
+		archiveDeserializer.setXaResourceArchiveDeserializer(resourceArchiveDeserializer);
+		beanFactory.setArchiveDeserializer(archiveDeserializer);
+
+		beanFactory.setResourceDeserializer(new XAResourceDeserializer() {
+			public XAResourceDescriptor deserialize(String identifier) {
+				return createDescriptor(identifier, new StubXAResource());
+			}
+		});
+
+		if (directory == null) {
+			beanFactory.setTransactionLogger(new NullTransactionLogger());
+		} else {
+			beanFactory.setTransactionLogger(createTransactionLogger(beanFactory, directory, false));
+		}
+
+		return beanFactory;
+	}
+
+	public static SampleTransactionLogger createTransactionLogger(TransactionBeanFactoryImpl beanFactory, File directory,
+			boolean segmented) throws IOException {
+		SampleTransactionLogger transactionLogger = new SampleTransactionLogger();
+		transactionLogger.setBeanFactory(beanFactory);
+		transactionLogger.setDirectory(directory);
+		transactionLogger.setSegmented(segmented);
+		transactionLogger.setEndpoint(ENDPOINT); // initializes the logging files
+		return transactionLogger;
+	}
+
+	/**
+	 * Creates a prepared coordinator archive with the given number of native resources.
+	 */
+	public static TransactionArchive createTransactionArchive(XidFactory xidFactory, int resources) {
+		TransactionXid globalXid = xidFactory.createGlobalXid();
+		TransactionArchive transactionArchive = new TransactionArchive();
+		transactionArchive.setXid(globalXid);
+		transactionArchive.setCoordinator(true);
+		transactionArchive.setPropagatedBy(ENDPOINT);
+		transactionArchive.setStatus(Status.STATUS_PREPARED);
+		transactionArchive.setVote(XAResource.XA_OK);
+		for (int i = 0; i < resources; i++) {
+			XAResourceArchive archive = new XAResourceArchive();
+			archive.setXid(xidFactory.createBranchXid(globalXid));
+			archive.setDescriptor(createDescriptor("resource-" + i, new StubXAResource()));
+			archive.setVote(XAResource.XA_OK);
+			transactionArchive.getNativeResources().add(archive);
+		}
+		return transactionArchive;
+	}
+
+	public static CommonResourceDescriptor createDescriptor(String identifier, StubXAResource resource) {
+		CommonResourceDescriptor descriptor = new CommonResourceDescriptor();
+		descriptor.setIdentifier(identifier);
+		descriptor.setDelegate(resource);
+		return descriptor;
+	}
+
+	public static File createTempDirectory(String prefix) throws IOException {
+		File file = File.createTempFile(prefix, "");
+		if (file.delete() == false || file.mkdirs() == false) {
+			throw new IOException(String.format("Failed to create directory %s!", file.getAbsolutePath()));
+		}
+		return file;
+	}
+
+	public static void deleteQuietly(File file) {
+		File[] children = file.listFiles();
+		for (int i = 0; children != null && i < children.length; i++) {
+			deleteQuietly(children[i]);
+		}
+		file.delete();
+	}
+
+	static class NullTransactionLogger implements TransactionLogger {
+		public void createTransaction(TransactionArchive archive) {
+		}
+
+		public void updateTransaction(TransactionArchive archive) {
+		}
+
+		public void deleteTransaction(TransactionArchive archive) {
+		}
+
+		public void createResource(XAResourceArchive archive) {
+		}
+
+		public void updateResource(XAResourceArchive archive) {
+		}
+
+		public void deleteResource(XAResourceArchive archive) {
+		}
+
+		public void createParticipant(XAResourceArchive archive) {
+		}
+
+		public void updateParticipant(XAResourceArchive archive) {
+		}
+
+		public void deleteParticipant(XAResourceArchive archive) {
+		}
+
+		public void recover(TransactionRecoveryCallback callback) {
+		}
+	}
+
+}
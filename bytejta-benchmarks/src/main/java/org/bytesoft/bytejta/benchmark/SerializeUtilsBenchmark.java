@@ -0,0 +1,106 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.benchmark;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+import org.bytesoft.bytejta.xa.XidFactoryImpl;
+import org.bytesoft.common.utils.SerializeUtils;
+import org.bytesoft.transaction.TransactionContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the Java, Kryo and Hessian serialization of SerializeUtils on a propagated TransactionContext.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializeUtilsBenchmark {
+	static final String SERIALIZER_JAVA = "java";
+	static final String SERIALIZER_KRYO = "kryo";
+	static final String SERIALIZER_HESSIAN = "hessian";
+
+	@Param({ SERIALIZER_JAVA, SERIALIZER_KRYO, SERIALIZER_HESSIAN })
+	private String serializer;
+
+	private TransactionContext transactionContext;
+	private byte[] byteArray;
+
+	@Setup
+	public void setup() throws IOException {
+		XidFactoryImpl xidFactory = new XidFactoryImpl();
+		long current = System.currentTimeMillis();
+		this.transactionContext = new TransactionContext();
+		this.transactionContext.setXid(xidFactory.createGlobalXid());
+		this.transactionContext.setCoordinator(true);
+		this.transactionContext.setPropagated(true);
+		this.transactionContext.setPropagatedBy(BenchmarkBeanFactory.ENDPOINT);
+		this.transactionContext.setCreatedTime(current);
+		this.transactionContext.setExpiredTime(current + 1000L * 60);
+		this.byteArray = this.serialize(this.transactionContext);
+	}
+
+	@Benchmark
+	public byte[] serialize() throws IOException {
+		return this.serialize(this.transactionContext);
+	}
+
+	@Benchmark
+	public Serializable deserialize() throws IOException {
+		return this.deserialize(this.byteArray);
+	}
+
+	@Benchmark
+	public Serializable roundTrip() throws IOException {
+		return this.deserialize(this.serialize(this.transactionContext));
+	}
+
+	private byte[] serialize(Serializable obj) throws IOException {
+		if (SERIALIZER_KRYO.equals(this.serializer)) {
+			return SerializeUtils.kryoSerialize(obj);
+		} else if (SERIALIZER_HESSIAN.equals(this.serializer)) {
+			return SerializeUtils.hessianSerialize(obj);
+		} else {
+			return SerializeUtils.javaSerialize(obj);
+		}
+	}
+
+	private Serializable deserialize(byte[] byteArray) throws IOException {
+		if (SERIALIZER_KRYO.equals(this.serializer)) {
+			return SerializeUtils.kryoDeserialize(byteArray);
+		} else if (SERIALIZER_HESSIAN.equals(this.serializer)) {
+			return SerializeUtils.hessianDeserialize(byteArray);
+		} else {
+			return SerializeUtils.javaDeserialize(byteArray);
+		}
+	}
+
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import javax.transaction.Transaction;
+
+import org.bytesoft.bytejta.TransactionBeanFactoryImpl;
+import org.bytesoft.bytejta.supports.resource.CommonResourceDescriptor;
+import org.bytesoft.transaction.TransactionManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures begin/enlist/commit through TransactionManagerImpl with stub resources. The strategy parameter selects the
+ * one-phase commit (one XA resource), the two-phase commit (two XA resources) or the last resource optimization (one
+ * non-XA resource and one XA resource). The logging parameter switches between a no-op logger and the file based
+ * SampleTransactionLogger.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionManagerBenchmark {
+	static final String STRATEGY_ONE_PHASE = "onePhase";
+	static final String STRATEGY_TWO_PHASE = "twoPhase";
+	static final String STRATEGY_LAST_RESOURCE = "lastResource";
+
+	@Param({ STRATEGY_ONE_PHASE, STRATEGY_TWO_PHASE, STRATEGY_LAST_RESOURCE })
+	private String strategy;
+
+	@Param({ "false", "true" })
+	private boolean logging;
+
+	private File directory;
+	private TransactionManager transactionManager;
+	private CommonResourceDescriptor firstResource;
+	private CommonResourceDescriptor secondResource;
+	private StubXAResource localResource;
+
+	@Setup
+	public void setup() throws Exception {
+		this.directory = this.logging ? BenchmarkBeanFactory.createTempDirectory("bytejta-benchmark") : null;
+		TransactionBeanFactoryImpl beanFactory = BenchmarkBeanFactory.initialize(this.directory);
+		this.transactionManager = beanFactory.getTransactionManager();
+
+		this.firstResource = BenchmarkBeanFactory.createDescriptor("resource-1", new StubXAResource());
+		this.secondResource = BenchmarkBeanFactory.createDescriptor("resource-2", new StubXAResource());
+		this.localResource = new StubXAResource();
+	}
+
+	@TearDown
+	public void tearDown() {
+		if (this.directory != null) {
+			BenchmarkBeanFactory.deleteQuietly(this.directory);
+		}
+	}
+
+	@Benchmark
+	public void beginAndCommit() throws Exception {
+		this.transactionManager.begin();
+		Transaction transaction = this.transactionManager.getTransaction();
+		if (STRATEGY_ONE_PHASE.equals(this.strategy)) {
+			transaction.enlistResource(this.firstResource);
+		} else if (STRATEGY_TWO_PHASE.equals(this.strategy)) {
+			transaction.enlistResource(this.firstResource);
+			transaction.enlistResource(this.secondResource);
+		} else {
+			transaction.enlistResource(this.localResource); // non-XA, becomes the last resource
+			transaction.enlistResource(this.firstResource);
+		}
+		this.transactionManager.commit();
+	}
+
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bytesoft.bytejta.TransactionBeanFactoryImpl;
+import org.bytesoft.bytejta.logging.SampleTransactionLogger;
+import org.bytesoft.transaction.archive.TransactionArchive;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Appends the create/update/delete records of a transaction to the tx-log, while the logging thread swaps the
+ * master/slaver files (or compacts the segments) in the background as it does in production.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VirtualLoggingAppendBenchmark {
+	static final int NUMBER_OF_ARCHIVES = 1024;
+
+	@Param({ "false", "true" })
+	private boolean segmented;
+
+	private final AtomicInteger index = new AtomicInteger();
+	private File directory;
+	private SampleTransactionLogger transactionLogger;
+	private Thread loggingThread;
+	private TransactionArchive[] archives;
+
+	@Setup
+	public void setup() throws Exception {
+		TransactionBeanFactoryImpl beanFactory = BenchmarkBeanFactory.initialize(null);
+		this.directory = BenchmarkBeanFactory.createTempDirectory("bytejta-logging");
+		this.transactionLogger = BenchmarkBeanFactory.createTransactionLogger(beanFactory, this.directory, this.segmented);
+		this.transactionLogger.setSwitchInterval(1);
+		this.transactionLogger.setSwitchThreshold(1024 * 1024);
+
+		this.archives = new TransactionArchive[NUMBER_OF_ARCHIVES];
+		for (int i = 0; i < this.archives.length; i++) {
+			this.archives[i] = BenchmarkBeanFactory.createTransactionArchive(beanFactory.getXidFactory(), 2);
+		}
+
+		this.loggingThread = new Thread(this.transactionLogger, "bytejta-benchmark-logging");
+		this.loggingThread.setDaemon(true);
+		this.loggingThread.start();
+	}
+
+	@TearDown
+	public void tearDown() throws InterruptedException {
+		this.transactionLogger.release();
+		this.transactionLogger.fireSwapImmediately();
+		this.loggingThread.join();
+		this.transactionLogger.shutdown();
+		BenchmarkBeanFactory.deleteQuietly(this.directory);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void append() {
+		this.appendTransaction();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void appendContended() {
+		this.appendTransaction();
+	}
+
+	private void appendTransaction() {
+		TransactionArchive archive = this.archives[this.index.getAndIncrement() & (NUMBER_OF_ARCHIVES - 1)];
+		this.transactionLogger.createTransaction(archive);
+		this.transactionLogger.updateTransaction(archive);
+		this.transactionLogger.deleteTransaction(archive);
+	}
+
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.bytesoft.bytejta.TransactionBeanFactoryImpl;
+import org.bytesoft.bytejta.logging.SampleTransactionLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures one sync-and-swap of the master/slaver tx-log holding 100k records. Only the first swap drops the deleted
+ * transactions, the following ones copy the same live records back and forth.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VirtualLoggingSwapBenchmark {
+
+	private File directory;
+	private SampleTransactionLogger transactionLogger;
+
+	@Setup
+	public void setup() throws Exception {
+		TransactionBeanFactoryImpl beanFactory = BenchmarkBeanFactory.initialize(null);
+		this.directory = BenchmarkBeanFactory.createTempDirectory("bytejta-logging");
+		this.transactionLogger = BenchmarkBeanFactory.createTransactionLogger(beanFactory, this.directory, false);
+		VirtualLoggingTraversalBenchmark.prefill(beanFactory, this.transactionLogger,
+				VirtualLoggingTraversalBenchmark.NUMBER_OF_RECORDS);
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.transactionLogger.shutdown();
+		BenchmarkBeanFactory.deleteQuietly(this.directory);
+	}
+
+	@Benchmark
+	public void syncAndSwap() {
+		this.transactionLogger.syncMasterAndSlaver();
+		this.transactionLogger.swapMasterAndSlaver();
+	}
+
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.bytesoft.bytejta.TransactionBeanFactoryImpl;
+import org.bytesoft.bytejta.logging.SampleTransactionLogger;
+import org.bytesoft.bytejta.logging.store.VirtualLoggingCursor;
+import org.bytesoft.transaction.archive.TransactionArchive;
+import org.bytesoft.transaction.logging.store.VirtualLoggingListener;
+import org.bytesoft.transaction.logging.store.VirtualLoggingRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Scans a tx-log holding 100k records, a quarter of the transactions being deleted, the way recovery does: with the
+ * flyweight cursor and with the record based traversal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VirtualLoggingTraversalBenchmark {
+	static final int NUMBER_OF_RECORDS = 100000;
+
+	@Param({ "false", "true" })
+	private boolean segmented;
+
+	private File directory;
+	private SampleTransactionLogger transactionLogger;
+
+	@Setup
+	public void setup() throws Exception {
+		TransactionBeanFactoryImpl beanFactory = BenchmarkBeanFactory.initialize(null);
+		this.directory = BenchmarkBeanFactory.createTempDirectory("bytejta-logging");
+		this.transactionLogger = BenchmarkBeanFactory.createTransactionLogger(beanFactory, this.directory, this.segmented);
+		prefill(beanFactory, this.transactionLogger, NUMBER_OF_RECORDS);
+	}
+
+	static void prefill(TransactionBeanFactoryImpl beanFactory, SampleTransactionLogger transactionLogger, int records) {
+		int transactions = 0;
+		for (int count = 0; count < records; count++) {
+			TransactionArchive archive = BenchmarkBeanFactory.createTransactionArchive(beanFactory.getXidFactory(), 2);
+			transactionLogger.createTransaction(archive);
+			if (++transactions % 4 == 0 && count + 1 < records) {
+				transactionLogger.deleteTransaction(archive);
+				count++;
+			}
+		}
+		transactionLogger.flushImmediately();
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.transactionLogger.shutdown();
+		BenchmarkBeanFactory.deleteQuietly(this.directory);
+	}
+
+	@Benchmark
+	public int traverseCursor() {
+		int count = 0;
+		VirtualLoggingCursor cursor = this.transactionLogger.createCursor();
+		while (cursor.next()) {
+			count += cursor.getOperator();
+		}
+		return count;
+	}
+
+	@Benchmark
+	public void traverseRecords(final Blackhole blackhole) {
+		this.transactionLogger.traversal(new VirtualLoggingListener() {
+			public void recvOperation(VirtualLoggingRecord action) {
+				blackhole.consume(action);
+			}
+		});
+	}
+
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bytesoft.bytejta.xa.XidFactoryImpl;
+import org.bytesoft.transaction.xa.TransactionXid;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the legacy Calendar/Random based xid generation with the high-throughput mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XidFactoryBenchmark {
+
+	@Param({ "false", "true" })
+	private boolean highThroughput;
+
+	private XidFactoryImpl xidFactory;
+	private TransactionXid globalXid;
+
+	@Setup
+	public void setup() {
+		this.xidFactory = new XidFactoryImpl();
+		this.xidFactory.setHighThroughput(this.highThroughput);
+		this.globalXid = this.xidFactory.createGlobalXid();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public TransactionXid createGlobalXid() {
+		return this.xidFactory.createGlobalXid();
+	}
+
+	@Benchmark
+	@Threads(8)
+	public TransactionXid createGlobalXidContended() {
+		return this.xidFactory.createGlobalXid();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public TransactionXid createBranchXid() {
+		return this.xidFactory.createBranchXid(this.globalXid);
+	}
+
+}
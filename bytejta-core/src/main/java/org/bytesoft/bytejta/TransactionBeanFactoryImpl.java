@@ -23,6 +23,7 @@ import org.bytesoft.transaction.TransactionRepository;
 import org.bytesoft.transaction.logging.ArchiveDeserializer;
 import org.bytesoft.transaction.logging.TransactionLogger;
 import org.bytesoft.transaction.remote.RemoteCoordinator;
+import org.bytesoft.transaction.supports.TransactionStatistic;
 import org.bytesoft.transaction.supports.TransactionTimer;
 import org.bytesoft.transaction.supports.rpc.TransactionInterceptor;
 import org.bytesoft.transaction.supports.serialize.XAResourceDeserializer;
@@ -40,6 +41,7 @@ public class TransactionBeanFactoryImpl implements TransactionBeanFactory {
 	private TransactionRecovery transactionRecovery;
 	private RemoteCoordinator transactionCoordinator;
 	private TransactionLock transactionLock;
+	private TransactionStatistic transactionStatistic;
 
 	private ArchiveDeserializer archiveDeserializer;
 	private XAResourceDeserializer resourceDeserializer;
@@ -142,4 +144,12 @@ public class TransactionBeanFactoryImpl implements TransactionBeanFactory {
 		this.resourceDeserializer = resourceDeserializer;
 	}
 
+	public TransactionStatistic getTransactionStatistic() {
+		return transactionStatistic;
+	}
+
+	public void setTransactionStatistic(TransactionStatistic transactionStatistic) {
+		this.transactionStatistic = transactionStatistic;
+	}
+
 }
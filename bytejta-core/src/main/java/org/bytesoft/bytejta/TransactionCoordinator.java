@@ -44,6 +44,7 @@ import org.bytesoft.transaction.aware.TransactionEndpointAware;
 import org.bytesoft.transaction.remote.RemoteAddr;
 import org.bytesoft.transaction.remote.RemoteCoordinator;
 import org.bytesoft.transaction.remote.RemoteNode;
+import org.bytesoft.transaction.supports.TransactionStatistic;
 import org.bytesoft.transaction.xa.TransactionXid;
 import org.bytesoft.transaction.xa.XidFactory;
 import org.slf4j.Logger;
@@ -90,11 +91,16 @@ public class TransactionCoordinator implements RemoteCoordinator, TransactionBea
 			transaction.setTransactionTimeout((int) timeoutMillis);
 
 			transactionRepository.putTransaction(globalXid, transaction);
+
+			TransactionStatistic transactionStatistic = this.beanFactory.getTransactionStatistic();
+			if (transactionStatistic != null) {
+				transactionStatistic.fireBeginTransaction((TransactionImpl) transaction);
+			} // end-if (transactionStatistic != null)
+
 			logger.info("{}> begin-participant", ByteUtils.byteArrayToString(globalXid.getGlobalTransactionId()));
 		}
 
 		transactionManager.associateThread(transaction);
-		// this.transactionStatistic.fireBeginTransaction(transaction);
 
 		return transaction;
 	}
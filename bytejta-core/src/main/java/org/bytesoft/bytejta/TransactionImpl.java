@@ -20,6 +20,8 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import javax.transaction.HeuristicCommitException;
 import javax.transaction.HeuristicMixedException;
@@ -35,6 +37,7 @@ import javax.transaction.xa.Xid;
 import org.apache.commons.lang3.StringUtils;
 import org.bytesoft.bytejta.resource.XATerminatorImpl;
 import org.bytesoft.bytejta.resource.XATerminatorOptd;
+import org.bytesoft.bytejta.statistic.TransactionEvents;
 import org.bytesoft.bytejta.strategy.CommonTransactionStrategy;
 import org.bytesoft.bytejta.strategy.LastResourceOptimizeStrategy;
 import org.bytesoft.bytejta.strategy.SimpleTransactionStrategy;
@@ -57,12 +60,14 @@ import org.bytesoft.transaction.archive.XAResourceArchive;
 import org.bytesoft.transaction.internal.SynchronizationList;
 import org.bytesoft.transaction.internal.TransactionListenerList;
 import org.bytesoft.transaction.internal.TransactionResourceListenerList;
+import org.bytesoft.transaction.logging.LoggingFlushable;
 import org.bytesoft.transaction.logging.TransactionLogger;
 import org.bytesoft.transaction.remote.RemoteCoordinator;
 import org.bytesoft.transaction.remote.RemoteSvc;
 import org.bytesoft.transaction.supports.TransactionExtra;
 import org.bytesoft.transaction.supports.TransactionListener;
 import org.bytesoft.transaction.supports.TransactionResourceListener;
+import org.bytesoft.transaction.supports.TransactionStatistic;
 import org.bytesoft.transaction.supports.resource.XAResourceDescriptor;
 import org.bytesoft.transaction.xa.TransactionXid;
 import org.bytesoft.transaction.xa.XidFactory;
@@ -73,6 +78,11 @@ public class TransactionImpl implements Transaction {
 	static final Logger logger = LoggerFactory.getLogger(TransactionImpl.class);
 
 	private transient boolean timing = true;
+	private transient TransactionTimingWheel.Entry timingEntry;
+	private transient boolean secondPhaseAsync;
+	private transient volatile boolean secondPhasePending;
+	private transient CompletableFuture<Integer> completionFuture;
+	private transient boolean forgotten;
 	private TransactionBeanFactory beanFactory;
 
 	private TransactionStrategy transactionStrategy;
@@ -96,6 +106,7 @@ public class TransactionImpl implements Transaction {
 	private final TransactionListenerList transactionListenerList = new TransactionListenerList();
 
 	private transient Exception createdAt;
+	private transient volatile Thread associatedThread;
 
 	public TransactionImpl(TransactionContext txContext) {
 		this.transactionContext = txContext;
@@ -487,12 +498,20 @@ public class TransactionImpl implements Transaction {
 		TransactionXid xid = this.transactionContext.getXid();
 		logger.info("{}> commit-transaction start", ByteUtils.byteArrayToString(xid.getGlobalTransactionId()));
 
-		if (this.participantList.size() == 0) {
-			this.skipOnePhaseCommit();
-		} else if (this.participantList.size() == 1 && (this.nativeParticipantList.size() == 1 || this.participant != null)) {
-			this.fireOnePhaseCommit();
-		} else {
-			this.fireTwoPhaseCommit();
+		long startNanos = TransactionEvents.startNanos();
+		boolean success = false;
+		try {
+			if (this.participantList.size() == 0) {
+				this.skipOnePhaseCommit();
+			} else if (this.participantList.size() == 1
+					&& (this.nativeParticipantList.size() == 1 || this.participant != null)) {
+				this.fireOnePhaseCommit();
+			} else {
+				this.fireTwoPhaseCommit();
+			}
+			success = true;
+		} finally {
+			TransactionEvents.fireCompletion(xid, true, success, startNanos);
 		}
 
 		logger.info("{}> commit-transaction complete successfully", ByteUtils.byteArrayToString(xid.getGlobalTransactionId()));
@@ -616,33 +635,102 @@ public class TransactionImpl implements Transaction {
 			this.transactionListenerList.onCommitStart(xid);
 			transactionLogger.updateTransaction(archive);
 
-			try {
-				currentStrategy.commit(xid, false);
-			} catch (HeuristicMixedException ex) {
-				this.transactionListenerList.onCommitHeuristicMixed(xid);
-				throw ex;
-			} catch (HeuristicRollbackException ex) {
-				this.transactionListenerList.onCommitHeuristicRolledback(xid);
-				throw ex;
-			} catch (SystemException ex) {
-				this.transactionListenerList.onCommitFailure(xid);
-				throw ex;
-			} catch (RuntimeException ex) {
-				this.transactionListenerList.onCommitFailure(xid);
-				throw ex;
-			}
+			if (this.secondPhaseAsync) {
+				if (LoggingFlushable.class.isInstance(transactionLogger)) {
+					((LoggingFlushable) transactionLogger).flushImmediately(); // the commit decision must be durable
+				} // end-if (LoggingFlushable.class.isInstance(transactionLogger))
 
-			this.transactionStatus = Status.STATUS_COMMITTED; // Status.STATUS_COMMITTED;
-			archive.setStatus(this.transactionStatus);
-			this.transactionListenerList.onCommitSuccess(xid);
-			transactionLogger.updateTransaction(archive);
+				this.secondPhasePending = true;
+				logger.info("{}> prepare-participant complete successfully, commit-participant is left to the committer",
+						ByteUtils.byteArrayToString(xid.getGlobalTransactionId()));
+				return;
+			} // end-if (this.secondPhaseAsync)
 
-			logger.info("{}> commit-participant complete successfully",
-					ByteUtils.byteArrayToString(xid.getGlobalTransactionId()));
+			this.fireSecondPhaseCommit(archive);
 		} // end-else-if (vote == XAResource.XA_RDONLY)
 
 	}
 
+	private void fireSecondPhaseCommit(TransactionArchive archive)
+			throws HeuristicRollbackException, HeuristicMixedException, SystemException {
+		TransactionLogger transactionLogger = beanFactory.getTransactionLogger();
+		TransactionStrategy currentStrategy = this.getTransactionStrategy();
+		TransactionXid xid = this.transactionContext.getXid();
+
+		try {
+			currentStrategy.commit(xid, false);
+		} catch (HeuristicMixedException ex) {
+			this.transactionListenerList.onCommitHeuristicMixed(xid);
+			throw ex;
+		} catch (HeuristicRollbackException ex) {
+			this.transactionListenerList.onCommitHeuristicRolledback(xid);
+			throw ex;
+		} catch (SystemException ex) {
+			this.transactionListenerList.onCommitFailure(xid);
+			throw ex;
+		} catch (RuntimeException ex) {
+			this.transactionListenerList.onCommitFailure(xid);
+			throw ex;
+		}
+
+		this.transactionStatus = Status.STATUS_COMMITTED; // Status.STATUS_COMMITTED;
+		archive.setStatus(this.transactionStatus);
+		this.transactionListenerList.onCommitSuccess(xid);
+		transactionLogger.updateTransaction(archive);
+
+		logger.info("{}> commit-participant complete successfully",
+				ByteUtils.byteArrayToString(xid.getGlobalTransactionId()));
+	}
+
+	/**
+	 * Drives the second phase left pending by an asynchronous commit, heuristic outcomes also complete the completion
+	 * stage exceptionally. The caller is responsible for forgetting the transaction or handing it to the recovery.
+	 */
+	public synchronized void fireSecondPhaseCommit()
+			throws HeuristicMixedException, HeuristicRollbackException, SystemException {
+		if (this.secondPhasePending == false) {
+			return;
+		} // end-if (this.secondPhasePending == false)
+
+		this.secondPhasePending = false;
+		try {
+			this.fireSecondPhaseCommit(this.getTransactionArchive());
+		} catch (HeuristicMixedException ex) {
+			this.getCompletionFuture().completeExceptionally(ex);
+			throw ex;
+		} catch (HeuristicRollbackException ex) {
+			this.getCompletionFuture().completeExceptionally(ex);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Returns a stage completed with the final status once the transaction has been forgotten, or exceptionally with
+	 * the heuristic exception of an asynchronous second phase. Transactions handed to the recovery complete when the
+	 * recovery forgets them.
+	 */
+	public CompletionStage<Integer> getCompletionStage() {
+		return this.getCompletionFuture();
+	}
+
+	private synchronized CompletableFuture<Integer> getCompletionFuture() {
+		if (this.completionFuture == null) {
+			this.completionFuture = new CompletableFuture<Integer>();
+			if (this.forgotten) {
+				this.completionFuture.complete(this.transactionStatus);
+			} // end-if (this.forgotten)
+		}
+		return this.completionFuture;
+	}
+
+	public boolean isSecondPhasePending() {
+		return secondPhasePending;
+	}
+
+	public void setSecondPhaseAsync(boolean secondPhaseAsync) {
+		this.secondPhaseAsync = secondPhaseAsync;
+	}
+
 	public synchronized boolean delistResource(XAResource xaRes, int flag) throws IllegalStateException, SystemException {
 		if (this.transactionStatus != Status.STATUS_ACTIVE && this.transactionStatus != Status.STATUS_MARKED_ROLLBACK) {
 			throw new IllegalStateException();
@@ -829,12 +917,15 @@ public class TransactionImpl implements Transaction {
 			}
 		}
 
+		long startNanos = TransactionEvents.startNanos();
+		Boolean enlistValue = null;
 		boolean success = false;
 		try {
-			Boolean enlistValue = this.enlistResource(archive, flags);
+			enlistValue = this.enlistResource(archive, flags);
 			success = enlistValue != null && enlistValue;
 			return enlistValue != null;
 		} finally {
+			TransactionEvents.fireEnlist(archive, flags, enlistValue != null, startNanos);
 			if (success) {
 				String identifier = descriptor.getIdentifier(); // dubbo: new identifier
 
@@ -983,7 +1074,14 @@ public class TransactionImpl implements Transaction {
 		TransactionXid xid = this.transactionContext.getXid();
 		logger.info("{}> rollback-transaction start", ByteUtils.byteArrayToString(xid.getGlobalTransactionId()));
 
-		this.invokeParticipantRollback();
+		long startNanos = TransactionEvents.startNanos();
+		boolean success = false;
+		try {
+			this.invokeParticipantRollback();
+			success = true;
+		} finally {
+			TransactionEvents.fireCompletion(xid, false, success, startNanos);
+		}
 
 		logger.info("{}> rollback-transaction complete successfully",
 				ByteUtils.byteArrayToString(xid.getGlobalTransactionId()));
@@ -1386,6 +1484,16 @@ public class TransactionImpl implements Transaction {
 		repository.removeTransaction(xid);
 
 		transactionLogger.deleteTransaction(this.getTransactionArchive());
+
+		TransactionStatistic transactionStatistic = this.beanFactory.getTransactionStatistic();
+		if (transactionStatistic != null) {
+			transactionStatistic.fireCleanupTransaction(this);
+		} // end-if (transactionStatistic != null)
+
+		this.forgotten = true;
+		if (this.completionFuture != null) {
+			this.completionFuture.complete(this.transactionStatus);
+		} // end-if (this.completionFuture != null)
 	}
 
 	public synchronized void cleanup() throws SystemException {
@@ -1490,11 +1598,26 @@ public class TransactionImpl implements Transaction {
 
 	public synchronized void stopTiming() {
 		this.setTiming(false);
+		if (this.timingEntry != null) {
+			this.timingEntry.cancel();
+		}
 	}
 
 	public synchronized void changeTransactionTimeout(int timeout) {
 		long created = this.transactionContext.getCreatedTime();
 		transactionContext.setExpiredTime(created + timeout);
+		if (this.timing && this.timingEntry != null) {
+			this.timingEntry.reschedule(created + timeout);
+		}
+	}
+
+	/**
+	 * Registers the transaction with the timing wheel once, subsequent calls are ignored.
+	 */
+	public synchronized void startTiming(TransactionTimingWheel timingWheel) {
+		if (this.timing && this.timingEntry == null) {
+			this.timingEntry = timingWheel.register(this, this.transactionContext.getExpiredTime());
+		}
 	}
 
 	public TransactionStrategy getTransactionStrategy() {
@@ -1652,6 +1775,14 @@ public class TransactionImpl implements Transaction {
 		this.createdAt = createdAt;
 	}
 
+	public Thread getAssociatedThread() {
+		return associatedThread;
+	}
+
+	public void setAssociatedThread(Thread associatedThread) {
+		this.associatedThread = associatedThread;
+	}
+
 	public void setTransactionStrategy(TransactionStrategy transactionStrategy) {
 		this.transactionStrategy = transactionStrategy;
 	}
@@ -15,11 +15,16 @@
  */
 package org.bytesoft.bytejta;
 
-import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.transaction.HeuristicMixedException;
 import javax.transaction.HeuristicRollbackException;
@@ -30,6 +35,7 @@ import javax.transaction.Status;
 import javax.transaction.SystemException;
 import javax.transaction.xa.Xid;
 
+import org.bytesoft.bytejta.statistic.TransactionEvents;
 import org.bytesoft.common.utils.ByteUtils;
 import org.bytesoft.transaction.RollbackRequiredException;
 import org.bytesoft.transaction.Transaction;
@@ -40,6 +46,7 @@ import org.bytesoft.transaction.TransactionRepository;
 import org.bytesoft.transaction.aware.TransactionBeanFactoryAware;
 import org.bytesoft.transaction.aware.TransactionDebuggable;
 import org.bytesoft.transaction.remote.RemoteCoordinator;
+import org.bytesoft.transaction.supports.TransactionStatistic;
 import org.bytesoft.transaction.supports.TransactionTimer;
 import org.bytesoft.transaction.xa.TransactionXid;
 import org.bytesoft.transaction.xa.XidFactory;
@@ -54,7 +61,20 @@ public class TransactionManagerImpl
 	private TransactionBeanFactory beanFactory;
 	private int timeoutSeconds = 5 * 60;
 	private final Map<Thread, Transaction> thread2txMap = new ConcurrentHashMap<Thread, Transaction>();
+	private final ThreadLocal<Transaction> associatedTransaction = new ThreadLocal<Transaction>();
+	private boolean threadLocalEnabled;
 	private final Map<Xid, Transaction> xid2txMap = new ConcurrentHashMap<Xid, Transaction>();
+	private final TransactionTimingWheel timingWheel = new TransactionTimingWheel();
+	private volatile Executor rollbackExecutor;
+	private int rollbackThreads = 2;
+	private volatile Executor participantExecutor;
+	private boolean participantParallelEnabled;
+	private int participantThreads = 8;
+	private int participantQueueSize = 1024;
+	private volatile Executor commitExecutor;
+	private boolean asyncCommitEnabled;
+	private int commitThreads = 4;
+	private int commitQueueSize = 1024 * 4;
 	private boolean debuggingEnabled;
 
 	public void begin() throws NotSupportedException, SystemException {
@@ -89,14 +109,35 @@ public class TransactionManagerImpl
 		this.associateThread(transaction);
 		TransactionRepository transactionRepository = this.beanFactory.getTransactionRepository();
 		transactionRepository.putTransaction(globalXid, transaction);
-		// this.transactionStatistic.fireBeginTransaction(transaction);
 
+		TransactionStatistic transactionStatistic = this.beanFactory.getTransactionStatistic();
+		if (transactionStatistic != null) {
+			transactionStatistic.fireBeginTransaction(transaction);
+		} // end-if (transactionStatistic != null)
+
+		TransactionEvents.fireBegin(globalXid, timeoutSeconds);
 		logger.info("{}> begin-transaction", ByteUtils.byteArrayToString(globalXid.getGlobalTransactionId()));
 	}
 
 	public void commit() throws RollbackException, HeuristicMixedException, HeuristicRollbackException, SecurityException,
 			IllegalStateException, SystemException {
 		Transaction transaction = this.getTransactionQuietly(); // this.desociateThread();
+		if (this.fireBeforeCommit(transaction) == false) {
+			return;
+		} // end-if (this.fireBeforeCommit(transaction) == false)
+
+		boolean secondPhaseRequired = this.fireCommit(transaction, this.asyncCommitEnabled);
+		if (secondPhaseRequired) {
+			this.fireSecondPhaseCommit((TransactionImpl) transaction);
+		} // end-if (secondPhaseRequired)
+	}
+
+	/**
+	 * Checks the state of the transaction and runs its synchronizations, returns false if there is nothing left to
+	 * commit.
+	 */
+	private boolean fireBeforeCommit(Transaction transaction)
+			throws RollbackException, HeuristicRollbackException, IllegalStateException, SystemException {
 		if (transaction == null) {
 			throw new IllegalStateException();
 		} else if (transaction.getTransactionStatus() == Status.STATUS_ROLLEDBACK) {
@@ -104,7 +145,7 @@ public class TransactionManagerImpl
 			throw new RollbackException();
 		} else if (transaction.getTransactionStatus() == Status.STATUS_COMMITTED) {
 			this.desociateThread();
-			return;
+			return false;
 		} else if (transaction.getTransactionStatus() == Status.STATUS_MARKED_ROLLBACK) {
 			this.rollback(transaction);
 			throw new HeuristicRollbackException();
@@ -112,10 +153,6 @@ public class TransactionManagerImpl
 			throw new IllegalStateException();
 		}
 
-		TransactionRepository transactionRepository = this.beanFactory.getTransactionRepository();
-		TransactionContext transactionContext = transaction.getTransactionContext();
-		TransactionXid transactionXid = transactionContext.getXid();
-
 		boolean beforeCompletionFailure = true;
 		try {
 			transaction.fireBeforeTransactionCompletion();
@@ -151,9 +188,32 @@ public class TransactionManagerImpl
 			} // end-if (beforeCompletionFailure)
 		}
 
+		return true;
+	}
+
+	/**
+	 * Commits a transaction whose synchronizations have completed, returns true if the second phase has been left
+	 * pending by an asynchronous commit.
+	 */
+	private boolean fireCommit(Transaction transaction, boolean secondPhaseAsync) throws RollbackException,
+			HeuristicMixedException, HeuristicRollbackException, SecurityException, IllegalStateException, SystemException {
+		TransactionRepository transactionRepository = this.beanFactory.getTransactionRepository();
+		TransactionContext transactionContext = transaction.getTransactionContext();
+		TransactionXid transactionXid = transactionContext.getXid();
+
+		boolean secondPhaseRequired = false;
 		try {
+			if (secondPhaseAsync && TransactionImpl.class.isInstance(transaction)) {
+				((TransactionImpl) transaction).setSecondPhaseAsync(true);
+			} // end-if (secondPhaseAsync && TransactionImpl.class.isInstance(transaction))
+
 			transaction.commit();
-			transaction.forgetQuietly(); // forget transaction
+
+			secondPhaseRequired = TransactionImpl.class.isInstance(transaction)
+					&& ((TransactionImpl) transaction).isSecondPhasePending();
+			if (secondPhaseRequired == false) {
+				transaction.forgetQuietly(); // forget transaction
+			} // end-if (secondPhaseRequired == false)
 		} catch (IllegalStateException ex) {
 			logger.error("Error occurred while committing transaction.", ex);
 			transactionRepository.putErrorTransaction(transactionXid, transaction);
@@ -182,6 +242,64 @@ public class TransactionManagerImpl
 			logger.error("Error occurred while committing transaction.", rex);
 			transactionRepository.putErrorTransaction(transactionXid, transaction);
 			throw rex;
+		} finally {
+			if (secondPhaseRequired == false) {
+				transaction.fireAfterTransactionCompletion();
+			} // end-if (secondPhaseRequired == false)
+		}
+
+		return secondPhaseRequired;
+	}
+
+	private void fireSecondPhaseCommit(final TransactionImpl transaction) {
+		try {
+			this.getCommitExecutor().execute(new Runnable() {
+				public void run() {
+					try {
+						completeSecondPhase(transaction);
+					} catch (Exception ex) {
+						// the transaction has been forgotten or handed to the recovery
+					}
+				}
+			});
+		} catch (RejectedExecutionException rex) {
+			TransactionXid transactionXid = transaction.getTransactionContext().getXid();
+			logger.warn("{}> The committer is saturated, the second phase is left to the recovery.",
+					ByteUtils.byteArrayToString(transactionXid.getGlobalTransactionId()));
+			TransactionRepository transactionRepository = this.beanFactory.getTransactionRepository();
+			transactionRepository.putErrorTransaction(transactionXid, transaction);
+			transaction.fireAfterTransactionCompletion();
+		}
+	}
+
+	/**
+	 * Drives the second phase left pending by an asynchronous commit. Heuristic outcomes complete the transaction as
+	 * commit() would, any other failure hands the transaction to the recovery. The synchronizations are notified once
+	 * the second phase has finished.
+	 */
+	private void completeSecondPhase(TransactionImpl transaction)
+			throws HeuristicMixedException, HeuristicRollbackException, SystemException {
+		TransactionRepository transactionRepository = this.beanFactory.getTransactionRepository();
+		TransactionXid transactionXid = transaction.getTransactionContext().getXid();
+		try {
+			transaction.fireSecondPhaseCommit();
+			transaction.forgetQuietly(); // forget transaction
+		} catch (HeuristicMixedException hmex) {
+			logger.error("Error occurred while committing transaction.", hmex);
+			transaction.forgetQuietly(); // forget transaction
+			throw hmex;
+		} catch (HeuristicRollbackException hrex) {
+			logger.error("Error occurred while committing transaction.", hrex);
+			transaction.forgetQuietly(); // forget transaction
+			throw hrex;
+		} catch (SystemException ex) {
+			logger.error("Error occurred while committing transaction.", ex);
+			transactionRepository.putErrorTransaction(transactionXid, transaction);
+			throw ex;
+		} catch (RuntimeException rex) {
+			logger.error("Error occurred while committing transaction.", rex);
+			transactionRepository.putErrorTransaction(transactionXid, transaction);
+			throw rex;
 		} finally {
 			transaction.fireAfterTransactionCompletion();
 		}
@@ -204,16 +322,23 @@ public class TransactionManagerImpl
 	}
 
 	protected void rollback(Transaction transaction) throws IllegalStateException, SecurityException, SystemException {
+		this.fireBeforeRollback(transaction);
+		this.fireRollback(transaction);
+	}
+
+	private void fireBeforeRollback(Transaction transaction) {
+		transaction.fireBeforeTransactionCompletionQuietly();
+		this.desociateThread();
+
+		this.stopTiming(transaction); // stop timing
+	}
+
+	private void fireRollback(Transaction transaction) throws IllegalStateException, SecurityException, SystemException {
 		TransactionRepository transactionRepository = this.beanFactory.getTransactionRepository();
 		TransactionContext transactionContext = transaction.getTransactionContext();
 		TransactionXid transactionXid = transactionContext.getXid();
 
 		try {
-			transaction.fireBeforeTransactionCompletionQuietly();
-			this.desociateThread();
-
-			this.stopTiming(transaction); // stop timing
-
 			transaction.rollback();
 			transaction.forgetQuietly();
 		} catch (IllegalStateException ex) {
@@ -240,18 +365,39 @@ public class TransactionManagerImpl
 	public void associateThread(Transaction transaction) {
 		TransactionContext transactionContext = transaction.getTransactionContext();
 		TransactionXid transactionXid = transactionContext.getXid();
-		this.xid2txMap.put(transactionXid, transaction);
-		this.thread2txMap.put(Thread.currentThread(), transaction);
+		if (this.threadLocalEnabled) {
+			this.associatedTransaction.set(transaction);
+		} else {
+			this.xid2txMap.put(transactionXid, transaction);
+			this.thread2txMap.put(Thread.currentThread(), transaction);
+		}
+
+		if (TransactionImpl.class.isInstance(transaction)) {
+			TransactionImpl transactionImpl = (TransactionImpl) transaction;
+			transactionImpl.setAssociatedThread(Thread.currentThread());
+			transactionImpl.startTiming(this.timingWheel);
+		}
 	}
 
 	public Transaction desociateThread() {
-		Transaction transaction = this.thread2txMap.remove(Thread.currentThread());
+		Transaction transaction = null;
+		if (this.threadLocalEnabled) {
+			transaction = this.associatedTransaction.get();
+			this.associatedTransaction.remove(); // remove the entry, pooled threads must not keep it
+		} else {
+			transaction = this.thread2txMap.remove(Thread.currentThread());
+		}
+
 		if (transaction == null) {
 			return null;
+		} else if (TransactionImpl.class.isInstance(transaction)) {
+			((TransactionImpl) transaction).setAssociatedThread(null);
 		}
 
-		TransactionContext transactionContext = transaction.getTransactionContext();
-		this.xid2txMap.remove(transactionContext.getXid());
+		if (this.threadLocalEnabled == false) {
+			TransactionContext transactionContext = transaction.getTransactionContext();
+			this.xid2txMap.remove(transactionContext.getXid());
+		} // end-if (this.threadLocalEnabled == false)
 		return transaction;
 	}
 
@@ -289,12 +435,47 @@ public class TransactionManagerImpl
 		return transaction == null ? Status.STATUS_NO_TRANSACTION : transaction.getTransactionStatus();
 	}
 
+	/**
+	 * In thread-local mode no map of associated transactions is kept, the transaction is looked up in the repository
+	 * and returned only while it is associated with a thread.
+	 */
 	public Transaction getTransaction(Xid transactionXid) {
-		return this.xid2txMap.get(transactionXid);
+		if (this.threadLocalEnabled == false) {
+			return this.xid2txMap.get(transactionXid);
+		} else if (TransactionXid.class.isInstance(transactionXid) == false) {
+			return null;
+		}
+
+		TransactionRepository transactionRepository = this.beanFactory.getTransactionRepository();
+		Transaction transaction = transactionRepository.getTransaction((TransactionXid) transactionXid);
+		return this.isAssociated(transaction) ? transaction : null;
 	}
 
+	/**
+	 * In thread-local mode the transactions of other threads are found by scanning the active transactions of the
+	 * repository, this is meant for debugging only.
+	 */
 	public Transaction getTransaction(Thread thread) {
-		return this.thread2txMap.get(thread);
+		if (this.threadLocalEnabled == false) {
+			return this.thread2txMap.get(thread);
+		} else if (thread == Thread.currentThread()) {
+			return this.associatedTransaction.get();
+		}
+
+		TransactionRepository transactionRepository = this.beanFactory.getTransactionRepository();
+		List<Transaction> transactionList = transactionRepository.getActiveTransactionList();
+		for (int i = 0; i < transactionList.size(); i++) {
+			Transaction transaction = transactionList.get(i);
+			if (this.isAssociated(transaction) && ((TransactionImpl) transaction).getAssociatedThread() == thread) {
+				return transaction;
+			}
+		}
+		return null;
+	}
+
+	private boolean isAssociated(Transaction transaction) {
+		return TransactionImpl.class.isInstance(transaction)
+				&& ((TransactionImpl) transaction).getAssociatedThread() != null;
 	}
 
 	public Transaction getTransactionQuietly() {
@@ -308,6 +489,9 @@ public class TransactionManagerImpl
 	}
 
 	public Transaction getTransaction() throws SystemException {
+		if (this.threadLocalEnabled) {
+			return this.associatedTransaction.get();
+		}
 		return this.thread2txMap.get(Thread.currentThread());
 	}
 
@@ -340,29 +524,104 @@ public class TransactionManagerImpl
 	}
 
 	public void timingExecution() {
-		List<Transaction> expiredTransactions = new ArrayList<Transaction>();
-		List<Transaction> activeTransactions = new ArrayList<Transaction>(this.thread2txMap.values());
 		long current = System.currentTimeMillis();
-		Iterator<Transaction> activeItr = activeTransactions.iterator();
-		while (activeItr.hasNext()) {
-			Transaction transaction = activeItr.next();
-			if (transaction.isTiming()) {
-				TransactionContext transactionContext = transaction.getTransactionContext();
-				if (transactionContext.getExpiredTime() <= current) {
-					expiredTransactions.add(transaction);
+		List<TransactionTimingWheel.Entry> expiredEntries = this.timingWheel.expire(current);
+		for (int i = 0; i < expiredEntries.size(); i++) {
+			TransactionTimingWheel.Entry entry = expiredEntries.get(i);
+			final Transaction transaction = entry.getTransaction();
+			TransactionContext transactionContext = transaction.getTransactionContext();
+			int transactionStatus = transaction.getTransactionStatus();
+			if (transaction.isTiming() == false) {
+				continue;
+			} else if (transactionStatus != Status.STATUS_ACTIVE && transactionStatus != Status.STATUS_MARKED_ROLLBACK) {
+				continue;
+			} else if (transactionContext.getExpiredTime() > current) {
+				entry.reschedule(transactionContext.getExpiredTime());
+			} else if (this.isAssociated(transaction) == false) {
+				// only transactions associated with a thread are rolled back, check again on the next tick
+				entry.reschedule(current + this.timingWheel.getTickMillis());
+			} else {
+				this.getRollbackExecutor().execute(new Runnable() {
+					public void run() {
+						timingRollback(transaction);
+					}
+				});
+			}
+		}
+	}
+
+	private Executor getRollbackExecutor() {
+		if (this.rollbackExecutor == null) {
+			synchronized (this) {
+				if (this.rollbackExecutor == null) {
+					final AtomicInteger counter = new AtomicInteger();
+					ThreadFactory threadFactory = new ThreadFactory() {
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable, "bytejta-timing-rollback-" + counter.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					};
+					ThreadPoolExecutor executor = new ThreadPoolExecutor(this.rollbackThreads, this.rollbackThreads, 60L,
+							TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+					executor.allowCoreThreadTimeOut(true);
+					this.rollbackExecutor = executor;
 				}
-			} // end-if (transaction.isTiming())
+			}
 		}
+		return this.rollbackExecutor;
+	}
 
-		Iterator<Transaction> expiredItr = expiredTransactions.iterator();
-		while (activeItr.hasNext()) {
-			Transaction transaction = expiredItr.next();
-			if (transaction.getTransactionStatus() == Status.STATUS_ACTIVE
-					|| transaction.getTransactionStatus() == Status.STATUS_MARKED_ROLLBACK) {
-				this.timingRollback(transaction);
+	/**
+	 * Returns the executor on which XATerminatorImpl fans out prepare/commit/rollback to the branches of a transaction,
+	 * or null when the branches are to be invoked one after another (the default). When the queue is full the branch is
+	 * invoked by the calling thread.
+	 */
+	public Executor getParticipantExecutor() {
+		if (this.participantParallelEnabled == false) {
+			return null;
+		} else if (this.participantExecutor == null) {
+			synchronized (this) {
+				if (this.participantExecutor == null) {
+					final AtomicInteger counter = new AtomicInteger();
+					ThreadFactory threadFactory = new ThreadFactory() {
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable, "bytejta-participant-" + counter.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					};
+					ThreadPoolExecutor executor = new ThreadPoolExecutor(this.participantThreads, this.participantThreads,
+							60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(this.participantQueueSize), threadFactory,
+							new ThreadPoolExecutor.CallerRunsPolicy());
+					executor.allowCoreThreadTimeOut(true);
+					this.participantExecutor = executor;
+				}
 			}
 		}
+		return this.participantExecutor;
+	}
 
+	private Executor getCommitExecutor() {
+		if (this.commitExecutor == null) {
+			synchronized (this) {
+				if (this.commitExecutor == null) {
+					final AtomicInteger counter = new AtomicInteger();
+					ThreadFactory threadFactory = new ThreadFactory() {
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable, "bytejta-committer-" + counter.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					};
+					ThreadPoolExecutor executor = new ThreadPoolExecutor(this.commitThreads, this.commitThreads, 60L,
+							TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(this.commitQueueSize), threadFactory);
+					executor.allowCoreThreadTimeOut(true);
+					this.commitExecutor = executor;
+				}
+			}
+		}
+		return this.commitExecutor;
 	}
 
 	private void timingRollback(Transaction transaction) {
@@ -370,6 +629,7 @@ public class TransactionManagerImpl
 		TransactionXid globalXid = transactionContext.getXid();
 		TransactionRepository transactionRepository = this.beanFactory.getTransactionRepository();
 
+		this.stopTiming(transaction);
 		try {
 			this.associateThread(transaction);
 			transaction.fireBeforeTransactionCompletionQuietly();
@@ -390,6 +650,81 @@ public class TransactionManagerImpl
 		}
 	}
 
+	public int getRollbackThreads() {
+		return rollbackThreads;
+	}
+
+	public void setRollbackThreads(int rollbackThreads) {
+		this.rollbackThreads = rollbackThreads;
+	}
+
+	public void setRollbackExecutor(Executor rollbackExecutor) {
+		this.rollbackExecutor = rollbackExecutor;
+	}
+
+	public boolean isParticipantParallelEnabled() {
+		return participantParallelEnabled;
+	}
+
+	public void setParticipantParallelEnabled(boolean participantParallelEnabled) {
+		this.participantParallelEnabled = participantParallelEnabled;
+	}
+
+	public int getParticipantThreads() {
+		return participantThreads;
+	}
+
+	public void setParticipantThreads(int participantThreads) {
+		this.participantThreads = participantThreads;
+	}
+
+	public int getParticipantQueueSize() {
+		return participantQueueSize;
+	}
+
+	public void setParticipantQueueSize(int participantQueueSize) {
+		this.participantQueueSize = participantQueueSize;
+	}
+
+	public void setParticipantExecutor(Executor participantExecutor) {
+		this.participantExecutor = participantExecutor;
+	}
+
+	public boolean isAsyncCommitEnabled() {
+		return asyncCommitEnabled;
+	}
+
+	/**
+	 * When enabled, commit returns as soon as the commit decision of a two-phase transaction is durable, and the second
+	 * phase is driven by the committer threads. The resources may not have committed yet when commit returns, so code
+	 * running after commit is not guaranteed to read the committed data; use TransactionImpl.getCompletionStage() to
+	 * wait for the outcome. Synchronization.afterCompletion is invoked on the committer thread once the second phase has
+	 * finished. Disabled by default.
+	 */
+	public void setAsyncCommitEnabled(boolean asyncCommitEnabled) {
+		this.asyncCommitEnabled = asyncCommitEnabled;
+	}
+
+	public int getCommitThreads() {
+		return commitThreads;
+	}
+
+	public void setCommitThreads(int commitThreads) {
+		this.commitThreads = commitThreads;
+	}
+
+	public int getCommitQueueSize() {
+		return commitQueueSize;
+	}
+
+	public void setCommitQueueSize(int commitQueueSize) {
+		this.commitQueueSize = commitQueueSize;
+	}
+
+	public void setCommitExecutor(Executor commitExecutor) {
+		this.commitExecutor = commitExecutor;
+	}
+
 	public boolean isDebuggingEnabled() {
 		return debuggingEnabled;
 	}
@@ -398,6 +733,18 @@ public class TransactionManagerImpl
 		this.debuggingEnabled = debuggingEnabled;
 	}
 
+	public boolean isThreadLocalEnabled() {
+		return threadLocalEnabled;
+	}
+
+	/**
+	 * Associates transactions with threads through a ThreadLocal instead of the shared map, which also suits virtual
+	 * threads. Set it before the first transaction begins, an association made in one mode is not visible in the other.
+	 */
+	public void setThreadLocalEnabled(boolean threadLocalEnabled) {
+		this.threadLocalEnabled = threadLocalEnabled;
+	}
+
 	public int getTimeoutSeconds() {
 		return timeoutSeconds;
 	}
@@ -15,14 +15,30 @@
  */
 package org.bytesoft.bytejta;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.transaction.Status;
 import javax.transaction.SystemException;
 import javax.transaction.xa.XAResource;
 
 import org.apache.commons.lang3.StringUtils;
+import org.bytesoft.bytejta.statistic.TransactionEvents;
 import org.bytesoft.bytejta.supports.resource.RemoteResourceDescriptor;
 import org.bytesoft.common.utils.ByteUtils;
 import org.bytesoft.common.utils.CommonUtils;
@@ -39,7 +55,9 @@ import org.bytesoft.transaction.aware.TransactionBeanFactoryAware;
 import org.bytesoft.transaction.logging.TransactionLogger;
 import org.bytesoft.transaction.recovery.TransactionRecoveryCallback;
 import org.bytesoft.transaction.recovery.TransactionRecoveryListener;
+import org.bytesoft.transaction.remote.RemoteNode;
 import org.bytesoft.transaction.remote.RemoteSvc;
+import org.bytesoft.transaction.supports.TransactionStatistic;
 import org.bytesoft.transaction.supports.resource.XAResourceDescriptor;
 import org.bytesoft.transaction.xa.TransactionXid;
 import org.bytesoft.transaction.xa.XidFactory;
@@ -49,63 +67,212 @@ import org.slf4j.LoggerFactory;
 public class TransactionRecoveryImpl implements TransactionRecovery, TransactionBeanFactoryAware {
 	static final Logger logger = LoggerFactory.getLogger(TransactionRecoveryImpl.class);
 	static final long SECOND_MILLIS = 1000L;
+	static final long RECOVERY_PROGRESS_INTERVAL = 10000L;
+	static final long RECOVERY_MIN_INTERVAL = SECOND_MILLIS * 60L;
 
 	private TransactionRecoveryListener listener;
+	private final AtomicLong recoveredCount = new AtomicLong();
+	private final AtomicLong completedCount = new AtomicLong();
+	private volatile long recoveryMillis;
+
+	private final DelayQueue<RecoveryTask> recoveryQueue = new DelayQueue<RecoveryTask>();
+	private final Map<TransactionXid, RecoveryTask> recoveryTaskMap = new ConcurrentHashMap<TransactionXid, RecoveryTask>();
+	private final Map<Object, Semaphore> nodePermitMap = new ConcurrentHashMap<Object, Semaphore>();
+	private volatile ThreadPoolExecutor recoveryExecutor;
+	private int recoveryThreads = 4;
+	private int recoveryQueueSize = 1024;
+	private int nodeConcurrency = 2;
+	private long permitRetryMillis = SECOND_MILLIS * 5L;
 	@javax.inject.Inject
 	private TransactionBeanFactory beanFactory;
 
+	/**
+	 * Schedules the error transactions by their next attempt time and hands the due ones to the recovery workers. A
+	 * transaction is only dispatched when every remote node it involves has a free permit, so a slow node delays its
+	 * own transactions but not the others.
+	 */
 	public synchronized void timingRecover() {
 		TransactionRepository transactionRepository = beanFactory.getTransactionRepository();
-		List<Transaction> transactions = transactionRepository.getErrorTransactionList();
-		int total = transactions == null ? 0 : transactions.size(), value = 0;
-		for (int i = 0; transactions != null && i < transactions.size(); i++) {
-			Transaction transaction = transactions.get(i);
-			TransactionContext transactionContext = transaction.getTransactionContext();
-			TransactionXid xid = transactionContext.getXid();
-			int recoveredTimes = transactionContext.getRecoveredTimes() > 10 ? 10 : transactionContext.getRecoveredTimes();
-			long recoverMillis = transactionContext.getCreatedTime() + SECOND_MILLIS * 60L * (long) Math.pow(2, recoveredTimes);
-
-			if (System.currentTimeMillis() < recoverMillis) {
+		if (TransactionRepositoryImpl.class.isInstance(transactionRepository)) {
+			TransactionRepositoryImpl repository = (TransactionRepositoryImpl) transactionRepository;
+			Transaction transaction = null;
+			while ((transaction = repository.pollErrorTransactionAddition()) != null) {
+				this.scheduleRecovery(transaction);
+			}
+		} else {
+			List<Transaction> transactions = transactionRepository.getErrorTransactionList();
+			for (int i = 0; transactions != null && i < transactions.size(); i++) {
+				Transaction transaction = transactions.get(i);
+				RecoveryTask scheduled = this.recoveryTaskMap.get(transaction.getTransactionContext().getXid());
+				if (scheduled == null || scheduled.transaction != transaction) {
+					this.scheduleRecovery(transaction); // only new or replaced transactions are (re)scheduled
+				} // end-if (scheduled == null || scheduled.transaction != transaction)
+			}
+		}
+
+		int total = 0, value = 0;
+		RecoveryTask task = null;
+		while ((task = this.recoveryQueue.poll()) != null) {
+			total++;
+			if (transactionRepository.getErrorTransaction(task.xid) != task.transaction) {
+				this.recoveryTaskMap.remove(task.xid, task);
 				continue;
-			} // end-if (System.currentTimeMillis() < recoverMillis)
+			}
+
+			List<Semaphore> permits = this.acquireNodePermits(task.transaction);
+			if (permits == null) {
+				task.nextAttemptTime = System.currentTimeMillis() + this.permitRetryMillis;
+				this.recoveryQueue.offer(task);
+				continue;
+			}
 
 			try {
-				this.recoverTransaction(transaction);
+				this.getRecoveryExecutor().execute(new RecoveryRunner(task, permits));
 				value++;
-			} catch (CommitRequiredException ex) {
-				logger.debug("{}> recover: branch={}, message= commit-required",
-						ByteUtils.byteArrayToString(xid.getGlobalTransactionId()),
-						ByteUtils.byteArrayToString(xid.getBranchQualifier()), ex);
-				continue;
-			} catch (RollbackRequiredException ex) {
-				logger.debug("{}> recover: branch={}, message= rollback-required",
-						ByteUtils.byteArrayToString(xid.getGlobalTransactionId()),
-						ByteUtils.byteArrayToString(xid.getBranchQualifier()), ex);
-				continue;
-			} catch (SystemException ex) {
-				logger.debug("{}> recover: branch={}, message= {}", ByteUtils.byteArrayToString(xid.getGlobalTransactionId()),
-						ByteUtils.byteArrayToString(xid.getBranchQualifier()), ex.getMessage(), ex);
-				continue;
-			} catch (RuntimeException ex) {
-				logger.debug("{}> recover: branch={}, message= {}", ByteUtils.byteArrayToString(xid.getGlobalTransactionId()),
-						ByteUtils.byteArrayToString(xid.getBranchQualifier()), ex.getMessage(), ex);
-				continue;
+			} catch (RejectedExecutionException ex) {
+				this.releaseNodePermits(permits);
+				task.nextAttemptTime = System.currentTimeMillis() + this.permitRetryMillis;
+				this.recoveryQueue.offer(task);
+				break;
 			}
 		}
-		logger.debug("[transaction-recovery] total= {}, success= {}", total, value);
+		this.evictIdleNodePermits();
+		logger.debug("[transaction-recovery] due= {}, dispatched= {}, scheduled= {}", total, value,
+				this.recoveryTaskMap.size());
+	}
+
+	private void scheduleRecovery(Transaction transaction) {
+		TransactionXid xid = transaction.getTransactionContext().getXid();
+		RecoveryTask task = new RecoveryTask(xid, transaction);
+		task.nextAttemptTime = this.getNextAttemptTime(transaction, 0);
+		RecoveryTask previous = this.recoveryTaskMap.put(xid, task);
+		if (previous != null) {
+			this.recoveryQueue.remove(previous);
+		}
+		this.recoveryQueue.offer(task);
+	}
+
+	private long getNextAttemptTime(Transaction transaction, long minimum) {
+		TransactionContext transactionContext = transaction.getTransactionContext();
+		int recoveredTimes = transactionContext.getRecoveredTimes() > 10 ? 10 : transactionContext.getRecoveredTimes();
+		long recoverMillis = transactionContext.getCreatedTime() + SECOND_MILLIS * 60L * (long) Math.pow(2, recoveredTimes);
+		return Math.max(recoverMillis, minimum);
+	}
+
+	private List<Semaphore> acquireNodePermits(Transaction transaction) {
+		Set<Object> nodes = new HashSet<Object>();
+		if (TransactionImpl.class.isInstance(transaction)) {
+			nodes.addAll(((TransactionImpl) transaction).getRemoteParticipantMap().keySet());
+		}
+		TransactionContext transactionContext = transaction.getTransactionContext();
+		Object propagatedBy = transactionContext.getPropagatedBy();
+		if (transactionContext.isCoordinator() == false && propagatedBy != null) {
+			RemoteNode remoteNode = CommonUtils.getRemoteNode(String.valueOf(propagatedBy));
+			if (remoteNode != null) {
+				nodes.add(CommonUtils.getRemoteSvc(remoteNode));
+			}
+		}
+
+		List<Semaphore> permits = new ArrayList<Semaphore>(nodes.size());
+		for (Iterator<Object> itr = nodes.iterator(); itr.hasNext();) {
+			Object node = itr.next();
+			Semaphore semaphore = this.nodePermitMap.get(node);
+			if (semaphore == null) {
+				Semaphore created = new Semaphore(this.nodeConcurrency);
+				semaphore = this.nodePermitMap.putIfAbsent(node, created);
+				semaphore = semaphore == null ? created : semaphore;
+			}
+
+			if (semaphore.tryAcquire() == false) {
+				this.releaseNodePermits(permits);
+				return null;
+			}
+			permits.add(semaphore);
+		}
+		return permits;
+	}
+
+	/**
+	 * Drops the semaphores of the nodes with no recovery in progress. Permits are only acquired by timingRecover(), so
+	 * an idle semaphore cannot be acquired while it is removed.
+	 */
+	private void evictIdleNodePermits() {
+		for (Iterator<Map.Entry<Object, Semaphore>> itr = this.nodePermitMap.entrySet().iterator(); itr.hasNext();) {
+			Map.Entry<Object, Semaphore> entry = itr.next();
+			if (entry.getValue().availablePermits() >= this.nodeConcurrency) {
+				itr.remove();
+			}
+		}
+	}
+
+	private void releaseNodePermits(List<Semaphore> permits) {
+		for (int i = 0; i < permits.size(); i++) {
+			permits.get(i).release();
+		}
+	}
+
+	private ThreadPoolExecutor getRecoveryExecutor() {
+		if (this.recoveryExecutor == null) {
+			synchronized (this) {
+				if (this.recoveryExecutor == null) {
+					final AtomicInteger counter = new AtomicInteger();
+					ThreadFactory threadFactory = new ThreadFactory() {
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable, "bytejta-recovery-" + counter.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					};
+					ThreadPoolExecutor executor = new ThreadPoolExecutor(this.recoveryThreads, this.recoveryThreads, 60L,
+							TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(this.recoveryQueueSize), threadFactory);
+					executor.allowCoreThreadTimeOut(true);
+					this.recoveryExecutor = executor;
+				}
+			}
+		}
+		return this.recoveryExecutor;
+	}
+
+	private void recoverQuietly(Transaction transaction) {
+		TransactionXid xid = transaction.getTransactionContext().getXid();
+		try {
+			this.recoverTransaction(transaction);
+		} catch (CommitRequiredException ex) {
+			logger.debug("{}> recover: branch={}, message= commit-required",
+					ByteUtils.byteArrayToString(xid.getGlobalTransactionId()),
+					ByteUtils.byteArrayToString(xid.getBranchQualifier()), ex);
+		} catch (RollbackRequiredException ex) {
+			logger.debug("{}> recover: branch={}, message= rollback-required",
+					ByteUtils.byteArrayToString(xid.getGlobalTransactionId()),
+					ByteUtils.byteArrayToString(xid.getBranchQualifier()), ex);
+		} catch (SystemException ex) {
+			logger.debug("{}> recover: branch={}, message= {}", ByteUtils.byteArrayToString(xid.getGlobalTransactionId()),
+					ByteUtils.byteArrayToString(xid.getBranchQualifier()), ex.getMessage(), ex);
+		} catch (RuntimeException ex) {
+			logger.debug("{}> recover: branch={}, message= {}", ByteUtils.byteArrayToString(xid.getGlobalTransactionId()),
+					ByteUtils.byteArrayToString(xid.getBranchQualifier()), ex.getMessage(), ex);
+		}
 	}
 
 	public void recoverTransaction(Transaction transaction)
 			throws CommitRequiredException, RollbackRequiredException, SystemException {
 
 		TransactionContext transactionContext = transaction.getTransactionContext();
-		boolean coordinator = transactionContext.isCoordinator();
-		if (coordinator) {
-			transaction.recover();
-			this.recoverCoordinator(transaction);
-		} else {
-			transaction.recover();
-			this.recoverParticipant(transaction);
+		long startNanos = TransactionEvents.startNanos();
+		boolean success = false;
+		try {
+			boolean coordinator = transactionContext.isCoordinator();
+			if (coordinator) {
+				transaction.recover();
+				this.recoverCoordinator(transaction);
+			} else {
+				transaction.recover();
+				this.recoverParticipant(transaction);
+			}
+			success = true;
+		} finally {
+			TransactionEvents.fireRecovery(transactionContext.getXid(), transaction.getTransactionStatus(), success,
+					startNanos);
 		}
 
 	}
@@ -158,28 +325,53 @@ public class TransactionRecoveryImpl implements TransactionRecovery, Transaction
 		}
 	}
 
+	/**
+	 * The tx-log may invoke the recovery callback from several threads at once, see
+	 * SampleTransactionLogger.recover; the repository is concurrent and the listener is serialized here.
+	 */
 	public synchronized void startRecovery() {
 		final TransactionRepository transactionRepository = beanFactory.getTransactionRepository();
 		final TransactionLogger transactionLogger = beanFactory.getTransactionLogger();
-		transactionLogger.recover(new TransactionRecoveryCallback() {
 
+		final long startMillis = System.currentTimeMillis();
+		this.recoveredCount.set(0);
+		this.completedCount.set(0);
+
+		transactionLogger.recover(new TransactionRecoveryCallback() {
 			public void recover(TransactionArchive archive) {
 				try {
 					TransactionImpl transaction = (TransactionImpl) reconstruct(archive);
+					TransactionStatistic transactionStatistic = beanFactory.getTransactionStatistic();
+					if (transactionStatistic != null) {
+						transactionStatistic.fireRecoverTransaction(transaction);
+					} // end-if (transactionStatistic != null)
 					if (listener != null) {
-						listener.onRecovery(transaction);
+						synchronized (listener) {
+							listener.onRecovery(transaction);
+						}
 					}
 					TransactionContext transactionContext = transaction.getTransactionContext();
 					TransactionXid globalXid = transactionContext.getXid();
 					transactionRepository.putTransaction(globalXid, transaction);
 					transactionRepository.putErrorTransaction(globalXid, transaction);
+
+					long recovered = recoveredCount.incrementAndGet();
+					if (recovered % RECOVERY_PROGRESS_INTERVAL == 0) {
+						logger.info("[transaction-recovery] progress: recovered= {}, completed= {}, elapsed= {} ms", recovered,
+								completedCount.get(), System.currentTimeMillis() - startMillis);
+					} // end-if (recovered % RECOVERY_PROGRESS_INTERVAL == 0)
 				} catch (IllegalStateException ex) {
+					completedCount.incrementAndGet();
 					transactionLogger.deleteTransaction(archive);
 				}
 
 			}
 		});
 
+		this.recoveryMillis = System.currentTimeMillis() - startMillis;
+		logger.info("[transaction-recovery] startup recovery finished: recovered= {}, completed= {}, elapsed= {} ms",
+				this.recoveredCount.get(), this.completedCount.get(), this.recoveryMillis);
+
 		TransactionCoordinator transactionCoordinator = //
 				(TransactionCoordinator) this.beanFactory.getNativeParticipant();
 		transactionCoordinator.markParticipantReady();
@@ -263,6 +455,54 @@ public class TransactionRecoveryImpl implements TransactionRecovery, Transaction
 		this.beanFactory = tbf;
 	}
 
+	public int getRecoveryThreads() {
+		return recoveryThreads;
+	}
+
+	public void setRecoveryThreads(int recoveryThreads) {
+		this.recoveryThreads = recoveryThreads;
+	}
+
+	public int getRecoveryQueueSize() {
+		return recoveryQueueSize;
+	}
+
+	public void setRecoveryQueueSize(int recoveryQueueSize) {
+		this.recoveryQueueSize = recoveryQueueSize;
+	}
+
+	public int getNodeConcurrency() {
+		return nodeConcurrency;
+	}
+
+	public void setNodeConcurrency(int nodeConcurrency) {
+		this.nodeConcurrency = nodeConcurrency;
+	}
+
+	public long getPermitRetryMillis() {
+		return permitRetryMillis;
+	}
+
+	public void setPermitRetryMillis(long permitRetryMillis) {
+		this.permitRetryMillis = permitRetryMillis;
+	}
+
+	public int getScheduledCount() {
+		return this.recoveryTaskMap.size();
+	}
+
+	public long getRecoveredCount() {
+		return this.recoveredCount.get();
+	}
+
+	public long getCompletedCount() {
+		return this.completedCount.get();
+	}
+
+	public long getRecoveryMillis() {
+		return recoveryMillis;
+	}
+
 	public TransactionRecoveryListener getListener() {
 		return listener;
 	}
@@ -270,4 +510,53 @@ public class TransactionRecoveryImpl implements TransactionRecovery, Transaction
 	public void setListener(TransactionRecoveryListener listener) {
 		this.listener = listener;
 	}
+
+	class RecoveryRunner implements Runnable {
+		private final RecoveryTask task;
+		private final List<Semaphore> permits;
+
+		RecoveryRunner(RecoveryTask task, List<Semaphore> permits) {
+			this.task = task;
+			this.permits = permits;
+		}
+
+		public void run() {
+			TransactionRepository transactionRepository = beanFactory.getTransactionRepository();
+			try {
+				recoverQuietly(this.task.transaction);
+			} finally {
+				releaseNodePermits(this.permits);
+			}
+
+			if (transactionRepository.getErrorTransaction(this.task.xid) == this.task.transaction) {
+				long minimum = System.currentTimeMillis() + RECOVERY_MIN_INTERVAL;
+				this.task.nextAttemptTime = getNextAttemptTime(this.task.transaction, minimum);
+				recoveryQueue.offer(this.task);
+			} else {
+				recoveryTaskMap.remove(this.task.xid, this.task);
+			}
+		}
+	}
+
+	static class RecoveryTask implements Delayed {
+		final TransactionXid xid;
+		final Transaction transaction;
+		volatile long nextAttemptTime;
+
+		RecoveryTask(TransactionXid xid, Transaction transaction) {
+			this.xid = xid;
+			this.transaction = transaction;
+		}
+
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(this.nextAttemptTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		}
+
+		public int compareTo(Delayed that) {
+			long thisTime = this.nextAttemptTime;
+			long thatTime = ((RecoveryTask) that).nextAttemptTime;
+			return thisTime < thatTime ? -1 : (thisTime == thatTime ? 0 : 1);
+		}
+	}
+
 }
@@ -18,7 +18,9 @@ package org.bytesoft.bytejta;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.bytesoft.transaction.Transaction;
 import org.bytesoft.transaction.TransactionRepository;
@@ -27,6 +29,7 @@ import org.bytesoft.transaction.xa.TransactionXid;
 public class TransactionRepositoryImpl implements TransactionRepository {
 	private final Map<TransactionXid, Transaction> xidToTxMap = new ConcurrentHashMap<TransactionXid, Transaction>();
 	private final Map<TransactionXid, Transaction> xidToErrTxMap = new ConcurrentHashMap<TransactionXid, Transaction>();
+	private final Queue<Transaction> errorAdditionQueue = new ConcurrentLinkedQueue<Transaction>();
 
 	public void putTransaction(TransactionXid globalXid, Transaction transaction) {
 		this.xidToTxMap.put(globalXid, transaction);
@@ -41,7 +44,17 @@ public class TransactionRepositoryImpl implements TransactionRepository {
 	}
 
 	public void putErrorTransaction(TransactionXid globalXid, Transaction transaction) {
-		this.xidToErrTxMap.put(globalXid, transaction);
+		if (this.xidToErrTxMap.put(globalXid, transaction) != transaction) {
+			this.errorAdditionQueue.offer(transaction);
+		}
+	}
+
+	/**
+	 * Returns the next transaction added to the error list since the previous call, or null. Used by the recovery
+	 * scheduler so that it never has to copy the whole error list.
+	 */
+	public Transaction pollErrorTransactionAddition() {
+		return this.errorAdditionQueue.poll();
 	}
 
 	public Transaction getErrorTransaction(TransactionXid globalXid) {
@@ -0,0 +1,197 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bytesoft.transaction.Transaction;
+
+/**
+ * Hashed timing wheel of transaction deadlines. Each bucket is a doubly linked list of entries, so registering,
+ * cancelling and rescheduling a transaction are O(1). Deadlines further away than one revolution simply stay in their
+ * bucket until a later pass finds them due.
+ */
+public class TransactionTimingWheel {
+	static final int DEFAULT_WHEEL_SIZE = 512;
+	static final long DEFAULT_TICK_MILLIS = 1000L;
+
+	private final Bucket[] buckets;
+	private final int mask;
+	private final long tickMillis;
+	private volatile long lastTick = -1;
+
+	public TransactionTimingWheel() {
+		this(DEFAULT_WHEEL_SIZE, DEFAULT_TICK_MILLIS);
+	}
+
+	public TransactionTimingWheel(int wheelSize, long tickMillis) {
+		int size = 1;
+		while (size < wheelSize) {
+			size = size << 1;
+		}
+		this.buckets = new Bucket[size];
+		for (int i = 0; i < size; i++) {
+			this.buckets[i] = new Bucket();
+		}
+		this.mask = size - 1;
+		this.tickMillis = tickMillis;
+	}
+
+	public Entry register(Transaction transaction, long deadline) {
+		Entry entry = new Entry(this, transaction);
+		this.schedule(entry, deadline);
+		return entry;
+	}
+
+	/**
+	 * An entry goes to the first tick that ends at or after its deadline, a bucket is only visited once per round and
+	 * its entries must have expired by then. Deadlines in ticks already visited are moved to the next tick, the check is
+	 * repeated under the bucket lock since expire() may pass the tick meanwhile.
+	 */
+	private void schedule(Entry entry, long deadline) {
+		long deadlineTick = (deadline + this.tickMillis - 1) / this.tickMillis;
+		while (true) {
+			long tick = Math.max(deadlineTick, this.lastTick + 1);
+			Bucket bucket = this.buckets[(int) tick & this.mask];
+			synchronized (bucket) {
+				if (tick > this.lastTick) {
+					entry.deadline = deadline;
+					bucket.add(entry);
+					return;
+				} // end-if (tick > this.lastTick)
+			}
+		}
+	}
+
+	private void cancel(Entry entry) {
+		Bucket bucket = entry.bucket;
+		if (bucket == null) {
+			return;
+		}
+
+		synchronized (bucket) {
+			if (entry.bucket == bucket) {
+				bucket.remove(entry);
+			}
+		}
+	}
+
+	/**
+	 * Removes and returns the entries whose deadline is not after the given time. Only the buckets of the ticks elapsed
+	 * since the previous call are visited. Must not be called concurrently.
+	 */
+	public List<Entry> expire(long current) {
+		List<Entry> expiredEntries = new ArrayList<Entry>();
+		long currentTick = current / this.tickMillis;
+		long fromTick = this.lastTick < 0 || currentTick - this.lastTick > this.buckets.length //
+				? currentTick - this.buckets.length + 1 : this.lastTick + 1;
+		this.lastTick = currentTick; // published before draining, see schedule()
+		for (long tick = fromTick; tick <= currentTick; tick++) {
+			Bucket bucket = this.buckets[(int) tick & this.mask];
+			synchronized (bucket) {
+				Entry entry = bucket.head;
+				while (entry != null) {
+					Entry next = entry.next;
+					if (entry.deadline <= current) {
+						bucket.remove(entry);
+						expiredEntries.add(entry);
+					}
+					entry = next;
+				}
+			}
+		}
+		return expiredEntries;
+	}
+
+	public long getTickMillis() {
+		return tickMillis;
+	}
+
+	/**
+	 * Cancel and reschedule are serialized on the entry, the timer thread and the transaction may call them at the
+	 * same time. A cancelled entry is never scheduled again.
+	 */
+	public static class Entry {
+		private final TransactionTimingWheel wheel;
+		private final Transaction transaction;
+		private volatile long deadline;
+		private volatile Bucket bucket;
+		private boolean cancelled;
+		private Entry prev;
+		private Entry next;
+
+		private Entry(TransactionTimingWheel wheel, Transaction transaction) {
+			this.wheel = wheel;
+			this.transaction = transaction;
+		}
+
+		public synchronized void cancel() {
+			this.cancelled = true;
+			this.wheel.cancel(this);
+		}
+
+		/**
+		 * Moves the entry to the bucket of the new deadline, re-registering it if it has already expired. Ignored once
+		 * the entry is cancelled.
+		 */
+		public synchronized void reschedule(long deadline) {
+			if (this.cancelled) {
+				return;
+			}
+
+			this.wheel.cancel(this);
+			this.wheel.schedule(this, deadline);
+		}
+
+		public Transaction getTransaction() {
+			return transaction;
+		}
+
+		public long getDeadline() {
+			return deadline;
+		}
+	}
+
+	static class Bucket {
+		private Entry head;
+
+		void add(Entry entry) {
+			entry.bucket = this;
+			entry.prev = null;
+			entry.next = this.head;
+			if (this.head != null) {
+				this.head.prev = entry;
+			}
+			this.head = entry;
+		}
+
+		void remove(Entry entry) {
+			if (entry.prev == null) {
+				this.head = entry.next;
+			} else {
+				entry.prev.next = entry.next;
+			}
+			if (entry.next != null) {
+				entry.next.prev = entry.prev;
+			}
+			entry.bucket = null;
+			entry.prev = null;
+			entry.next = null;
+		}
+	}
+
+}
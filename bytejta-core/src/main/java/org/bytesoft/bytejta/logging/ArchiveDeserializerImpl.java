@@ -15,6 +15,9 @@
  */
 package org.bytesoft.bytejta.logging;
 
+import java.nio.ByteBuffer;
+
+import org.bytesoft.bytejta.logging.deserializer.ArchiveDeltaDeserializer;
 import org.bytesoft.transaction.archive.TransactionArchive;
 import org.bytesoft.transaction.archive.XAResourceArchive;
 import org.bytesoft.transaction.logging.ArchiveDeserializer;
@@ -23,9 +26,11 @@ import org.bytesoft.transaction.xa.TransactionXid;
 public class ArchiveDeserializerImpl implements ArchiveDeserializer {
 	static final byte TYPE_TRANSACTION = 0x0;
 	static final byte TYPE_XA_RESOURCE = 0x1;
+	static final byte TYPE_DELTA = 0x2;
 
 	private ArchiveDeserializer xaResourceArchiveDeserializer;
 	private ArchiveDeserializer transactionArchiveDeserializer;
+	private ArchiveDeserializer deltaArchiveDeserializer = new ArchiveDeltaDeserializer();
 
 	public byte[] serialize(TransactionXid xid, Object archive) {
 
@@ -41,12 +46,38 @@ public class ArchiveDeserializerImpl implements ArchiveDeserializer {
 			byteArray[0] = TYPE_XA_RESOURCE;
 			System.arraycopy(array, 0, byteArray, 1, array.length);
 			return byteArray;
+		} else if (this.isArchiveDelta(archive)) {
+			byte[] array = this.deltaArchiveDeserializer.serialize(xid, archive);
+			byte[] byteArray = new byte[array.length + 1];
+			byteArray[0] = TYPE_DELTA;
+			System.arraycopy(array, 0, byteArray, 1, array.length);
+			return byteArray;
 		} else {
 			throw new IllegalArgumentException();
 		}
 
 	}
 
+	public void serialize(TransactionXid xid, Object archive, ByteBuffer buffer) {
+		if (TransactionArchive.class.isInstance(archive)) {
+			buffer.put(TYPE_TRANSACTION);
+			this.transactionArchiveDeserializer.serialize(xid, archive, buffer);
+		} else if (XAResourceArchive.class.isInstance(archive)) {
+			buffer.put(TYPE_XA_RESOURCE);
+			this.xaResourceArchiveDeserializer.serialize(xid, archive, buffer);
+		} else if (this.isArchiveDelta(archive)) {
+			buffer.put(TYPE_DELTA);
+			this.deltaArchiveDeserializer.serialize(xid, archive, buffer);
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	private boolean isArchiveDelta(Object archive) {
+		return TransactionArchiveDelta.class.isInstance(archive) || XAResourceArchiveDelta.class.isInstance(archive)
+				|| XAResourceArchiveBatch.class.isInstance(archive);
+	}
+
 	public Object deserialize(TransactionXid xid, byte[] array) {
 		if (array == null || array.length <= 1) {
 			throw new IllegalArgumentException();
@@ -61,6 +92,10 @@ public class ArchiveDeserializerImpl implements ArchiveDeserializer {
 			byte[] byteArray = new byte[array.length - 1];
 			System.arraycopy(array, 1, byteArray, 0, byteArray.length);
 			return this.xaResourceArchiveDeserializer.deserialize(xid, byteArray);
+		} else if (type == TYPE_DELTA) {
+			byte[] byteArray = new byte[array.length - 1];
+			System.arraycopy(array, 1, byteArray, 0, byteArray.length);
+			return this.deltaArchiveDeserializer.deserialize(xid, byteArray);
 		} else {
 			throw new IllegalArgumentException();
 		}
@@ -83,4 +118,12 @@ public class ArchiveDeserializerImpl implements ArchiveDeserializer {
 		this.transactionArchiveDeserializer = transactionArchiveDeserializer;
 	}
 
+	public ArchiveDeserializer getDeltaArchiveDeserializer() {
+		return deltaArchiveDeserializer;
+	}
+
+	public void setDeltaArchiveDeserializer(ArchiveDeserializer deltaArchiveDeserializer) {
+		this.deltaArchiveDeserializer = deltaArchiveDeserializer;
+	}
+
 }
@@ -18,15 +18,24 @@ package org.bytesoft.bytejta.logging;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import javax.annotation.PostConstruct;
 import javax.transaction.xa.Xid;
 
 import org.apache.commons.lang3.StringUtils;
+import org.bytesoft.bytejta.logging.store.VirtualLoggingCursor;
+import org.bytesoft.bytejta.logging.store.VirtualLoggingKeySet;
 import org.bytesoft.bytejta.logging.store.VirtualLoggingSystemImpl;
 import org.bytesoft.common.utils.ByteUtils;
 import org.bytesoft.transaction.TransactionBeanFactory;
@@ -35,9 +44,10 @@ import org.bytesoft.transaction.archive.XAResourceArchive;
 import org.bytesoft.transaction.aware.TransactionBeanFactoryAware;
 import org.bytesoft.transaction.aware.TransactionEndpointAware;
 import org.bytesoft.transaction.logging.ArchiveDeserializer;
+import org.bytesoft.transaction.logging.LoggingBatchable;
 import org.bytesoft.transaction.logging.LoggingFlushable;
 import org.bytesoft.transaction.logging.TransactionLogger;
-import org.bytesoft.transaction.logging.store.VirtualLoggingListener;
+import org.bytesoft.transaction.logging.store.VirtualLoggingKey;
 import org.bytesoft.transaction.logging.store.VirtualLoggingRecord;
 import org.bytesoft.transaction.logging.store.VirtualLoggingSystem;
 import org.bytesoft.transaction.recovery.TransactionRecoveryCallback;
@@ -46,13 +56,22 @@ import org.bytesoft.transaction.xa.XidFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class SampleTransactionLogger extends VirtualLoggingSystemImpl
-		implements TransactionLogger, LoggingFlushable, TransactionBeanFactoryAware, TransactionEndpointAware {
+public class SampleTransactionLogger extends VirtualLoggingSystemImpl implements TransactionLogger, LoggingFlushable,
+		LoggingBatchable, TransactionBeanFactoryAware, TransactionEndpointAware {
 	static final Logger logger = LoggerFactory.getLogger(SampleTransactionLogger.class);
+	static final int RECOVERY_PARTITIONS_PER_THREAD = 4;
+	static final int MINOR_VERSION = 6;
+	/* logs that may contain delta records, a release that cannot read them refuses to open the log */
+	static final int MINOR_VERSION_DELTA = 7;
 
 	@javax.inject.Inject
 	private TransactionBeanFactory beanFactory;
 	private String identifier;
+	private int recoveryParallelism = Runtime.getRuntime().availableProcessors();
+	private boolean deltaEnabled;
+	private volatile boolean constructed;
+	/* the layout of the last full archive written for each transaction, deltas are only written on top of it */
+	private final Map<VirtualLoggingKey, Integer> layoutMap = new ConcurrentHashMap<VirtualLoggingKey, Integer>();
 
 	@PostConstruct
 	public void construct() throws IOException {
@@ -63,6 +82,7 @@ public class SampleTransactionLogger extends VirtualLoggingSystemImpl
 		if (StringUtils.isNotBlank(this.identifier)) {
 			try {
 				super.construct();
+				this.constructed = true;
 			} catch (IOException error) {
 				throw new IllegalStateException("Error occurred while initializing tx-log!", error);
 			}
@@ -73,8 +93,10 @@ public class SampleTransactionLogger extends VirtualLoggingSystemImpl
 		ArchiveDeserializer deserializer = this.beanFactory.getArchiveDeserializer();
 
 		try {
-			byte[] byteArray = deserializer.serialize((TransactionXid) archive.getXid(), archive);
-			this.create(archive.getXid(), byteArray);
+			this.create((TransactionXid) archive.getXid(), archive, deserializer);
+			if (this.deltaEnabled) {
+				this.layoutMap.put(this.getLayoutKey(archive.getXid()), this.getArchiveLayout(archive));
+			} // end-if (this.deltaEnabled)
 		} catch (RuntimeException rex) {
 			logger.error("Error occurred while creating transaction-archive.", rex);
 		}
@@ -84,8 +106,19 @@ public class SampleTransactionLogger extends VirtualLoggingSystemImpl
 		ArchiveDeserializer deserializer = this.beanFactory.getArchiveDeserializer();
 
 		try {
-			byte[] byteArray = deserializer.serialize((TransactionXid) archive.getXid(), archive);
-			this.modify(archive.getXid(), byteArray);
+			if (this.deltaEnabled == false) {
+				this.modify((TransactionXid) archive.getXid(), archive, deserializer);
+				return;
+			} // end-if (this.deltaEnabled == false)
+
+			VirtualLoggingKey key = this.getLayoutKey(archive.getXid());
+			Integer layout = this.getArchiveLayout(archive);
+			if (layout.equals(this.layoutMap.get(key))) {
+				this.modify((TransactionXid) archive.getXid(), new TransactionArchiveDelta(archive), deserializer);
+			} else {
+				this.modify((TransactionXid) archive.getXid(), archive, deserializer);
+				this.layoutMap.put(key, layout);
+			}
 		} catch (RuntimeException rex) {
 			logger.error("Error occurred while modifying transaction-archive.", rex);
 		}
@@ -94,6 +127,7 @@ public class SampleTransactionLogger extends VirtualLoggingSystemImpl
 	public void deleteTransaction(TransactionArchive archive) {
 		try {
 			this.delete(archive.getXid());
+			this.layoutMap.remove(this.getLayoutKey(archive.getXid()));
 		} catch (RuntimeException rex) {
 			logger.error("Error occurred while deleting transaction-archive.", rex);
 		}
@@ -106,13 +140,45 @@ public class SampleTransactionLogger extends VirtualLoggingSystemImpl
 		ArchiveDeserializer deserializer = this.beanFactory.getArchiveDeserializer();
 
 		try {
-			byte[] byteArray = deserializer.serialize((TransactionXid) archive.getXid(), archive);
-			this.modify(archive.getXid(), byteArray);
+			if (this.deltaEnabled && this.layoutMap.containsKey(this.getLayoutKey(archive.getXid()))) {
+				this.modify((TransactionXid) archive.getXid(), new XAResourceArchiveDelta(archive), deserializer);
+			} else {
+				this.modify((TransactionXid) archive.getXid(), archive, deserializer);
+			}
 		} catch (RuntimeException rex) {
 			logger.error("Error occurred while modifying resource-archive.", rex);
 		}
 	}
 
+	/**
+	 * Writes the branches as one batch record when deltas are enabled, otherwise one record per branch; either way the
+	 * records go out in a single write and cost a single force.
+	 */
+	public void updateParticipants(List<XAResourceArchive> archiveList) {
+		if (archiveList.isEmpty()) {
+			return;
+		} else if (archiveList.size() == 1) {
+			this.updateParticipant(archiveList.get(0));
+			return;
+		}
+
+		ArchiveDeserializer deserializer = this.beanFactory.getArchiveDeserializer();
+		TransactionXid xid = (TransactionXid) archiveList.get(0).getXid();
+		try {
+			if (this.deltaEnabled && this.layoutMap.containsKey(this.getLayoutKey(xid))) {
+				this.modify(xid, new XAResourceArchiveBatch(archiveList), deserializer);
+			} else {
+				TransactionXid[] xids = new TransactionXid[archiveList.size()];
+				for (int i = 0; i < archiveList.size(); i++) {
+					xids[i] = (TransactionXid) archiveList.get(i).getXid();
+				}
+				this.modify(xids, archiveList.toArray(), deserializer); // one write, one force
+			}
+		} catch (RuntimeException rex) {
+			logger.error("Error occurred while modifying resource-archives.", rex);
+		}
+	}
+
 	public void deleteParticipant(XAResourceArchive archive) {
 	}
 
@@ -125,6 +191,41 @@ public class SampleTransactionLogger extends VirtualLoggingSystemImpl
 	public void deleteResource(XAResourceArchive archive) {
 	}
 
+	private VirtualLoggingKey getLayoutKey(Xid xid) {
+		VirtualLoggingKey key = new VirtualLoggingKey();
+		key.setGlobalTransactionId(xid.getGlobalTransactionId());
+		return key;
+	}
+
+	/**
+	 * Identifies the parts of an archive that a delta does not carry, they never change once the archive is created.
+	 */
+	private int getArchiveLayout(TransactionArchive archive) {
+		int layout = archive.getNativeResources().size() & 0xFF;
+		layout |= (archive.getOptimizedResource() == null ? 0 : 1) << 8;
+		layout |= (archive.getRemoteResources().size() & 0xFF) << 9;
+		layout |= (archive.getTransactionStrategyType() & 0xFF) << 17;
+		layout |= (archive.isCoordinator() ? 1 : 0) << 25;
+		return layout;
+	}
+
+	private boolean isArchiveDelta(Object obj) {
+		return TransactionArchiveDelta.class.isInstance(obj) || XAResourceArchiveDelta.class.isInstance(obj)
+				|| XAResourceArchiveBatch.class.isInstance(obj);
+	}
+
+	private boolean applyDelta(TransactionArchive archive, Object delta) {
+		if (archive == null) {
+			return false;
+		} else if (TransactionArchiveDelta.class.isInstance(delta)) {
+			return ((TransactionArchiveDelta) delta).apply(archive);
+		} else if (XAResourceArchiveDelta.class.isInstance(delta)) {
+			return ((XAResourceArchiveDelta) delta).apply(archive);
+		} else {
+			return ((XAResourceArchiveBatch) delta).apply(archive);
+		}
+	}
+
 	public List<VirtualLoggingRecord> compressIfNecessary(List<VirtualLoggingRecord> recordList) {
 		ArchiveDeserializer deserializer = this.beanFactory.getArchiveDeserializer();
 		XidFactory xidFactory = this.beanFactory.getXidFactory();
@@ -186,6 +287,10 @@ public class SampleTransactionLogger extends VirtualLoggingSystemImpl
 					logger.error("Error occurred while compressing resource archive: {}, invalid resoure!", obj);
 				}
 
+			} else if (this.isArchiveDelta(obj)) {
+				if (this.applyDelta(xidMap.get(xid), obj) == false) {
+					logger.error("Error occurred while compressing archive delta: {}, invalid delta!", obj);
+				}
 			} else {
 				logger.error("unkown resource: {}!", obj);
 			}
@@ -223,97 +328,149 @@ public class SampleTransactionLogger extends VirtualLoggingSystemImpl
 		return resultList;
 	}
 
-	public void recover(TransactionRecoveryCallback callback) {
+	/**
+	 * Recovers the transaction archives. A single reader scans the log once, collecting the deleted transactions and
+	 * partitioning the locations of the other records by gtrid hash; the partitions are then deserialized and handed
+	 * to the callback in parallel, so the callback must be thread-safe. Records of one transaction always belong to
+	 * the same partition and are applied in log order.
+	 */
+	public void recover(final TransactionRecoveryCallback callback) {
+		long startMillis = System.currentTimeMillis();
+
+		int parallelism = this.recoveryParallelism > 0 ? this.recoveryParallelism : 1;
+		int numberOfPartitions = parallelism == 1 ? 1 : parallelism * RECOVERY_PARTITIONS_PER_THREAD;
+
+		final RecoveryPartition[] partitions = new RecoveryPartition[numberOfPartitions];
+		for (int i = 0; i < partitions.length; i++) {
+			partitions[i] = new RecoveryPartition();
+		}
 
-		final Map<Xid, TransactionArchive> xidMap = new HashMap<Xid, TransactionArchive>();
-		final ArchiveDeserializer deserializer = this.beanFactory.getArchiveDeserializer();
-		final XidFactory xidFactory = this.beanFactory.getXidFactory();
+		final VirtualLoggingKeySet deletedKeys = new VirtualLoggingKeySet();
+		final VirtualLoggingCursor cursor = this.createCursor();
+		long numberOfRecords = 0;
+		while (cursor.next()) {
+			numberOfRecords++;
+			if (VirtualLoggingSystem.OPERATOR_DELETE == cursor.getOperator()) {
+				deletedKeys.add(cursor.getKeyMostSigBits(), cursor.getKeyLeastSigBits());
+			} else {
+				int index = (cursor.getKeyHash() & 0x7FFFFFFF) % numberOfPartitions;
+				partitions[index].add(cursor.getLocation());
+			}
+		}
 
-		this.traversal(new VirtualLoggingListener() {
-			public void recvOperation(VirtualLoggingRecord action) {
-				Xid xid = action.getIdentifier();
-				int operator = action.getOperator();
-				if (VirtualLoggingSystem.OPERATOR_DELETE == operator) {
-					xidMap.remove(xid);
-				} else if (xidMap.containsKey(xid) == false) {
-					xidMap.put(xid, null);
-				}
+		long scannedMillis = System.currentTimeMillis();
+		logger.info("[transaction-recovery] scanned {} records in {} ms, {} partitions, parallelism= {}",
+				numberOfRecords, scannedMillis - startMillis, numberOfPartitions, parallelism);
+
+		if (parallelism == 1) {
+			this.recover(callback, cursor.duplicate(), deletedKeys, partitions[0]);
+		} else {
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(numberOfPartitions);
+			for (int i = 0; i < partitions.length; i++) {
+				final RecoveryPartition partition = partitions[i];
+				tasks.add(new Callable<Void>() {
+					public Void call() {
+						recover(callback, cursor.duplicate(), deletedKeys, partition);
+						return null;
+					}
+				});
 			}
-		});
 
-		this.traversal(new VirtualLoggingListener() {
-			public void recvOperation(VirtualLoggingRecord action) {
-				Xid xid = action.getIdentifier();
-				if (xidMap.containsKey(xid)) {
-					this.execOperation(action);
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				List<Future<Void>> futures = pool.invokeAll(tasks);
+				for (int i = 0; i < futures.size(); i++) {
+					futures.get(i).get();
 				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while recovering tx-log!", ex);
+			} catch (ExecutionException ex) {
+				throw new IllegalStateException("Error occurred while recovering tx-log!", ex.getCause());
+			} finally {
+				pool.shutdown();
 			}
+		}
 
-			public void execOperation(VirtualLoggingRecord action) {
-				Xid identifier = action.getIdentifier();
+		logger.info("[transaction-recovery] recovered tx-log in {} ms", System.currentTimeMillis() - startMillis);
+	}
 
-				TransactionXid xid = xidFactory.createGlobalXid(identifier.getGlobalTransactionId());
+	private void recover(TransactionRecoveryCallback callback, VirtualLoggingCursor cursor,
+			VirtualLoggingKeySet deletedKeys, RecoveryPartition partition) {
+		Map<Xid, TransactionArchive> xidMap = new LinkedHashMap<Xid, TransactionArchive>();
+		ArchiveDeserializer deserializer = this.beanFactory.getArchiveDeserializer();
+		XidFactory xidFactory = this.beanFactory.getXidFactory();
 
-				Object obj = deserializer.deserialize(xid, action.getValue());
-				if (TransactionArchive.class.isInstance(obj)) {
-					TransactionArchive archive = (TransactionArchive) obj;
-					xidMap.put(identifier, archive);
-				} else if (XAResourceArchive.class.isInstance(obj)) {
-					TransactionArchive archive = xidMap.get(identifier);
-					if (archive == null) {
-						logger.error("Error occurred while recovering resource archive: {}", obj);
-						return;
-					}
+		for (int index = 0; index < partition.size; index++) {
+			cursor.setLocation(partition.locations[index]);
+			cursor.next();
+			if (deletedKeys.contains(cursor.getKeyMostSigBits(), cursor.getKeyLeastSigBits())) {
+				continue;
+			}
 
-					XAResourceArchive resourceArchive = (XAResourceArchive) obj;
-					boolean matched = false;
+			TransactionXid xid = xidFactory.createGlobalXid(cursor.getKey());
 
-					List<XAResourceArchive> nativeResources = archive.getNativeResources();
-					for (int i = 0; matched == false && nativeResources != null && i < nativeResources.size(); i++) {
-						XAResourceArchive element = nativeResources.get(i);
-						if (resourceArchive.getXid().equals(element.getXid())) {
-							matched = true;
-							nativeResources.set(i, resourceArchive);
-						}
-					}
+			Object obj = deserializer.deserialize(xid, cursor.getValue());
+			if (TransactionArchive.class.isInstance(obj)) {
+				TransactionArchive archive = (TransactionArchive) obj;
+				xidMap.put(xid, archive);
+			} else if (XAResourceArchive.class.isInstance(obj)) {
+				TransactionArchive archive = xidMap.get(xid);
+				if (archive == null) {
+					logger.error("Error occurred while recovering resource archive: {}", obj);
+					continue;
+				}
 
-					XAResourceArchive optimizedResource = archive.getOptimizedResource();
-					if (matched == false && optimizedResource != null) {
-						if (resourceArchive.getXid().equals(optimizedResource.getXid())) {
-							matched = true;
-							archive.setOptimizedResource(resourceArchive);
-						}
+				XAResourceArchive resourceArchive = (XAResourceArchive) obj;
+				boolean matched = false;
+
+				List<XAResourceArchive> nativeResources = archive.getNativeResources();
+				for (int i = 0; matched == false && nativeResources != null && i < nativeResources.size(); i++) {
+					XAResourceArchive element = nativeResources.get(i);
+					if (resourceArchive.getXid().equals(element.getXid())) {
+						matched = true;
+						nativeResources.set(i, resourceArchive);
 					}
+				}
 
-					List<XAResourceArchive> remoteResources = archive.getRemoteResources();
-					for (int i = 0; matched == false && remoteResources != null && i < remoteResources.size(); i++) {
-						XAResourceArchive element = remoteResources.get(i);
-						if (resourceArchive.getXid().equals(element.getXid())) {
-							matched = true;
-							remoteResources.set(i, resourceArchive);
-						}
+				XAResourceArchive optimizedResource = archive.getOptimizedResource();
+				if (matched == false && optimizedResource != null) {
+					if (resourceArchive.getXid().equals(optimizedResource.getXid())) {
+						matched = true;
+						archive.setOptimizedResource(resourceArchive);
 					}
+				}
 
-					if (matched == false) {
-						logger.error("Error occurred while recovering resource archive: {}, invalid resoure!", obj);
+				List<XAResourceArchive> remoteResources = archive.getRemoteResources();
+				for (int i = 0; matched == false && remoteResources != null && i < remoteResources.size(); i++) {
+					XAResourceArchive element = remoteResources.get(i);
+					if (resourceArchive.getXid().equals(element.getXid())) {
+						matched = true;
+						remoteResources.set(i, resourceArchive);
 					}
+				}
 
+				if (matched == false) {
+					logger.error("Error occurred while recovering resource archive: {}, invalid resoure!", obj);
 				}
 
+			} else if (this.isArchiveDelta(obj)) {
+				if (this.applyDelta(xidMap.get(xid), obj) == false) {
+					logger.error("Error occurred while recovering archive delta: {}, invalid delta!", obj);
+				}
 			}
-		});
+		}
 
 		for (Iterator<Map.Entry<Xid, TransactionArchive>> itr = xidMap.entrySet().iterator(); itr.hasNext();) {
 			Map.Entry<Xid, TransactionArchive> entry = itr.next();
 			TransactionArchive archive = entry.getValue();
-			if (archive == null) {
-				continue;
-			} else {
-				try {
-					callback.recover(archive);
-				} catch (RuntimeException rex) {
-					logger.error("Error occurred while recovering transaction(xid= {}).", archive.getXid(), rex);
-				}
+			if (this.deltaEnabled) {
+				this.layoutMap.put(this.getLayoutKey(archive.getXid()), this.getArchiveLayout(archive));
+			} // end-if (this.deltaEnabled)
+			try {
+				callback.recover(archive);
+			} catch (RuntimeException rex) {
+				logger.error("Error occurred while recovering transaction(xid= {}).", archive.getXid(), rex);
 			}
 		}
 
@@ -340,7 +497,11 @@ public class SampleTransactionLogger extends VirtualLoggingSystemImpl
 	}
 
 	public int getMinorVersion() {
-		return 6;
+		return this.deltaEnabled ? MINOR_VERSION_DELTA : MINOR_VERSION;
+	}
+
+	public int getCompatibleMinorVersion() {
+		return MINOR_VERSION;
 	}
 
 	public String getLoggingFilePrefix() {
@@ -360,6 +521,30 @@ public class SampleTransactionLogger extends VirtualLoggingSystemImpl
 		this.initializeIfNecessary();
 	}
 
+	public int getRecoveryParallelism() {
+		return recoveryParallelism;
+	}
+
+	public void setRecoveryParallelism(int recoveryParallelism) {
+		this.recoveryParallelism = recoveryParallelism;
+	}
+
+	public boolean isDeltaEnabled() {
+		return deltaEnabled;
+	}
+
+	/**
+	 * Delta records are written under their own log version 0.7. Enabling deltas upgrades an existing 0.6 log in place
+	 * (segments: new segments only) when the logger starts, after which releases without delta support refuse the log.
+	 * A 0.7 log is refused while deltas are disabled. Must be set before the endpoint.
+	 */
+	public void setDeltaEnabled(boolean deltaEnabled) {
+		if (this.constructed && this.deltaEnabled != deltaEnabled) {
+			throw new IllegalStateException("The tx-log has already been opened, deltaEnabled must be set before the endpoint!");
+		} // end-if (this.constructed && this.deltaEnabled != deltaEnabled)
+		this.deltaEnabled = deltaEnabled;
+	}
+
 	public TransactionBeanFactory getBeanFactory() {
 		return beanFactory;
 	}
@@ -368,4 +553,16 @@ public class SampleTransactionLogger extends VirtualLoggingSystemImpl
 		this.beanFactory = beanFactory;
 	}
 
+	static class RecoveryPartition {
+		long[] locations = new long[64];
+		int size;
+
+		void add(long location) {
+			if (this.size == this.locations.length) {
+				this.locations = Arrays.copyOf(this.locations, this.size * 2);
+			}
+			this.locations[this.size++] = location;
+		}
+	}
+
 }
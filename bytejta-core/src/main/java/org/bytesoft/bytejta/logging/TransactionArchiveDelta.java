@@ -0,0 +1,157 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bytesoft.transaction.archive.TransactionArchive;
+import org.bytesoft.transaction.archive.XAResourceArchive;
+
+/**
+ * The "status changed" record: the mutable part of a transaction archive, with the vote and flags of every branch in
+ * the order native resources, optimized resource, remote resources. It is folded into the full archive written before.
+ */
+public class TransactionArchiveDelta {
+	static final int FLAG_READONLY = 0x1;
+	static final int FLAG_COMMITTED = 0x2;
+	static final int FLAG_ROLLEDBACK = 0x4;
+	static final int FLAG_COMPLETED = 0x8;
+	static final int FLAG_HEURISTIC = 0x10;
+
+	private int status;
+	private int vote;
+	private int recoveredTimes;
+	private long recoveredAt;
+	private byte[] branchVotes;
+	private byte[] branchFlags;
+
+	public TransactionArchiveDelta() {
+	}
+
+	public TransactionArchiveDelta(TransactionArchive archive) {
+		this.status = archive.getStatus();
+		this.vote = archive.getVote();
+		this.recoveredTimes = archive.getRecoveredTimes();
+		this.recoveredAt = archive.getRecoveredAt();
+
+		List<XAResourceArchive> resourceList = getResourceList(archive);
+		this.branchVotes = new byte[resourceList.size()];
+		this.branchFlags = new byte[resourceList.size()];
+		for (int i = 0; i < resourceList.size(); i++) {
+			XAResourceArchive resourceArchive = resourceList.get(i);
+			this.branchVotes[i] = (byte) resourceArchive.getVote();
+			this.branchFlags[i] = (byte) getResourceFlags(resourceArchive);
+		}
+	}
+
+	/**
+	 * Applies this delta to the archive, returns false if the branches do not match the archive.
+	 */
+	public boolean apply(TransactionArchive archive) {
+		List<XAResourceArchive> resourceList = getResourceList(archive);
+		if (resourceList.size() != this.branchVotes.length) {
+			return false;
+		} // end-if (resourceList.size() != this.branchVotes.length)
+
+		archive.setStatus(this.status);
+		archive.setVote(this.vote);
+		archive.setRecoveredTimes(this.recoveredTimes);
+		archive.setRecoveredAt(this.recoveredAt);
+		for (int i = 0; i < resourceList.size(); i++) {
+			XAResourceArchive resourceArchive = resourceList.get(i);
+			resourceArchive.setVote(this.branchVotes[i]);
+			setResourceFlags(resourceArchive, this.branchFlags[i]);
+		}
+		return true;
+	}
+
+	static List<XAResourceArchive> getResourceList(TransactionArchive archive) {
+		List<XAResourceArchive> resourceList = new ArrayList<XAResourceArchive>(archive.getNativeResources());
+		if (archive.getOptimizedResource() != null) {
+			resourceList.add(archive.getOptimizedResource());
+		} // end-if (archive.getOptimizedResource() != null)
+		resourceList.addAll(archive.getRemoteResources());
+		return resourceList;
+	}
+
+	static int getResourceFlags(XAResourceArchive archive) {
+		int flags = 0;
+		flags |= archive.isReadonly() ? FLAG_READONLY : 0;
+		flags |= archive.isCommitted() ? FLAG_COMMITTED : 0;
+		flags |= archive.isRolledback() ? FLAG_ROLLEDBACK : 0;
+		flags |= archive.isCompleted() ? FLAG_COMPLETED : 0;
+		flags |= archive.isHeuristic() ? FLAG_HEURISTIC : 0;
+		return flags;
+	}
+
+	static void setResourceFlags(XAResourceArchive archive, int flags) {
+		archive.setReadonly((flags & FLAG_READONLY) != 0);
+		archive.setCommitted((flags & FLAG_COMMITTED) != 0);
+		archive.setRolledback((flags & FLAG_ROLLEDBACK) != 0);
+		archive.setCompleted((flags & FLAG_COMPLETED) != 0);
+		archive.setHeuristic((flags & FLAG_HEURISTIC) != 0);
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public void setStatus(int status) {
+		this.status = status;
+	}
+
+	public int getVote() {
+		return vote;
+	}
+
+	public void setVote(int vote) {
+		this.vote = vote;
+	}
+
+	public int getRecoveredTimes() {
+		return recoveredTimes;
+	}
+
+	public void setRecoveredTimes(int recoveredTimes) {
+		this.recoveredTimes = recoveredTimes;
+	}
+
+	public long getRecoveredAt() {
+		return recoveredAt;
+	}
+
+	public void setRecoveredAt(long recoveredAt) {
+		this.recoveredAt = recoveredAt;
+	}
+
+	public byte[] getBranchVotes() {
+		return branchVotes;
+	}
+
+	public void setBranchVotes(byte[] branchVotes) {
+		this.branchVotes = branchVotes;
+	}
+
+	public byte[] getBranchFlags() {
+		return branchFlags;
+	}
+
+	public void setBranchFlags(byte[] branchFlags) {
+		this.branchFlags = branchFlags;
+	}
+
+}
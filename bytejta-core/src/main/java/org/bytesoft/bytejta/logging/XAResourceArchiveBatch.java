@@ -0,0 +1,59 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bytesoft.transaction.archive.TransactionArchive;
+import org.bytesoft.transaction.archive.XAResourceArchive;
+
+/**
+ * The branch deltas of one terminator pass, written and folded as a single record.
+ */
+public class XAResourceArchiveBatch {
+	private final List<XAResourceArchiveDelta> deltaList = new ArrayList<XAResourceArchiveDelta>();
+
+	public XAResourceArchiveBatch() {
+	}
+
+	public XAResourceArchiveBatch(List<XAResourceArchive> archiveList) {
+		for (int i = 0; i < archiveList.size(); i++) {
+			this.deltaList.add(new XAResourceArchiveDelta(archiveList.get(i)));
+		}
+	}
+
+	/**
+	 * Applies every delta of this batch to the archive, returns false if any of them has no matching branch.
+	 */
+	public boolean apply(TransactionArchive archive) {
+		boolean matched = true;
+		for (int i = 0; i < this.deltaList.size(); i++) {
+			XAResourceArchiveDelta delta = this.deltaList.get(i);
+			matched = delta.apply(archive) && matched;
+		}
+		return matched;
+	}
+
+	public List<XAResourceArchiveDelta> getDeltaList() {
+		return deltaList;
+	}
+
+	public String toString() {
+		return String.format("XAResourceArchiveBatch(size= %s)", this.deltaList.size());
+	}
+
+}
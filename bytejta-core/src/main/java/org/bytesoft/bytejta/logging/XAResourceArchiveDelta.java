@@ -0,0 +1,86 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.bytesoft.transaction.archive.TransactionArchive;
+import org.bytesoft.transaction.archive.XAResourceArchive;
+
+/**
+ * The "branch voted" and "branch completed" record: the vote and flags of one branch, identified by its branch
+ * qualifier. Unlike the resource archive it does not carry the resource identifier.
+ */
+public class XAResourceArchiveDelta {
+	private byte[] branchQualifier;
+	private int vote;
+	private int flags;
+
+	public XAResourceArchiveDelta() {
+	}
+
+	public XAResourceArchiveDelta(XAResourceArchive archive) {
+		this.branchQualifier = archive.getXid().getBranchQualifier();
+		this.vote = archive.getVote();
+		this.flags = TransactionArchiveDelta.getResourceFlags(archive);
+	}
+
+	/**
+	 * Applies this delta to the matching branch of the archive, returns false if there is no such branch.
+	 */
+	public boolean apply(TransactionArchive archive) {
+		List<XAResourceArchive> resourceList = TransactionArchiveDelta.getResourceList(archive);
+		for (int i = 0; i < resourceList.size(); i++) {
+			XAResourceArchive resourceArchive = resourceList.get(i);
+			if (Arrays.equals(this.branchQualifier, resourceArchive.getXid().getBranchQualifier())) {
+				resourceArchive.setVote(this.vote);
+				TransactionArchiveDelta.setResourceFlags(resourceArchive, this.flags);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public byte[] getBranchQualifier() {
+		return branchQualifier;
+	}
+
+	public void setBranchQualifier(byte[] branchQualifier) {
+		this.branchQualifier = branchQualifier;
+	}
+
+	public int getVote() {
+		return vote;
+	}
+
+	public void setVote(int vote) {
+		this.vote = vote;
+	}
+
+	public int getFlags() {
+		return flags;
+	}
+
+	public void setFlags(int flags) {
+		this.flags = flags;
+	}
+
+	public String toString() {
+		return String.format("XAResourceArchiveDelta(vote= %s, flags= %s)", this.vote, this.flags);
+	}
+
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.deserializer;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.bytesoft.bytejta.logging.TransactionArchiveDelta;
+import org.bytesoft.bytejta.logging.XAResourceArchiveBatch;
+import org.bytesoft.bytejta.logging.XAResourceArchiveDelta;
+import org.bytesoft.transaction.logging.ArchiveDeserializer;
+import org.bytesoft.transaction.xa.TransactionXid;
+import org.bytesoft.transaction.xa.XidFactory;
+
+public class ArchiveDeltaDeserializer implements ArchiveDeserializer {
+	static final byte TYPE_TRANSACTION = 0x0;
+	static final byte TYPE_XA_RESOURCE = 0x1;
+	static final byte TYPE_XA_RESOURCE_BATCH = 0x2;
+	static final int XA_RESOURCE_SIZE = XidFactory.BRANCH_QUALIFIER_LENGTH + 1 + 1;
+	static final int MAX_BRANCHES = 0xFFFF;
+	static final int MAX_RECOVERED_TIMES = 0xFF;
+
+	public byte[] serialize(TransactionXid xid, Object obj) {
+		int size = 0;
+		if (TransactionArchiveDelta.class.isInstance(obj)) {
+			size = 1 + 1 + 1 + 1 + 8 + 2 + ((TransactionArchiveDelta) obj).getBranchVotes().length * 2;
+		} else if (XAResourceArchiveBatch.class.isInstance(obj)) {
+			size = 1 + 2 + ((XAResourceArchiveBatch) obj).getDeltaList().size() * XA_RESOURCE_SIZE;
+		} else {
+			size = 1 + XA_RESOURCE_SIZE;
+		}
+
+		byte[] byteArray = new byte[size];
+		this.serialize(xid, obj, ByteBuffer.wrap(byteArray));
+		return byteArray;
+	}
+
+	public void serialize(TransactionXid xid, Object obj, ByteBuffer buffer) {
+		if (TransactionArchiveDelta.class.isInstance(obj)) {
+			TransactionArchiveDelta delta = (TransactionArchiveDelta) obj;
+			byte[] branchVotes = delta.getBranchVotes();
+			byte[] branchFlags = delta.getBranchFlags();
+
+			buffer.put(TYPE_TRANSACTION);
+			buffer.put((byte) delta.getStatus());
+			buffer.put((byte) delta.getVote());
+			buffer.put((byte) (Math.min(delta.getRecoveredTimes(), MAX_RECOVERED_TIMES) - 128));
+			buffer.putLong(delta.getRecoveredAt());
+			buffer.putShort((short) this.checkNumberOfBranches(branchVotes.length));
+			for (int i = 0; i < branchVotes.length; i++) {
+				buffer.put(branchVotes[i]);
+				buffer.put(branchFlags[i]);
+			}
+		} else if (XAResourceArchiveDelta.class.isInstance(obj)) {
+			buffer.put(TYPE_XA_RESOURCE);
+			this.serializeResource((XAResourceArchiveDelta) obj, buffer);
+		} else if (XAResourceArchiveBatch.class.isInstance(obj)) {
+			List<XAResourceArchiveDelta> deltaList = ((XAResourceArchiveBatch) obj).getDeltaList();
+			buffer.put(TYPE_XA_RESOURCE_BATCH);
+			buffer.putShort((short) this.checkNumberOfBranches(deltaList.size()));
+			for (int i = 0; i < deltaList.size(); i++) {
+				this.serializeResource(deltaList.get(i), buffer);
+			}
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	public Object deserialize(TransactionXid xid, byte[] array) {
+		ByteBuffer buffer = ByteBuffer.wrap(array);
+		byte type = buffer.get();
+		if (type == TYPE_TRANSACTION) {
+			TransactionArchiveDelta delta = new TransactionArchiveDelta();
+			delta.setStatus(buffer.get());
+			delta.setVote(buffer.get());
+			delta.setRecoveredTimes(128 + buffer.get());
+			delta.setRecoveredAt(buffer.getLong());
+
+			int numberOfBranches = buffer.getShort() & 0xFFFF;
+			byte[] branchVotes = new byte[numberOfBranches];
+			byte[] branchFlags = new byte[numberOfBranches];
+			for (int i = 0; i < numberOfBranches; i++) {
+				branchVotes[i] = buffer.get();
+				branchFlags[i] = buffer.get();
+			}
+			delta.setBranchVotes(branchVotes);
+			delta.setBranchFlags(branchFlags);
+			return delta;
+		} else if (type == TYPE_XA_RESOURCE) {
+			return this.deserializeResource(buffer);
+		} else if (type == TYPE_XA_RESOURCE_BATCH) {
+			XAResourceArchiveBatch batch = new XAResourceArchiveBatch();
+			int numberOfBranches = buffer.getShort() & 0xFFFF;
+			for (int i = 0; i < numberOfBranches; i++) {
+				batch.getDeltaList().add(this.deserializeResource(buffer));
+			}
+			return batch;
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	private int checkNumberOfBranches(int numberOfBranches) {
+		if (numberOfBranches > MAX_BRANCHES) {
+			throw new IllegalArgumentException(
+					String.format("Too many branches: %s, at most %s are supported!", numberOfBranches, MAX_BRANCHES));
+		}
+		return numberOfBranches;
+	}
+
+	private void serializeResource(XAResourceArchiveDelta delta, ByteBuffer buffer) {
+		buffer.put(delta.getBranchQualifier(), 0, XidFactory.BRANCH_QUALIFIER_LENGTH);
+		buffer.put((byte) delta.getVote());
+		buffer.put((byte) delta.getFlags());
+	}
+
+	private XAResourceArchiveDelta deserializeResource(ByteBuffer buffer) {
+		XAResourceArchiveDelta delta = new XAResourceArchiveDelta();
+		byte[] branchQualifier = new byte[XidFactory.BRANCH_QUALIFIER_LENGTH];
+		buffer.get(branchQualifier);
+		delta.setBranchQualifier(branchQualifier);
+		delta.setVote(buffer.get());
+		delta.setFlags(buffer.get());
+		return delta;
+	}
+
+}
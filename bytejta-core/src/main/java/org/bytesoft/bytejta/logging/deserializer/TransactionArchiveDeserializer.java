@@ -15,6 +15,7 @@
  */
 package org.bytesoft.bytejta.logging.deserializer;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.util.List;
 
@@ -31,10 +32,27 @@ import org.slf4j.LoggerFactory;
 
 public class TransactionArchiveDeserializer implements ArchiveDeserializer {
 	static final Logger logger = LoggerFactory.getLogger(TransactionArchiveDeserializer.class);
+	static final int SERIALIZE_BUFFER_SIZE = 512;
 
 	private ArchiveDeserializer resourceArchiveDeserializer;
 
 	public byte[] serialize(TransactionXid xid, Object obj) {
+		ByteBuffer buffer = ByteBuffer.allocate(SERIALIZE_BUFFER_SIZE);
+		while (true) {
+			try {
+				this.serialize(xid, obj, buffer);
+				break;
+			} catch (BufferOverflowException ex) {
+				buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+			}
+		}
+
+		byte[] byteArray = new byte[buffer.position()];
+		System.arraycopy(buffer.array(), 0, byteArray, 0, byteArray.length);
+		return byteArray;
+	}
+
+	public void serialize(TransactionXid xid, Object obj, ByteBuffer buffer) {
 		TransactionArchive archive = (TransactionArchive) obj;
 
 		String propagatedBy = String.valueOf(archive.getPropagatedBy());
@@ -42,7 +60,7 @@ public class TransactionArchiveDeserializer implements ArchiveDeserializer {
 		RemoteNode remoteNode = CommonUtils.getRemoteNode(propagatedBy);
 		byte[] hostByteArray = new byte[4];
 		byte[] nameByteArray = new byte[0];
-		byte[] portByteArray = new byte[2];
+		short port = 0;
 		if (remoteNode != null) {
 			String hostStr = remoteNode.getServerHost();
 			String nameStr = remoteNode.getServiceKey();
@@ -61,17 +79,12 @@ public class TransactionArchiveDeserializer implements ArchiveDeserializer {
 			nameByteArray = StringUtils.isBlank(nameStr) ? new byte[0] : nameStr.getBytes();
 
 			try {
-				short port = (short) (Integer.valueOf(portStr) - 32768);
-				byte[] byteArray = ByteUtils.shortToByteArray(port);
-				System.arraycopy(byteArray, 0, portByteArray, 0, 2);
+				port = (short) (Integer.valueOf(portStr) - 32768);
 			} catch (RuntimeException rex) {
 				logger.debug(rex.getMessage(), rex);
 			}
 		}
 
-		long recoveredMillis = archive.getRecoveredAt();
-		int recoveredTimes = archive.getRecoveredTimes();
-
 		XAResourceArchive optimizedArchive = archive.getOptimizedResource();
 
 		List<XAResourceArchive> nativeArchiveList = archive.getNativeResources();
@@ -82,98 +95,42 @@ public class TransactionArchiveDeserializer implements ArchiveDeserializer {
 		int nativeArchiveNumber = nativeArchiveList.size();
 		int remoteArchiveNumber = remoteArchiveList.size();
 
-		int transactionStrategy = archive.getTransactionStrategyType();
+		buffer.put((byte) archive.getStatus());
+		buffer.put((byte) archive.getVote());
+		buffer.put(archive.isCoordinator() ? (byte) 0x1 : (byte) 0x0);
 
-		int length = 3 + 3 + 1 + 4 + 1 + nameByteArray.length + 2 + 8 + 1;
-		byte[][] nativeByteArray = new byte[nativeArchiveNumber][];
-		for (int i = 0; i < nativeArchiveNumber; i++) {
-			XAResourceArchive resourceArchive = nativeArchiveList.get(i);
-
-			byte[] resourceByteArray = this.resourceArchiveDeserializer.serialize(xid, resourceArchive);
-			byte[] lengthByteArray = ByteUtils.shortToByteArray((short) resourceByteArray.length);
-
-			byte[] elementByteArray = new byte[resourceByteArray.length + 2];
-			System.arraycopy(lengthByteArray, 0, elementByteArray, 0, lengthByteArray.length);
-			System.arraycopy(resourceByteArray, 0, elementByteArray, 2, resourceByteArray.length);
-
-			nativeByteArray[i] = elementByteArray;
-			length = length + elementByteArray.length;
-		}
+		buffer.put((byte) nativeArchiveNumber);
+		buffer.put((byte) optimizedArchiveNumber);
+		buffer.put((byte) remoteArchiveNumber);
 
-		byte[] optimizedByteArray = new byte[0];
-		if (optimizedArchiveNumber > 0) {
-			byte[] resourceByteArray = this.resourceArchiveDeserializer.serialize(xid, optimizedArchive);
-			byte[] lengthByteArray = ByteUtils.shortToByteArray((short) resourceByteArray.length);
+		buffer.put((byte) archive.getTransactionStrategyType());
 
-			byte[] elementByteArray = new byte[resourceByteArray.length + 2];
-			System.arraycopy(lengthByteArray, 0, elementByteArray, 0, lengthByteArray.length);
-			System.arraycopy(resourceByteArray, 0, elementByteArray, 2, resourceByteArray.length);
+		buffer.put(hostByteArray);
+		buffer.put((byte) (nameByteArray.length - 128));
+		buffer.put(nameByteArray);
+		buffer.putShort(port);
 
-			optimizedByteArray = elementByteArray;
-			length = length + elementByteArray.length;
-		}
-
-		byte[][] remoteByteArray = new byte[remoteArchiveNumber][];
-		for (int i = 0; i < remoteArchiveNumber; i++) {
-			XAResourceArchive resourceArchive = remoteArchiveList.get(i);
-
-			byte[] resourceByteArray = this.resourceArchiveDeserializer.serialize(xid, resourceArchive);
-			byte[] lengthByteArray = ByteUtils.shortToByteArray((short) resourceByteArray.length);
-
-			byte[] elementByteArray = new byte[resourceByteArray.length + 2];
-			System.arraycopy(lengthByteArray, 0, elementByteArray, 0, lengthByteArray.length);
-			System.arraycopy(resourceByteArray, 0, elementByteArray, 2, resourceByteArray.length);
-
-			remoteByteArray[i] = elementByteArray;
-			length = length + elementByteArray.length;
-		}
-
-		int position = 0;
-
-		byte[] byteArray = new byte[length];
-		byteArray[position++] = (byte) archive.getStatus();
-		byteArray[position++] = (byte) archive.getVote();
-		byteArray[position++] = archive.isCoordinator() ? (byte) 0x1 : (byte) 0x0;
-
-		byteArray[position++] = (byte) nativeArchiveNumber;
-		byteArray[position++] = (byte) optimizedArchiveNumber;
-		byteArray[position++] = (byte) remoteArchiveNumber;
-
-		byteArray[position++] = (byte) transactionStrategy;
-
-		System.arraycopy(hostByteArray, 0, byteArray, position, 4);
-		position = position + 4;
-
-		byteArray[position++] = (byte) (nameByteArray.length - 128);
-		System.arraycopy(nameByteArray, 0, byteArray, position, nameByteArray.length);
-		position = position + nameByteArray.length;
-
-		System.arraycopy(portByteArray, 0, byteArray, position, 2);
-		position = position + 2;
-
-		byteArray[position++] = (byte) (recoveredTimes - 128);
-		byte[] millisByteArray = ByteUtils.longToByteArray(recoveredMillis);
-		System.arraycopy(millisByteArray, 0, byteArray, position, millisByteArray.length);
-		position = position + millisByteArray.length;
+		buffer.put((byte) (Math.min(archive.getRecoveredTimes(), 0xFF) - 128));
+		buffer.putLong(archive.getRecoveredAt());
 
 		for (int i = 0; i < nativeArchiveNumber; i++) {
-			byte[] elementByteArray = nativeByteArray[i];
-			System.arraycopy(elementByteArray, 0, byteArray, position, elementByteArray.length);
-			position = position + elementByteArray.length;
+			this.serializeResource(xid, nativeArchiveList.get(i), buffer);
 		}
 
 		if (optimizedArchiveNumber > 0) {
-			System.arraycopy(optimizedByteArray, 0, byteArray, position, optimizedByteArray.length);
-			position = position + optimizedByteArray.length;
+			this.serializeResource(xid, optimizedArchive, buffer);
 		}
 
 		for (int i = 0; i < remoteArchiveNumber; i++) {
-			byte[] elementByteArray = remoteByteArray[i];
-			System.arraycopy(elementByteArray, 0, byteArray, position, elementByteArray.length);
-			position = position + elementByteArray.length;
+			this.serializeResource(xid, remoteArchiveList.get(i), buffer);
 		}
+	}
 
-		return byteArray;
+	private void serializeResource(TransactionXid xid, XAResourceArchive resourceArchive, ByteBuffer buffer) {
+		int position = buffer.position();
+		buffer.putShort((short) 0);
+		this.resourceArchiveDeserializer.serialize(xid, resourceArchive, buffer);
+		buffer.putShort(position, (short) (buffer.position() - position - 2));
 	}
 
 	public Object deserialize(TransactionXid xid, byte[] array) {
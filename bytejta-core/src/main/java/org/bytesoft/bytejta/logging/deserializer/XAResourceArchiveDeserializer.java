@@ -40,49 +40,56 @@ public class XAResourceArchiveDeserializer implements ArchiveDeserializer, Trans
 
 	public byte[] serialize(TransactionXid xid, Object obj) {
 		XAResourceArchive archive = (XAResourceArchive) obj;
+		byte[] identifierByteArray = this.getIdentifierByteArray(archive.getDescriptor());
 
+		byte[] byteArray = new byte[XidFactory.BRANCH_QUALIFIER_LENGTH + 2 + identifierByteArray.length + 6];
+		this.serialize(archive, identifierByteArray, ByteBuffer.wrap(byteArray));
+		return byteArray;
+	}
+
+	public void serialize(TransactionXid xid, Object obj, ByteBuffer buffer) {
+		XAResourceArchive archive = (XAResourceArchive) obj;
+		byte[] identifierByteArray = this.getIdentifierByteArray(archive.getDescriptor());
+		this.serialize(archive, identifierByteArray, buffer);
+	}
+
+	private byte[] getIdentifierByteArray(XAResourceDescriptor descriptor) {
+		if (CommonResourceDescriptor.class.isInstance(descriptor)) {
+			return descriptor.getIdentifier().getBytes();
+		} else if (RemoteResourceDescriptor.class.isInstance(descriptor)) {
+			return descriptor.getIdentifier().getBytes();
+		} else if (LocalXAResourceDescriptor.class.isInstance(descriptor)) {
+			return descriptor.getIdentifier().getBytes();
+		} else {
+			return new byte[0];
+		}
+	}
+
+	private void serialize(XAResourceArchive archive, byte[] identifierByteArray, ByteBuffer buffer) {
 		Xid branchXid = archive.getXid();
 		byte[] branchQualifier = branchXid.getBranchQualifier();
 
 		XAResourceDescriptor descriptor = archive.getDescriptor();
-		byte[] identifierByteArray = new byte[0];
 		byte typeByte = 0x0;
 		if (CommonResourceDescriptor.class.isInstance(descriptor)) {
 			typeByte = (byte) 0x1;
-			identifierByteArray = descriptor.getIdentifier().getBytes();
 		} else if (RemoteResourceDescriptor.class.isInstance(descriptor)) {
 			typeByte = (byte) 0x2;
-			identifierByteArray = descriptor.getIdentifier().getBytes();
 		} else if (LocalXAResourceDescriptor.class.isInstance(descriptor)) {
 			typeByte = (byte) 0x3;
-			identifierByteArray = descriptor.getIdentifier().getBytes();
-		}
-
-		byte branchVote = (byte) archive.getVote();
-		byte readonly = archive.isReadonly() ? (byte) 1 : (byte) 0;
-		byte committed = archive.isCommitted() ? (byte) 1 : (byte) 0;
-		byte rolledback = archive.isRolledback() ? (byte) 1 : (byte) 0;
-		byte completed = archive.isCompleted() ? (byte) 1 : (byte) 0;
-		byte heuristic = archive.isHeuristic() ? (byte) 1 : (byte) 0;
-
-		byte[] byteArray = new byte[XidFactory.BRANCH_QUALIFIER_LENGTH + 2 + identifierByteArray.length + 6];
-		System.arraycopy(branchQualifier, 0, byteArray, 0, branchQualifier.length);
-
-		byteArray[XidFactory.BRANCH_QUALIFIER_LENGTH] = typeByte;
-		byteArray[XidFactory.BRANCH_QUALIFIER_LENGTH + 1] = (byte) identifierByteArray.length;
-		if (identifierByteArray.length > 0) {
-			System.arraycopy(identifierByteArray, 0, byteArray, XidFactory.BRANCH_QUALIFIER_LENGTH + 2,
-					identifierByteArray.length);
 		}
 
-		byteArray[XidFactory.BRANCH_QUALIFIER_LENGTH + 2 + identifierByteArray.length] = branchVote;
-		byteArray[XidFactory.BRANCH_QUALIFIER_LENGTH + 2 + identifierByteArray.length + 1] = readonly;
-		byteArray[XidFactory.BRANCH_QUALIFIER_LENGTH + 2 + identifierByteArray.length + 2] = committed;
-		byteArray[XidFactory.BRANCH_QUALIFIER_LENGTH + 2 + identifierByteArray.length + 3] = rolledback;
-		byteArray[XidFactory.BRANCH_QUALIFIER_LENGTH + 2 + identifierByteArray.length + 4] = completed;
-		byteArray[XidFactory.BRANCH_QUALIFIER_LENGTH + 2 + identifierByteArray.length + 5] = heuristic;
-
-		return byteArray;
+		buffer.put(branchQualifier, 0, XidFactory.BRANCH_QUALIFIER_LENGTH);
+		buffer.put(typeByte);
+		buffer.put((byte) identifierByteArray.length);
+		buffer.put(identifierByteArray);
+
+		buffer.put((byte) archive.getVote());
+		buffer.put(archive.isReadonly() ? (byte) 1 : (byte) 0);
+		buffer.put(archive.isCommitted() ? (byte) 1 : (byte) 0);
+		buffer.put(archive.isRolledback() ? (byte) 1 : (byte) 0);
+		buffer.put(archive.isCompleted() ? (byte) 1 : (byte) 0);
+		buffer.put(archive.isHeuristic() ? (byte) 1 : (byte) 0);
 	}
 
 	public Object deserialize(TransactionXid xid, byte[] array) {
@@ -0,0 +1,232 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.store;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Group-commit pipeline: callers enqueue records into a bounded ring and block on their own future, while a single
+ * flusher thread appends a whole batch to the master file, forces it once and then completes every waiter.
+ */
+public class VirtualLoggingCommitter implements Runnable {
+	static final Logger logger = LoggerFactory.getLogger(VirtualLoggingCommitter.class);
+
+	private final VirtualLoggingSystemImpl loggingSystem;
+	private final BlockingQueue<CommitRequest> queue;
+	private final int batchSize;
+	private final long maxWaitNanos;
+
+	private volatile boolean released;
+	private volatile boolean stopped;
+	private volatile Throwable failure;
+	private Thread thread;
+
+	public VirtualLoggingCommitter(VirtualLoggingSystemImpl loggingSystem, int capacity, int batchSize, long maxWaitMillis) {
+		this.loggingSystem = loggingSystem;
+		this.queue = new ArrayBlockingQueue<CommitRequest>(Math.max(capacity, 1));
+		this.batchSize = Math.max(batchSize, 1);
+		this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(maxWaitMillis, 0));
+	}
+
+	public synchronized void start() {
+		if (this.thread == null) {
+			this.thread = new Thread(this, "bytejta-logging-committer");
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+	}
+
+	/**
+	 * The buffer is read by the flusher thread, it must not be reused by the caller until this method returns. Once the
+	 * request is queued the wait is therefore not interruptible, the interrupt status is restored afterwards.
+	 */
+	public void commit(ByteBuffer buffer) {
+		if (this.released || this.stopped) {
+			throw this.createStoppedException();
+		}
+
+		CommitRequest request = new CommitRequest(buffer);
+		try {
+			// back-pressure: waits while the ring is full, unless the flusher has exited meanwhile
+			while (this.queue.offer(request, 100L, TimeUnit.MILLISECONDS) == false) {
+				if (this.stopped) {
+					throw this.createStoppedException();
+				} // end-if (this.stopped)
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for group commit!", ex);
+		}
+
+		if (this.stopped) {
+			this.rejectPendingRequests(); // the flusher has exited, nobody else will complete the request
+		} // end-if (this.stopped)
+
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					request.future.get();
+					return;
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				} catch (ExecutionException ex) {
+					Throwable cause = ex.getCause();
+					if (RuntimeException.class.isInstance(cause)) {
+						throw (RuntimeException) cause;
+					}
+					throw new IllegalStateException(cause);
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			} // end-if (interrupted)
+		}
+	}
+
+	public void run() {
+		List<CommitRequest> batch = new ArrayList<CommitRequest>(this.batchSize);
+		try {
+			while (this.stopped == false && (this.released == false || this.queue.isEmpty() == false)) {
+				CommitRequest first = null;
+				try {
+					first = this.queue.poll(100L, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException ex) {
+					logger.debug(ex.getMessage(), ex);
+				}
+
+				if (first == null) {
+					continue;
+				} // end-if (first == null)
+
+				batch.add(first);
+				this.collectBatch(batch);
+				this.flushBatch(batch);
+				batch.clear();
+			}
+		} finally {
+			this.stopped = true;
+			this.rejectPendingRequests();
+		}
+	}
+
+	private void rejectPendingRequests() {
+		IllegalStateException error = this.createStoppedException();
+		CommitRequest request = null;
+		while ((request = this.queue.poll()) != null) {
+			request.future.completeExceptionally(error);
+		}
+	}
+
+	private void collectBatch(List<CommitRequest> batch) {
+		long deadline = System.nanoTime() + this.maxWaitNanos;
+		while (batch.size() < this.batchSize) {
+			this.queue.drainTo(batch, this.batchSize - batch.size());
+			if (batch.size() >= this.batchSize) {
+				break;
+			}
+
+			long remains = deadline - System.nanoTime();
+			if (remains <= 0) {
+				break;
+			}
+
+			CommitRequest next = null;
+			try {
+				next = this.queue.poll(remains, TimeUnit.NANOSECONDS);
+			} catch (InterruptedException ex) {
+				logger.debug(ex.getMessage(), ex);
+			}
+
+			if (next == null) {
+				break;
+			}
+			batch.add(next);
+		}
+	}
+
+	private void flushBatch(List<CommitRequest> batch) {
+		try {
+			List<ByteBuffer> recordList = new ArrayList<ByteBuffer>(batch.size());
+			for (int i = 0; i < batch.size(); i++) {
+				recordList.add(batch.get(i).buffer);
+			}
+			this.loggingSystem.writeGroup(recordList);
+		} catch (RuntimeException rex) {
+			logger.error("Error occurred while committing a group of {} records.", batch.size(), rex);
+			for (int i = 0; i < batch.size(); i++) {
+				batch.get(i).future.completeExceptionally(rex);
+			}
+			return;
+		} catch (Throwable error) {
+			// an Error leaves the log in an unknown state: stop the flusher and fail every waiter instead of dying silently
+			logger.error("Fatal error occurred while committing a group of {} records, the group committer is stopped.",
+					batch.size(), error);
+			this.failure = error;
+			this.stopped = true;
+			for (int i = 0; i < batch.size(); i++) {
+				batch.get(i).future.completeExceptionally(error);
+			}
+			return;
+		}
+
+		for (int i = 0; i < batch.size(); i++) {
+			batch.get(i).future.complete(null);
+		}
+	}
+
+	private IllegalStateException createStoppedException() {
+		Throwable error = this.failure;
+		if (error == null) {
+			return new IllegalStateException("The group committer has already been released!");
+		}
+		return new IllegalStateException("The group committer has been stopped by a fatal error!", error);
+	}
+
+	public void release() {
+		this.released = true;
+
+		Thread current = this.thread;
+		if (current != null) {
+			try {
+				current.join(TimeUnit.SECONDS.toMillis(5));
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	static class CommitRequest {
+		final ByteBuffer buffer;
+		final CompletableFuture<Void> future = new CompletableFuture<Void>();
+
+		CommitRequest(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+	}
+
+}
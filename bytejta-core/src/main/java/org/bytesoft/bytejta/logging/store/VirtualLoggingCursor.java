@@ -0,0 +1,209 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.store;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.bytesoft.transaction.logging.store.VirtualLoggingKey;
+import org.bytesoft.transaction.logging.store.VirtualLoggingRecord;
+import org.bytesoft.transaction.xa.XidFactory;
+
+/**
+ * Forward-only reader over one or more mapped log regions. The cursor is a flyweight: the accessors read the current
+ * record in place and {@link #getRecord()} returns a view that is only valid until the next call to {@link #next()}.
+ * Records may be followed by a fixed-size trailer (see {@link VirtualLoggingSegment}) which is skipped, and may be
+ * restricted to a set of (region index, offset) locations.
+ */
+public class VirtualLoggingCursor {
+	static final int HEADER_SIZE = XidFactory.GLOBAL_TRANSACTION_LENGTH + 1 + 4;
+
+	private final ByteBuffer[] regions;
+	private final int[] limits;
+	private final int trailerSize;
+	private final VirtualLoggingKeySet locations;
+	private int regionIndex;
+	private ByteBuffer current;
+	private ByteBuffer view;
+
+	private int position = -1;
+	private int length;
+
+	public VirtualLoggingCursor(ByteBuffer region) {
+		this(new ByteBuffer[] { region }, 0, null);
+	}
+
+	/**
+	 * @param locations the (region index, offset) pairs of the records to visit, or null to visit every record.
+	 */
+	public VirtualLoggingCursor(List<ByteBuffer> regionList, int trailerSize, VirtualLoggingKeySet locations) {
+		this(regionList.toArray(new ByteBuffer[regionList.size()]), trailerSize, locations);
+	}
+
+	private VirtualLoggingCursor(ByteBuffer[] regions, int trailerSize, VirtualLoggingKeySet locations) {
+		this.regions = regions;
+		this.trailerSize = trailerSize;
+		this.locations = locations;
+		this.limits = new int[regions.length];
+		for (int i = 0; i < regions.length; i++) {
+			this.limits[i] = regions[i].limit();
+		}
+		this.current = regions.length == 0 ? ByteBuffer.allocate(0) : regions[0];
+		this.view = this.current.duplicate();
+	}
+
+	public boolean next() {
+		int nextPosition = this.position < 0 ? this.current.position()
+				: this.position + (this.length == 0 ? 0 : this.length + this.trailerSize);
+		while (true) {
+			if (this.validate(nextPosition)) {
+				this.position = nextPosition;
+				this.length = HEADER_SIZE + this.current.getInt(nextPosition + XidFactory.GLOBAL_TRANSACTION_LENGTH + 1);
+				if (this.locations == null || this.locations.contains(this.regionIndex, nextPosition)) {
+					return true;
+				}
+				nextPosition = nextPosition + this.length + this.trailerSize; // not live, skipped
+			} else if (this.regionIndex + 1 >= this.regions.length) {
+				this.position = nextPosition;
+				this.length = 0;
+				return false;
+			} else {
+				this.current = this.regions[++this.regionIndex];
+				this.view = this.current.duplicate();
+				nextPosition = this.current.position();
+			}
+		}
+	}
+
+	private boolean validate(int nextPosition) {
+		int limit = this.limits[this.regionIndex];
+		if (nextPosition + HEADER_SIZE > limit) {
+			return false;
+		}
+
+		int operator = this.current.get(nextPosition + XidFactory.GLOBAL_TRANSACTION_LENGTH);
+		int size = this.current.getInt(nextPosition + XidFactory.GLOBAL_TRANSACTION_LENGTH + 1);
+		return operator != 0 && size >= 0 && nextPosition + HEADER_SIZE + size + this.trailerSize <= limit;
+	}
+
+	/**
+	 * Repositions the cursor so that the next call to {@link #next()} reads the record at the given offset of the
+	 * current region.
+	 */
+	public void seek(int offset) {
+		this.position = offset;
+		this.length = 0;
+	}
+
+	/**
+	 * Returns the region index and the offset of the current record packed into a long, see
+	 * {@link #setLocation(long)}.
+	 */
+	public long getLocation() {
+		return ((long) this.regionIndex << 32) | (this.position & 0xFFFFFFFFL);
+	}
+
+	public void setLocation(long location) {
+		int index = (int) (location >>> 32);
+		if (index != this.regionIndex) {
+			this.regionIndex = index;
+			this.current = this.regions[index];
+			this.view = this.current.duplicate();
+		}
+		this.position = (int) location;
+		this.length = 0;
+	}
+
+	/**
+	 * Creates an independent cursor over the same regions, positioned before the first record. Cursors may be used
+	 * concurrently as they only read the shared buffers at absolute offsets.
+	 */
+	public VirtualLoggingCursor duplicate() {
+		return new VirtualLoggingCursor(this.regions, this.trailerSize, this.locations);
+	}
+
+	public int getPosition() {
+		return this.position;
+	}
+
+	public int getLength() {
+		return this.length;
+	}
+
+	public int getOperator() {
+		return this.current.get(this.position + XidFactory.GLOBAL_TRANSACTION_LENGTH);
+	}
+
+	public long getKeyMostSigBits() {
+		return this.current.getLong(this.position);
+	}
+
+	public long getKeyLeastSigBits() {
+		return this.current.getLong(this.position + 8);
+	}
+
+	public int getKeyHash() {
+		return VirtualLoggingKeySet.hash(this.getKeyMostSigBits(), this.getKeyLeastSigBits());
+	}
+
+	public int getValueLength() {
+		return this.length - HEADER_SIZE;
+	}
+
+	public byte[] getKey() {
+		byte[] keyByteArray = new byte[XidFactory.GLOBAL_TRANSACTION_LENGTH];
+		for (int i = 0; i < keyByteArray.length; i++) {
+			keyByteArray[i] = this.current.get(this.position + i);
+		}
+		return keyByteArray;
+	}
+
+	public byte[] getValue() {
+		byte[] valueByteArray = new byte[this.getValueLength()];
+		ByteBuffer buffer = this.getRecord();
+		buffer.position(buffer.position() + HEADER_SIZE);
+		buffer.get(valueByteArray);
+		return valueByteArray;
+	}
+
+	public byte[] getContent() {
+		byte[] byteArray = new byte[this.length];
+		this.getRecord().get(byteArray);
+		return byteArray;
+	}
+
+	/**
+	 * Returns a view of the whole current record (key, operator, size and value).
+	 */
+	public ByteBuffer getRecord() {
+		this.view.limit(this.position + this.length);
+		this.view.position(this.position);
+		return this.view;
+	}
+
+	public VirtualLoggingRecord toLoggingRecord() {
+		VirtualLoggingKey xid = new VirtualLoggingKey();
+		xid.setGlobalTransactionId(this.getKey());
+
+		VirtualLoggingRecord record = new VirtualLoggingRecord();
+		record.setIdentifier(xid);
+		record.setOperator(this.getOperator());
+		record.setContent(this.getContent());
+		record.setValue(this.getValue());
+		return record;
+	}
+
+}
@@ -18,6 +18,7 @@ package org.bytesoft.bytejta.logging.store;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel.MapMode;
 import java.util.Arrays;
@@ -53,6 +54,7 @@ public class VirtualLoggingFile {
 
 	private int majorVersion = DEFAULT_MAJOR_VERSION;
 	private int minorVersion = DEFAULT_MINOR_VERSION;
+	private int compatibleMinorVersion = DEFAULT_MINOR_VERSION;
 
 	private VirtualLoggingTrigger trigger;
 
@@ -61,8 +63,16 @@ public class VirtualLoggingFile {
 	}
 
 	public VirtualLoggingFile(File file, int major, int minor) throws IOException {
+		this(file, major, minor, minor);
+	}
+
+	/**
+	 * A file whose minor version lies in [compatibleMinor, minor) is upgraded to minor in place when it is initialized.
+	 */
+	public VirtualLoggingFile(File file, int major, int minor, int compatibleMinor) throws IOException {
 		this.majorVersion = major;
 		this.minorVersion = minor;
+		this.compatibleMinorVersion = compatibleMinor;
 
 		this.initialized = file.exists();
 		this.raf = new RandomAccessFile(file, "rw");
@@ -134,8 +144,15 @@ public class VirtualLoggingFile {
 			writable.position(identifier.length);
 			writable.put((byte) this.majorVersion);
 			writable.put((byte) this.minorVersion);
+		} else if (major == this.majorVersion && minor >= this.compatibleMinorVersion && minor < this.minorVersion) {
+			writable.position(identifier.length + 1);
+			writable.put((byte) this.minorVersion);
+			writable.force(); // an older release must not open the file once newer records may be written
+			logger.info("Upgraded the logging file from version {}.{} to {}.{}.", major, minor, this.majorVersion,
+					this.minorVersion);
 		} else {
-			throw new IllegalStateException("Incompatible version!");
+			throw new IllegalStateException(String.format("Incompatible version: %s.%s, expected %s.%s!", major, minor,
+					this.majorVersion, this.minorVersion));
 		}
 	}
 
@@ -241,16 +258,28 @@ public class VirtualLoggingFile {
 		}
 	}
 
+	public VirtualLoggingCursor createCursor() {
+		ByteBuffer buffer = this.readable.duplicate();
+		buffer.limit(Math.min(this.endIndex, buffer.capacity()));
+		buffer.position(this.startIdx);
+		return new VirtualLoggingCursor(buffer);
+	}
+
 	public void write(byte[] byteArray) {
-		if (this.writable.capacity() < this.endIndex + byteArray.length) {
-			this.resizeMappedByteBuffer(this.endIndex + INCREASE_SIZE);
+		this.write(ByteBuffer.wrap(byteArray));
+	}
+
+	public void write(ByteBuffer buffer) {
+		int length = buffer.remaining();
+		if (this.writable.capacity() < this.endIndex + length) {
+			this.resizeMappedByteBuffer(this.endIndex + length + INCREASE_SIZE);
 		}
 		this.writable.position(this.endIndex);
-		this.writable.put(byteArray);
+		this.writable.put(buffer);
 
 		writable.position(identifier.length + 2 + 8 + 4 + 2);
 		this.writable.putLong(System.currentTimeMillis());
-		this.endIndex = this.endIndex + byteArray.length;
+		this.endIndex = this.endIndex + length;
 		this.writable.putInt(this.endIndex);
 
 		int threshold = (this.writable.capacity() * 2) / 3;
@@ -262,7 +291,7 @@ public class VirtualLoggingFile {
 
 	private void resizeMappedByteBuffer(long size) {
 		try {
-			this.raf.setLength(this.endIndex + INCREASE_SIZE);
+			this.raf.setLength(size);
 			this.readable = this.raf.getChannel().map(MapMode.READ_ONLY, 0, size);
 			this.writable = this.raf.getChannel().map(MapMode.READ_WRITE, 0, size);
 		} catch (IOException ex) {
@@ -0,0 +1,99 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.store;
+
+/**
+ * Open-addressing hash set of 16-byte global transaction ids, each stored as two longs. The segmented log also uses
+ * it for record locations.
+ */
+public class VirtualLoggingKeySet {
+	static final int DEFAULT_CAPACITY = 1024;
+
+	private long[] keys;
+	private boolean[] used;
+	private int mask;
+	private int size;
+
+	public VirtualLoggingKeySet() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public VirtualLoggingKeySet(int expected) {
+		int capacity = DEFAULT_CAPACITY;
+		while (capacity < expected * 2) {
+			capacity = capacity << 1;
+		}
+		this.allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		this.keys = new long[capacity * 2];
+		this.used = new boolean[capacity];
+		this.mask = capacity - 1;
+		this.size = 0;
+	}
+
+	static int hash(long msb, long lsb) {
+		long h = msb * 0x9E3779B97F4A7C15L ^ lsb;
+		h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+		return (int) (h ^ (h >>> 33));
+	}
+
+	public boolean add(long msb, long lsb) {
+		int index = hash(msb, lsb) & this.mask;
+		while (this.used[index]) {
+			if (this.keys[index * 2] == msb && this.keys[index * 2 + 1] == lsb) {
+				return false;
+			}
+			index = (index + 1) & this.mask;
+		}
+
+		this.used[index] = true;
+		this.keys[index * 2] = msb;
+		this.keys[index * 2 + 1] = lsb;
+		if (++this.size * 2 > this.used.length) {
+			this.rehash();
+		}
+		return true;
+	}
+
+	public boolean contains(long msb, long lsb) {
+		int index = hash(msb, lsb) & this.mask;
+		while (this.used[index]) {
+			if (this.keys[index * 2] == msb && this.keys[index * 2 + 1] == lsb) {
+				return true;
+			}
+			index = (index + 1) & this.mask;
+		}
+		return false;
+	}
+
+	private void rehash() {
+		long[] oldKeys = this.keys;
+		boolean[] oldUsed = this.used;
+		this.allocate(oldUsed.length * 2);
+		for (int i = 0; i < oldUsed.length; i++) {
+			if (oldUsed[i]) {
+				this.add(oldKeys[i * 2], oldKeys[i * 2 + 1]);
+			}
+		}
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+}
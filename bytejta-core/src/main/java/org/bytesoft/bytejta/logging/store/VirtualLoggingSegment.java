@@ -0,0 +1,317 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.bytesoft.transaction.xa.XidFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One append-only segment of the segmented transaction log. Records use the same layout as
+ * {@link VirtualLoggingFile} (key, operator, size, value), each followed by a trailer holding the record length, the
+ * relocation countdown (see {@link VirtualLoggingSegmentManager}) and a CRC32 of both. Offsets are passed as <code>long</code>, but a segment is mapped as a single region and is
+ * therefore limited to {@link VirtualLoggingSegmentManager#MAX_SEGMENT_SIZE} bytes.
+ */
+public class VirtualLoggingSegment {
+	static final Logger logger = LoggerFactory.getLogger(VirtualLoggingSegment.class);
+
+	static final int HEADER_SIZE = XidFactory.GLOBAL_TRANSACTION_LENGTH + 1 + 4;
+	static final int TRAILER_SIZE = 4 + 4 + 4;
+
+	private final File file;
+	private final long sequence;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private final long startIndex;
+
+	private long endIndex;
+	private long createdTime;
+	private int minorVersion;
+	private final AtomicLong recordCount = new AtomicLong();
+	private final AtomicLong liveCount = new AtomicLong();
+
+	public static VirtualLoggingSegment create(File file, long sequence, long capacity, byte[] identifier, int major,
+			int minor) throws IOException {
+		VirtualLoggingSegment segment = new VirtualLoggingSegment(file, sequence, identifier.length);
+		segment.raf.setLength(capacity); // pre-allocated, the end of records is detected by a zero operator
+		ByteBuffer header = ByteBuffer.allocate(identifier.length + 2 + 8 + 8);
+		header.put(identifier);
+		header.put((byte) major);
+		header.put((byte) minor);
+		header.putLong(sequence);
+		header.putLong(segment.createdTime = System.currentTimeMillis());
+		header.flip();
+		segment.channel.write(header, 0);
+		segment.minorVersion = minor;
+		segment.endIndex = segment.startIndex;
+		return segment;
+	}
+
+	public static VirtualLoggingSegment open(File file, long sequence, byte[] identifier, int major, int minor)
+			throws IOException {
+		return open(file, sequence, identifier, major, minor, minor);
+	}
+
+	/**
+	 * Opens an existing segment written with a minor version in [compatibleMinor, minor]. Segments are never upgraded,
+	 * only the segments created afterwards carry the new version.
+	 */
+	public static VirtualLoggingSegment open(File file, long sequence, byte[] identifier, int major, int minor,
+			int compatibleMinor) throws IOException {
+		VirtualLoggingSegment segment = new VirtualLoggingSegment(file, sequence, identifier.length);
+		ByteBuffer header = ByteBuffer.allocate(identifier.length + 2 + 8 + 8);
+		segment.readFully(header, 0);
+		header.flip();
+
+		byte[] array = new byte[identifier.length];
+		header.get(array);
+		if (Arrays.equals(identifier, array) == false) {
+			segment.closeQuietly();
+			throw new IllegalStateException(String.format("Illegal file format: %s!", file.getAbsolutePath()));
+		}
+
+		int majorVersion = header.get();
+		int minorVersion = header.get();
+		if (majorVersion != major || minorVersion < compatibleMinor || minorVersion > minor) {
+			segment.closeQuietly();
+			throw new IllegalStateException(String.format("Incompatible version: %s!", file.getAbsolutePath()));
+		}
+
+		long seq = header.getLong();
+		if (seq != sequence) {
+			segment.closeQuietly();
+			throw new IllegalStateException(String.format("Illegal segment sequence: %s!", file.getAbsolutePath()));
+		}
+		segment.createdTime = header.getLong();
+		segment.minorVersion = minorVersion;
+		segment.endIndex = segment.startIndex;
+		return segment;
+	}
+
+	private VirtualLoggingSegment(File file, long sequence, int identifierLength) throws IOException {
+		this.file = file;
+		this.sequence = sequence;
+		this.raf = new RandomAccessFile(file, "rw");
+		this.channel = this.raf.getChannel();
+		this.startIndex = identifierLength + 2 + 8 + 8;
+	}
+
+	/**
+	 * Scans the segment from its first record and positions the end index after the last complete record. The scan
+	 * stops at the zero-filled space after the records, or at the first record whose trailer does not match; in the
+	 * latter case the write was torn and the segment is truncated there.
+	 */
+	public void recover(VirtualLoggingSegmentListener listener) throws IOException {
+		long position = this.startIndex;
+		long length = this.channel.size();
+		boolean torn = false;
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+		while (position + HEADER_SIZE + TRAILER_SIZE <= length) {
+			header.clear();
+			this.readFully(header, position);
+
+			int operator = header.get(XidFactory.GLOBAL_TRANSACTION_LENGTH);
+			int size = header.getInt(XidFactory.GLOBAL_TRANSACTION_LENGTH + 1);
+			if (operator == 0 && size == 0) {
+				break;
+			} else if (operator == 0 || size < 0 || position + HEADER_SIZE + size + TRAILER_SIZE > length) {
+				torn = true;
+				break;
+			}
+
+			byte[] byteArray = new byte[HEADER_SIZE + size];
+			this.readFully(ByteBuffer.wrap(byteArray), position);
+			trailer.clear();
+			this.readFully(trailer, position + byteArray.length);
+			int relocating = trailer.getInt(4);
+			if (trailer.getInt(0) != byteArray.length
+					|| trailer.getInt(8) != checksum(ByteBuffer.wrap(byteArray), relocating)) {
+				torn = true;
+				break;
+			}
+
+			this.recordCount.incrementAndGet();
+			if (listener != null) {
+				listener.recvRecord(this, position, byteArray, relocating);
+			}
+			position = position + byteArray.length + TRAILER_SIZE;
+		}
+
+		if (torn) {
+			logger.warn("Segment {} is truncated at offset {}, the record there is incomplete.",
+					this.file.getAbsolutePath(), position);
+			this.truncate(position, length);
+		} // end-if (torn)
+		this.endIndex = position;
+	}
+
+	/**
+	 * Drops the bytes from the given position on, keeping the pre-allocated length, so that the remains of a torn
+	 * record are never read as part of a later one.
+	 */
+	private void truncate(long position, long length) throws IOException {
+		this.raf.setLength(position);
+		this.raf.setLength(length);
+		this.channel.force(true);
+	}
+
+	/**
+	 * Appends a record followed by its trailer and returns the record's offset. Nothing is forced, a record is only
+	 * recovered if its trailer matches. The relocation countdown is 0 for regular records.
+	 */
+	public long append(ByteBuffer buffer, int relocating) throws IOException {
+		long position = this.endIndex;
+		int start = buffer.position();
+		int limit = buffer.limit();
+
+		ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+		trailer.putInt(limit - start);
+		trailer.putInt(relocating);
+		trailer.putInt(checksum(buffer.duplicate(), relocating));
+		trailer.flip();
+
+		this.writeFully(buffer, position);
+		this.writeFully(trailer, position + (limit - start));
+
+		this.endIndex = position + (limit - start) + TRAILER_SIZE;
+		this.recordCount.incrementAndGet();
+		return position;
+	}
+
+	static int checksum(ByteBuffer record, int relocating) {
+		CRC32 crc = new CRC32();
+		crc.update(record);
+		crc.update(relocating >>> 24);
+		crc.update(relocating >>> 16);
+		crc.update(relocating >>> 8);
+		crc.update(relocating);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Maps the records before the given end index read-only, positioned at the first record.
+	 */
+	public MappedByteBuffer map(long endIndex) throws IOException {
+		if (endIndex > VirtualLoggingSegmentManager.MAX_SEGMENT_SIZE) {
+			throw new IOException(String.format("Segment %s is too large to be mapped!", this.file.getAbsolutePath()));
+		}
+		MappedByteBuffer buffer = this.channel.map(MapMode.READ_ONLY, 0, endIndex);
+		buffer.position((int) this.startIndex);
+		return buffer;
+	}
+
+	public byte[] read(long position) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		this.readFully(header, position);
+		int size = header.getInt(XidFactory.GLOBAL_TRANSACTION_LENGTH + 1);
+
+		byte[] byteArray = new byte[HEADER_SIZE + size];
+		this.readFully(ByteBuffer.wrap(byteArray), position);
+		return byteArray;
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		long current = position;
+		while (buffer.hasRemaining()) {
+			int numb = this.channel.read(buffer, current);
+			if (numb < 0) {
+				throw new IOException(String.format("Unexpected end of segment %s!", this.file.getAbsolutePath()));
+			}
+			current = current + numb;
+		}
+	}
+
+	private void writeFully(ByteBuffer buffer, long position) throws IOException {
+		long current = position;
+		while (buffer.hasRemaining()) {
+			current = current + this.channel.write(buffer, current);
+		}
+	}
+
+	public void flushImmediately() {
+		try {
+			this.channel.force(false);
+		} catch (IOException ex) {
+			logger.error("Error occurred while flushing segment {}!", this.file.getAbsolutePath(), ex);
+		}
+	}
+
+	public void closeQuietly() {
+		try {
+			this.raf.close();
+		} catch (Exception ex) {
+			logger.debug(ex.getMessage(), ex);
+		}
+	}
+
+	public boolean delete() {
+		this.closeQuietly();
+		return this.file.delete();
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public int getMinorVersion() {
+		return minorVersion;
+	}
+
+	public long getEndIndex() {
+		return endIndex;
+	}
+
+	public long getStartIndex() {
+		return startIndex;
+	}
+
+	public long getCreatedTime() {
+		return createdTime;
+	}
+
+	public long getRecordCount() {
+		return this.recordCount.get();
+	}
+
+	public long getLiveCount() {
+		return this.liveCount.get();
+	}
+
+	public long incrementLiveCount() {
+		return this.liveCount.incrementAndGet();
+	}
+
+	public long decrementLiveCount() {
+		return this.liveCount.decrementAndGet();
+	}
+
+}
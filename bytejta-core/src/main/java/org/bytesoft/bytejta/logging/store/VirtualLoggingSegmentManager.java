@@ -0,0 +1,447 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.bytesoft.transaction.logging.store.VirtualLoggingKey;
+import org.bytesoft.transaction.logging.store.VirtualLoggingSystem;
+import org.bytesoft.transaction.xa.XidFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Manages the segments of the append-only transaction log. Every record of a live transaction is indexed by its
+ * global transaction id, and each segment keeps a count of the records that are still live. Segments are reclaimed
+ * oldest-first: a fully dead segment is deleted, and a mostly dead one is compacted by relocating the record chains of
+ * its remaining live transactions to the head of the log. Delete markers are never relocated, which is safe because no
+ * older segment survives the one that holds them.
+ * <p>
+ * A relocated chain is written as a group whose trailers count down to 1. When the log is reopened, a complete group
+ * replaces every earlier record of its transaction, so the copies left behind in the middle segments stay dead; an
+ * incomplete group, cut off by a crash, is ignored. Cursors only visit the records that are live.
+ */
+public class VirtualLoggingSegmentManager {
+	static final Logger logger = LoggerFactory.getLogger(VirtualLoggingSegmentManager.class);
+	static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+	private final Lock lock = new ReentrantLock();
+
+	private final File directory;
+	private final String prefix;
+	private final Pattern pattern;
+	private final byte[] identifier;
+	private final int majorVersion;
+	private final int minorVersion;
+	private final int compatibleMinorVersion;
+
+	private long segmentSize = 1024L * 1024L * 64L;
+	private double compactionRatio = 0.5D;
+
+	private final LinkedList<VirtualLoggingSegment> segments = new LinkedList<VirtualLoggingSegment>();
+	private final Map<VirtualLoggingKey, List<Location>> index = new HashMap<VirtualLoggingKey, List<Location>>();
+	private VirtualLoggingSegment active;
+
+	public VirtualLoggingSegmentManager(File directory, String prefix, byte[] identifier, int major, int minor) {
+		this(directory, prefix, identifier, major, minor, minor);
+	}
+
+	public VirtualLoggingSegmentManager(File directory, String prefix, byte[] identifier, int major, int minor,
+			int compatibleMinor) {
+		this.directory = directory;
+		this.prefix = prefix;
+		this.pattern = Pattern.compile(String.format("^%s(\\d{20})\\.seg$", Pattern.quote(prefix)));
+		this.identifier = identifier;
+		this.majorVersion = major;
+		this.minorVersion = minor;
+		this.compatibleMinorVersion = compatibleMinor;
+	}
+
+	public void initialize() throws IOException {
+		List<Long> sequences = new ArrayList<Long>();
+		File[] files = this.directory.listFiles();
+		for (int i = 0; files != null && i < files.length; i++) {
+			Matcher matcher = this.pattern.matcher(files[i].getName());
+			if (matcher.matches()) {
+				sequences.add(Long.valueOf(matcher.group(1)));
+			}
+		}
+		Collections.sort(sequences);
+
+		VirtualLoggingSegmentListener listener = new VirtualLoggingSegmentListener() {
+			private VirtualLoggingKey relocatedKey;
+			private List<Location> relocatedChain;
+			private int relocating;
+
+			public void recvRecord(VirtualLoggingSegment segment, long position, byte[] byteArray, int relocating) {
+				if (relocating <= 0) {
+					this.relocatedChain = null; // a group is always written as a whole, under the lock
+					indexRecord(segment, position, ByteBuffer.wrap(byteArray), 0);
+					return;
+				} // end-if (relocating <= 0)
+
+				VirtualLoggingKey key = getRecordKey(ByteBuffer.wrap(byteArray), 0);
+				if (this.relocatedChain == null || relocating != this.relocating - 1
+						|| this.relocatedKey.equals(key) == false) {
+					this.relocatedKey = key;
+					this.relocatedChain = new ArrayList<Location>(relocating);
+				}
+				this.relocatedChain.add(new Location(segment, position));
+				this.relocating = relocating;
+
+				if (relocating == 1) {
+					indexRelocatedChain(key, this.relocatedChain);
+					this.relocatedChain = null;
+				} // end-if (relocating == 1)
+			}
+		};
+
+		for (int i = 0; i < sequences.size(); i++) {
+			long sequence = sequences.get(i);
+			VirtualLoggingSegment segment = VirtualLoggingSegment.open(this.getSegmentFile(sequence), sequence,
+					this.identifier, this.majorVersion, this.minorVersion, this.compatibleMinorVersion);
+			segment.recover(listener);
+			this.segments.add(segment);
+		}
+
+		if (this.segments.isEmpty()) {
+			this.rollSegment();
+		} else {
+			this.active = this.segments.getLast();
+			if (this.active.getMinorVersion() != this.minorVersion) {
+				this.rollSegment(); // an older segment must stay readable by the release that wrote it
+			} // end-if (this.active.getMinorVersion() != this.minorVersion)
+		}
+	}
+
+	private File getSegmentFile(long sequence) {
+		return new File(this.directory, String.format("%s%020d.seg", this.prefix, sequence));
+	}
+
+	private void rollSegment() throws IOException {
+		long sequence = this.active == null ? 1 : this.active.getSequence() + 1;
+		if (this.active != null) {
+			this.active.flushImmediately();
+		} // end-if (this.active != null)
+
+		VirtualLoggingSegment segment = VirtualLoggingSegment.create(this.getSegmentFile(sequence), sequence,
+				this.segmentSize, this.identifier, this.majorVersion, this.minorVersion);
+		this.segments.add(segment);
+		this.active = segment;
+	}
+
+	private VirtualLoggingKey getRecordKey(ByteBuffer buffer, int offset) {
+		byte[] keyByteArray = new byte[XidFactory.GLOBAL_TRANSACTION_LENGTH];
+		for (int i = 0; i < keyByteArray.length; i++) {
+			keyByteArray[i] = buffer.get(offset + i);
+		}
+		VirtualLoggingKey key = new VirtualLoggingKey();
+		key.setGlobalTransactionId(keyByteArray);
+		return key;
+	}
+
+	private void indexRecord(VirtualLoggingSegment segment, long position, ByteBuffer buffer, int offset) {
+		VirtualLoggingKey key = this.getRecordKey(buffer, offset);
+		int operator = buffer.get(offset + XidFactory.GLOBAL_TRANSACTION_LENGTH);
+		if (operator == VirtualLoggingSystem.OPERATOR_DELETE) {
+			List<Location> chain = this.index.remove(key);
+			for (int i = 0; chain != null && i < chain.size(); i++) {
+				chain.get(i).segment.decrementLiveCount();
+			}
+		} else {
+			List<Location> chain = this.index.get(key);
+			if (chain == null) {
+				chain = new ArrayList<Location>(4);
+				this.index.put(key, chain);
+			}
+			chain.add(new Location(segment, position));
+			segment.incrementLiveCount();
+		}
+	}
+
+	/**
+	 * Replaces the chain of the transaction with its relocated copy.
+	 */
+	private void indexRelocatedChain(VirtualLoggingKey key, List<Location> relocated) {
+		for (int i = 0; i < relocated.size(); i++) {
+			relocated.get(i).segment.incrementLiveCount();
+		}
+
+		List<Location> chain = this.index.put(key, relocated);
+		for (int i = 0; chain != null && i < chain.size(); i++) {
+			chain.get(i).segment.decrementLiveCount();
+		}
+	}
+
+	private Location appendInternal(ByteBuffer buffer, int relocating) throws IOException {
+		long endIndex = this.active.getEndIndex();
+		boolean empty = endIndex == this.active.getStartIndex();
+		if (empty == false && endIndex + buffer.remaining() + VirtualLoggingSegment.TRAILER_SIZE > this.segmentSize) {
+			this.rollSegment();
+		}
+
+		long position = this.active.append(buffer, relocating);
+		return new Location(this.active, position);
+	}
+
+	public void append(byte[] byteArray) {
+		this.append(ByteBuffer.wrap(byteArray));
+	}
+
+	/**
+	 * Appends the records remaining in the buffer. The buffer may carry several records back to back, each is
+	 * appended and indexed on its own.
+	 */
+	public void append(ByteBuffer buffer) {
+		int limit = buffer.limit();
+		try {
+			this.lock.lock();
+			int offset = buffer.position();
+			while (offset < limit) {
+				buffer.limit(limit);
+				int size = VirtualLoggingSystemImpl.RECORD_HEADER_SIZE
+						+ buffer.getInt(offset + XidFactory.GLOBAL_TRANSACTION_LENGTH + 1);
+				buffer.limit(offset + size);
+				buffer.position(offset);
+				Location location = this.appendInternal(buffer, 0);
+				this.indexRecord(location.segment, location.position, buffer, offset);
+				offset = offset + size;
+			}
+			buffer.limit(limit);
+		} catch (IOException ex) {
+			throw new IllegalStateException("Error occurred while appending to the transaction log!", ex);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Opens a cursor over the live records, in log order. Delete markers and the records of finished or relocated
+	 * chains are skipped.
+	 */
+	public VirtualLoggingCursor createCursor() {
+		List<VirtualLoggingSegment> snapshot = null;
+		VirtualLoggingSegment activeSegment = null;
+		long activeEndIndex = 0;
+		VirtualLoggingKeySet locations = null;
+		try {
+			this.lock.lock();
+			snapshot = new ArrayList<VirtualLoggingSegment>(this.segments);
+			activeSegment = this.active;
+			activeEndIndex = this.active.getEndIndex();
+
+			Map<VirtualLoggingSegment, Integer> regionMap = new IdentityHashMap<VirtualLoggingSegment, Integer>();
+			for (int i = 0; i < snapshot.size(); i++) {
+				regionMap.put(snapshot.get(i), i);
+			}
+
+			locations = new VirtualLoggingKeySet(this.index.size() * 2);
+			for (List<Location> chain : this.index.values()) {
+				for (int i = 0; i < chain.size(); i++) {
+					Location location = chain.get(i);
+					locations.add(regionMap.get(location.segment), location.position);
+				}
+			}
+		} finally {
+			this.lock.unlock();
+		}
+
+		List<ByteBuffer> regionList = new ArrayList<ByteBuffer>(snapshot.size());
+		for (int i = 0; i < snapshot.size(); i++) {
+			VirtualLoggingSegment segment = snapshot.get(i);
+			long endIndex = segment == activeSegment ? activeEndIndex : segment.getEndIndex();
+			try {
+				regionList.add(segment.map(endIndex));
+			} catch (IOException ex) {
+				logger.error("Error occurred while mapping segment {}!", segment.getFile().getAbsolutePath(), ex);
+				regionList.add(ByteBuffer.allocate(0)); // keeps the region indexes of the live locations
+			}
+		}
+		return new VirtualLoggingCursor(regionList, VirtualLoggingSegment.TRAILER_SIZE, locations);
+	}
+
+	/**
+	 * Reclaims disk space from the oldest segments. Appenders are only blocked while the record chain of a single
+	 * transaction is relocated.
+	 */
+	public void compactIfNecessary() {
+		while (true) {
+			VirtualLoggingSegment oldest = null;
+			boolean removed = false;
+			try {
+				this.lock.lock();
+				if (this.segments.size() <= 1) {
+					return;
+				}
+				oldest = this.segments.getFirst();
+				if (oldest.getLiveCount() <= 0) {
+					this.segments.removeFirst();
+					removed = true;
+				}
+			} finally {
+				this.lock.unlock();
+			}
+
+			if (removed) {
+				if (oldest.delete() == false) {
+					logger.warn("Failed to delete segment {}!", oldest.getFile().getAbsolutePath());
+				}
+				continue;
+			} else if (oldest.getLiveCount() > oldest.getRecordCount() * this.compactionRatio) {
+				return;
+			}
+
+			try {
+				this.relocate(oldest);
+			} catch (IOException ex) {
+				logger.error("Error occurred while compacting segment {}!", oldest.getFile().getAbsolutePath(), ex);
+				return;
+			}
+
+			if (oldest.getLiveCount() > 0) {
+				return;
+			}
+		}
+	}
+
+	private void relocate(VirtualLoggingSegment oldest) throws IOException {
+		Set<VirtualLoggingKey> keys = new LinkedHashSet<VirtualLoggingKey>();
+		long position = oldest.getStartIndex();
+		while (position < oldest.getEndIndex()) {
+			byte[] byteArray = oldest.read(position);
+			int operator = byteArray[XidFactory.GLOBAL_TRANSACTION_LENGTH];
+			if (operator != VirtualLoggingSystem.OPERATOR_DELETE) {
+				keys.add(this.getRecordKey(ByteBuffer.wrap(byteArray), 0));
+			}
+			position = position + byteArray.length + VirtualLoggingSegment.TRAILER_SIZE;
+		}
+
+		for (VirtualLoggingKey key : keys) {
+			try {
+				this.lock.lock();
+				List<Location> chain = this.index.get(key);
+				boolean required = false;
+				for (int i = 0; required == false && chain != null && i < chain.size(); i++) {
+					required = chain.get(i).segment == oldest;
+				}
+
+				if (required == false) {
+					continue;
+				}
+
+				List<Location> relocated = new ArrayList<Location>(chain.size());
+				for (int i = 0; i < chain.size(); i++) {
+					Location location = chain.get(i);
+					byte[] byteArray = location.segment.read(location.position);
+					relocated.add(this.appendInternal(ByteBuffer.wrap(byteArray), chain.size() - i));
+				}
+				this.indexRelocatedChain(key, relocated);
+			} finally {
+				this.lock.unlock();
+			}
+		}
+
+		this.flushImmediately(); // relocated records must be durable before the old segment is deleted
+	}
+
+	public void flushImmediately() {
+		VirtualLoggingSegment current = this.active;
+		if (current != null) {
+			current.flushImmediately();
+		}
+	}
+
+	public void close() {
+		try {
+			this.lock.lock();
+			for (int i = 0; i < this.segments.size(); i++) {
+				VirtualLoggingSegment segment = this.segments.get(i);
+				segment.flushImmediately();
+				segment.closeQuietly();
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	public long getActiveEndIndex() {
+		VirtualLoggingSegment current = this.active;
+		return current == null ? 0 : (current.getSequence() - 1) * this.segmentSize + current.getEndIndex();
+	}
+
+	public int getSegmentCount() {
+		try {
+			this.lock.lock();
+			return this.segments.size();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	public long getSegmentSize() {
+		return segmentSize;
+	}
+
+	/**
+	 * A segment is mapped as a single region and read through int offsets, so it may not exceed
+	 * {@link #MAX_SEGMENT_SIZE} (2 GB - 1) bytes.
+	 */
+	public void setSegmentSize(long segmentSize) {
+		this.segmentSize = checkSegmentSize(segmentSize);
+	}
+
+	static long checkSegmentSize(long segmentSize) {
+		if (segmentSize <= 0 || segmentSize > MAX_SEGMENT_SIZE) {
+			throw new IllegalArgumentException(
+					String.format("The segment size must be between 1 and %s bytes: %s!", MAX_SEGMENT_SIZE, segmentSize));
+		}
+		return segmentSize;
+	}
+
+	public double getCompactionRatio() {
+		return compactionRatio;
+	}
+
+	public void setCompactionRatio(double compactionRatio) {
+		this.compactionRatio = compactionRatio;
+	}
+
+	static class Location {
+		final VirtualLoggingSegment segment;
+		final long position;
+
+		Location(VirtualLoggingSegment segment, long position) {
+			this.segment = segment;
+			this.position = position;
+		}
+	}
+
+}
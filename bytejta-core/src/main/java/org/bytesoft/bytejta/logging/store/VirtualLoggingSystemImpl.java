@@ -17,10 +17,11 @@ package org.bytesoft.bytejta.logging.store;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
@@ -29,12 +30,13 @@ import java.util.concurrent.locks.ReentrantLock;
 import javax.resource.spi.work.Work;
 import javax.transaction.xa.Xid;
 
-import org.bytesoft.common.utils.ByteUtils;
-import org.bytesoft.transaction.logging.store.VirtualLoggingKey;
+import org.bytesoft.bytejta.statistic.TransactionEvents;
+import org.bytesoft.transaction.logging.ArchiveDeserializer;
 import org.bytesoft.transaction.logging.store.VirtualLoggingListener;
 import org.bytesoft.transaction.logging.store.VirtualLoggingRecord;
 import org.bytesoft.transaction.logging.store.VirtualLoggingSystem;
 import org.bytesoft.transaction.logging.store.VirtualLoggingTrigger;
+import org.bytesoft.transaction.xa.TransactionXid;
 import org.bytesoft.transaction.xa.XidFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,10 +44,14 @@ import org.slf4j.LoggerFactory;
 public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem, VirtualLoggingTrigger, Work {
 	static final Logger logger = LoggerFactory.getLogger(VirtualLoggingSystemImpl.class);
 	static final int COMPRESS_BATCH_SIZE = 10000;
+	static final int RECORD_HEADER_SIZE = XidFactory.GLOBAL_TRANSACTION_LENGTH + 1 + 4;
+	static final int RECORD_BUFFER_SIZE = 1024 * 4;
+	static final int RECORD_BUFFER_LIMIT = 1024 * 64;
 
 	private final Lock lock = new ReentrantLock();
 	private final Lock timingLock = new ReentrantLock();
 	private final Condition timingCondition = this.timingLock.newCondition();
+	private final ThreadLocal<ByteBuffer> recordBuffer = new ThreadLocal<ByteBuffer>();
 
 	private boolean released;
 
@@ -53,6 +59,7 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 
 	private VirtualLoggingFile master;
 	private VirtualLoggingFile slaver;
+	private int syncEndIndex;
 
 	private boolean optimized = true;
 	private boolean initialized;
@@ -60,6 +67,17 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 	private int switchThreshold = 1024 * 1024 * 8;
 	private int switchInterval = 60;
 
+	private boolean groupCommitEnabled;
+	private int groupCommitCapacity = 1024 * 4;
+	private int groupCommitBatchSize = 128;
+	private long groupCommitMaxWaitMillis = 0;
+	private VirtualLoggingCommitter committer;
+
+	private boolean segmented;
+	private long segmentSize = 1024L * 1024L * 64L;
+	private double compactionRatio = 0.5D;
+	private VirtualLoggingSegmentManager segmentManager;
+
 	public synchronized void construct() throws IOException {
 		if (this.initialized == false) {
 			this.initialize();
@@ -78,6 +96,20 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 			}
 		}
 
+		if (this.segmented) {
+			this.initializeSegments();
+		} else {
+			this.initializeMasterAndSlaver();
+		}
+
+		if (this.groupCommitEnabled) {
+			this.committer = new VirtualLoggingCommitter(this, this.groupCommitCapacity, this.groupCommitBatchSize,
+					this.groupCommitMaxWaitMillis);
+			this.committer.start();
+		} // end-if (this.groupCommitEnabled)
+	}
+
+	private void initializeMasterAndSlaver() throws IOException {
 		File fmaster = new File(this.directory, String.format("%s1.log", this.getLoggingFilePrefix()));
 		File fslaver = new File(this.directory, String.format("%s2.log", this.getLoggingFilePrefix()));
 
@@ -92,6 +124,53 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 		this.flushAllIfNecessary();
 	}
 
+	private void initializeSegments() throws IOException {
+		VirtualLoggingSegmentManager manager = new VirtualLoggingSegmentManager(this.directory, this.getLoggingFilePrefix(),
+				this.getLoggingIdentifier().getBytes(), this.getMajorVersion(), this.getMinorVersion(),
+				this.getCompatibleMinorVersion());
+		manager.setSegmentSize(this.segmentSize);
+		manager.setCompactionRatio(this.compactionRatio);
+		manager.initialize();
+
+		File fmaster = new File(this.directory, String.format("%s1.log", this.getLoggingFilePrefix()));
+		File fslaver = new File(this.directory, String.format("%s2.log", this.getLoggingFilePrefix()));
+		if (fmaster.exists() && fslaver.exists()) {
+			this.migrateMasterAndSlaver(manager, fmaster, fslaver);
+		} // end-if (fmaster.exists() && fslaver.exists())
+
+		this.segmentManager = manager;
+	}
+
+	/**
+	 * Imports the live records of the legacy master/slaver files into the segmented log, the legacy files are renamed
+	 * afterwards so that they are imported only once.
+	 */
+	private void migrateMasterAndSlaver(VirtualLoggingSegmentManager manager, File fmaster, File fslaver)
+			throws IOException {
+		this.initializeMasterAndSlaver();
+
+		VirtualLoggingKeySet deletedKeys = this.collectDeletedKeys(this.master.createCursor());
+		VirtualLoggingCursor cursor = this.master.createCursor();
+		while (cursor.next()) {
+			if (deletedKeys.contains(cursor.getKeyMostSigBits(), cursor.getKeyLeastSigBits()) == false) {
+				manager.append(cursor.getRecord());
+			}
+		}
+		manager.flushImmediately();
+
+		this.master.closeQuietly();
+		this.slaver.closeQuietly();
+		this.master = null;
+		this.slaver = null;
+
+		File mmaster = new File(fmaster.getParentFile(), String.format("%s.migrated", fmaster.getName()));
+		File mslaver = new File(fslaver.getParentFile(), String.format("%s.migrated", fslaver.getName()));
+		if (fmaster.renameTo(mmaster) == false || fslaver.renameTo(mslaver) == false) {
+			throw new IllegalStateException(String.format("Failed to rename legacy logging file in %s!",
+					this.directory.getAbsolutePath()));
+		}
+	}
+
 	private void initialize(VirtualLoggingFile prev, VirtualLoggingFile next) {
 		boolean prevMaster = prev.isMaster();
 		boolean nextMaster = next.isMaster();
@@ -137,6 +216,11 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 	}
 
 	public void run() {
+		if (this.segmentManager != null) {
+			this.runCompaction();
+			return;
+		} // end-if (this.segmentManager != null)
+
 		int lastEndIndex = this.master.getEndIndex();
 		while (this.released == false) {
 			try {
@@ -160,6 +244,21 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 		}
 	}
 
+	private void runCompaction() {
+		while (this.released == false) {
+			try {
+				this.timingLock.lock();
+				this.timingCondition.await(this.switchInterval, TimeUnit.SECONDS);
+			} catch (Exception ex) {
+				logger.debug(ex.getMessage(), ex);
+			} finally {
+				this.timingLock.unlock();
+			}
+
+			this.segmentManager.compactIfNecessary();
+		}
+	}
+
 	public void fireSwapImmediately() {
 		try {
 			this.timingLock.lock();
@@ -170,94 +269,168 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 	}
 
 	public void traversal(VirtualLoggingListener listener) {
-		this.master.prepareForReading();
-		while (true) {
-			byte[] byteArray = null;
-			try {
-				byteArray = this.master.read();
-			} catch (RuntimeException rex) {
-				byteArray = new byte[0];
-			}
+		VirtualLoggingCursor cursor = this.createCursor();
+		while (cursor.next()) {
+			listener.recvOperation(cursor.toLoggingRecord());
+		}
+	}
+
+	/**
+	 * Opens a flyweight cursor over the records written so far, records appended afterwards are not visited.
+	 */
+	public VirtualLoggingCursor createCursor() {
+		if (this.segmentManager != null) {
+			return this.segmentManager.createCursor();
+		} else {
+			return this.master.createCursor();
+		}
+	}
 
-			if (byteArray.length == 0) {
-				break;
+	private VirtualLoggingKeySet collectDeletedKeys(VirtualLoggingCursor cursor) {
+		VirtualLoggingKeySet deletedKeys = new VirtualLoggingKeySet();
+		while (cursor.next()) {
+			if (cursor.getOperator() == OPERATOR_DELETE) {
+				deletedKeys.add(cursor.getKeyMostSigBits(), cursor.getKeyLeastSigBits());
 			}
+		}
+		return deletedKeys;
+	}
 
-			byte[] keyByteArray = new byte[XidFactory.GLOBAL_TRANSACTION_LENGTH];
-			System.arraycopy(byteArray, 0, keyByteArray, 0, keyByteArray.length);
-			int operator = byteArray[keyByteArray.length];
-			byte[] valueByteArray = new byte[byteArray.length - XidFactory.GLOBAL_TRANSACTION_LENGTH - 1 - 4];
-			System.arraycopy(byteArray, XidFactory.GLOBAL_TRANSACTION_LENGTH + 1 + 4, valueByteArray, 0, valueByteArray.length);
+	public void create(Xid xid, byte[] textByteArray) {
+		ByteBuffer buffer = this.getRecordBuffer(RECORD_HEADER_SIZE + textByteArray.length);
+		this.encodeRecordHeader(buffer, xid, OPERATOR_CREATE);
+		buffer.put(textByteArray);
+		this.appendRecord(buffer);
+	}
 
-			VirtualLoggingKey xid = new VirtualLoggingKey();
-			xid.setGlobalTransactionId(keyByteArray);
+	public void create(TransactionXid xid, Object archive, ArchiveDeserializer deserializer) {
+		this.appendRecord(this.encodeRecord(xid, OPERATOR_CREATE, archive, deserializer));
+	}
 
-			VirtualLoggingRecord record = new VirtualLoggingRecord();
-			record.setIdentifier(xid);
-			record.setOperator(operator);
-			record.setContent(byteArray);
-			record.setValue(valueByteArray);
+	public void delete(Xid xid) {
+		ByteBuffer buffer = this.getRecordBuffer(RECORD_HEADER_SIZE);
+		this.encodeRecordHeader(buffer, xid, OPERATOR_DELETE);
+		this.appendRecord(buffer);
+	}
 
-			listener.recvOperation(record);
-		}
+	public void modify(Xid xid, byte[] textByteArray) {
+		ByteBuffer buffer = this.getRecordBuffer(RECORD_HEADER_SIZE + textByteArray.length);
+		this.encodeRecordHeader(buffer, xid, OPERATOR_MOFIFY);
+		buffer.put(textByteArray);
+		this.appendRecord(buffer);
+	}
 
+	public void modify(TransactionXid xid, Object archive, ArchiveDeserializer deserializer) {
+		this.appendRecord(this.encodeRecord(xid, OPERATOR_MOFIFY, archive, deserializer));
 	}
 
-	public void create(Xid xid, byte[] textByteArray) {
-		byte[] keyByteArray = xid.getGlobalTransactionId();
-		byte[] sizeByteArray = ByteUtils.intToByteArray(textByteArray.length);
+	/**
+	 * Appends one modify-record per archive as a single write, so that the records cost one force (or one group-commit
+	 * request) rather than one each. The records are laid out exactly as if they had been appended one by one.
+	 */
+	public void modify(TransactionXid[] xids, Object[] archives, ArchiveDeserializer deserializer) {
+		this.appendRecord(this.encodeRecords(xids, OPERATOR_MOFIFY, archives, deserializer), xids.length);
+	}
 
-		byte[] byteArray = new byte[keyByteArray.length + 1 + sizeByteArray.length + textByteArray.length];
+	/**
+	 * Returns the calling thread's cleared record buffer, which is reused as long as it is large enough. Oversized
+	 * records are encoded into a throwaway buffer so that a single big archive does not pin memory to the thread.
+	 */
+	private ByteBuffer getRecordBuffer(int size) {
+		ByteBuffer buffer = this.recordBuffer.get();
+		if (buffer != null && buffer.capacity() >= size) {
+			buffer.clear();
+			return buffer;
+		} else if (size > RECORD_BUFFER_LIMIT) {
+			return ByteBuffer.allocate(size);
+		}
 
-		System.arraycopy(keyByteArray, 0, byteArray, 0, keyByteArray.length);
-		byteArray[keyByteArray.length] = (byte) (OPERATOR_CREATE & 0xFF);
-		System.arraycopy(sizeByteArray, 0, byteArray, keyByteArray.length + 1, sizeByteArray.length);
-		System.arraycopy(textByteArray, 0, byteArray, keyByteArray.length + 1 + sizeByteArray.length, textByteArray.length);
+		int capacity = RECORD_BUFFER_SIZE;
+		while (capacity < size) {
+			capacity = capacity * 2;
+		}
+		buffer = ByteBuffer.allocateDirect(capacity);
+		this.recordBuffer.set(buffer);
+		return buffer;
+	}
 
-		try {
-			this.lock.lock();
-			this.master.write(byteArray);
+	private void encodeRecordHeader(ByteBuffer buffer, Xid xid, int operator) {
+		buffer.put(xid.getGlobalTransactionId(), 0, XidFactory.GLOBAL_TRANSACTION_LENGTH);
+		buffer.put((byte) (operator & 0xFF));
+		buffer.putInt(0); // the size is patched in encodeRecordSize
+	}
 
-			this.flushMasterIfNecessary();
-		} finally {
-			this.lock.unlock();
+	private void encodeRecordSize(ByteBuffer buffer, int offset) {
+		buffer.putInt(offset + XidFactory.GLOBAL_TRANSACTION_LENGTH + 1, buffer.position() - offset - RECORD_HEADER_SIZE);
+	}
+
+	private ByteBuffer encodeRecord(TransactionXid xid, int operator, Object archive, ArchiveDeserializer deserializer) {
+		int capacity = RECORD_BUFFER_SIZE;
+		while (true) {
+			ByteBuffer buffer = this.getRecordBuffer(capacity);
+			try {
+				this.encodeRecordHeader(buffer, xid, operator);
+				deserializer.serialize(xid, archive, buffer);
+				return buffer;
+			} catch (BufferOverflowException ex) {
+				capacity = buffer.capacity() * 2;
+			}
 		}
 	}
 
-	public void delete(Xid xid) {
-		byte[] keyByteArray = xid.getGlobalTransactionId();
-		byte[] sizeByteArray = ByteUtils.intToByteArray(0);
+	private ByteBuffer encodeRecords(TransactionXid[] xids, int operator, Object[] archives,
+			ArchiveDeserializer deserializer) {
+		int capacity = RECORD_BUFFER_SIZE;
+		while (true) {
+			ByteBuffer buffer = this.getRecordBuffer(capacity);
+			try {
+				for (int i = 0; i < xids.length; i++) {
+					int offset = buffer.position();
+					this.encodeRecordHeader(buffer, xids[i], operator);
+					deserializer.serialize(xids[i], archives[i], buffer);
+					this.encodeRecordSize(buffer, offset);
+				}
+				return buffer;
+			} catch (BufferOverflowException ex) {
+				capacity = buffer.capacity() * 2;
+			}
+		}
+	}
 
-		byte[] byteArray = new byte[keyByteArray.length + 1 + sizeByteArray.length];
+	private void appendRecord(ByteBuffer buffer) {
+		this.encodeRecordSize(buffer, 0);
+		this.appendRecord(buffer, 1);
+	}
 
-		System.arraycopy(keyByteArray, 0, byteArray, 0, keyByteArray.length);
-		byteArray[keyByteArray.length] = (byte) (OPERATOR_DELETE & 0xFF);
-		System.arraycopy(sizeByteArray, 0, byteArray, keyByteArray.length + 1, sizeByteArray.length);
+	private void appendRecord(ByteBuffer buffer, int numberOfRecords) {
+		buffer.flip();
 
+		int numberOfBytes = buffer.remaining();
+		long startNanos = TransactionEvents.startNanos();
 		try {
-			this.lock.lock();
-			this.master.write(byteArray);
-
-			this.flushMasterIfNecessary();
+			this.writeRecord(buffer);
 		} finally {
-			this.lock.unlock();
+			TransactionEvents.fireLogAppend(numberOfRecords, numberOfBytes, startNanos);
 		}
 	}
 
-	public void modify(Xid xid, byte[] textByteArray) {
-		byte[] keyByteArray = xid.getGlobalTransactionId();
-		byte[] sizeByteArray = ByteUtils.intToByteArray(textByteArray.length);
-
-		byte[] byteArray = new byte[keyByteArray.length + 1 + sizeByteArray.length + textByteArray.length];
+	private void writeRecord(ByteBuffer buffer) {
+		if (this.committer != null) {
+			this.committer.commit(buffer);
+			return;
+		} // end-if (this.committer != null)
 
-		System.arraycopy(keyByteArray, 0, byteArray, 0, keyByteArray.length);
-		byteArray[keyByteArray.length] = (byte) (OPERATOR_MOFIFY & 0xFF);
-		System.arraycopy(sizeByteArray, 0, byteArray, keyByteArray.length + 1, sizeByteArray.length);
-		System.arraycopy(textByteArray, 0, byteArray, keyByteArray.length + 1 + sizeByteArray.length, textByteArray.length);
+		if (this.segmentManager != null) {
+			this.segmentManager.append(buffer);
+			if (this.optimized == false) {
+				this.segmentManager.flushImmediately();
+			}
+			return;
+		} // end-if (this.segmentManager != null)
 
 		try {
 			this.lock.lock();
-			this.master.write(byteArray);
+			this.master.write(buffer);
 
 			this.flushMasterIfNecessary();
 		} finally {
@@ -265,93 +438,71 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 		}
 	}
 
-	public void syncMasterAndSlaver() {
-		this.master.prepareForReading();
-		Map<Xid, Boolean> recordMap = this.syncStepOne();
-		this.master.prepareForReading();
-		this.syncStepTwo(recordMap, true);
+	void writeGroup(List<ByteBuffer> recordList) {
+		int numberOfBytes = 0;
+		for (int i = 0; i < recordList.size(); i++) {
+			numberOfBytes += recordList.get(i).remaining();
+		}
 
-		this.flushSlaverIfNecessary();
+		long startNanos = TransactionEvents.startNanos();
+		try {
+			this.writeGroupAndForce(recordList);
+		} finally {
+			TransactionEvents.fireLogForce(recordList.size(), numberOfBytes, startNanos);
+		}
 	}
 
-	public Map<Xid, Boolean> syncStepOne() {
-		Map<Xid, Boolean> recordMap = new HashMap<Xid, Boolean>();
-		while (true) {
-			byte[] byteArray = null;
-			try {
-				byteArray = this.master.read();
-			} catch (RuntimeException rex) {
-				byteArray = new byte[0];
+	private void writeGroupAndForce(List<ByteBuffer> recordList) {
+		if (this.segmentManager != null) {
+			for (int i = 0; i < recordList.size(); i++) {
+				this.segmentManager.append(recordList.get(i));
 			}
+			this.segmentManager.flushImmediately();
+			return;
+		} // end-if (this.segmentManager != null)
 
-			if (byteArray.length == 0) {
-				break;
-			}
-
-			byte[] keyByteArray = new byte[XidFactory.GLOBAL_TRANSACTION_LENGTH];
-			System.arraycopy(byteArray, 0, keyByteArray, 0, keyByteArray.length);
-			int operator = byteArray[keyByteArray.length];
-
-			VirtualLoggingKey xid = new VirtualLoggingKey();
-			xid.setGlobalTransactionId(keyByteArray);
-
-			VirtualLoggingRecord record = new VirtualLoggingRecord();
-			record.setIdentifier(xid);
-			record.setOperator(operator);
-			record.setContent(byteArray);
-
-			if (operator == OPERATOR_DELETE) {
-				recordMap.put(xid, true);
+		try {
+			this.lock.lock();
+			for (int i = 0; i < recordList.size(); i++) {
+				this.master.write(recordList.get(i));
 			}
 
+			this.master.flushImmediately(); // group-commit is always durable, one force per batch
+		} finally {
+			this.lock.unlock();
 		}
-
-		return recordMap;
-
 	}
 
-	public List<VirtualLoggingRecord> compressIfNecessary(List<VirtualLoggingRecord> recordList) {
-		return recordList;
-	}
-
-	public void syncStepTwo(Map<Xid, Boolean> recordMap, boolean compressRequired) {
-		final List<VirtualLoggingRecord> recordList = new ArrayList<VirtualLoggingRecord>(COMPRESS_BATCH_SIZE);
-		while (true) {
-			byte[] byteArray = null;
-			try {
-				byteArray = this.master.read();
-			} catch (RuntimeException rex) {
-				byteArray = new byte[0];
-			}
-
-			if (byteArray.length == 0) {
-				break;
+	/**
+	 * Copies the live records of the master to the slaver. The master is scanned once, collecting the deleted
+	 * transactions and the offsets of all other records, and only the surviving records are read again.
+	 */
+	public void syncMasterAndSlaver() {
+		VirtualLoggingCursor cursor = this.master.createCursor();
+		VirtualLoggingKeySet deletedKeys = new VirtualLoggingKeySet();
+		int[] positions = new int[COMPRESS_BATCH_SIZE];
+		int numberOfPositions = 0;
+		while (cursor.next()) {
+			if (cursor.getOperator() == OPERATOR_DELETE) {
+				deletedKeys.add(cursor.getKeyMostSigBits(), cursor.getKeyLeastSigBits());
+				continue;
+			} else if (numberOfPositions == positions.length) {
+				positions = Arrays.copyOf(positions, positions.length * 2);
 			}
+			positions[numberOfPositions++] = cursor.getPosition();
+		}
+		this.syncEndIndex = cursor.getPosition();
 
-			byte[] keyByteArray = new byte[XidFactory.GLOBAL_TRANSACTION_LENGTH];
-			System.arraycopy(byteArray, 0, keyByteArray, 0, keyByteArray.length);
-			int operator = byteArray[keyByteArray.length];
-			byte[] valueByteArray = new byte[byteArray.length - XidFactory.GLOBAL_TRANSACTION_LENGTH - 1 - 4];
-			System.arraycopy(byteArray, XidFactory.GLOBAL_TRANSACTION_LENGTH + 1 + 4, valueByteArray, 0, valueByteArray.length);
-
-			VirtualLoggingKey xid = new VirtualLoggingKey();
-			xid.setGlobalTransactionId(keyByteArray);
-
-			if (recordMap.containsKey(xid)) /* deleted */ {
+		List<VirtualLoggingRecord> recordList = new ArrayList<VirtualLoggingRecord>(COMPRESS_BATCH_SIZE);
+		for (int i = 0; i < numberOfPositions; i++) {
+			cursor.seek(positions[i]);
+			cursor.next();
+			if (deletedKeys.contains(cursor.getKeyMostSigBits(), cursor.getKeyLeastSigBits())) {
 				continue;
 			}
 
-			VirtualLoggingRecord record = new VirtualLoggingRecord();
-			record.setIdentifier(xid);
-			record.setOperator(operator);
-			record.setContent(byteArray);
-			record.setValue(valueByteArray);
-
-			recordList.add(record);
-
-			if (compressRequired == false) {
-				continue;
-			} else if (recordList.size() % COMPRESS_BATCH_SIZE != 0) {
+			recordList.add(cursor.toLoggingRecord());
+			if (recordList.size() % COMPRESS_BATCH_SIZE != 0) {
 				continue;
 			}
 
@@ -360,24 +511,27 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 				recordList.clear();
 				recordList.addAll(compressedList);
 			} // end-if (compressedList != recordList && compressedList != null)
-
 		}
 
-		for (int i = 0; recordList != null && i < recordList.size(); i++) {
-			VirtualLoggingRecord record = recordList.get(i);
-			Xid xid = record.getIdentifier();
-			if (recordMap.containsKey(xid) == false) {
-				byte[] byteArray = record.getContent();
-				this.slaver.write(byteArray);
-			}
+		for (int i = 0; i < recordList.size(); i++) {
+			this.slaver.write(recordList.get(i).getContent());
 		}
 
+		this.flushSlaverIfNecessary();
+	}
+
+	public List<VirtualLoggingRecord> compressIfNecessary(List<VirtualLoggingRecord> recordList) {
+		return recordList;
 	}
 
 	public void swapMasterAndSlaver() {
 		try {
 			this.lock.lock();
-			this.syncStepTwo(new HashMap<Xid, Boolean>(), false);
+			VirtualLoggingCursor cursor = this.master.createCursor();
+			cursor.seek(this.syncEndIndex); // records appended while syncing
+			while (cursor.next()) {
+				this.slaver.write(cursor.getRecord());
+			}
 
 			this.slaver.markAsMaster();
 			this.master.switchToSlaver();
@@ -412,10 +566,28 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 	}
 
 	public void flushImmediately() {
-		this.master.flushImmediately();
+		long startNanos = TransactionEvents.startNanos();
+		try {
+			if (this.segmentManager != null) {
+				this.segmentManager.flushImmediately();
+			} else {
+				this.master.flushImmediately();
+			}
+		} finally {
+			TransactionEvents.fireLogForce(0, 0, startNanos);
+		}
 	}
 
 	public void shutdown() {
+		if (this.committer != null) {
+			this.committer.release();
+		} // end-if (this.committer != null)
+
+		if (this.segmentManager != null) {
+			this.segmentManager.close();
+			return;
+		} // end-if (this.segmentManager != null)
+
 		this.master.flushImmediately();
 		this.slaver.flushImmediately();
 
@@ -433,6 +605,14 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 
 	public abstract int getMinorVersion();
 
+	/**
+	 * Returns the oldest minor version that can still be read. Logging files of an older compatible version are upgraded
+	 * to getMinorVersion() when opened, existing segments keep their version and new segments get the current one.
+	 */
+	public int getCompatibleMinorVersion() {
+		return this.getMinorVersion();
+	}
+
 	public abstract String getLoggingIdentifier();
 
 	public abstract String getLoggingFilePrefix();
@@ -440,8 +620,9 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 	public VirtualLoggingFile createTransactionLogging(File file) throws IOException {
 		int major = this.getMajorVersion();
 		int minor = this.getMinorVersion();
+		int compatibleMinor = this.getCompatibleMinorVersion();
 
-		VirtualLoggingFile logging = new VirtualLoggingFile(file, major, minor);
+		VirtualLoggingFile logging = new VirtualLoggingFile(file, major, minor, compatibleMinor);
 		logging.setTrigger(this);
 		logging.setIdentifier(this.getLoggingIdentifier().getBytes());
 		return logging;
@@ -463,6 +644,65 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 		this.switchInterval = switchInterval;
 	}
 
+	public boolean isGroupCommitEnabled() {
+		return groupCommitEnabled;
+	}
+
+	public void setGroupCommitEnabled(boolean groupCommitEnabled) {
+		this.groupCommitEnabled = groupCommitEnabled;
+	}
+
+	public int getGroupCommitCapacity() {
+		return groupCommitCapacity;
+	}
+
+	public void setGroupCommitCapacity(int groupCommitCapacity) {
+		this.groupCommitCapacity = groupCommitCapacity;
+	}
+
+	public int getGroupCommitBatchSize() {
+		return groupCommitBatchSize;
+	}
+
+	public void setGroupCommitBatchSize(int groupCommitBatchSize) {
+		this.groupCommitBatchSize = groupCommitBatchSize;
+	}
+
+	public long getGroupCommitMaxWaitMillis() {
+		return groupCommitMaxWaitMillis;
+	}
+
+	public void setGroupCommitMaxWaitMillis(long groupCommitMaxWaitMillis) {
+		this.groupCommitMaxWaitMillis = groupCommitMaxWaitMillis;
+	}
+
+	public boolean isSegmented() {
+		return segmented;
+	}
+
+	public void setSegmented(boolean segmented) {
+		this.segmented = segmented;
+	}
+
+	public long getSegmentSize() {
+		return segmentSize;
+	}
+
+	/**
+	 * At most 2 GB - 1 bytes, see {@link VirtualLoggingSegmentManager#setSegmentSize(long)}.
+	 */
+	public void setSegmentSize(long segmentSize) {
+		this.segmentSize = VirtualLoggingSegmentManager.checkSegmentSize(segmentSize);
+	}
+
+	public double getCompactionRatio() {
+		return compactionRatio;
+	}
+
+	public void setCompactionRatio(double compactionRatio) {
+		this.compactionRatio = compactionRatio;
+	}
+
 	public boolean isOptimized() {
 		return optimized;
 	}
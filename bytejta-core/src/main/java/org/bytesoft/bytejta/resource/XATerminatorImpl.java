@@ -16,15 +16,25 @@
 package org.bytesoft.bytejta.resource;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
 import javax.transaction.xa.Xid;
 
+import org.bytesoft.bytejta.TransactionManagerImpl;
+import org.bytesoft.bytejta.statistic.TransactionEvents;
 import org.bytesoft.common.utils.ByteUtils;
 import org.bytesoft.transaction.TransactionBeanFactory;
+import org.bytesoft.transaction.TransactionManager;
 import org.bytesoft.transaction.archive.XAResourceArchive;
+import org.bytesoft.transaction.logging.LoggingBatchable;
 import org.bytesoft.transaction.logging.TransactionLogger;
 import org.bytesoft.transaction.resource.XATerminator;
 import org.slf4j.Logger;
@@ -32,40 +42,64 @@ import org.slf4j.LoggerFactory;
 
 public class XATerminatorImpl implements XATerminator {
 	static final Logger logger = LoggerFactory.getLogger(XATerminatorImpl.class);
+	static final int FLAG_PREPARED = 0x1;
+	static final int FLAG_COMMITTED = 0x2;
+	static final int FLAG_ROLLEDBACK = 0x4;
+	static final int FLAG_UNFINISHED = 0x8;
+	static final int FLAG_ERROR = 0x10;
 
 	private TransactionBeanFactory beanFactory;
 	private final List<XAResourceArchive> resources = new ArrayList<XAResourceArchive>();
 
 	public synchronized int prepare(Xid xid) throws XAException {
 		TransactionLogger transactionLogger = this.beanFactory.getTransactionLogger();
+		final List<XAResourceArchive> updatedList = Collections.synchronizedList(new ArrayList<XAResourceArchive>());
 
 		int globalVote = XAResource.XA_RDONLY;
+		List<XAResourceArchive> archiveList = new ArrayList<XAResourceArchive>();
 		for (int i = 0; i < this.resources.size(); i++) {
 			XAResourceArchive archive = this.resources.get(i);
 
 			boolean prepared = archive.getVote() != XAResourceArchive.DEFAULT_VOTE;
 			if (prepared) {
 				globalVote = archive.getVote() == XAResource.XA_RDONLY ? globalVote : XAResource.XA_OK;
+				logger.info("{}> prepare: xares= {}, branch= {}, vote= {}",
+						ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId()), archive,
+						ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier()), archive.getVote());
 			} else {
-				int branchVote = archive.prepare(archive.getXid());
-				archive.setVote(branchVote);
+				archiveList.add(archive);
+			}
+		}
 
-				if (branchVote == XAResource.XA_RDONLY) {
-					archive.setReadonly(true);
-					archive.setCompleted(true);
-				} else {
-					globalVote = XAResource.XA_OK;
+		int branchVotes = 0;
+		try {
+			branchVotes = this.invokeBranches(archiveList, new BranchInvocation() {
+				public int invoke(XAResourceArchive archive) throws XAException {
+					return prepareBranch(archive, updatedList) == XAResource.XA_RDONLY ? 0 : FLAG_PREPARED;
 				}
+			});
+		} finally {
+			this.updateParticipants(transactionLogger, updatedList);
+		}
 
-				transactionLogger.updateParticipant(archive);
-			}
+		return (branchVotes & FLAG_PREPARED) == 0 ? globalVote : XAResource.XA_OK;
+	}
 
-			logger.info("{}> prepare: xares= {}, branch= {}, vote= {}",
-					ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId()), archive,
-					ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier()), archive.getVote());
+	private int prepareBranch(XAResourceArchive archive, List<XAResourceArchive> updatedList) throws XAException {
+		int branchVote = TransactionEvents.prepare(archive);
+		archive.setVote(branchVote);
+
+		if (branchVote == XAResource.XA_RDONLY) {
+			archive.setReadonly(true);
+			archive.setCompleted(true);
 		}
 
-		return globalVote;
+		updatedList.add(archive);
+
+		logger.info("{}> prepare: xares= {}, branch= {}, vote= {}",
+				ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId()), archive,
+				ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier()), archive.getVote());
+		return branchVote;
 	}
 
 	/** error: XA_HEURHAZ, XA_HEURMIX, XA_HEURCOM, XA_HEURRB, XA_RDONLY, XAER_RMERR */
@@ -158,113 +192,121 @@ public class XATerminatorImpl implements XATerminator {
 
 	private void fireTwoPhaseCommit(Xid xid) throws XAException {
 		TransactionLogger transactionLogger = this.beanFactory.getTransactionLogger();
+		final List<XAResourceArchive> updatedList = Collections.synchronizedList(new ArrayList<XAResourceArchive>());
 
-		boolean committedExists = false;
-		boolean rolledbackExists = false;
-		boolean unFinishExists = false;
-		boolean errorExists = false;
-
+		int flags = 0;
+		List<XAResourceArchive> archiveList = new ArrayList<XAResourceArchive>();
 		for (int i = this.resources.size() - 1; i >= 0; i--) {
 			XAResourceArchive archive = this.resources.get(i);
 
 			if (archive.isCommitted() && archive.isRolledback()) {
-				committedExists = true;
-				rolledbackExists = true;
-				continue;
+				flags |= FLAG_COMMITTED | FLAG_ROLLEDBACK;
 			} else if (archive.isCommitted()) {
-				committedExists = true;
-				continue;
+				flags |= FLAG_COMMITTED;
 			} else if (archive.isReadonly()) {
 				continue;
 			} else if (archive.isRolledback()) {
-				rolledbackExists = true;
-				continue;
+				flags |= FLAG_ROLLEDBACK;
+			} else {
+				archiveList.add(archive);
 			}
+		} // end-for
 
-			Xid branchXid = archive.getXid();
-			boolean updateRequired = true;
-			try {
-				this.invokeTwoPhaseCommit(archive);
-				committedExists = true;
-				archive.setCommitted(true);
-				archive.setCompleted(true);
-				logger.info("{}> commit: xares= {}, branch= {}, onePhaseCommit= {}",
-						ByteUtils.byteArrayToString(branchXid.getGlobalTransactionId()), archive,
-						ByteUtils.byteArrayToString(branchXid.getBranchQualifier()), false);
-			} catch (XAException xaex) {
-				logger.error("{}> Error occurred while committing xa-resource: xares= {}, branch= {}, code= {}",
-						ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId()), archive,
-						ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier()), xaex.errorCode, xaex);
-
-				switch (xaex.errorCode) {
-				case XAException.XA_HEURHAZ:
-					archive.setHeuristic(true);
-					unFinishExists = true;
-					break;
-				case XAException.XA_HEURMIX:
-					committedExists = true;
-					rolledbackExists = true;
-
-					archive.setCommitted(true);
-					archive.setRolledback(true);
-					archive.setHeuristic(true);
-					archive.setCompleted(true);
-					break;
-				case XAException.XA_HEURCOM:
-					committedExists = true;
-					archive.setCommitted(true);
-					archive.setHeuristic(true);
-					archive.setCompleted(true);
-					break;
-				case XAException.XA_HEURRB:
-					rolledbackExists = true;
-					archive.setRolledback(true);
-					archive.setHeuristic(true);
-					archive.setCompleted(true);
-					break;
-				case XAException.XAER_RMFAIL:
-					unFinishExists = true;
-					updateRequired = false;
-					break;
-				case XAException.XA_RDONLY:
-					archive.setReadonly(true);
-					break;
-				case XAException.XAER_RMERR:
-				default:
-					errorExists = true;
-					updateRequired = false;
-				}
-			} catch (RuntimeException rex) {
-				logger.error("{}> Error occurred while committing xa-resource: xares= {}, branch= {}",
-						ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId()), archive,
-						ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier()), rex);
-				unFinishExists = true;
-				updateRequired = false;
-			} finally {
-				if (updateRequired) {
-					transactionLogger.updateParticipant(archive);
+		try {
+			flags |= this.invokeBranches(archiveList, new BranchInvocation() {
+				public int invoke(XAResourceArchive archive) {
+					return commitBranch(archive, updatedList);
 				}
-			}
-
-		} // end-for
+			});
+		} finally {
+			this.updateParticipants(transactionLogger, updatedList);
+		}
 
-		if (committedExists && rolledbackExists) {
+		if ((flags & FLAG_COMMITTED) != 0 && (flags & FLAG_ROLLEDBACK) != 0) {
 			throw new XAException(XAException.XA_HEURMIX);
-		} else if (unFinishExists) {
+		} else if ((flags & FLAG_UNFINISHED) != 0) {
 			throw new XAException(XAException.XA_HEURHAZ);
-		} else if (errorExists) {
+		} else if ((flags & FLAG_ERROR) != 0) {
 			throw new XAException(XAException.XAER_RMERR);
-		} else if (rolledbackExists) {
+		} else if ((flags & FLAG_ROLLEDBACK) != 0) {
 			throw new XAException(XAException.XA_HEURRB);
-		} else if (committedExists == false) {
+		} else if ((flags & FLAG_COMMITTED) == 0) {
 			throw new XAException(XAException.XA_RDONLY);
 		}
 
 	}
 
+	private int commitBranch(XAResourceArchive archive, List<XAResourceArchive> updatedList) {
+		int flags = 0;
+		Xid branchXid = archive.getXid();
+		boolean updateRequired = true;
+		try {
+			this.invokeTwoPhaseCommit(archive);
+			flags |= FLAG_COMMITTED;
+			archive.setCommitted(true);
+			archive.setCompleted(true);
+			logger.info("{}> commit: xares= {}, branch= {}, onePhaseCommit= {}",
+					ByteUtils.byteArrayToString(branchXid.getGlobalTransactionId()), archive,
+					ByteUtils.byteArrayToString(branchXid.getBranchQualifier()), false);
+		} catch (XAException xaex) {
+			logger.error("{}> Error occurred while committing xa-resource: xares= {}, branch= {}, code= {}",
+					ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId()), archive,
+					ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier()), xaex.errorCode, xaex);
+
+			switch (xaex.errorCode) {
+			case XAException.XA_HEURHAZ:
+				archive.setHeuristic(true);
+				flags |= FLAG_UNFINISHED;
+				break;
+			case XAException.XA_HEURMIX:
+				flags |= FLAG_COMMITTED | FLAG_ROLLEDBACK;
+
+				archive.setCommitted(true);
+				archive.setRolledback(true);
+				archive.setHeuristic(true);
+				archive.setCompleted(true);
+				break;
+			case XAException.XA_HEURCOM:
+				flags |= FLAG_COMMITTED;
+				archive.setCommitted(true);
+				archive.setHeuristic(true);
+				archive.setCompleted(true);
+				break;
+			case XAException.XA_HEURRB:
+				flags |= FLAG_ROLLEDBACK;
+				archive.setRolledback(true);
+				archive.setHeuristic(true);
+				archive.setCompleted(true);
+				break;
+			case XAException.XAER_RMFAIL:
+				flags |= FLAG_UNFINISHED;
+				updateRequired = false;
+				break;
+			case XAException.XA_RDONLY:
+				archive.setReadonly(true);
+				break;
+			case XAException.XAER_RMERR:
+			default:
+				flags |= FLAG_ERROR;
+				updateRequired = false;
+			}
+		} catch (RuntimeException rex) {
+			logger.error("{}> Error occurred while committing xa-resource: xares= {}, branch= {}",
+					ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId()), archive,
+					ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier()), rex);
+			flags |= FLAG_UNFINISHED;
+			updateRequired = false;
+		} finally {
+			if (updateRequired) {
+				updatedList.add(archive);
+			}
+		}
+		return flags;
+	}
+
 	private void invokeOnePhaseCommit(XAResourceArchive archive) throws XAException {
 		try {
-			archive.commit(archive.getXid(), true);
+			TransactionEvents.commit(archive, true);
 		} catch (XAException xaex) {
 			switch (xaex.errorCode) {
 			case XAException.XA_HEURCOM:
@@ -303,7 +345,7 @@ public class XATerminatorImpl implements XATerminator {
 
 	private void invokeTwoPhaseCommit(XAResourceArchive archive) throws XAException {
 		try {
-			archive.commit(archive.getXid(), false);
+			TransactionEvents.commit(archive, false);
 		} catch (XAException xaex) {
 			// * @exception XAException An error has occurred. Possible XAExceptions
 			// * are XA_HEURHAZ, XA_HEURCOM, XA_HEURRB, XA_HEURMIX, XAER_RMERR,
@@ -361,110 +403,218 @@ public class XATerminatorImpl implements XATerminator {
 	/** error: XA_HEURHAZ, XA_HEURMIX, XA_HEURCOM, XA_HEURRB, XA_RDONLY, XAER_RMERR */
 	public synchronized void rollback(Xid xid) throws XAException {
 		TransactionLogger transactionLogger = this.beanFactory.getTransactionLogger();
+		final List<XAResourceArchive> updatedList = Collections.synchronizedList(new ArrayList<XAResourceArchive>());
 
-		boolean committedExists = false;
-		boolean rolledbackExists = false;
-		boolean unFinishExists = false;
-		boolean errorExists = false;
+		int flags = 0;
+		List<XAResourceArchive> archiveList = new ArrayList<XAResourceArchive>();
 		for (int i = 0; i < this.resources.size(); i++) {
 			XAResourceArchive archive = this.resources.get(i);
 
 			if (archive.isCommitted() && archive.isRolledback()) {
-				committedExists = true;
-				rolledbackExists = true;
-				continue;
+				flags |= FLAG_COMMITTED | FLAG_ROLLEDBACK;
 			} else if (archive.isRolledback()) {
-				rolledbackExists = true;
-				continue;
+				flags |= FLAG_ROLLEDBACK;
 			} else if (archive.isReadonly()) {
 				continue;
 			} else if (archive.isCommitted()) {
-				committedExists = true;
-				continue;
+				flags |= FLAG_COMMITTED;
+			} else {
+				archiveList.add(archive);
 			}
+		}
 
-			boolean updateRequired = true;
-			try {
-				this.invokeRollback(archive);
-				rolledbackExists = true;
+		try {
+			flags |= this.invokeBranches(archiveList, new BranchInvocation() {
+				public int invoke(XAResourceArchive archive) {
+					return rollbackBranch(archive, updatedList);
+				}
+			});
+		} finally {
+			this.updateParticipants(transactionLogger, updatedList);
+		}
+
+		if ((flags & FLAG_COMMITTED) != 0 && (flags & FLAG_ROLLEDBACK) != 0) {
+			throw new XAException(XAException.XA_HEURMIX);
+		} else if ((flags & FLAG_UNFINISHED) != 0) {
+			throw new XAException(XAException.XA_HEURHAZ);
+		} else if ((flags & FLAG_ERROR) != 0) {
+			throw new XAException(XAException.XAER_RMERR);
+		} else if ((flags & FLAG_COMMITTED) != 0) {
+			throw new XAException(XAException.XA_HEURCOM);
+		} else if ((flags & FLAG_ROLLEDBACK) == 0) {
+			throw new XAException(XAException.XA_RDONLY);
+		}
+
+	}
+
+	private int rollbackBranch(XAResourceArchive archive, List<XAResourceArchive> updatedList) {
+		int flags = 0;
+		boolean updateRequired = true;
+		try {
+			this.invokeRollback(archive);
+			flags |= FLAG_ROLLEDBACK;
+			archive.setRolledback(true);
+			archive.setCompleted(true);
+			logger.info("{}> rollback: xares= {}, branch= {}",
+					ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId()), archive,
+					ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier()));
+		} catch (XAException xaex) {
+			logger.error("{}> Error occurred while rolling back xa-resource: xares= {}, branch= {}, code= {}",
+					ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId()), archive,
+					ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier()), xaex.errorCode, xaex);
+
+			switch (xaex.errorCode) {
+			case XAException.XA_HEURHAZ:
+				flags |= FLAG_UNFINISHED;
+				archive.setHeuristic(true);
+				break;
+			case XAException.XA_HEURMIX:
+				flags |= FLAG_COMMITTED | FLAG_ROLLEDBACK;
+				archive.setCommitted(true);
 				archive.setRolledback(true);
+				archive.setHeuristic(true);
 				archive.setCompleted(true);
-				logger.info("{}> rollback: xares= {}, branch= {}",
-						ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId()), archive,
-						ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier()));
-			} catch (XAException xaex) {
-				logger.error("{}> Error occurred while rolling back xa-resource: xares= {}, branch= {}, code= {}",
-						ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId()), archive,
-						ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier()), xaex.errorCode, xaex);
+				break;
+			case XAException.XA_HEURCOM:
+				flags |= FLAG_COMMITTED;
+				archive.setCommitted(true);
+				archive.setHeuristic(true);
+				archive.setCompleted(true);
+				break;
+			case XAException.XA_HEURRB:
+				flags |= FLAG_ROLLEDBACK;
+				archive.setRolledback(true);
+				archive.setHeuristic(true);
+				archive.setCompleted(true);
+				break;
+			case XAException.XA_RDONLY:
+				archive.setReadonly(true);
+				archive.setCompleted(true);
+				break;
+			case XAException.XAER_RMFAIL:
+				flags |= FLAG_UNFINISHED;
+				updateRequired = false;
+				break;
+			case XAException.XAER_RMERR:
+			default:
+				flags |= FLAG_ERROR;
+				updateRequired = false;
+			}
+		} catch (RuntimeException rex) {
+			flags |= FLAG_UNFINISHED;
+			updateRequired = false;
+			logger.error("{}> Error occurred while rolling back xa-resource: xares= {}, branch= {}",
+					ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId()), archive,
+					ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier()), rex);
+		} finally {
+			if (updateRequired) {
+				updatedList.add(archive);
+			}
+		}
+		return flags;
+	}
 
-				switch (xaex.errorCode) {
-				case XAException.XA_HEURHAZ:
-					unFinishExists = true;
-					archive.setHeuristic(true);
-					break;
-				case XAException.XA_HEURMIX:
-					committedExists = true;
-					rolledbackExists = true;
-					archive.setCommitted(true);
-					archive.setRolledback(true);
-					archive.setHeuristic(true);
-					archive.setCompleted(true);
-					break;
-				case XAException.XA_HEURCOM:
-					committedExists = true;
-					archive.setCommitted(true);
-					archive.setHeuristic(true);
-					archive.setCompleted(true);
-					break;
-				case XAException.XA_HEURRB:
-					rolledbackExists = true;
-					archive.setRolledback(true);
-					archive.setHeuristic(true);
-					archive.setCompleted(true);
-					break;
-				case XAException.XA_RDONLY:
-					archive.setReadonly(true);
-					archive.setCompleted(true);
+	/**
+	 * Logs the branches updated during a pass together, as one record if the transaction logger supports it.
+	 */
+	private void updateParticipants(TransactionLogger transactionLogger, List<XAResourceArchive> updatedList) {
+		if (updatedList.isEmpty()) {
+			return;
+		} else if (LoggingBatchable.class.isInstance(transactionLogger)) {
+			((LoggingBatchable) transactionLogger).updateParticipants(new ArrayList<XAResourceArchive>(updatedList));
+		} else {
+			for (int i = 0; i < updatedList.size(); i++) {
+				transactionLogger.updateParticipant(updatedList.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Invokes the branches one after another, or concurrently on the participant executor of the transaction manager
+	 * when it is enabled and more than one branch is involved, and returns the union of their outcome flags. In the
+	 * parallel case every branch is waited for before the first failure (in list order) is rethrown.
+	 */
+	private int invokeBranches(List<XAResourceArchive> archiveList, final BranchInvocation invocation)
+			throws XAException {
+		Executor executor = archiveList.size() > 1 ? this.getParticipantExecutor() : null;
+		int flags = 0;
+		if (executor == null) {
+			for (int i = 0; i < archiveList.size(); i++) {
+				flags |= invocation.invoke(archiveList.get(i));
+			}
+			return flags;
+		} // end-if (executor == null)
+
+		List<FutureTask<Integer>> taskList = new ArrayList<FutureTask<Integer>>(archiveList.size());
+		for (int i = 0; i < archiveList.size(); i++) {
+			final XAResourceArchive archive = archiveList.get(i);
+			FutureTask<Integer> task = new FutureTask<Integer>(new Callable<Integer>() {
+				public Integer call() throws XAException {
+					return invocation.invoke(archive);
+				}
+			});
+			taskList.add(task);
+
+			if (i == archiveList.size() - 1) {
+				task.run(); // the last branch is handled by the calling thread
+				continue;
+			}
+
+			try {
+				executor.execute(task);
+			} catch (RejectedExecutionException rex) {
+				task.run();
+			}
+		}
+
+		Throwable failure = null;
+		boolean interrupted = false;
+		for (int i = 0; i < taskList.size(); i++) {
+			FutureTask<Integer> task = taskList.get(i);
+			while (true) {
+				try {
+					flags |= task.get();
 					break;
-				case XAException.XAER_RMFAIL:
-					unFinishExists = true;
-					updateRequired = false;
+				} catch (InterruptedException ex) {
+					interrupted = true; // the outcome of every branch must be collected
+				} catch (ExecutionException ex) {
+					failure = failure == null ? ex.getCause() : failure;
 					break;
-				case XAException.XAER_RMERR:
-				default:
-					errorExists = true;
-					updateRequired = false;
-				}
-			} catch (RuntimeException rex) {
-				unFinishExists = true;
-				updateRequired = false;
-				logger.error("{}> Error occurred while rolling back xa-resource: xares= {}, branch= {}",
-						ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId()), archive,
-						ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier()), rex);
-			} finally {
-				if (updateRequired) {
-					transactionLogger.updateParticipant(archive);
 				}
 			}
 		}
 
-		if (committedExists && rolledbackExists) {
-			throw new XAException(XAException.XA_HEURMIX);
-		} else if (unFinishExists) {
-			throw new XAException(XAException.XA_HEURHAZ);
-		} else if (errorExists) {
-			throw new XAException(XAException.XAER_RMERR);
-		} else if (committedExists) {
-			throw new XAException(XAException.XA_HEURCOM);
-		} else if (rolledbackExists == false) {
-			throw new XAException(XAException.XA_RDONLY);
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		if (failure == null) {
+			return flags;
+		} else if (XAException.class.isInstance(failure)) {
+			throw (XAException) failure;
+		} else if (RuntimeException.class.isInstance(failure)) {
+			throw (RuntimeException) failure;
+		} else {
+			throw (Error) failure;
+		}
+	}
+
+	private Executor getParticipantExecutor() {
+		TransactionManager transactionManager = this.beanFactory.getTransactionManager();
+		if (TransactionManagerImpl.class.isInstance(transactionManager)) {
+			return ((TransactionManagerImpl) transactionManager).getParticipantExecutor();
+		} else {
+			return null;
 		}
+	}
 
+	interface BranchInvocation {
+		public int invoke(XAResourceArchive archive) throws XAException;
 	}
 
 	private void invokeRollback(XAResourceArchive archive) throws XAException {
 		try {
-			archive.rollback(archive.getXid());
+			TransactionEvents.rollback(archive);
 		} catch (XAException xaex) {
 			// * @exception XAException An error has occurred. Possible XAExceptions are
 			// * XA_HEURHAZ, XA_HEURCOM, XA_HEURRB, XA_HEURMIX, XAER_RMERR, XAER_RMFAIL,
@@ -24,6 +24,7 @@ import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
 import javax.transaction.xa.Xid;
 
+import org.bytesoft.bytejta.statistic.TransactionEvents;
 import org.bytesoft.common.utils.ByteUtils;
 import org.bytesoft.transaction.TransactionBeanFactory;
 import org.bytesoft.transaction.archive.XAResourceArchive;
@@ -50,7 +51,7 @@ public class XATerminatorOptd implements XATerminator {
 		if (prepared) {
 			globalVote = archive.getVote();
 		} else {
-			globalVote = archive.prepare(archive.getXid());
+			globalVote = TransactionEvents.prepare(archive);
 			archive.setVote(globalVote);
 
 			if (globalVote == XAResource.XA_RDONLY) {
@@ -94,7 +95,7 @@ public class XATerminatorOptd implements XATerminator {
 
 		boolean updateRequired = true;
 		try {
-			archive.commit(archive.getXid(), true);
+			TransactionEvents.commit(archive, true);
 			archive.setCommitted(true);
 			archive.setCompleted(true);
 
@@ -178,7 +179,7 @@ public class XATerminatorOptd implements XATerminator {
 
 		boolean updateRequired = true;
 		try {
-			archive.commit(archive.getXid(), false);
+			TransactionEvents.commit(archive, false);
 			archive.setCommitted(true);
 			archive.setCompleted(true);
 
@@ -289,7 +290,7 @@ public class XATerminatorOptd implements XATerminator {
 
 		boolean updateRequired = true;
 		try {
-			archive.rollback(archive.getXid());
+			TransactionEvents.rollback(archive);
 			archive.setRolledback(true);
 			archive.setCompleted(true);
 
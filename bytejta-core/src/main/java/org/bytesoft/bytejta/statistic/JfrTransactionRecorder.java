@@ -0,0 +1,312 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.statistic;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+import org.bytesoft.common.utils.ByteUtils;
+import org.bytesoft.transaction.archive.XAResourceArchive;
+import org.bytesoft.transaction.supports.resource.XAResourceDescriptor;
+import org.bytesoft.transaction.xa.TransactionXid;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Records the lifecycle events as JDK Flight Recorder events, only loaded by {@link TransactionEvents} when jdk.jfr is
+ * available. The identifiers are formatted only for events that are actually committed.
+ */
+public class JfrTransactionRecorder implements TransactionRecorder {
+	static final String CATEGORY = "ByteJTA";
+
+	public void fireBegin(TransactionXid xid, int timeoutSeconds) {
+		TransactionBeginEvent event = new TransactionBeginEvent();
+		if (event.shouldCommit()) {
+			event.gtrid = ByteUtils.byteArrayToString(xid.getGlobalTransactionId());
+			event.timeout = timeoutSeconds;
+			event.commit();
+		}
+	}
+
+	public void fireEnlist(XAResourceArchive archive, int flags, boolean success, long startNanos) {
+		ResourceEnlistEvent event = new ResourceEnlistEvent();
+		if (event.shouldCommit()) {
+			event.elapsedTime = System.nanoTime() - startNanos;
+			event.gtrid = ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId());
+			event.branch = ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier());
+			event.resource = this.getIdentifier(archive);
+			event.flags = flags;
+			event.success = success;
+			event.commit();
+		}
+	}
+
+	public int prepare(XAResourceArchive archive) throws XAException {
+		BranchPrepareEvent event = new BranchPrepareEvent();
+		if (event.isEnabled() == false) {
+			return archive.prepare(archive.getXid());
+		}
+
+		event.begin();
+		try {
+			event.vote = archive.prepare(archive.getXid());
+			return event.vote;
+		} catch (XAException ex) {
+			event.errorCode = ex.errorCode;
+			throw ex;
+		} catch (RuntimeException ex) {
+			event.exception = ex.getClass().getName();
+			throw ex;
+		} finally {
+			this.commitBranchEvent(event, archive);
+		}
+	}
+
+	public void commit(XAResourceArchive archive, boolean onePhase) throws XAException {
+		BranchCommitEvent event = new BranchCommitEvent();
+		if (event.isEnabled() == false) {
+			archive.commit(archive.getXid(), onePhase);
+			return;
+		}
+
+		event.begin();
+		event.onePhase = onePhase;
+		try {
+			archive.commit(archive.getXid(), onePhase);
+		} catch (XAException ex) {
+			event.errorCode = ex.errorCode;
+			throw ex;
+		} catch (RuntimeException ex) {
+			event.exception = ex.getClass().getName();
+			throw ex;
+		} finally {
+			this.commitBranchEvent(event, archive);
+		}
+	}
+
+	public void rollback(XAResourceArchive archive) throws XAException {
+		BranchRollbackEvent event = new BranchRollbackEvent();
+		if (event.isEnabled() == false) {
+			archive.rollback(archive.getXid());
+			return;
+		}
+
+		event.begin();
+		try {
+			archive.rollback(archive.getXid());
+		} catch (XAException ex) {
+			event.errorCode = ex.errorCode;
+			throw ex;
+		} catch (RuntimeException ex) {
+			event.exception = ex.getClass().getName();
+			throw ex;
+		} finally {
+			this.commitBranchEvent(event, archive);
+		}
+	}
+
+	private void commitBranchEvent(BranchEvent event, XAResourceArchive archive) {
+		event.end();
+		if (event.shouldCommit()) {
+			Xid branchXid = archive.getXid();
+			event.gtrid = ByteUtils.byteArrayToString(branchXid.getGlobalTransactionId());
+			event.branch = ByteUtils.byteArrayToString(branchXid.getBranchQualifier());
+			event.resource = this.getIdentifier(archive);
+			event.commit();
+		}
+	}
+
+	private String getIdentifier(XAResourceArchive archive) {
+		XAResourceDescriptor descriptor = archive.getDescriptor();
+		return descriptor == null ? null : descriptor.getIdentifier();
+	}
+
+	public void fireCompletion(TransactionXid xid, boolean commit, boolean success, long startNanos) {
+		TransactionCompletionEvent event = new TransactionCompletionEvent();
+		if (event.shouldCommit()) {
+			event.elapsedTime = System.nanoTime() - startNanos;
+			event.gtrid = ByteUtils.byteArrayToString(xid.getGlobalTransactionId());
+			event.operation = commit ? "commit" : "rollback";
+			event.success = success;
+			event.commit();
+		}
+	}
+
+	public void fireLogAppend(int numberOfRecords, int numberOfBytes, long startNanos) {
+		LogAppendEvent event = new LogAppendEvent();
+		if (event.shouldCommit()) {
+			event.elapsedTime = System.nanoTime() - startNanos;
+			event.records = numberOfRecords;
+			event.bytes = numberOfBytes;
+			event.commit();
+		}
+	}
+
+	public void fireLogForce(int numberOfRecords, int numberOfBytes, long startNanos) {
+		LogForceEvent event = new LogForceEvent();
+		if (event.shouldCommit()) {
+			event.elapsedTime = System.nanoTime() - startNanos;
+			event.records = numberOfRecords;
+			event.bytes = numberOfBytes;
+			event.commit();
+		}
+	}
+
+	public void fireRecovery(TransactionXid xid, int status, boolean success, long startNanos) {
+		TransactionRecoveryEvent event = new TransactionRecoveryEvent();
+		if (event.shouldCommit()) {
+			event.elapsedTime = System.nanoTime() - startNanos;
+			event.gtrid = ByteUtils.byteArrayToString(xid.getGlobalTransactionId());
+			event.status = status;
+			event.success = success;
+			event.commit();
+		}
+	}
+
+	@Name("org.bytesoft.bytejta.TransactionBegin")
+	@Label("Transaction Begin")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class TransactionBeginEvent extends Event {
+		@Label("Global Transaction Id")
+		String gtrid;
+		@Label("Timeout Seconds")
+		int timeout;
+	}
+
+	@Name("org.bytesoft.bytejta.ResourceEnlist")
+	@Label("Resource Enlist")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class ResourceEnlistEvent extends Event {
+		@Label("Elapsed Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long elapsedTime;
+		@Label("Global Transaction Id")
+		String gtrid;
+		@Label("Branch Qualifier")
+		String branch;
+		@Label("Resource")
+		String resource;
+		@Label("Flags")
+		int flags;
+		@Label("Success")
+		boolean success;
+	}
+
+	@StackTrace(false)
+	static abstract class BranchEvent extends Event {
+		@Label("Global Transaction Id")
+		String gtrid;
+		@Label("Branch Qualifier")
+		String branch;
+		@Label("Resource")
+		String resource;
+		@Label("XA Error Code")
+		int errorCode = XAResource.XA_OK;
+		@Label("Exception")
+		String exception;
+	}
+
+	@Name("org.bytesoft.bytejta.BranchPrepare")
+	@Label("Branch Prepare")
+	@Category(CATEGORY)
+	static class BranchPrepareEvent extends BranchEvent {
+		@Label("Vote")
+		int vote = XAResourceArchive.DEFAULT_VOTE;
+	}
+
+	@Name("org.bytesoft.bytejta.BranchCommit")
+	@Label("Branch Commit")
+	@Category(CATEGORY)
+	static class BranchCommitEvent extends BranchEvent {
+		@Label("One Phase")
+		boolean onePhase;
+	}
+
+	@Name("org.bytesoft.bytejta.BranchRollback")
+	@Label("Branch Rollback")
+	@Category(CATEGORY)
+	static class BranchRollbackEvent extends BranchEvent {
+	}
+
+	@Name("org.bytesoft.bytejta.TransactionCompletion")
+	@Label("Transaction Completion")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class TransactionCompletionEvent extends Event {
+		@Label("Elapsed Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long elapsedTime;
+		@Label("Global Transaction Id")
+		String gtrid;
+		@Label("Operation")
+		String operation;
+		@Label("Success")
+		boolean success;
+	}
+
+	@Name("org.bytesoft.bytejta.LogAppend")
+	@Label("Transaction Log Append")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class LogAppendEvent extends Event {
+		@Label("Elapsed Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long elapsedTime;
+		@Label("Records")
+		int records;
+		@Label("Bytes")
+		int bytes;
+	}
+
+	@Name("org.bytesoft.bytejta.LogForce")
+	@Label("Transaction Log Force")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class LogForceEvent extends Event {
+		@Label("Elapsed Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long elapsedTime;
+		@Label("Records")
+		int records;
+		@Label("Bytes")
+		int bytes;
+	}
+
+	@Name("org.bytesoft.bytejta.TransactionRecovery")
+	@Label("Transaction Recovery")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class TransactionRecoveryEvent extends Event {
+		@Label("Elapsed Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long elapsedTime;
+		@Label("Global Transaction Id")
+		String gtrid;
+		@Label("Status")
+		int status;
+		@Label("Success")
+		boolean success;
+	}
+
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.statistic;
+
+import java.lang.reflect.InvocationTargetException;
+
+import javax.transaction.xa.XAException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.bytesoft.transaction.archive.XAResourceArchive;
+import org.bytesoft.transaction.xa.TransactionXid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Entry point of the lifecycle events. Flight Recorder events are opt-in: -Dbytejta.jfr=true records them when the JVM
+ * provides jdk.jfr (JDK 11, or JDK 8u262 and later), they cost next to nothing unless a recording enables them. The
+ * JFR recorder is loaded reflectively, so nothing refers to jdk.jfr on older JVMs.
+ */
+public final class TransactionEvents {
+	static final Logger logger = LoggerFactory.getLogger(TransactionEvents.class);
+	static final String JFR_RECORDER_CLASS = "org.bytesoft.bytejta.statistic.JfrTransactionRecorder";
+
+	static final TransactionRecorder recorder = createRecorder();
+	static final boolean RECORDING_ENABLED = VacantTransactionRecorder.class.equals(recorder.getClass()) == false;
+
+	private TransactionEvents() {
+	}
+
+	private static TransactionRecorder createRecorder() {
+		String enabled = StringUtils.trimToNull(System.getProperty("bytejta.jfr"));
+		if (StringUtils.equalsIgnoreCase("true", enabled) == false) {
+			return new VacantTransactionRecorder();
+		} // end-if (StringUtils.equalsIgnoreCase("true", enabled) == false)
+
+		ClassLoader classLoader = TransactionEvents.class.getClassLoader();
+		try {
+			Class.forName("jdk.jfr.Event", false, classLoader);
+			Class<?> recorderClass = Class.forName(JFR_RECORDER_CLASS, true, classLoader);
+			return (TransactionRecorder) recorderClass.getDeclaredConstructor().newInstance();
+		} catch (ClassNotFoundException ex) {
+			return new VacantTransactionRecorder(); // jdk.jfr is not available
+		} catch (InvocationTargetException ex) {
+			logger.warn("Error occurred while initializing the flight recorder events!", ex.getTargetException());
+			return new VacantTransactionRecorder();
+		} catch (ReflectiveOperationException ex) {
+			logger.warn("Error occurred while initializing the flight recorder events!", ex);
+			return new VacantTransactionRecorder();
+		} catch (RuntimeException ex) {
+			logger.warn("Error occurred while initializing the flight recorder events!", ex);
+			return new VacantTransactionRecorder();
+		} catch (LinkageError error) {
+			logger.warn("Error occurred while initializing the flight recorder events!", error);
+			return new VacantTransactionRecorder();
+		}
+	}
+
+	/**
+	 * Returns the start time of a timed event, zero if no event is recorded.
+	 */
+	public static long startNanos() {
+		return RECORDING_ENABLED ? System.nanoTime() : 0L;
+	}
+
+	public static void fireBegin(TransactionXid xid, int timeoutSeconds) {
+		recorder.fireBegin(xid, timeoutSeconds);
+	}
+
+	public static void fireEnlist(XAResourceArchive archive, int flags, boolean success, long startNanos) {
+		recorder.fireEnlist(archive, flags, success, startNanos);
+	}
+
+	public static int prepare(XAResourceArchive archive) throws XAException {
+		return recorder.prepare(archive);
+	}
+
+	public static void commit(XAResourceArchive archive, boolean onePhase) throws XAException {
+		recorder.commit(archive, onePhase);
+	}
+
+	public static void rollback(XAResourceArchive archive) throws XAException {
+		recorder.rollback(archive);
+	}
+
+	public static void fireCompletion(TransactionXid xid, boolean commit, boolean success, long startNanos) {
+		recorder.fireCompletion(xid, commit, success, startNanos);
+	}
+
+	public static void fireLogAppend(int numberOfRecords, int numberOfBytes, long startNanos) {
+		recorder.fireLogAppend(numberOfRecords, numberOfBytes, startNanos);
+	}
+
+	public static void fireLogForce(int numberOfRecords, int numberOfBytes, long startNanos) {
+		recorder.fireLogForce(numberOfRecords, numberOfBytes, startNanos);
+	}
+
+	public static void fireRecovery(TransactionXid xid, int status, boolean success, long startNanos) {
+		recorder.fireRecovery(xid, status, success, startNanos);
+	}
+
+}
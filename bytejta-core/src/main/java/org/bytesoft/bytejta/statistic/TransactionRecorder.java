@@ -0,0 +1,47 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.statistic;
+
+import javax.transaction.xa.XAException;
+
+import org.bytesoft.transaction.archive.XAResourceArchive;
+import org.bytesoft.transaction.xa.TransactionXid;
+
+/**
+ * Records lifecycle events of transactions, see {@link TransactionEvents}. The branch operations are invoked through
+ * the recorder so that it can time them.
+ */
+public interface TransactionRecorder {
+
+	public void fireBegin(TransactionXid xid, int timeoutSeconds);
+
+	public void fireEnlist(XAResourceArchive archive, int flags, boolean success, long startNanos);
+
+	public int prepare(XAResourceArchive archive) throws XAException;
+
+	public void commit(XAResourceArchive archive, boolean onePhase) throws XAException;
+
+	public void rollback(XAResourceArchive archive) throws XAException;
+
+	public void fireCompletion(TransactionXid xid, boolean commit, boolean success, long startNanos);
+
+	public void fireLogAppend(int numberOfRecords, int numberOfBytes, long startNanos);
+
+	public void fireLogForce(int numberOfRecords, int numberOfBytes, long startNanos);
+
+	public void fireRecovery(TransactionXid xid, int status, boolean success, long startNanos);
+
+}
@@ -0,0 +1,327 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.statistic;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.bytesoft.bytejta.TransactionImpl;
+import org.bytesoft.transaction.supports.TransactionListenerAdapter;
+import org.bytesoft.transaction.supports.TransactionStatistic;
+import org.bytesoft.transaction.xa.TransactionXid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counts the state transitions of transactions and records the begin-to-prepare, prepare-to-commit and total commit
+ * latencies. Begun and recovered transactions get a listener that keeps their timestamps, so nothing is shared between
+ * transactions except the striped counters and the histograms.
+ */
+public class TransactionStatisticImpl implements TransactionStatistic, TransactionStatisticMBean {
+	static final Logger logger = LoggerFactory.getLogger(TransactionStatisticImpl.class);
+	static final String DEFAULT_OBJECT_NAME = "org.bytesoft.bytejta:type=TransactionStatistic";
+
+	private final LongAdder beginCount = new LongAdder();
+	private final LongAdder activeCount = new LongAdder();
+	private final LongAdder preparingCount = new LongAdder();
+	private final LongAdder preparedCount = new LongAdder();
+	private final LongAdder committingCount = new LongAdder();
+	private final LongAdder committedCount = new LongAdder();
+	private final LongAdder rollingBackCount = new LongAdder();
+	private final LongAdder rolledbackCount = new LongAdder();
+	private final LongAdder errorCount = new LongAdder();
+	private final LongAdder cleanupCount = new LongAdder();
+	private final LongAdder recoverCount = new LongAdder();
+
+	private final TransactionLatencyHistogram beginToPrepare = new TransactionLatencyHistogram();
+	private final TransactionLatencyHistogram prepareToCommit = new TransactionLatencyHistogram();
+	private final TransactionLatencyHistogram commitLatency = new TransactionLatencyHistogram();
+
+	private String objectName = DEFAULT_OBJECT_NAME;
+
+	public void registerMBean() {
+		try {
+			MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(this.objectName);
+			if (mbeanServer.isRegistered(name) == false) {
+				mbeanServer.registerMBean(new StandardMBean(this, TransactionStatisticMBean.class), name);
+			}
+		} catch (Exception ex) {
+			logger.warn("Error occurred while registering mbean {}!", this.objectName, ex);
+		}
+	}
+
+	public void unregisterMBean() {
+		try {
+			MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(this.objectName);
+			if (mbeanServer.isRegistered(name)) {
+				mbeanServer.unregisterMBean(name);
+			}
+		} catch (Exception ex) {
+			logger.debug("Error occurred while unregistering mbean {}!", this.objectName, ex);
+		}
+	}
+
+	public void fireBeginTransaction(TransactionImpl transaction) {
+		this.beginCount.increment();
+		this.activeCount.increment();
+		transaction.registerTransactionListener(new TransactionTracker(transaction, System.nanoTime()));
+	}
+
+	public void firePreparingTransaction(TransactionImpl transaction) {
+		this.preparingCount.increment();
+	}
+
+	public void firePreparedTransaction(TransactionImpl transaction) {
+		this.preparedCount.increment();
+	}
+
+	public void fireCommittingTransaction(TransactionImpl transaction) {
+		this.committingCount.increment();
+	}
+
+	public void fireCommittedTransaction(TransactionImpl transaction) {
+		this.committedCount.increment();
+	}
+
+	public void fireRollingBackTransaction(TransactionImpl transaction) {
+		this.rollingBackCount.increment();
+	}
+
+	public void fireRolledbackTransaction(TransactionImpl transaction) {
+		this.rolledbackCount.increment();
+	}
+
+	public void fireCompleteFailure(TransactionImpl transaction) {
+		this.errorCount.increment();
+	}
+
+	public void fireCleanupTransaction(TransactionImpl transaction) {
+		this.cleanupCount.increment();
+	}
+
+	public void fireRecoverTransaction(TransactionImpl transaction) {
+		this.recoverCount.increment();
+		transaction.registerTransactionListener(new TransactionTracker(transaction, -1));
+	}
+
+	class TransactionTracker extends TransactionListenerAdapter {
+		private final TransactionImpl transaction;
+		private final long beginNanos;
+		private long prepareNanos = -1;
+		private long completionNanos = -1;
+		private boolean active;
+
+		TransactionTracker(TransactionImpl transaction, long beginNanos) {
+			this.transaction = transaction;
+			this.beginNanos = beginNanos;
+			this.active = beginNanos >= 0;
+		}
+
+		private void startCompletion(long current) {
+			if (this.completionNanos < 0) {
+				this.completionNanos = current;
+			}
+		}
+
+		private void finish() {
+			if (this.active) {
+				this.active = false;
+				activeCount.decrement();
+			}
+		}
+
+		public void onPrepareStart(TransactionXid xid) {
+			long current = System.nanoTime();
+			this.prepareNanos = current;
+			this.startCompletion(current);
+			if (this.beginNanos >= 0) {
+				beginToPrepare.recordNanos(current - this.beginNanos);
+			}
+			firePreparingTransaction(this.transaction);
+		}
+
+		public void onPrepareSuccess(TransactionXid xid) {
+			firePreparedTransaction(this.transaction);
+		}
+
+		public void onCommitStart(TransactionXid xid) {
+			long current = System.nanoTime();
+			if (this.prepareNanos >= 0) {
+				prepareToCommit.recordNanos(current - this.prepareNanos);
+			}
+			this.startCompletion(current);
+			fireCommittingTransaction(this.transaction);
+		}
+
+		public void onCommitSuccess(TransactionXid xid) {
+			if (this.completionNanos >= 0) {
+				commitLatency.recordNanos(System.nanoTime() - this.completionNanos);
+			}
+			this.finish();
+			fireCommittedTransaction(this.transaction);
+		}
+
+		public void onCommitFailure(TransactionXid xid) {
+			this.finish();
+			fireCompleteFailure(this.transaction);
+		}
+
+		public void onCommitHeuristicMixed(TransactionXid xid) {
+			this.finish();
+			fireCompleteFailure(this.transaction);
+		}
+
+		public void onCommitHeuristicRolledback(TransactionXid xid) {
+			this.finish();
+			fireCompleteFailure(this.transaction);
+		}
+
+		public void onRollbackStart(TransactionXid xid) {
+			fireRollingBackTransaction(this.transaction);
+		}
+
+		public void onRollbackSuccess(TransactionXid xid) {
+			this.finish();
+			fireRolledbackTransaction(this.transaction);
+		}
+
+		public void onRollbackFailure(TransactionXid xid) {
+			this.finish();
+			fireCompleteFailure(this.transaction);
+		}
+	}
+
+	private static double toMillis(double micros) {
+		return micros / 1000D;
+	}
+
+	public long getBeginCount() {
+		return this.beginCount.sum();
+	}
+
+	public long getActiveCount() {
+		return this.activeCount.sum();
+	}
+
+	public long getPreparingCount() {
+		return this.preparingCount.sum();
+	}
+
+	public long getPreparedCount() {
+		return this.preparedCount.sum();
+	}
+
+	public long getCommittingCount() {
+		return this.committingCount.sum();
+	}
+
+	public long getCommittedCount() {
+		return this.committedCount.sum();
+	}
+
+	public long getRollingBackCount() {
+		return this.rollingBackCount.sum();
+	}
+
+	public long getRolledbackCount() {
+		return this.rolledbackCount.sum();
+	}
+
+	public long getErrorCount() {
+		return this.errorCount.sum();
+	}
+
+	public long getCleanupCount() {
+		return this.cleanupCount.sum();
+	}
+
+	public long getRecoverCount() {
+		return this.recoverCount.sum();
+	}
+
+	public double getBeginToPrepareMean() {
+		return toMillis(this.beginToPrepare.getMean());
+	}
+
+	public double getBeginToPrepareP99() {
+		return toMillis(this.beginToPrepare.getValueAtPercentile(99D));
+	}
+
+	public double getBeginToPrepareMax() {
+		return toMillis(this.beginToPrepare.getMax());
+	}
+
+	public double getPrepareToCommitMean() {
+		return toMillis(this.prepareToCommit.getMean());
+	}
+
+	public double getPrepareToCommitP99() {
+		return toMillis(this.prepareToCommit.getValueAtPercentile(99D));
+	}
+
+	public double getPrepareToCommitMax() {
+		return toMillis(this.prepareToCommit.getMax());
+	}
+
+	public double getCommitMean() {
+		return toMillis(this.commitLatency.getMean());
+	}
+
+	public double getCommitP50() {
+		return toMillis(this.commitLatency.getValueAtPercentile(50D));
+	}
+
+	public double getCommitP99() {
+		return toMillis(this.commitLatency.getValueAtPercentile(99D));
+	}
+
+	public double getCommitMax() {
+		return toMillis(this.commitLatency.getMax());
+	}
+
+	public void resetLatencies() {
+		this.beginToPrepare.reset();
+		this.prepareToCommit.reset();
+		this.commitLatency.reset();
+	}
+
+	public TransactionLatencyHistogram getBeginToPrepare() {
+		return beginToPrepare;
+	}
+
+	public TransactionLatencyHistogram getPrepareToCommit() {
+		return prepareToCommit;
+	}
+
+	public TransactionLatencyHistogram getCommitLatency() {
+		return commitLatency;
+	}
+
+	public String getObjectName() {
+		return objectName;
+	}
+
+	public void setObjectName(String objectName) {
+		this.objectName = objectName;
+	}
+
+}
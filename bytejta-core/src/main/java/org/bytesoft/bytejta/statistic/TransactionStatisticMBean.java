@@ -0,0 +1,67 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.statistic;
+
+/**
+ * JMX view of {@link TransactionStatisticImpl}, latencies are reported in milliseconds.
+ */
+public interface TransactionStatisticMBean {
+
+	public long getBeginCount();
+
+	public long getActiveCount();
+
+	public long getPreparingCount();
+
+	public long getPreparedCount();
+
+	public long getCommittingCount();
+
+	public long getCommittedCount();
+
+	public long getRollingBackCount();
+
+	public long getRolledbackCount();
+
+	public long getErrorCount();
+
+	public long getCleanupCount();
+
+	public long getRecoverCount();
+
+	public double getBeginToPrepareMean();
+
+	public double getBeginToPrepareP99();
+
+	public double getBeginToPrepareMax();
+
+	public double getPrepareToCommitMean();
+
+	public double getPrepareToCommitP99();
+
+	public double getPrepareToCommitMax();
+
+	public double getCommitMean();
+
+	public double getCommitP50();
+
+	public double getCommitP99();
+
+	public double getCommitMax();
+
+	public void resetLatencies();
+
+}
@@ -21,6 +21,8 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
@@ -33,6 +35,8 @@ import org.slf4j.LoggerFactory;
 
 public class LocalXAResource implements XAResource {
 	static final Logger logger = LoggerFactory.getLogger(LocalXAResource.class);
+	static final long TABLE_REVALIDATION_MILLIS = Long.getLong("bytejta.local.table.revalidation.millis", 60 * 1000L);
+	static final Map<String, TableState> tableStateMap = new ConcurrentHashMap<String, TableState>();
 
 	private LocalXAConnection managedConnection;
 	private Xid currentXid;
@@ -238,6 +242,10 @@ public class LocalXAResource implements XAResource {
 
 		Connection connection = this.managedConnection.getPhysicalConnection();
 
+		if (Boolean.FALSE.equals(this.getCachedTableExists())) {
+			return; // the bytejta table is absent, nothing to log
+		} // end-if (Boolean.FALSE.equals(this.getCachedTableExists()))
+
 		PreparedStatement stmt = null;
 		try {
 			stmt = connection.prepareStatement("insert into bytejta(xid, gxid, bxid, ctime) values(?, ?, ?, ?)");
@@ -249,6 +257,10 @@ public class LocalXAResource implements XAResource {
 			if (value == 0) {
 				throw new IllegalStateException("The operation failed and the data was not written to the database!");
 			}
+
+			if (Boolean.TRUE.equals(this.getCachedTableExists()) == false) {
+				this.setCachedTableExists(true);
+			} // end-if (Boolean.TRUE.equals(this.getCachedTableExists()) == false)
 		} catch (SQLException ex) {
 			boolean tableExists = false;
 			try {
@@ -321,6 +333,43 @@ public class LocalXAResource implements XAResource {
 		return new Xid[0];
 	}
 
+	/**
+	 * Returns the presence of the bytejta table recorded by the last probe, or null if it is unknown or older than
+	 * bytejta.local.table.revalidation.millis. Lets a deployment without the table skip the statements that would fail
+	 * and the metadata query that follows them. An absent table is only reported once two probes in a row agree, so a
+	 * single misleading probe does not disable the log.
+	 */
+	protected Boolean getCachedTableExists() {
+		String key = this.getTableStateKey();
+		TableState state = key == null ? null : tableStateMap.get(key);
+		if (state == null) {
+			return null;
+		} else if (System.currentTimeMillis() - state.checkedTime > TABLE_REVALIDATION_MILLIS) {
+			return null;
+		} else if (state.tableExists == false && state.confirmed == false) {
+			return null;
+		}
+		return state.tableExists;
+	}
+
+	protected void setCachedTableExists(boolean tableExists) {
+		String key = this.getTableStateKey();
+		if (key == null) {
+			return;
+		} // end-if (key == null)
+
+		TableState state = tableStateMap.get(key);
+		boolean confirmed = tableExists == false && state != null && state.tableExists == false;
+		tableStateMap.put(key, new TableState(tableExists, confirmed, System.currentTimeMillis()));
+	}
+
+	/**
+	 * Identifies the data source whose table presence is cached, null disables the cache.
+	 */
+	protected String getTableStateKey() {
+		return this.managedConnection == null ? null : this.managedConnection.getResourceId();
+	}
+
 	protected boolean isTableExists(Connection conn) throws SQLException {
 
 		String catalog = null;
@@ -339,13 +388,28 @@ public class LocalXAResource implements XAResource {
 		ResultSet rs = null;
 		try {
 			DatabaseMetaData metadata = conn.getMetaData();
-			rs = metadata.getTables(catalog, schema, "bytejta", null);
-			return rs.next();
+			String tableName = metadata.storesUpperCaseIdentifiers() ? "BYTEJTA" : "bytejta";
+			rs = metadata.getTables(catalog, schema, tableName, null);
+			boolean tableExists = rs.next();
+			this.setCachedTableExists(tableExists);
+			return tableExists;
 		} finally {
 			this.closeQuietly(rs);
 		}
 	}
 
+	static class TableState {
+		final boolean tableExists;
+		final boolean confirmed;
+		final long checkedTime;
+
+		TableState(boolean tableExists, boolean confirmed, long checkedTime) {
+			this.tableExists = tableExists;
+			this.confirmed = confirmed;
+			this.checkedTime = checkedTime;
+		}
+	}
+
 	protected void closeQuietly(ResultSet closeable) {
 		if (closeable != null) {
 			try {
@@ -19,6 +19,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -34,10 +35,29 @@ import org.bytesoft.transaction.xa.XidFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Accesses the local transaction logs in the bytejta table. The recovery scan reads the table in (ctime, xid) order
+ * and expects an index on those columns, which is created on the first scan when bytejta.recovery.index.create is set:
+ *
+ * <pre>
+ * create index idx_bytejta_ctime on bytejta(ctime, xid);
+ * </pre>
+ */
 public class RecoveredResource extends LocalXAResource implements XAResource {
 	static final Logger logger = LoggerFactory.getLogger(RecoveredResource.class);
 
 	private DataSource dataSource;
+	private String resourceId;
+	private int pageSize = Integer.getInteger("bytejta.recovery.page.size", 1000);
+	private int fetchSize = Integer.getInteger("bytejta.recovery.fetch.size", 100);
+	private long recoveryCutoffMillis = Long.getLong("bytejta.recovery.cutoff.millis", 0L);
+	private boolean indexCreationEnabled = Boolean.getBoolean("bytejta.recovery.index.create");
+
+	private boolean scanning;
+	private long scanCutoff;
+	private long lastCtime;
+	private String lastXid;
+	private volatile boolean indexCreated;
 
 	public void recoverable(Xid xid) throws XAException {
 		byte[] globalTransactionId = xid.getGlobalTransactionId();
@@ -78,19 +98,75 @@ public class RecoveredResource extends LocalXAResource implements XAResource {
 		}
 	}
 
-	public Xid[] recover(int flags) throws XAException {
+	/**
+	 * Pages through the rows created before the scan started, less recoveryCutoffMillis, in (ctime, xid) order. A scan
+	 * is started by TMSTARTRSCAN (or by the first call), each call returns at most pageSize xids and an empty array once
+	 * the rows are exhausted, TMENDRSCAN ends the scan. A call passing both flags pages internally and returns every row.
+	 */
+	public synchronized Xid[] recover(int flags) throws XAException {
+		if ((flags & XAResource.TMSTARTRSCAN) == XAResource.TMSTARTRSCAN || this.scanning == false) {
+			this.scanning = true;
+			this.scanCutoff = System.currentTimeMillis() - this.recoveryCutoffMillis;
+			this.lastCtime = -1;
+			this.lastXid = null;
+		} // end-if ((flags & XAResource.TMSTARTRSCAN) == XAResource.TMSTARTRSCAN || this.scanning == false)
+
 		List<Xid> xidList = new ArrayList<Xid>();
+		if (Boolean.FALSE.equals(this.getCachedTableExists())) {
+			return new Xid[0];
+		} // end-if (Boolean.FALSE.equals(this.getCachedTableExists()))
+
+		if ((flags & XAResource.TMSTARTRSCAN) == XAResource.TMSTARTRSCAN
+				&& (flags & XAResource.TMENDRSCAN) == XAResource.TMENDRSCAN) {
+			while (this.recoverPage(xidList) == this.pageSize) {
+				// a single-call scan returns every row
+			}
+		} else {
+			this.recoverPage(xidList);
+		}
+
+		if ((flags & XAResource.TMENDRSCAN) == XAResource.TMENDRSCAN) {
+			this.scanning = false;
+			this.lastXid = null;
+		} // end-if ((flags & XAResource.TMENDRSCAN) == XAResource.TMENDRSCAN)
+
+		Xid[] xidArray = new Xid[xidList.size()];
+		xidList.toArray(xidArray);
+
+		return xidArray;
+	}
 
+	/**
+	 * Appends the next page of at most pageSize xids of the current scan, returns the number of rows read.
+	 */
+	private int recoverPage(List<Xid> xidList) throws XAException {
+		int numberOfRows = 0;
 		Connection conn = null;
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		try {
 			conn = this.dataSource.getConnection();
-			stmt = conn.prepareStatement("select gxid, bxid from bytejta");
+			this.createIndexIfNecessary(conn);
+
+			if (this.lastXid == null) {
+				stmt = conn.prepareStatement("select xid, gxid, bxid, ctime from bytejta where ctime <= ? order by ctime, xid");
+				stmt.setLong(1, this.scanCutoff);
+			} else {
+				stmt = conn.prepareStatement("select xid, gxid, bxid, ctime from bytejta where ctime <= ? "
+						+ "and (ctime > ? or (ctime = ? and xid > ?)) order by ctime, xid");
+				stmt.setLong(1, this.scanCutoff);
+				stmt.setLong(2, this.lastCtime);
+				stmt.setLong(3, this.lastCtime);
+				stmt.setString(4, this.lastXid);
+			}
+			stmt.setMaxRows(this.pageSize);
+			stmt.setFetchSize(Math.min(this.fetchSize, this.pageSize));
+
 			rs = stmt.executeQuery();
 			while (rs.next()) {
-				String gxid = rs.getString(1);
-				String bxid = rs.getString(2);
+				String identifier = rs.getString(1);
+				String gxid = rs.getString(2);
+				String bxid = rs.getString(3);
 				byte[] globalTransactionId = ByteUtils.stringToByteArray(gxid);
 				byte[] branchQualifier = ByteUtils.stringToByteArray(bxid);
 				TransactionXid xid = null;
@@ -100,6 +176,10 @@ public class RecoveredResource extends LocalXAResource implements XAResource {
 					xid = new TransactionXid(XidFactory.JTA_FORMAT_ID, globalTransactionId, branchQualifier);
 				}
 				xidList.add(xid);
+				numberOfRows++;
+
+				this.lastXid = identifier;
+				this.lastCtime = rs.getLong(4);
 			}
 		} catch (Exception ex) {
 			boolean tableExists = false;
@@ -119,10 +199,28 @@ public class RecoveredResource extends LocalXAResource implements XAResource {
 			this.closeQuietly(conn);
 		}
 
-		Xid[] xidArray = new Xid[xidList.size()];
-		xidList.toArray(xidArray);
+		return numberOfRows;
+	}
 
-		return xidArray;
+	/**
+	 * Creates the index the recovery scan relies on, at most once and only if indexCreationEnabled is set. An existing
+	 * index makes the statement fail, which is ignored.
+	 */
+	private void createIndexIfNecessary(Connection conn) {
+		if (this.indexCreationEnabled == false || this.indexCreated) {
+			return;
+		}
+
+		this.indexCreated = true;
+		Statement stmt = null;
+		try {
+			stmt = conn.createStatement();
+			stmt.execute("create index idx_bytejta_ctime on bytejta(ctime, xid)");
+		} catch (Exception ex) {
+			logger.debug("Index idx_bytejta_ctime was not created: {}", ex.getMessage());
+		} finally {
+			this.closeQuietly(stmt);
+		}
 	}
 
 	public void forgetQuietly(Xid xid) {
@@ -136,6 +234,8 @@ public class RecoveredResource extends LocalXAResource implements XAResource {
 	public synchronized void forget(Xid[] xids) throws XAException {
 		if (xids == null || xids.length == 0) {
 			return;
+		} else if (Boolean.FALSE.equals(this.getCachedTableExists())) {
+			return;
 		}
 
 		String[] xidArray = new String[xids.length];
@@ -192,6 +292,8 @@ public class RecoveredResource extends LocalXAResource implements XAResource {
 		if (xid == null) {
 			logger.warn("Error occurred while forgeting local-xa-resource: invalid xid.");
 			return;
+		} else if (Boolean.FALSE.equals(this.getCachedTableExists())) {
+			return;
 		}
 
 		byte[] globalTransactionId = xid.getGlobalTransactionId();
@@ -236,6 +338,10 @@ public class RecoveredResource extends LocalXAResource implements XAResource {
 		}
 	}
 
+	protected String getTableStateKey() {
+		return this.resourceId;
+	}
+
 	private void setAutoCommitIfNecessary(Connection conn, Boolean autoCommit) {
 		if (autoCommit != null) {
 			try {
@@ -254,4 +360,44 @@ public class RecoveredResource extends LocalXAResource implements XAResource {
 		this.dataSource = dataSource;
 	}
 
+	public String getResourceId() {
+		return resourceId;
+	}
+
+	public void setResourceId(String resourceId) {
+		this.resourceId = resourceId;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public void setPageSize(int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	public long getRecoveryCutoffMillis() {
+		return recoveryCutoffMillis;
+	}
+
+	public void setRecoveryCutoffMillis(long recoveryCutoffMillis) {
+		this.recoveryCutoffMillis = recoveryCutoffMillis;
+	}
+
+	public boolean isIndexCreationEnabled() {
+		return indexCreationEnabled;
+	}
+
+	public void setIndexCreationEnabled(boolean indexCreationEnabled) {
+		this.indexCreationEnabled = indexCreationEnabled;
+	}
+
 }
@@ -20,6 +20,7 @@ import java.util.Calendar;
 import java.util.Enumeration;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.bytesoft.common.utils.ByteUtils;
 import org.bytesoft.transaction.xa.TransactionXid;
@@ -35,6 +36,15 @@ public class XidFactoryImpl implements XidFactory {
 	static final byte[] hardwareAddress = new byte[SIZE_OF_MAC];
 	static final AtomicInteger atomic = new AtomicInteger();
 
+	static final long SEQUENCE_MASK = 0xFFFFFFFFFFL; // counter byte and random bytes of the legacy layout
+	static final int SEQUENCE_BLOCK_SIZE = 1024;
+	static final AtomicLong sequence = new AtomicLong(random.nextLong() & SEQUENCE_MASK);
+	static final ThreadLocal<long[]> sequenceBlock = new ThreadLocal<long[]>();
+	static final AtomicLong lastMillis = new AtomicLong();
+
+	private boolean highThroughput;
+	private volatile SecondValue secondValue;
+
 	static {
 		byte[] sourceByteArray = getHardwareAddress();
 		System.arraycopy(sourceByteArray, 0, hardwareAddress, 0, SIZE_OF_MAC);
@@ -82,10 +92,7 @@ public class XidFactoryImpl implements XidFactory {
 			throw new IllegalStateException("The length of globalTransactionId not equals to 16.");
 		}
 
-		byte[] global = new byte[GLOBAL_TRANSACTION_LENGTH];
-		System.arraycopy(unique, 0, global, 0, global.length);
-
-		return new TransactionXid(XidFactory.JTA_FORMAT_ID, global);
+		return new TransactionXid(XidFactory.JTA_FORMAT_ID, unique);
 	}
 
 	public TransactionXid createGlobalXid(byte[] globalTransactionId) {
@@ -116,10 +123,7 @@ public class XidFactoryImpl implements XidFactory {
 			throw new IllegalStateException("The length of branchQulifier not equals to 16.");
 		}
 
-		byte[] branch = new byte[BRANCH_QUALIFIER_LENGTH];
-		System.arraycopy(unique, 0, branch, 0, branch.length);
-
-		return new TransactionXid(XidFactory.JTA_FORMAT_ID, global, branch);
+		return new TransactionXid(XidFactory.JTA_FORMAT_ID, global, unique);
 	}
 
 	public TransactionXid createBranchXid(TransactionXid globalXid, byte[] branchQualifier) {
@@ -144,6 +148,10 @@ public class XidFactoryImpl implements XidFactory {
 	}
 
 	public byte[] generateUniqueKey() {
+		if (this.highThroughput) {
+			return this.generateSequentialKey();
+		} // end-if (this.highThroughput)
+
 		byte[] byteArray = new byte[16];
 
 		Calendar calendar = Calendar.getInstance();
@@ -183,4 +191,100 @@ public class XidFactoryImpl implements XidFactory {
 		return byteArray;
 	}
 
+	/**
+	 * Same layout as the legacy key (mac, time, counter, random), but the time fields are derived from a clock that
+	 * never goes backwards and only recomputed once per second, and the last five bytes carry a 40-bit node sequence
+	 * handed out to each thread in blocks, so neither a shared Random nor a one-byte counter is involved.
+	 */
+	private byte[] generateSequentialKey() {
+		long millis = this.currentMillis();
+		int millisOfSecond = (int) (millis % 1000L);
+		int value = this.getSecondValue(millis / 1000L) | (millisOfSecond >>> 8);
+		long next = this.nextSequence();
+
+		byte[] byteArray = new byte[16];
+		System.arraycopy(hardwareAddress, 0, byteArray, 0, SIZE_OF_MAC);
+		byteArray[6] = (byte) (value >>> 24);
+		byteArray[7] = (byte) (value >>> 16);
+		byteArray[8] = (byte) (value >>> 8);
+		byteArray[9] = (byte) value;
+		byteArray[10] = (byte) ((millisOfSecond & 0xFF) + Byte.MIN_VALUE);
+		byteArray[11] = (byte) (next >>> 32);
+		byteArray[12] = (byte) (next >>> 24);
+		byteArray[13] = (byte) (next >>> 16);
+		byteArray[14] = (byte) (next >>> 8);
+		byteArray[15] = (byte) next;
+		return byteArray;
+	}
+
+	private long currentMillis() {
+		long current = System.currentTimeMillis();
+		long last = lastMillis.get();
+		while (current > last) {
+			if (lastMillis.compareAndSet(last, current)) {
+				return current;
+			}
+			last = lastMillis.get();
+		}
+		return last;
+	}
+
+	private int getSecondValue(long second) {
+		SecondValue current = this.secondValue;
+		if (current != null && current.second == second) {
+			return current.value;
+		}
+
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(second * 1000L);
+		int year = calendar.get(Calendar.YEAR) - 2014;
+		int month = calendar.get(Calendar.MONTH) + 1;
+		int day = calendar.get(Calendar.DAY_OF_MONTH);
+		int hour = calendar.get(Calendar.HOUR_OF_DAY);
+		int minute = calendar.get(Calendar.MINUTE);
+		int sec = calendar.get(Calendar.SECOND);
+
+		int value = (year << 28);
+		value = value | (month << 24);
+		value = value | (day << 19);
+		value = value | (hour << 14);
+		value = value | (minute << 8);
+		value = value | (sec << 2);
+
+		this.secondValue = new SecondValue(second, value);
+		return value;
+	}
+
+	private long nextSequence() {
+		long[] block = sequenceBlock.get();
+		if (block == null) {
+			block = new long[2];
+			sequenceBlock.set(block);
+		}
+
+		if (block[0] == block[1]) {
+			block[0] = sequence.getAndAdd(SEQUENCE_BLOCK_SIZE);
+			block[1] = block[0] + SEQUENCE_BLOCK_SIZE;
+		}
+		return (block[0]++) & SEQUENCE_MASK;
+	}
+
+	public boolean isHighThroughput() {
+		return highThroughput;
+	}
+
+	public void setHighThroughput(boolean highThroughput) {
+		this.highThroughput = highThroughput;
+	}
+
+	static class SecondValue {
+		final long second;
+		final int value;
+
+		SecondValue(long second, int value) {
+			this.second = second;
+			this.value = value;
+		}
+	}
+
 }
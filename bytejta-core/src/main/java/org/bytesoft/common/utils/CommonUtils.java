@@ -20,7 +20,10 @@ import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.UnknownHostException;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -32,38 +35,24 @@ import org.slf4j.LoggerFactory;
 
 public class CommonUtils {
 	static final Logger logger = LoggerFactory.getLogger(CommonUtils.class);
+	static final int MAX_CACHED_ENDPOINTS = 4096;
+	static final Map<String, Endpoint> endpointMap = Collections.synchronizedMap(new LinkedHashMap<String, Endpoint>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
 
-	public static RemoteAddr getRemoteAddr(String identifier) {
-		if (StringUtils.isBlank(identifier)) {
-			return null;
-		} else {
-			String[] values = identifier.split("\\s*:\\s*");
-			if (values.length != 3) {
-				return null;
-			}
-
-			RemoteAddr remoteAddr = new RemoteAddr();
-			remoteAddr.setServerHost(values[0]);
-			remoteAddr.setServerPort(Integer.parseInt(values[2]));
-			return remoteAddr;
+		protected boolean removeEldestEntry(Map.Entry<String, Endpoint> eldest) {
+			return this.size() > MAX_CACHED_ENDPOINTS;
 		}
+	});
+
+	public static RemoteAddr getRemoteAddr(String identifier) {
+		Endpoint endpoint = getEndpoint(identifier);
+		return endpoint == null ? null : endpoint.getRemoteAddr();
 	}
 
 	public static RemoteNode getRemoteNode(String identifier) {
-		if (StringUtils.isBlank(identifier)) {
-			return null;
-		} else {
-			String[] values = identifier.split("\\s*:\\s*");
-			if (values.length != 3) {
-				return null;
-			}
-
-			RemoteNode remoteNode = new RemoteNode();
-			remoteNode.setServerHost(values[0]);
-			remoteNode.setServiceKey(values[1]);
-			remoteNode.setServerPort(Integer.parseInt(values[2]));
-			return remoteNode;
-		}
+		Endpoint endpoint = getEndpoint(identifier);
+		return endpoint == null ? null : endpoint.getRemoteNode();
 	}
 
 	public static RemoteSvc getRemoteSvc(RemoteNode remoteNode) {
@@ -75,25 +64,159 @@ public class CommonUtils {
 	}
 
 	public static RemoteSvc getRemoteSvc(String identifier) {
-		RemoteNode remoteNode = getRemoteNode(identifier);
-		return getRemoteSvc(remoteNode);
+		Endpoint endpoint = getEndpoint(identifier);
+		return endpoint == null ? getRemoteSvc((RemoteNode) null) : endpoint.getRemoteSvc();
 	}
 
 	public static String getApplication(String identifier) {
+		Endpoint endpoint = getEndpoint(identifier);
+		return endpoint == null ? null : endpoint.application;
+	}
+
+	public static String getInstanceKey(String identifier) {
+		Endpoint endpoint = getEndpoint(identifier);
+		return endpoint == null ? null : endpoint.getInstanceKey();
+	}
+
+	/**
+	 * Returns the parsed form of an identifier like "host:application:port", or null if it has not three parts. Parsed
+	 * identifiers are kept in a map holding the MAX_CACHED_ENDPOINTS most recently used ones. The RemoteAddr,
+	 * RemoteNode and RemoteSvc returned above are new instances on every call, the callers may modify them.
+	 */
+	static Endpoint getEndpoint(String identifier) {
 		if (StringUtils.isBlank(identifier)) {
 			return null;
-		} else {
-			String[] values = identifier.split("\\s*:\\s*");
-			return values.length == 3 ? values[1] : null;
 		}
+
+		Endpoint endpoint = endpointMap.get(identifier);
+		if (endpoint == null) {
+			String[] values = splitIdentifier(identifier);
+			if (values == null) {
+				return null;
+			}
+
+			endpoint = new Endpoint(values[0], values[1], values[2]);
+			endpointMap.put(identifier, endpoint);
+		}
+		return endpoint;
 	}
 
-	public static String getInstanceKey(String identifier) {
-		RemoteNode remoteNode = CommonUtils.getRemoteNode(identifier);
-		if (remoteNode == null) {
-			return null;
-		} else {
-			return String.format("%s:%s", remoteNode.getServerHost(), remoteNode.getServerPort());
+	/**
+	 * Equivalent of identifier.split("\\s*:\\s*") that only returns a result of exactly three parts.
+	 */
+	static String[] splitIdentifier(String identifier) {
+		String[] values = new String[3];
+		int count = 0;
+		int begin = 0;
+		int length = identifier.length();
+		for (int i = 0; i <= length; i++) {
+			if (i < length && identifier.charAt(i) != ':') {
+				continue;
+			}
+
+			int from = begin;
+			int to = i;
+			if (count > 0) {
+				while (from < to && isWhitespace(identifier.charAt(from))) {
+					from++;
+				}
+			}
+			if (i < length) {
+				while (to > from && isWhitespace(identifier.charAt(to - 1))) {
+					to--;
+				}
+			}
+
+			if (from < to) {
+				if (count >= values.length) {
+					return null;
+				}
+				values[count++] = identifier.substring(from, to);
+			} else if (i == length || isTrailingEmpty(identifier, i + 1)) {
+				break; // trailing empty strings are discarded by String.split
+			} else if (count >= values.length) {
+				return null;
+			} else {
+				values[count++] = "";
+			}
+			begin = i + 1;
+		}
+		return count == values.length ? values : null;
+	}
+
+	private static boolean isTrailingEmpty(String identifier, int index) {
+		for (int i = index; i < identifier.length(); i++) {
+			char c = identifier.charAt(i);
+			if (c != ':' && isWhitespace(c) == false) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	static final class Endpoint {
+		final String serverHost;
+		final String application;
+		final String serverPort;
+		private final int port;
+		private final boolean portValid;
+		private final String instanceKey;
+
+		Endpoint(String serverHost, String application, String serverPort) {
+			this.serverHost = serverHost;
+			this.application = application;
+			this.serverPort = serverPort;
+
+			int value = 0;
+			boolean valid = false;
+			try {
+				value = Integer.parseInt(serverPort);
+				valid = true;
+			} catch (NumberFormatException ex) {
+				valid = false; // rethrown by getPort
+			}
+			this.port = value;
+			this.portValid = valid;
+			this.instanceKey = valid ? String.format("%s:%s", serverHost, value) : null;
+		}
+
+		private int getPort() {
+			if (this.portValid == false) {
+				Integer.parseInt(this.serverPort);
+			}
+			return this.port;
+		}
+
+		RemoteAddr getRemoteAddr() {
+			RemoteAddr remoteAddr = new RemoteAddr();
+			remoteAddr.setServerHost(this.serverHost);
+			remoteAddr.setServerPort(this.getPort());
+			return remoteAddr;
+		}
+
+		RemoteNode getRemoteNode() {
+			RemoteNode remoteNode = new RemoteNode();
+			remoteNode.setServerHost(this.serverHost);
+			remoteNode.setServiceKey(this.application);
+			remoteNode.setServerPort(this.getPort());
+			return remoteNode;
+		}
+
+		RemoteSvc getRemoteSvc() {
+			RemoteSvc remoteSvc = new RemoteSvc();
+			remoteSvc.setServerHost(this.serverHost);
+			remoteSvc.setServiceKey(this.application);
+			remoteSvc.setServerPort(this.getPort());
+			return remoteSvc;
+		}
+
+		String getInstanceKey() {
+			this.getPort();
+			return this.instanceKey;
 		}
 	}
 
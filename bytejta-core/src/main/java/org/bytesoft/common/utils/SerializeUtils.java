@@ -22,12 +22,15 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
+import org.bytesoft.transaction.TransactionContext;
+import org.bytesoft.transaction.xa.TransactionXid;
 import org.objenesis.strategy.SerializingInstantiatorStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -65,33 +68,56 @@ public class SerializeUtils {
 		}
 	}
 
+	static boolean KRYO_REGISTRATION_ENABLED = false;
+	static {
+		String registration = StringUtils.trimToNull(System.getProperty("bytejta.serializer.kryo.registration"));
+		KRYO_REGISTRATION_ENABLED = StringUtils.equalsIgnoreCase("true", registration);
+	}
+
+	static final int KRYO_BUFFER_SIZE = 512;
+	static final int KRYO_BUFFER_RETAINED = 64 * 1024;
+
+	/* registered classes are written as ids instead of names, every peer has to register the same classes */
+	static final Class<?>[] KRYO_REGISTERED_CLASSES = new Class<?>[] { TransactionContext.class, TransactionXid.class };
+
 	static KryoPool kryoPool = new KryoPool.Builder(new KryoFactory() {
 		public Kryo create() {
 			Kryo kryo = new Kryo();
 			kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new SerializingInstantiatorStrategy()));
+			for (int i = 0; KRYO_REGISTRATION_ENABLED && i < KRYO_REGISTERED_CLASSES.length; i++) {
+				kryo.register(KRYO_REGISTERED_CLASSES[i]);
+			}
 			return kryo;
 		}
 	}).softReferences().build();
 
+	static final ThreadLocal<KryoOutputHolder> kryoOutputs = new ThreadLocal<KryoOutputHolder>() {
+		protected KryoOutputHolder initialValue() {
+			return new KryoOutputHolder();
+		}
+	};
+
 	public static byte[] serializeObject(Serializable obj, int serializerType) throws IOException {
-		int serializer = SERIALIZER_DEFAULT;
-		byte[] dataArray = null;
 		if (serializerType == SERIALIZER_KRYO) {
-			dataArray = kryoSerialize(obj);
-			serializer = SERIALIZER_KRYO;
-		} else if (serializerType == SERIALIZER_HESSIAN) {
-			dataArray = hessianSerialize(obj);
-			serializer = SERIALIZER_HESSIAN;
-		} else {
-			dataArray = javaSerialize(obj);
-			serializer = SERIALIZER_DEFAULT;
+			Output output = getKryoOutput();
+			try {
+				output.writeByte(SERIALIZER_KRYO);
+				kryoWrite(output, obj);
+				return output.toBytes();
+			} finally {
+				releaseKryoOutput(output);
+			}
 		}
 
-		byte[] byteArray = new byte[dataArray.length + 1];
-		byteArray[0] = (byte) serializer;
-		System.arraycopy(dataArray, 0, byteArray, 1, dataArray.length);
-
-		return byteArray;
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		if (serializerType == SERIALIZER_HESSIAN) {
+			baos.write(SERIALIZER_HESSIAN);
+			hessianWrite(baos, obj);
+		} else {
+			baos.write(SERIALIZER_DEFAULT);
+			javaWrite(baos, obj);
+		}
+		return baos.toByteArray();
 	}
 
 	public static byte[] serializeObject(Serializable obj) throws IOException {
@@ -107,22 +133,21 @@ public class SerializeUtils {
 	}
 
 	public static Serializable deserializeObject(byte[] bytes) throws IOException {
-		if (bytes.length == 0) {
+		return deserializeObject(bytes, 0, bytes.length);
+	}
+
+	public static Serializable deserializeObject(byte[] bytes, int offset, int length) throws IOException {
+		if (length <= 0) {
 			throw new IllegalArgumentException();
 		}
 
-		byte[] byteArray = new byte[bytes.length - 1];
-		int serializer = bytes[0];
-
+		int serializer = bytes[offset];
 		if (serializer == SERIALIZER_KRYO) {
-			System.arraycopy(bytes, 1, byteArray, 0, byteArray.length);
-			return kryoDeserialize(byteArray);
+			return kryoDeserialize(bytes, offset + 1, length - 1);
 		} else if (serializer == SERIALIZER_HESSIAN) {
-			System.arraycopy(bytes, 1, byteArray, 0, byteArray.length);
-			return hessianDeserialize(byteArray);
+			return hessianDeserialize(bytes, offset + 1, length - 1);
 		} else if (serializer == SERIALIZER_DEFAULT) {
-			System.arraycopy(bytes, 1, byteArray, 0, byteArray.length);
-			return javaDeserialize(byteArray);
+			return javaDeserialize(bytes, offset + 1, length - 1);
 		} else {
 			throw new IllegalArgumentException();
 		}
@@ -130,17 +155,26 @@ public class SerializeUtils {
 
 	public static byte[] javaSerialize(final Serializable obj) throws IOException {
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(baos));
+		javaWrite(baos, obj);
+		return baos.toByteArray();
+	}
+
+	private static void javaWrite(OutputStream output, Serializable obj) throws IOException {
+		ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(output));
 		try {
 			oos.writeObject(obj);
 		} finally {
 			CommonUtils.closeQuietly(oos);
 		}
-		return baos.toByteArray();
 	}
 
 	public static Serializable javaDeserialize(byte[] byteArray) throws IOException {
-		ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new ByteArrayInputStream(byteArray)));
+		return javaDeserialize(byteArray, 0, byteArray.length);
+	}
+
+	public static Serializable javaDeserialize(byte[] byteArray, int offset, int length) throws IOException {
+		ObjectInputStream ois = new ObjectInputStream(
+				new BufferedInputStream(new ByteArrayInputStream(byteArray, offset, length)));
 		try {
 			return (Serializable) ois.readObject();
 		} catch (ClassNotFoundException ex) {
@@ -151,58 +185,86 @@ public class SerializeUtils {
 	}
 
 	public static byte[] kryoSerialize(final Serializable obj) throws IOException {
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		final Output output = new Output(baos);
-
+		Output output = getKryoOutput();
 		try {
-			kryoPool.run(new KryoCallback<Object>() {
-				public Object execute(Kryo kryo) {
-					kryo.writeClassAndObject(output, obj);
-					return null;
-				}
-			});
+			kryoWrite(output, obj);
+			return output.toBytes();
 		} finally {
-			CommonUtils.closeQuietly(output);
+			releaseKryoOutput(output);
+		}
+	}
+
+	private static void kryoWrite(final Output output, final Serializable obj) {
+		kryoPool.run(new KryoCallback<Object>() {
+			public Object execute(Kryo kryo) {
+				kryo.writeClassAndObject(output, obj);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Returns the output buffer of the current thread, or a new one if it is in use by an enclosing call.
+	 */
+	private static Output getKryoOutput() {
+		KryoOutputHolder holder = kryoOutputs.get();
+		if (holder.inUse) {
+			return new Output(KRYO_BUFFER_SIZE, -1);
 		}
 
-		return baos.toByteArray();
+		holder.inUse = true;
+		return holder.output;
+	}
+
+	private static void releaseKryoOutput(Output output) {
+		KryoOutputHolder holder = kryoOutputs.get();
+		if (holder.output != output) {
+			return; // not the buffer of the current thread
+		} else if (output.getBuffer().length <= KRYO_BUFFER_RETAINED) {
+			output.clear();
+		} else {
+			holder.output = new Output(KRYO_BUFFER_SIZE, -1); // do not retain an oversized buffer
+		}
+		holder.inUse = false;
+	}
+
+	static class KryoOutputHolder {
+		Output output = new Output(KRYO_BUFFER_SIZE, -1);
+		boolean inUse;
 	}
 
 	public static Serializable kryoDeserialize(byte[] byteArray) throws IOException {
-		final Input input = new Input(new ByteArrayInputStream(byteArray));
+		return kryoDeserialize(byteArray, 0, byteArray.length);
+	}
 
-		try {
-			return kryoPool.run(new KryoCallback<Serializable>() {
-				public Serializable execute(Kryo kryo) {
-					return (Serializable) kryo.readClassAndObject(input);
-				}
-			});
-		} finally {
-			CommonUtils.closeQuietly(input);
-		}
+	public static Serializable kryoDeserialize(byte[] byteArray, int offset, int length) throws IOException {
+		final Input input = new Input(byteArray, offset, length); // reads the array in place
+
+		return kryoPool.run(new KryoCallback<Serializable>() {
+			public Serializable execute(Kryo kryo) {
+				return (Serializable) kryo.readClassAndObject(input);
+			}
+		});
 	}
 
 	public static byte[] hessianSerialize(Serializable obj) throws IOException {
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		HessianOutput ho = new HessianOutput(baos);
-		try {
-			ho.writeObject(obj);
-			return baos.toByteArray();
-		} finally {
-			CommonUtils.closeQuietly(baos);
-		}
+		hessianWrite(baos, obj);
+		return baos.toByteArray();
+	}
 
+	private static void hessianWrite(OutputStream output, Serializable obj) throws IOException {
+		HessianOutput ho = new HessianOutput(output);
+		ho.writeObject(obj);
 	}
 
 	public static Serializable hessianDeserialize(byte[] bytes) throws IOException {
-		ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-		HessianInput hi = new HessianInput(bais);
-		try {
-			Object result = hi.readObject();
-			return (Serializable) result;
-		} finally {
-			CommonUtils.closeQuietly(bais);
-		}
+		return hessianDeserialize(bytes, 0, bytes.length);
+	}
+
+	public static Serializable hessianDeserialize(byte[] bytes, int offset, int length) throws IOException {
+		HessianInput hi = new HessianInput(new ByteArrayInputStream(bytes, offset, length));
+		return (Serializable) hi.readObject();
 	}
 
 	public static String serializeClass(Class<?> clazz) {
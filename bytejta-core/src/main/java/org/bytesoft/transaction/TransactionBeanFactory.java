@@ -17,6 +17,7 @@ package org.bytesoft.transaction;
 
 import org.bytesoft.transaction.logging.ArchiveDeserializer;
 import org.bytesoft.transaction.logging.TransactionLogger;
+import org.bytesoft.transaction.supports.TransactionStatistic;
 import org.bytesoft.transaction.supports.TransactionTimer;
 import org.bytesoft.transaction.supports.rpc.TransactionInterceptor;
 import org.bytesoft.transaction.supports.serialize.XAResourceDeserializer;
@@ -46,4 +47,6 @@ public interface TransactionBeanFactory {
 
 	public XAResourceDeserializer getResourceDeserializer();
 
+	public TransactionStatistic getTransactionStatistic();
+
 }
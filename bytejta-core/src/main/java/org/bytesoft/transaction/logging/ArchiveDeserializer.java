@@ -15,12 +15,22 @@
  */
 package org.bytesoft.transaction.logging;
 
+import java.nio.ByteBuffer;
+
 import org.bytesoft.transaction.xa.TransactionXid;
 
 public interface ArchiveDeserializer {
 
 	public byte[] serialize(TransactionXid xid, Object archive);
 
+	/**
+	 * Writes the archive at the current position of the buffer, a BufferOverflowException is thrown if the remaining
+	 * space is not enough. Implementations should override it to avoid the intermediate array.
+	 */
+	public default void serialize(TransactionXid xid, Object archive, ByteBuffer buffer) {
+		buffer.put(this.serialize(xid, archive));
+	}
+
 	public Object deserialize(TransactionXid xid, byte[] array);
 
 }
@@ -0,0 +1,131 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TransactionTimingWheelTest {
+	static final long TICK_MILLIS = 100L;
+	static final long START = 1000000L;
+
+	private final TransactionTimingWheel wheel = new TransactionTimingWheel(8, TICK_MILLIS);
+
+	@Test
+	public void testExpireOnDeadlineTick() {
+		this.wheel.expire(START);
+		TransactionTimingWheel.Entry entry = this.wheel.register(null, START + 250);
+
+		Assert.assertTrue(this.wheel.expire(START + 200).isEmpty());
+		Assert.assertTrue(this.wheel.expire(START + 299).isEmpty());
+
+		List<TransactionTimingWheel.Entry> expiredList = this.wheel.expire(START + 300);
+		Assert.assertEquals(1, expiredList.size());
+		Assert.assertSame(entry, expiredList.get(0));
+		Assert.assertTrue(this.wheel.expire(START + 400).isEmpty());
+	}
+
+	@Test
+	public void testDeadlineBeyondOneRound() {
+		this.wheel.expire(START);
+		this.wheel.register(null, START + 15 * TICK_MILLIS);
+
+		for (long current = START + TICK_MILLIS; current < START + 15 * TICK_MILLIS; current += TICK_MILLIS) {
+			Assert.assertTrue(String.valueOf(current), this.wheel.expire(current).isEmpty());
+		}
+		Assert.assertEquals(1, this.wheel.expire(START + 15 * TICK_MILLIS).size());
+	}
+
+	@Test
+	public void testCancelAndReschedule() {
+		this.wheel.expire(START);
+		TransactionTimingWheel.Entry cancelled = this.wheel.register(null, START + 200);
+		TransactionTimingWheel.Entry rescheduled = this.wheel.register(null, START + 200);
+		cancelled.cancel();
+		rescheduled.reschedule(START + 600);
+
+		Assert.assertTrue(this.wheel.expire(START + 500).isEmpty());
+		List<TransactionTimingWheel.Entry> expiredList = this.wheel.expire(START + 600);
+		Assert.assertEquals(1, expiredList.size());
+		Assert.assertSame(rescheduled, expiredList.get(0));
+		Assert.assertEquals(START + 600, rescheduled.getDeadline());
+
+		rescheduled.reschedule(START + 800);
+		Assert.assertEquals(1, this.wheel.expire(START + 800).size());
+		Assert.assertTrue(this.wheel.expire(START + 2000).isEmpty());
+	}
+
+	@Test
+	public void testRescheduleAfterCancel() {
+		this.wheel.expire(START);
+		TransactionTimingWheel.Entry entry = this.wheel.register(null, START + 200);
+		entry.cancel();
+		entry.reschedule(START + 300); // e.g. a timer pass that was already in flight
+
+		Assert.assertTrue(this.wheel.expire(START + 2000).isEmpty());
+	}
+
+	@Test(timeout = 30000L)
+	public void testConcurrentReschedule() throws InterruptedException {
+		this.wheel.expire(START);
+		final TransactionTimingWheel.Entry entry = this.wheel.register(null, START + 100);
+
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			final int offset = i;
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					for (int j = 0; j < 100000; j++) {
+						entry.reschedule(START + ((j + offset) % 16 + 1) * TICK_MILLIS);
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+
+		entry.reschedule(START + 300);
+		List<TransactionTimingWheel.Entry> expiredList = this.wheel.expire(START + 300);
+		Assert.assertEquals(1, expiredList.size());
+		Assert.assertSame(entry, expiredList.get(0));
+		Assert.assertTrue(this.wheel.expire(START + 10000).isEmpty());
+	}
+
+	@Test
+	public void testDeadlineInElapsedTick() {
+		this.wheel.expire(START + 500);
+		this.wheel.register(null, START + 100);
+
+		Assert.assertTrue(this.wheel.expire(START + 500).isEmpty());
+		Assert.assertEquals(1, this.wheel.expire(START + 600).size());
+	}
+
+	@Test
+	public void testLargeTimeGap() {
+		this.wheel.expire(START);
+		for (int i = 1; i <= 20; i++) {
+			this.wheel.register(null, START + i * 100 + i % 3);
+		}
+
+		Assert.assertEquals(20, this.wheel.expire(START + 100000).size());
+		Assert.assertTrue(this.wheel.expire(START + 200000).isEmpty());
+	}
+
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.deserializer;
+
+import java.nio.ByteBuffer;
+
+import javax.transaction.Status;
+import javax.transaction.xa.XAResource;
+
+import org.bytesoft.bytejta.logging.TransactionArchiveDelta;
+import org.bytesoft.bytejta.logging.XAResourceArchiveBatch;
+import org.bytesoft.bytejta.logging.XAResourceArchiveDelta;
+import org.bytesoft.transaction.xa.TransactionXid;
+import org.bytesoft.transaction.xa.XidFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ArchiveDeltaDeserializerTest {
+	private final ArchiveDeltaDeserializer deserializer = new ArchiveDeltaDeserializer();
+	private final TransactionXid xid = new TransactionXid(XidFactory.JTA_FORMAT_ID,
+			new byte[XidFactory.GLOBAL_TRANSACTION_LENGTH]);
+
+	@Test
+	public void testTransactionDelta() {
+		TransactionArchiveDelta delta = new TransactionArchiveDelta();
+		delta.setStatus(Status.STATUS_COMMITTING);
+		delta.setVote(XAResource.XA_OK);
+		delta.setRecoveredTimes(255);
+		delta.setRecoveredAt(System.currentTimeMillis());
+		delta.setBranchVotes(new byte[] { XAResource.XA_OK, XAResource.XA_RDONLY, -1 });
+		delta.setBranchFlags(new byte[] { 0x1, 0x2, 0x7 });
+
+		TransactionArchiveDelta result = (TransactionArchiveDelta) this.roundTrip(delta);
+		Assert.assertEquals(delta.getStatus(), result.getStatus());
+		Assert.assertEquals(delta.getVote(), result.getVote());
+		Assert.assertEquals(delta.getRecoveredTimes(), result.getRecoveredTimes());
+		Assert.assertEquals(delta.getRecoveredAt(), result.getRecoveredAt());
+		Assert.assertArrayEquals(delta.getBranchVotes(), result.getBranchVotes());
+		Assert.assertArrayEquals(delta.getBranchFlags(), result.getBranchFlags());
+
+		delta.setRecoveredTimes(0);
+		delta.setBranchVotes(new byte[0]);
+		delta.setBranchFlags(new byte[0]);
+		result = (TransactionArchiveDelta) this.roundTrip(delta);
+		Assert.assertEquals(0, result.getRecoveredTimes());
+		Assert.assertEquals(0, result.getBranchVotes().length);
+	}
+
+	@Test
+	public void testResourceDelta() {
+		XAResourceArchiveDelta delta = this.createResourceDelta(1, XAResource.XA_RDONLY, 0x3);
+		this.assertResourceDelta(delta, (XAResourceArchiveDelta) this.roundTrip(delta));
+	}
+
+	@Test
+	public void testResourceBatch() {
+		XAResourceArchiveBatch batch = new XAResourceArchiveBatch();
+		for (int i = 0; i < 5; i++) {
+			batch.getDeltaList().add(this.createResourceDelta(i, i % 2 == 0 ? XAResource.XA_OK : -1, i));
+		}
+
+		XAResourceArchiveBatch result = (XAResourceArchiveBatch) this.roundTrip(batch);
+		Assert.assertEquals(batch.getDeltaList().size(), result.getDeltaList().size());
+		for (int i = 0; i < batch.getDeltaList().size(); i++) {
+			this.assertResourceDelta(batch.getDeltaList().get(i), result.getDeltaList().get(i));
+		}
+	}
+
+	@Test
+	public void testManyBranches() {
+		int numberOfBranches = 300;
+		TransactionArchiveDelta delta = new TransactionArchiveDelta();
+		byte[] branchVotes = new byte[numberOfBranches];
+		byte[] branchFlags = new byte[numberOfBranches];
+		XAResourceArchiveBatch batch = new XAResourceArchiveBatch();
+		for (int i = 0; i < numberOfBranches; i++) {
+			branchVotes[i] = (byte) (i % 3);
+			branchFlags[i] = (byte) i;
+			batch.getDeltaList().add(this.createResourceDelta(i, XAResource.XA_OK, i % 8));
+		}
+		delta.setBranchVotes(branchVotes);
+		delta.setBranchFlags(branchFlags);
+
+		TransactionArchiveDelta result = (TransactionArchiveDelta) this.roundTrip(delta);
+		Assert.assertArrayEquals(branchVotes, result.getBranchVotes());
+		Assert.assertArrayEquals(branchFlags, result.getBranchFlags());
+
+		XAResourceArchiveBatch batchResult = (XAResourceArchiveBatch) this.roundTrip(batch);
+		Assert.assertEquals(numberOfBranches, batchResult.getDeltaList().size());
+		this.assertResourceDelta(batch.getDeltaList().get(numberOfBranches - 1),
+				batchResult.getDeltaList().get(numberOfBranches - 1));
+	}
+
+	@Test
+	public void testRecoveredTimesSaturate() {
+		TransactionArchiveDelta delta = new TransactionArchiveDelta();
+		delta.setBranchVotes(new byte[0]);
+		delta.setBranchFlags(new byte[0]);
+		delta.setRecoveredTimes(256);
+
+		TransactionArchiveDelta result = (TransactionArchiveDelta) this.roundTrip(delta);
+		Assert.assertEquals(ArchiveDeltaDeserializer.MAX_RECOVERED_TIMES, result.getRecoveredTimes());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooManyBranches() {
+		XAResourceArchiveBatch batch = new XAResourceArchiveBatch();
+		XAResourceArchiveDelta resourceDelta = this.createResourceDelta(0, XAResource.XA_OK, 0);
+		for (int i = 0; i <= ArchiveDeltaDeserializer.MAX_BRANCHES; i++) {
+			batch.getDeltaList().add(resourceDelta);
+		}
+		this.deserializer.serialize(this.xid, batch);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownType() {
+		this.deserializer.deserialize(this.xid, new byte[] { 0x7 });
+	}
+
+	/**
+	 * Encodes through both serialize methods, which must write the same bytes, and decodes the result.
+	 */
+	private Object roundTrip(Object delta) {
+		byte[] byteArray = this.deserializer.serialize(this.xid, delta);
+
+		ByteBuffer buffer = ByteBuffer.allocate(byteArray.length + 16);
+		buffer.put((byte) 0x7F);
+		this.deserializer.serialize(this.xid, delta, buffer);
+		Assert.assertEquals(1 + byteArray.length, buffer.position());
+
+		byte[] written = new byte[byteArray.length];
+		System.arraycopy(buffer.array(), 1, written, 0, written.length);
+		Assert.assertArrayEquals(byteArray, written);
+
+		return this.deserializer.deserialize(this.xid, byteArray);
+	}
+
+	private XAResourceArchiveDelta createResourceDelta(int branch, int vote, int flags) {
+		byte[] branchQualifier = new byte[XidFactory.BRANCH_QUALIFIER_LENGTH];
+		ByteBuffer.wrap(branchQualifier).putInt(branch);
+
+		XAResourceArchiveDelta delta = new XAResourceArchiveDelta();
+		delta.setBranchQualifier(branchQualifier);
+		delta.setVote(vote);
+		delta.setFlags(flags);
+		return delta;
+	}
+
+	private void assertResourceDelta(XAResourceArchiveDelta expected, XAResourceArchiveDelta actual) {
+		Assert.assertArrayEquals(expected.getBranchQualifier(), actual.getBranchQualifier());
+		Assert.assertEquals(expected.getVote(), actual.getVote());
+		Assert.assertEquals(expected.getFlags(), actual.getFlags());
+	}
+
+}
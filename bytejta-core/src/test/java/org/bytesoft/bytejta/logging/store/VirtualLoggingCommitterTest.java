@@ -0,0 +1,104 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.store;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class VirtualLoggingCommitterTest {
+
+	@Test(timeout = 10000L)
+	public void testRuntimeExceptionFailsOnlyItsBatch() {
+		final AtomicInteger counter = new AtomicInteger();
+		VirtualLoggingCommitter committer = this.createCommitter(new TestLoggingSystem() {
+			void writeGroup(List<ByteBuffer> recordList) {
+				if (counter.incrementAndGet() == 1) {
+					throw new IllegalStateException("first");
+				}
+			}
+		});
+
+		try {
+			committer.commit(ByteBuffer.allocate(8));
+			Assert.fail();
+		} catch (IllegalStateException ex) {
+			Assert.assertEquals("first", ex.getMessage());
+		}
+
+		committer.commit(ByteBuffer.allocate(8));
+		Assert.assertEquals(2, counter.get());
+		committer.release();
+	}
+
+	@Test(timeout = 10000L)
+	public void testErrorStopsCommitter() {
+		final Error error = new OutOfMemoryError("test");
+		VirtualLoggingCommitter committer = this.createCommitter(new TestLoggingSystem() {
+			void writeGroup(List<ByteBuffer> recordList) {
+				throw error;
+			}
+		});
+
+		try {
+			committer.commit(ByteBuffer.allocate(8));
+			Assert.fail();
+		} catch (IllegalStateException ex) {
+			Assert.assertSame(error, ex.getCause());
+		}
+
+		try {
+			committer.commit(ByteBuffer.allocate(8)); // fails fast instead of waiting for the dead flusher
+			Assert.fail();
+		} catch (IllegalStateException ex) {
+			Assert.assertSame(error, ex.getCause());
+		}
+		committer.release();
+	}
+
+	private VirtualLoggingCommitter createCommitter(VirtualLoggingSystemImpl loggingSystem) {
+		VirtualLoggingCommitter committer = new VirtualLoggingCommitter(loggingSystem, 4, 4, 0);
+		committer.start();
+		return committer;
+	}
+
+	static class TestLoggingSystem extends VirtualLoggingSystemImpl {
+		public File getDefaultDirectory() {
+			return null;
+		}
+
+		public int getMajorVersion() {
+			return 0;
+		}
+
+		public int getMinorVersion() {
+			return 6;
+		}
+
+		public String getLoggingIdentifier() {
+			return "org.bytesoft.bytejta.logging.test";
+		}
+
+		public String getLoggingFilePrefix() {
+			return "test-";
+		}
+	}
+
+}
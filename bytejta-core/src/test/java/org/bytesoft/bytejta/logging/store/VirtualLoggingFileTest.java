@@ -0,0 +1,92 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VirtualLoggingFileTest {
+	static final byte[] IDENTIFIER = "org.bytesoft.bytejta.logging.test".getBytes();
+
+	private File directory;
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		this.directory = Files.createTempDirectory("bytejta-logging").toFile();
+		this.file = new File(this.directory, "bytejta-test-1.log");
+	}
+
+	@After
+	public void tearDown() {
+		FileUtils.deleteQuietly(this.directory);
+	}
+
+	@Test
+	public void testUpgradeInPlace() throws IOException {
+		this.openLogging(6, 6).closeQuietly();
+		Assert.assertEquals(6, this.readMinorVersion());
+
+		this.openLogging(7, 6).closeQuietly();
+		Assert.assertEquals(7, this.readMinorVersion());
+
+		this.openLogging(7, 6).closeQuietly(); // already upgraded
+		Assert.assertEquals(7, this.readMinorVersion());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testNewerVersionIsRefused() throws IOException {
+		this.openLogging(7, 6).closeQuietly();
+		this.openLogging(6, 6);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testIncompatibleVersionIsRefused() throws IOException {
+		this.openLogging(5, 5).closeQuietly();
+		this.openLogging(7, 6);
+	}
+
+	private VirtualLoggingFile openLogging(int minor, int compatibleMinor) throws IOException {
+		VirtualLoggingFile logging = new VirtualLoggingFile(this.file, 0, minor, compatibleMinor);
+		logging.setIdentifier(IDENTIFIER);
+		try {
+			logging.initialize(true);
+		} catch (IllegalStateException ex) {
+			logging.closeQuietly();
+			throw ex;
+		}
+		return logging;
+	}
+
+	private int readMinorVersion() throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(this.file, "r");
+		try {
+			raf.seek(IDENTIFIER.length + 1);
+			return raf.read();
+		} finally {
+			raf.close();
+		}
+	}
+
+}
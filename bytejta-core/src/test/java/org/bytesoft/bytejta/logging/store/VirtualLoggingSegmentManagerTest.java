@@ -0,0 +1,308 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.bytesoft.transaction.logging.store.VirtualLoggingSystem;
+import org.bytesoft.transaction.xa.XidFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VirtualLoggingSegmentManagerTest {
+	static final String PREFIX = "bytejta-test-";
+	static final byte[] IDENTIFIER = "org.bytesoft.bytejta.logging.test".getBytes();
+
+	private File directory;
+
+	@Before
+	public void setUp() throws IOException {
+		this.directory = Files.createTempDirectory("bytejta-segment").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		FileUtils.deleteQuietly(this.directory);
+	}
+
+	@Test
+	public void testAppendAndRecover() throws IOException {
+		VirtualLoggingSegmentManager manager = this.createManager(1024L * 1024L);
+		manager.append(this.createRecord(1, VirtualLoggingSystem.OPERATOR_CREATE, "1-create"));
+		manager.append(this.createRecord(2, VirtualLoggingSystem.OPERATOR_CREATE, "2-create"));
+
+		ByteBuffer buffer = ByteBuffer.allocate(1024);
+		buffer.put(this.createRecord(1, VirtualLoggingSystem.OPERATOR_MOFIFY, "1-modify"));
+		buffer.put(this.createRecord(2, VirtualLoggingSystem.OPERATOR_MOFIFY, "2-modify"));
+		buffer.flip();
+		manager.append(buffer); // several records in one append
+		Assert.assertFalse(buffer.hasRemaining());
+
+		manager.append(this.createRecord(2, VirtualLoggingSystem.OPERATOR_DELETE, ""));
+		manager.close();
+
+		VirtualLoggingSegmentManager recovered = this.createManager(1024L * 1024L);
+		List<String> recordList = this.readRecords(recovered); // the deleted transaction is not visited
+		Assert.assertEquals(Arrays.asList("1:1:1-create", "1:2:1-modify"), recordList);
+
+		recovered.append(this.createRecord(3, VirtualLoggingSystem.OPERATOR_CREATE, "3-create"));
+		Assert.assertEquals(Arrays.asList("1:1:1-create", "1:2:1-modify", "3:1:3-create"), this.readRecords(recovered));
+		recovered.close();
+	}
+
+	@Test
+	public void testCompactionKeepsLiveChains() throws IOException {
+		VirtualLoggingSegmentManager manager = this.createManager(4 * 1024L);
+		for (int key = 0; key < 100; key++) {
+			manager.append(this.createRecord(key, VirtualLoggingSystem.OPERATOR_CREATE, this.createValue(key, "create")));
+			manager.append(this.createRecord(key, VirtualLoggingSystem.OPERATOR_MOFIFY, this.createValue(key, "modify")));
+		}
+		for (int key = 2; key < 100; key++) {
+			manager.append(this.createRecord(key, VirtualLoggingSystem.OPERATOR_DELETE, ""));
+		}
+
+		int segmentCount = manager.getSegmentCount();
+		Assert.assertTrue(segmentCount > 2);
+
+		manager.compactIfNecessary();
+		Assert.assertTrue(manager.getSegmentCount() < segmentCount);
+
+		Map<Integer, List<String>> expected = new LinkedHashMap<Integer, List<String>>();
+		expected.put(0, Arrays.asList(this.createValue(0, "create"), this.createValue(0, "modify")));
+		expected.put(1, Arrays.asList(this.createValue(1, "create"), this.createValue(1, "modify")));
+		Assert.assertEquals(expected, this.getLiveChains(manager));
+		manager.close();
+
+		VirtualLoggingSegmentManager recovered = this.createManager(4 * 1024L);
+		Assert.assertEquals(manager.getSegmentCount(), recovered.getSegmentCount());
+		Assert.assertEquals(expected, this.getLiveChains(recovered));
+		recovered.close();
+	}
+
+	/**
+	 * The chain of transaction 1 spans the first and the third segment. Compaction relocates it and stops at the third
+	 * segment, which keeps a stale copy of the modify record across the restart.
+	 */
+	@Test
+	public void testRelocatedChainSurvivesRestart() throws IOException {
+		long segmentSize = 4 * 1024L;
+		VirtualLoggingSegmentManager manager = this.createManager(segmentSize);
+		manager.append(this.createRecord(1, VirtualLoggingSystem.OPERATOR_CREATE, this.createValue(1, "create")));
+		for (int key = 100; manager.getActiveEndIndex() / segmentSize < 2; key++) {
+			manager.append(this.createRecord(key, VirtualLoggingSystem.OPERATOR_CREATE, this.createValue(key, "create")));
+			manager.append(this.createRecord(key, VirtualLoggingSystem.OPERATOR_DELETE, ""));
+		}
+		manager.append(this.createRecord(1, VirtualLoggingSystem.OPERATOR_MOFIFY, this.createValue(1, "modify")));
+		for (int key = 200; key < 230; key++) {
+			manager.append(this.createRecord(key, VirtualLoggingSystem.OPERATOR_CREATE, this.createValue(key, "create")));
+		}
+
+		List<String> expected = Arrays.asList(this.createValue(1, "create"), this.createValue(1, "modify"));
+		int segmentCount = manager.getSegmentCount();
+		manager.compactIfNecessary();
+		Assert.assertEquals(segmentCount - 2, manager.getSegmentCount());
+		Assert.assertEquals(expected, this.getLiveChains(manager).get(1));
+		manager.close();
+
+		VirtualLoggingSegmentManager recovered = this.createManager(segmentSize);
+		Assert.assertEquals(segmentCount - 2, recovered.getSegmentCount());
+		Map<Integer, List<String>> chains = this.getLiveChains(recovered);
+		Assert.assertEquals(31, chains.size());
+		Assert.assertEquals(expected, chains.get(1));
+
+		for (int key = 200; key < 230; key++) {
+			recovered.append(this.createRecord(key, VirtualLoggingSystem.OPERATOR_DELETE, ""));
+		}
+		recovered.compactIfNecessary(); // the third segment only holds dead and stale records now
+		Assert.assertEquals(1, recovered.getSegmentCount());
+		Assert.assertEquals(expected, this.getLiveChains(recovered).get(1));
+		recovered.close();
+
+		recovered = this.createManager(segmentSize);
+		Assert.assertEquals(1, recovered.getSegmentCount());
+		Assert.assertEquals(Collections.singletonMap(1, expected), this.getLiveChains(recovered));
+		recovered.close();
+	}
+
+	@Test
+	public void testRelocationCutOffByCrashIsIgnored() throws IOException {
+		VirtualLoggingSegmentManager manager = this.createManager(1024L * 1024L);
+		manager.append(this.createRecord(1, VirtualLoggingSystem.OPERATOR_CREATE, "1-create"));
+		manager.append(this.createRecord(1, VirtualLoggingSystem.OPERATOR_MOFIFY, "1-modify"));
+		long endIndex = manager.getActiveEndIndex();
+		manager.close();
+
+		VirtualLoggingSegment segment = VirtualLoggingSegment.open(this.directory.listFiles()[0], 1, IDENTIFIER, 0, 6);
+		segment.recover(null);
+		segment.append(ByteBuffer.wrap(this.createRecord(1, VirtualLoggingSystem.OPERATOR_CREATE, "1-create")), 2);
+		segment.closeQuietly(); // the second record of the relocated group is never written
+		Assert.assertTrue(endIndex < segment.getEndIndex());
+
+		VirtualLoggingSegmentManager recovered = this.createManager(1024L * 1024L);
+		Assert.assertEquals(Arrays.asList("1:1:1-create", "1:2:1-modify"), this.readRecords(recovered));
+		recovered.close();
+	}
+
+	@Test
+	public void testTornRecordIsTruncated() throws IOException {
+		VirtualLoggingSegmentManager manager = this.createManager(1024L * 1024L);
+		manager.append(this.createRecord(1, VirtualLoggingSystem.OPERATOR_CREATE, "1-create"));
+		manager.append(this.createRecord(2, VirtualLoggingSystem.OPERATOR_CREATE, "2-create"));
+		long endIndex = manager.getActiveEndIndex();
+		manager.close();
+
+		byte[] torn = this.createRecord(3, VirtualLoggingSystem.OPERATOR_CREATE, this.createValue(3, "create"));
+		this.writeSegment(endIndex, Arrays.copyOf(torn, torn.length - 10)); // header and part of the value, no trailer
+
+		VirtualLoggingSegmentManager recovered = this.createManager(1024L * 1024L);
+		Assert.assertEquals(Arrays.asList("1:1:1-create", "2:1:2-create"), this.readRecords(recovered));
+		Assert.assertEquals(endIndex, recovered.getActiveEndIndex());
+
+		recovered.append(this.createRecord(4, VirtualLoggingSystem.OPERATOR_CREATE, "4"));
+		recovered.close();
+
+		recovered = this.createManager(1024L * 1024L);
+		Assert.assertEquals(Arrays.asList("1:1:1-create", "2:1:2-create", "4:1:4"), this.readRecords(recovered));
+		recovered.close();
+	}
+
+	@Test
+	public void testCorruptedRecordIsTruncated() throws IOException {
+		VirtualLoggingSegmentManager manager = this.createManager(1024L * 1024L);
+		manager.append(this.createRecord(1, VirtualLoggingSystem.OPERATOR_CREATE, "1-create"));
+		long endIndex = manager.getActiveEndIndex();
+		manager.append(this.createRecord(2, VirtualLoggingSystem.OPERATOR_CREATE, "2-create"));
+		manager.close();
+
+		this.writeSegment(endIndex + VirtualLoggingSystemImpl.RECORD_HEADER_SIZE, "X".getBytes());
+
+		VirtualLoggingSegmentManager recovered = this.createManager(1024L * 1024L);
+		Assert.assertEquals(Arrays.asList("1:1:1-create"), this.readRecords(recovered));
+		Assert.assertEquals(endIndex, recovered.getActiveEndIndex());
+		recovered.close();
+	}
+
+	@Test
+	public void testUpgradeRollsNewSegment() throws IOException {
+		VirtualLoggingSegmentManager manager = this.createManager(1024L * 1024L);
+		manager.append(this.createRecord(1, VirtualLoggingSystem.OPERATOR_CREATE, "1-create"));
+		manager.close();
+
+		VirtualLoggingSegmentManager upgraded = new VirtualLoggingSegmentManager(this.directory, PREFIX, IDENTIFIER, 0, 7,
+				6);
+		upgraded.initialize();
+		Assert.assertEquals(2, upgraded.getSegmentCount()); // the 0.6 segment is kept as it is
+		upgraded.append(this.createRecord(2, VirtualLoggingSystem.OPERATOR_CREATE, "2-create"));
+		Assert.assertEquals(Arrays.asList("1:1:1-create", "2:1:2-create"), this.readRecords(upgraded));
+		upgraded.close();
+
+		try {
+			this.createManager(1024L * 1024L);
+			Assert.fail();
+		} catch (IllegalStateException ex) {
+			// the 0.7 segment cannot be read by a 0.6 release
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSegmentSizeLimit() {
+		VirtualLoggingSegmentManager manager = new VirtualLoggingSegmentManager(this.directory, PREFIX, IDENTIFIER, 0, 6);
+		manager.setSegmentSize(VirtualLoggingSegmentManager.MAX_SEGMENT_SIZE + 1);
+	}
+
+	private VirtualLoggingSegmentManager createManager(long segmentSize) throws IOException {
+		VirtualLoggingSegmentManager manager = new VirtualLoggingSegmentManager(this.directory, PREFIX, IDENTIFIER, 0, 6);
+		manager.setSegmentSize(segmentSize);
+		manager.initialize();
+		return manager;
+	}
+
+	private void writeSegment(long position, byte[] byteArray) throws IOException {
+		File[] files = this.directory.listFiles();
+		Assert.assertEquals(1, files.length);
+		RandomAccessFile raf = new RandomAccessFile(files[0], "rw");
+		try {
+			raf.seek(position);
+			raf.write(byteArray);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private String createValue(int key, String operation) {
+		char[] padding = new char[64];
+		Arrays.fill(padding, 'x');
+		return String.format("%s-%s-%s", key, operation, new String(padding));
+	}
+
+	private byte[] createRecord(int key, int operator, String value) {
+		byte[] valueByteArray = value.getBytes();
+		ByteBuffer buffer = ByteBuffer.allocate(VirtualLoggingSystemImpl.RECORD_HEADER_SIZE + valueByteArray.length);
+		buffer.putInt(XidFactory.GLOBAL_TRANSACTION_LENGTH - 4, key);
+		buffer.position(XidFactory.GLOBAL_TRANSACTION_LENGTH);
+		buffer.put((byte) operator);
+		buffer.putInt(valueByteArray.length);
+		buffer.put(valueByteArray);
+		return buffer.array();
+	}
+
+	private List<String> readRecords(VirtualLoggingSegmentManager manager) {
+		List<String> recordList = new ArrayList<String>();
+		VirtualLoggingCursor cursor = manager.createCursor();
+		while (cursor.next()) {
+			int key = ByteBuffer.wrap(cursor.getKey()).getInt(XidFactory.GLOBAL_TRANSACTION_LENGTH - 4);
+			recordList.add(String.format("%s:%s:%s", key, cursor.getOperator(), new String(cursor.getValue())));
+		}
+		return recordList;
+	}
+
+	/**
+	 * Groups the visited records by transaction, a delete (never visited by the segmented log) drops the chain.
+	 */
+	private Map<Integer, List<String>> getLiveChains(VirtualLoggingSegmentManager manager) {
+		Map<Integer, List<String>> chains = new LinkedHashMap<Integer, List<String>>();
+		VirtualLoggingCursor cursor = manager.createCursor();
+		while (cursor.next()) {
+			int key = ByteBuffer.wrap(cursor.getKey()).getInt(XidFactory.GLOBAL_TRANSACTION_LENGTH - 4);
+			if (cursor.getOperator() == VirtualLoggingSystem.OPERATOR_DELETE) {
+				chains.remove(key);
+				continue;
+			}
+
+			List<String> chain = chains.get(key);
+			if (chain == null) {
+				chain = new ArrayList<String>();
+				chains.put(key, chain);
+			}
+			chain.add(new String(cursor.getValue()));
+		}
+		return chains;
+	}
+
+}
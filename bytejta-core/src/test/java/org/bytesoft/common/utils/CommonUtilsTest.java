@@ -0,0 +1,94 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.common.utils;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.bytesoft.transaction.remote.RemoteNode;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CommonUtilsTest {
+
+	@Test
+	public void testSplitIdentifierMatchesRegex() {
+		String[] identifiers = new String[] { "", ":", "::", ":::", "a:b:c", "a : b : c", " a:b:c ", "a:b:c:", "a:b:c::",
+				"a:b:c: ", "a::c", ":b:c", "a:b:", "a:b: ", "a:b", "a:b:c:d", "\ta\t:\tb\t:\tc\t", "a: :c", " : : ",
+				"127.0.0.1:bytejta-sample:8080", "127.0.0.1 :bytejta-sample: 8080" };
+		for (int i = 0; i < identifiers.length; i++) {
+			this.assertSplitIdentifier(identifiers[i]);
+		}
+
+		char[] alphabet = new char[] { 'a', '1', ':', ':', ' ', '\t' };
+		Random random = new Random(20161018L);
+		for (int i = 0; i < 100000; i++) {
+			char[] chars = new char[random.nextInt(12)];
+			for (int j = 0; j < chars.length; j++) {
+				chars[j] = alphabet[random.nextInt(alphabet.length)];
+			}
+			this.assertSplitIdentifier(new String(chars));
+		}
+	}
+
+	private void assertSplitIdentifier(String identifier) {
+		String[] values = identifier.split("\\s*:\\s*");
+		String[] expected = values.length == 3 ? values : null;
+		String[] actual = CommonUtils.splitIdentifier(identifier);
+		Assert.assertTrue(String.format("identifier= [%s], expected= %s, actual= %s", identifier,
+				Arrays.toString(expected), Arrays.toString(actual)), Arrays.equals(expected, actual));
+	}
+
+	@Test
+	public void testRemoteNodeIsNotShared() {
+		String identifier = "127.0.0.1:bytejta-sample:8080";
+		RemoteNode remoteNode = CommonUtils.getRemoteNode(identifier);
+		remoteNode.setServerPort(9090);
+		remoteNode.setServiceKey("modified");
+
+		RemoteNode expected = CommonUtils.getRemoteNode(identifier);
+		Assert.assertEquals(8080, expected.getServerPort());
+		Assert.assertEquals("bytejta-sample", expected.getServiceKey());
+		Assert.assertEquals("127.0.0.1:8080", CommonUtils.getInstanceKey(identifier));
+	}
+
+	@Test
+	public void testInvalidPort() {
+		String identifier = "127.0.0.1:bytejta-sample:port";
+		Assert.assertEquals("bytejta-sample", CommonUtils.getApplication(identifier));
+		try {
+			CommonUtils.getRemoteNode(identifier);
+			Assert.fail();
+		} catch (NumberFormatException ex) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() {
+		CommonUtils.endpointMap.clear();
+		for (int i = 0; i < CommonUtils.MAX_CACHED_ENDPOINTS; i++) {
+			CommonUtils.getEndpoint(String.format("127.0.0.1:bytejta-sample:%s", i));
+		}
+		CommonUtils.Endpoint endpoint = CommonUtils.getEndpoint("127.0.0.1:bytejta-sample:0");
+		CommonUtils.getEndpoint("127.0.0.1:bytejta-sample:8080");
+
+		Assert.assertEquals(CommonUtils.MAX_CACHED_ENDPOINTS, CommonUtils.endpointMap.size());
+		Assert.assertSame(endpoint, CommonUtils.endpointMap.get("127.0.0.1:bytejta-sample:0"));
+		Assert.assertNull(CommonUtils.endpointMap.get("127.0.0.1:bytejta-sample:1"));
+	}
+
+}
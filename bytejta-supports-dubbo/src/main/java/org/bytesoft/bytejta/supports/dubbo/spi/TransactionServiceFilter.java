@@ -32,6 +32,7 @@ import org.bytesoft.bytejta.supports.dubbo.DubboRemoteCoordinator;
 import org.bytesoft.bytejta.supports.dubbo.TransactionBeanRegistry;
 import org.bytesoft.bytejta.supports.internal.RemoteCoordinatorRegistry;
 import org.bytesoft.bytejta.supports.internal.RemoteCoordinatorRegistry.InvocationDef;
+import org.bytesoft.bytejta.supports.rpc.TransactionContextCodec;
 import org.bytesoft.bytejta.supports.rpc.TransactionRequestImpl;
 import org.bytesoft.bytejta.supports.rpc.TransactionResponseImpl;
 import org.bytesoft.common.utils.ByteUtils;
@@ -328,10 +329,8 @@ public class TransactionServiceFilter implements Filter {
 		String propagatedBy = invocation.getAttachment(RemoteCoordinator.class.getName());
 		if (StringUtils.isNotBlank(transactionContextContent)) {
 			byte[] requestByteArray = ByteUtils.stringToByteArray(transactionContextContent);
-			ByteArrayInputStream bais = new ByteArrayInputStream(requestByteArray);
-			HessianInput input = new HessianInput(bais);
 			try {
-				TransactionContext remoteTransactionContext = (TransactionContext) input.readObject();
+				TransactionContext remoteTransactionContext = this.deserializeTransactionContext(requestByteArray);
 				remoteTransactionContext.setPropagatedBy(propagatedBy);
 				request.setTransactionContext(remoteTransactionContext);
 			} catch (IOException ex) {
@@ -603,15 +602,14 @@ public class TransactionServiceFilter implements Filter {
 
 		transactionInterceptor.beforeSendRequest(request);
 		if (request.getTransactionContext() != null) {
-			ByteArrayOutputStream baos = new ByteArrayOutputStream();
-			HessianOutput output = new HessianOutput(baos);
+			byte[] byteArray = null;
 			try {
-				output.writeObject(request.getTransactionContext());
+				byteArray = this.serializeTransactionContext(request.getTransactionContext());
 			} catch (IOException ex) {
 				logger.error("Error occurred in remote call!", ex);
 				throw new RpcException("Error occurred in remote call!", ex);
 			}
-			String transactionContextContent = ByteUtils.byteArrayToString(baos.toByteArray());
+			String transactionContextContent = ByteUtils.byteArrayToString(byteArray);
 			attachments.put(TransactionContext.class.getName(), transactionContextContent);
 		}
 
@@ -628,9 +626,7 @@ public class TransactionServiceFilter implements Filter {
 			if (request.getTransactionContext() != null) {
 				String transactionContextContent = invocation.getAttachment(TransactionContext.class.getName());
 				byte[] byteArray = ByteUtils.stringToByteArray(transactionContextContent);
-				ByteArrayInputStream bais = new ByteArrayInputStream(byteArray);
-				HessianInput input = new HessianInput(bais);
-				TransactionContext remoteTransactionContext = (TransactionContext) input.readObject();
+				TransactionContext remoteTransactionContext = this.deserializeTransactionContext(byteArray);
 				response.setTransactionContext(remoteTransactionContext);
 			}
 		} catch (IOException ex) {
@@ -651,6 +647,26 @@ public class TransactionServiceFilter implements Filter {
 
 	}
 
+	private byte[] serializeTransactionContext(TransactionContext transactionContext) throws IOException {
+		if (TransactionContextCodec.isEncodingPreferred(transactionContext)) {
+			return TransactionContextCodec.encode(transactionContext);
+		}
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		HessianOutput output = new HessianOutput(baos);
+		output.writeObject(transactionContext);
+		return baos.toByteArray();
+	}
+
+	private TransactionContext deserializeTransactionContext(byte[] byteArray) throws IOException {
+		if (TransactionContextCodec.isEncoded(byteArray)) {
+			return TransactionContextCodec.decode(byteArray);
+		}
+
+		HessianInput input = new HessianInput(new ByteArrayInputStream(byteArray));
+		return (TransactionContext) input.readObject();
+	}
+
 	private void registerRemoteParticipantIfNecessary(String instanceId) {
 		RemoteCoordinatorRegistry participantRegistry = RemoteCoordinatorRegistry.getInstance();
 
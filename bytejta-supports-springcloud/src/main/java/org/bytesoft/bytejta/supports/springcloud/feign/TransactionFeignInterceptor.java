@@ -20,8 +20,8 @@ import java.util.Base64;
 import java.util.Collection;
 import java.util.Map;
 
+import org.bytesoft.bytejta.supports.rpc.TransactionContextCodec;
 import org.bytesoft.bytejta.supports.springcloud.SpringCloudBeanRegistry;
-import org.bytesoft.common.utils.SerializeUtils;
 import org.bytesoft.transaction.Transaction;
 import org.bytesoft.transaction.TransactionBeanFactory;
 import org.bytesoft.transaction.TransactionContext;
@@ -50,7 +50,7 @@ public class TransactionFeignInterceptor
 
 		try {
 			TransactionContext transactionContext = transaction.getTransactionContext();
-			byte[] byteArray = SerializeUtils.serializeObject(transactionContext);
+			byte[] byteArray = TransactionContextCodec.serialize(transactionContext);
 
 			String transactionText = Base64.getEncoder().encodeToString(byteArray);
 
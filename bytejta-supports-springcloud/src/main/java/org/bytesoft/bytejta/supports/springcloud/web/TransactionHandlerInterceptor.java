@@ -21,11 +21,11 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang.StringUtils;
+import org.bytesoft.bytejta.supports.rpc.TransactionContextCodec;
 import org.bytesoft.bytejta.supports.rpc.TransactionRequestImpl;
 import org.bytesoft.bytejta.supports.rpc.TransactionResponseImpl;
 import org.bytesoft.bytejta.supports.springcloud.SpringCloudBeanRegistry;
 import org.bytesoft.bytejta.supports.springcloud.controller.TransactionCoordinatorController;
-import org.bytesoft.common.utils.SerializeUtils;
 import org.bytesoft.transaction.Transaction;
 import org.bytesoft.transaction.TransactionBeanFactory;
 import org.bytesoft.transaction.TransactionContext;
@@ -84,7 +84,7 @@ public class TransactionHandlerInterceptor implements HandlerInterceptor, Transa
 
 		TransactionContext transactionContext = null;
 		if (byteArray != null && byteArray.length > 0) {
-			transactionContext = (TransactionContext) SerializeUtils.deserializeObject(byteArray);
+			transactionContext = TransactionContextCodec.deserialize(byteArray);
 			transactionContext.setPropagated(true);
 			transactionContext.setPropagatedBy(propagationText);
 		}
@@ -97,7 +97,7 @@ public class TransactionHandlerInterceptor implements HandlerInterceptor, Transa
 
 		TransactionManager transactionManager = beanFactory.getTransactionManager();
 		Transaction transaction = transactionManager.getTransactionQuietly();
-		byte[] responseByteArray = SerializeUtils.serializeObject(transaction.getTransactionContext());
+		byte[] responseByteArray = TransactionContextCodec.serialize(transaction.getTransactionContext());
 		String responseTransactionStr = Base64.getEncoder().encodeToString(responseByteArray);
 		response.setHeader(HEADER_TRANCACTION_KEY, responseTransactionStr);
 		response.setHeader(HEADER_PROPAGATION_KEY, this.identifier);
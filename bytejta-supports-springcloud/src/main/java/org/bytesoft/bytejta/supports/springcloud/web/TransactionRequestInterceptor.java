@@ -23,12 +23,12 @@ import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
 import org.bytesoft.bytejta.TransactionImpl;
+import org.bytesoft.bytejta.supports.rpc.TransactionContextCodec;
 import org.bytesoft.bytejta.supports.rpc.TransactionRequestImpl;
 import org.bytesoft.bytejta.supports.rpc.TransactionResponseImpl;
 import org.bytesoft.bytejta.supports.springcloud.SpringCloudBeanRegistry;
 import org.bytesoft.bytejta.supports.springcloud.loadbalancer.TransactionLoadBalancerInterceptor;
 import org.bytesoft.common.utils.CommonUtils;
-import org.bytesoft.common.utils.SerializeUtils;
 import org.bytesoft.transaction.TransactionBeanFactory;
 import org.bytesoft.transaction.TransactionContext;
 import org.bytesoft.transaction.TransactionManager;
@@ -199,7 +199,7 @@ public class TransactionRequestInterceptor
 
 		TransactionContext transactionContext = transaction.getTransactionContext();
 
-		byte[] reqByteArray = SerializeUtils.serializeObject(transactionContext);
+		byte[] reqByteArray = TransactionContextCodec.serialize(transactionContext);
 		String reqTransactionStr = Base64.getEncoder().encodeToString(reqByteArray);
 
 		HttpHeaders reqHeaders = httpRequest.getHeaders();
@@ -226,7 +226,7 @@ public class TransactionRequestInterceptor
 		String transactionText = StringUtils.trimToNull(respTransactionStr);
 		byte[] byteArray = StringUtils.isBlank(transactionText) ? null : Base64.getDecoder().decode(transactionText);
 		TransactionContext serverContext = byteArray == null || byteArray.length == 0 //
-				? null : (TransactionContext) SerializeUtils.deserializeObject(byteArray);
+				? null : TransactionContextCodec.deserialize(byteArray);
 
 		TransactionResponseImpl txResp = new TransactionResponseImpl();
 		txResp.setTransactionContext(serverContext);
@@ -31,9 +31,10 @@ import org.bytesoft.transaction.Transaction;
 import org.bytesoft.transaction.TransactionContext;
 import org.bytesoft.transaction.supports.resource.XAResourceDescriptor;
 import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.beans.factory.DisposableBean;
 
 public class LocalXADataSource /* extends TransactionListenerAdapter */
-		implements XADataSource, DataSource, DataSourceHolder, BeanNameAware {
+		implements XADataSource, DataSource, DataSourceHolder, BeanNameAware, DisposableBean {
 	private PrintWriter logWriter;
 	private int loginTimeout;
 
@@ -41,6 +42,7 @@ public class LocalXADataSource /* extends TransactionListenerAdapter */
 	private String beanName;
 	@javax.annotation.Resource
 	private TransactionManager transactionManager;
+	private LocalXAForgetQueue forgetQueue;
 
 	public Connection getConnection() throws SQLException {
 		try {
@@ -72,6 +74,9 @@ public class LocalXADataSource /* extends TransactionListenerAdapter */
 			xacon = this.getXAConnection();
 			LogicalConnection connection = xacon.getConnection();
 			descriptor = xacon.getXAResource(loggingRequired);
+			if (loggingRequired && this.forgetQueue != null) {
+				this.forgetQueue.register(transaction, descriptor);
+			} // end-if (loggingRequired && this.forgetQueue != null)
 			transaction.enlistResource(descriptor);
 
 			return connection;
@@ -115,6 +120,9 @@ public class LocalXADataSource /* extends TransactionListenerAdapter */
 			xacon = this.getXAConnection(username, password);
 			LogicalConnection connection = xacon.getConnection();
 			descriptor = xacon.getXAResource(loggingRequired);
+			if (loggingRequired && this.forgetQueue != null) {
+				this.forgetQueue.register(transaction, descriptor);
+			} // end-if (loggingRequired && this.forgetQueue != null)
 			transaction.enlistResource(descriptor);
 
 			return connection;
@@ -167,6 +175,20 @@ public class LocalXADataSource /* extends TransactionListenerAdapter */
 
 	public void setBeanName(String name) {
 		this.beanName = name;
+		this.initializeForgetQueueIfNecessary();
+	}
+
+	public void destroy() {
+		if (this.forgetQueue != null) {
+			this.forgetQueue.close();
+		} // end-if (this.forgetQueue != null)
+	}
+
+	private void initializeForgetQueueIfNecessary() {
+		if (this.forgetQueue != null) {
+			this.forgetQueue.setIdentifier(this.beanName);
+			this.forgetQueue.setDataSource(this.dataSource);
+		} // end-if (this.forgetQueue != null)
 	}
 
 	public PrintWriter getLogWriter() {
@@ -196,6 +218,7 @@ public class LocalXADataSource /* extends TransactionListenerAdapter */
 		} else {
 			this.dataSource = dataSource;
 		}
+		this.initializeForgetQueueIfNecessary();
 	}
 
 	public TransactionManager getTransactionManager() {
@@ -206,4 +229,17 @@ public class LocalXADataSource /* extends TransactionListenerAdapter */
 		this.transactionManager = transactionManager;
 	}
 
+	public LocalXAForgetQueue getForgetQueue() {
+		return forgetQueue;
+	}
+
+	/**
+	 * Deletes the local transaction logs of committed transactions in the background, they are left in the bytejta
+	 * table if not set.
+	 */
+	public void setForgetQueue(LocalXAForgetQueue forgetQueue) {
+		this.forgetQueue = forgetQueue;
+		this.initializeForgetQueueIfNecessary();
+	}
+
 }
@@ -0,0 +1,312 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.supports.jdbc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+import org.bytesoft.bytejta.TransactionBeanFactoryImpl;
+import org.bytesoft.transaction.Transaction;
+import org.bytesoft.transaction.TransactionRepository;
+import org.bytesoft.transaction.supports.TransactionListenerAdapter;
+import org.bytesoft.transaction.supports.TransactionResourceListener;
+import org.bytesoft.transaction.xa.TransactionXid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deletes the rows that the last resource of committed transactions has written to the bytejta table, in batches and
+ * off the committing thread. A row is only deleted once the transaction manager has forgotten its transaction, the
+ * rows of transactions left to recovery are kept. Rows whose transaction is still being completed are retried after
+ * delayMillis, at most capacity of them are held and the oldest are left to recovery beyond that. Pending deletes are
+ * lost on a crash, which only leaves rows behind as before.
+ */
+public class LocalXAForgetQueue implements Runnable {
+	static final Logger logger = LoggerFactory.getLogger(LocalXAForgetQueue.class);
+
+	private BlockingQueue<ForgetEntry> queue;
+	private final ArrayDeque<ForgetEntry> deferredEntries = new ArrayDeque<ForgetEntry>(); // owned by the worker
+	private final LongAdder forgottenCount = new LongAdder();
+	private final LongAdder rejectedCount = new LongAdder();
+	private volatile Thread worker;
+	private volatile boolean closed;
+
+	private String identifier;
+	private DataSource dataSource;
+	private int batchSize = 128;
+	private long delayMillis = 1000L;
+	private int capacity = 1024 * 16;
+	private long offerTimeoutMillis = 1000L;
+
+	/**
+	 * Registers the listener that queues the row of the given local resource once the transaction has committed.
+	 */
+	public void register(Transaction transaction, XAResource descriptor) {
+		ForgetListener listener = new ForgetListener(descriptor);
+		transaction.registerTransactionResourceListener(listener);
+		transaction.registerTransactionListener(listener);
+	}
+
+	/**
+	 * Queues a row, waiting at most offerTimeoutMillis while the queue is full. A row that can not be queued is left in
+	 * the table.
+	 */
+	public void forget(TransactionXid globalXid, Xid branchXid) {
+		this.startIfNecessary();
+		if (this.closed) {
+			this.rejectedCount.increment();
+			return;
+		} // end-if (this.closed)
+
+		try {
+			if (this.queue.offer(new ForgetEntry(globalXid, branchXid), this.offerTimeoutMillis,
+					TimeUnit.MILLISECONDS) == false) {
+				this.rejectedCount.increment();
+				logger.debug("The forget queue of {} is full, the local transaction log is left to recovery.",
+						this.identifier);
+			} // end-if (this.queue.offer(...) == false)
+		} catch (InterruptedException ex) {
+			this.rejectedCount.increment();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void startIfNecessary() {
+		if (this.worker == null) {
+			this.start();
+		} // end-if (this.worker == null)
+	}
+
+	private synchronized void start() {
+		if (this.worker == null && this.closed == false) {
+			this.queue = new LinkedBlockingQueue<ForgetEntry>(this.capacity);
+			Thread thread = new Thread(this, "bytejta-local-forget-" + this.identifier);
+			thread.setDaemon(true);
+			thread.start();
+			this.worker = thread;
+		}
+	}
+
+	public void run() {
+		List<ForgetEntry> entryList = new ArrayList<ForgetEntry>();
+		while (this.closed == false) {
+			try {
+				ForgetEntry entry = this.queue.poll(this.delayMillis, TimeUnit.MILLISECONDS);
+				if (entry != null) {
+					entryList.add(entry);
+					this.queue.drainTo(entryList, Math.max(this.batchSize - entryList.size(), 0));
+				} // end-if (entry != null)
+			} catch (InterruptedException ex) {
+				break;
+			}
+
+			this.retryDeferredEntries(entryList);
+			if (entryList.isEmpty()) {
+				continue;
+			} else if (entryList.size() < this.batchSize
+					&& System.currentTimeMillis() - entryList.get(0).createdTime < this.delayMillis) {
+				continue; // wait for a full batch
+			}
+
+			this.forgetEntries(entryList);
+			entryList.clear();
+		}
+
+		this.queue.drainTo(entryList);
+		entryList.addAll(this.deferredEntries);
+		this.deferredEntries.clear();
+		this.forgetEntries(entryList);
+	}
+
+	private void retryDeferredEntries(List<ForgetEntry> entryList) {
+		long retryTime = System.currentTimeMillis() - this.delayMillis;
+		while (entryList.size() < this.batchSize && this.deferredEntries.isEmpty() == false
+				&& this.deferredEntries.peekFirst().deferredTime <= retryTime) {
+			entryList.add(this.deferredEntries.pollFirst());
+		}
+	}
+
+	private void deferEntry(ForgetEntry entry) {
+		if (this.deferredEntries.size() >= this.capacity) {
+			this.deferredEntries.pollFirst();
+			this.rejectedCount.increment(); // the oldest row is left to recovery
+		} // end-if (this.deferredEntries.size() >= this.capacity)
+
+		entry.deferredTime = System.currentTimeMillis();
+		this.deferredEntries.offerLast(entry);
+	}
+
+	/**
+	 * Deletes the rows of the forgotten transactions, the entries of transactions still being completed are deferred.
+	 */
+	private void forgetEntries(List<ForgetEntry> entryList) {
+		TransactionRepository transactionRepository = TransactionBeanFactoryImpl.getInstance().getTransactionRepository();
+		List<Xid> xidList = new ArrayList<Xid>();
+		for (int i = 0; i < entryList.size(); i++) {
+			ForgetEntry entry = entryList.get(i);
+			if (transactionRepository.getTransaction(entry.globalXid) != null) {
+				this.deferEntry(entry); // not forgotten yet
+			} else if (transactionRepository.getErrorTransaction(entry.globalXid) == null) {
+				xidList.add(entry.branchXid);
+			} // end-if (transactionRepository.getTransaction(entry.globalXid) != null)
+		}
+
+		RecoveredResource resource = new RecoveredResource();
+		resource.setDataSource(this.dataSource);
+		resource.setResourceId(this.identifier);
+		for (int i = 0; i < xidList.size(); i += this.batchSize) {
+			List<Xid> batchList = xidList.subList(i, Math.min(i + this.batchSize, xidList.size()));
+			Xid[] xidArray = new Xid[batchList.size()];
+			batchList.toArray(xidArray);
+			try {
+				resource.forget(xidArray);
+				this.forgottenCount.add(xidArray.length);
+			} catch (XAException ex) {
+				logger.warn("Error occurred while forgetting local transaction logs of {}, errorCode= {}.",
+						this.identifier, ex.errorCode);
+			} catch (RuntimeException ex) {
+				logger.warn("Error occurred while forgetting local transaction logs of {}.", this.identifier, ex);
+			}
+		}
+	}
+
+	/**
+	 * Stops the worker after it has deleted the rows queued so far.
+	 */
+	public void close() {
+		Thread thread = null;
+		synchronized (this) {
+			this.closed = true;
+			thread = this.worker;
+		}
+
+		if (thread != null) {
+			thread.interrupt();
+			try {
+				thread.join(this.delayMillis + 5000L);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		} // end-if (thread != null)
+	}
+
+	class ForgetListener extends TransactionListenerAdapter implements TransactionResourceListener {
+		private final XAResource descriptor;
+		private Xid branchXid;
+
+		ForgetListener(XAResource descriptor) {
+			this.descriptor = descriptor;
+		}
+
+		public void onEnlistResource(Xid xid, XAResource xares) {
+			if (xares == this.descriptor) {
+				this.branchXid = xid;
+			} // end-if (xares == this.descriptor)
+		}
+
+		public void onDelistResource(Xid xid, XAResource xares) {
+		}
+
+		public void onCommitSuccess(TransactionXid xid) {
+			if (this.branchXid != null) {
+				forget(xid, this.branchXid);
+			} // end-if (this.branchXid != null)
+		}
+	}
+
+	static class ForgetEntry {
+		final TransactionXid globalXid;
+		final Xid branchXid;
+		final long createdTime = System.currentTimeMillis();
+		long deferredTime;
+
+		ForgetEntry(TransactionXid globalXid, Xid branchXid) {
+			this.globalXid = globalXid;
+			this.branchXid = branchXid;
+		}
+	}
+
+	public int getQueueSize() {
+		return this.queue == null ? 0 : this.queue.size();
+	}
+
+	public long getForgottenCount() {
+		return this.forgottenCount.sum();
+	}
+
+	public long getRejectedCount() {
+		return this.rejectedCount.sum();
+	}
+
+	public String getIdentifier() {
+		return identifier;
+	}
+
+	public void setIdentifier(String identifier) {
+		this.identifier = identifier;
+	}
+
+	public DataSource getDataSource() {
+		return dataSource;
+	}
+
+	public void setDataSource(DataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public long getDelayMillis() {
+		return delayMillis;
+	}
+
+	public void setDelayMillis(long delayMillis) {
+		this.delayMillis = delayMillis;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public void setCapacity(int capacity) {
+		this.capacity = capacity;
+	}
+
+	public long getOfferTimeoutMillis() {
+		return offerTimeoutMillis;
+	}
+
+	public void setOfferTimeoutMillis(long offerTimeoutMillis) {
+		this.offerTimeoutMillis = offerTimeoutMillis;
+	}
+
+}
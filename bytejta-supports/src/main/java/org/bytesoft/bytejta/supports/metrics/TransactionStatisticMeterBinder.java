@@ -0,0 +1,130 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.supports.metrics;
+
+import java.util.function.ToDoubleFunction;
+
+import org.bytesoft.bytejta.statistic.TransactionLatencyHistogram;
+import org.bytesoft.bytejta.statistic.TransactionStatisticImpl;
+import org.bytesoft.transaction.TransactionBeanFactory;
+import org.bytesoft.transaction.aware.TransactionBeanFactoryAware;
+import org.bytesoft.transaction.supports.TransactionStatistic;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Publishes the transaction statistic to Micrometer. Declare it as a bean in an application that has micrometer-core
+ * on its classpath, Spring Boot binds every MeterBinder bean to its registry.
+ */
+public class TransactionStatisticMeterBinder implements MeterBinder, TransactionBeanFactoryAware {
+	static final double[] PERCENTILES = new double[] { 50D, 99D, 99.9D };
+
+	@javax.inject.Inject
+	private TransactionBeanFactory beanFactory;
+	private String prefix = "bytejta.transactions";
+
+	public void bindTo(MeterRegistry registry) {
+		TransactionStatistic transactionStatistic = this.beanFactory.getTransactionStatistic();
+		if (TransactionStatisticImpl.class.isInstance(transactionStatistic) == false) {
+			return;
+		}
+
+		TransactionStatisticImpl statistic = (TransactionStatisticImpl) transactionStatistic;
+		this.bindCounter(registry, statistic, "begin", new ToDoubleFunction<TransactionStatisticImpl>() {
+			public double applyAsDouble(TransactionStatisticImpl value) {
+				return value.getBeginCount();
+			}
+		});
+		this.bindCounter(registry, statistic, "committed", new ToDoubleFunction<TransactionStatisticImpl>() {
+			public double applyAsDouble(TransactionStatisticImpl value) {
+				return value.getCommittedCount();
+			}
+		});
+		this.bindCounter(registry, statistic, "rolledback", new ToDoubleFunction<TransactionStatisticImpl>() {
+			public double applyAsDouble(TransactionStatisticImpl value) {
+				return value.getRolledbackCount();
+			}
+		});
+		this.bindCounter(registry, statistic, "error", new ToDoubleFunction<TransactionStatisticImpl>() {
+			public double applyAsDouble(TransactionStatisticImpl value) {
+				return value.getErrorCount();
+			}
+		});
+		this.bindCounter(registry, statistic, "recovered", new ToDoubleFunction<TransactionStatisticImpl>() {
+			public double applyAsDouble(TransactionStatisticImpl value) {
+				return value.getRecoverCount();
+			}
+		});
+
+		Gauge.builder(this.prefix + ".active", statistic, new ToDoubleFunction<TransactionStatisticImpl>() {
+			public double applyAsDouble(TransactionStatisticImpl value) {
+				return value.getActiveCount();
+			}
+		}).description("Transactions begun and not yet completed").register(registry);
+
+		this.bindLatency(registry, "begin.prepare", statistic.getBeginToPrepare());
+		this.bindLatency(registry, "prepare.commit", statistic.getPrepareToCommit());
+		this.bindLatency(registry, "commit", statistic.getCommitLatency());
+	}
+
+	private void bindCounter(MeterRegistry registry, TransactionStatisticImpl statistic, String name,
+			ToDoubleFunction<TransactionStatisticImpl> function) {
+		FunctionCounter.builder(this.prefix + "." + name, statistic, function).register(registry);
+	}
+
+	private void bindLatency(MeterRegistry registry, String name, TransactionLatencyHistogram histogram) {
+		String meterName = this.prefix + ".latency." + name;
+		Gauge.builder(meterName + ".mean", histogram, new ToDoubleFunction<TransactionLatencyHistogram>() {
+			public double applyAsDouble(TransactionLatencyHistogram value) {
+				return value.getMean() / 1000D;
+			}
+		}).baseUnit("milliseconds").register(registry);
+		Gauge.builder(meterName + ".max", histogram, new ToDoubleFunction<TransactionLatencyHistogram>() {
+			public double applyAsDouble(TransactionLatencyHistogram value) {
+				return value.getMax() / 1000D;
+			}
+		}).baseUnit("milliseconds").register(registry);
+
+		for (int i = 0; i < PERCENTILES.length; i++) {
+			final double percentile = PERCENTILES[i];
+			Gauge.builder(meterName + ".percentile", histogram, new ToDoubleFunction<TransactionLatencyHistogram>() {
+				public double applyAsDouble(TransactionLatencyHistogram value) {
+					return value.getValueAtPercentile(percentile) / 1000D;
+				}
+			}).tag("percentile", String.valueOf(percentile / 100D)).baseUnit("milliseconds").register(registry);
+		}
+	}
+
+	public String getPrefix() {
+		return prefix;
+	}
+
+	public void setPrefix(String prefix) {
+		this.prefix = prefix;
+	}
+
+	public TransactionBeanFactory getBeanFactory() {
+		return this.beanFactory;
+	}
+
+	public void setBeanFactory(TransactionBeanFactory tbf) {
+		this.beanFactory = tbf;
+	}
+
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright 2014-2017 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.supports.resource.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+import javax.sql.StatementEventListener;
+import javax.sql.XAConnection;
+import javax.transaction.xa.XAResource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The handle of a pooled connection given to one caller of {@link XAConnectionPool#getXAConnection()}. Handles of the
+ * same transaction share the physical connection and its logical connection, closing a handle or its logical
+ * connection never closes the logical connection still used through another handle. Changes of the auto-commit mode,
+ * isolation level, read-only flag and catalog are undone when the connection goes back to the pool, and the listeners
+ * registered through a handle are removed when it is closed.
+ */
+class PooledXAConnection implements XAConnection, ConnectionEventListener {
+	static final Logger logger = LoggerFactory.getLogger(PooledXAConnection.class);
+
+	private final Set<ConnectionEventListener> connectionEventListeners = new HashSet<ConnectionEventListener>();
+	private final Set<StatementEventListener> statementEventListeners = new CopyOnWriteArraySet<StatementEventListener>();
+	private final XAConnectionPool connectionPool;
+	private final XAConnectionImpl managedConnection;
+	private LogicalConnectionHandler logicalConnection;
+	private boolean closed;
+
+	PooledXAConnection(XAConnectionPool connectionPool, XAConnectionImpl managedConnection) {
+		this.connectionPool = connectionPool;
+		this.managedConnection = managedConnection;
+		managedConnection.addConnectionEventListener(this);
+	}
+
+	public synchronized Connection getConnection() throws SQLException {
+		if (this.closed) {
+			throw new SQLException("The pooled connection has already been closed!");
+		} else if (this.logicalConnection != null) {
+			this.logicalConnection.closeQuietly(); // only one logical connection is open per handle
+		}
+
+		Connection sharedConnection = this.managedConnection.getSharedConnection();
+		LogicalConnectionHandler handler = new LogicalConnectionHandler(sharedConnection);
+		Connection delegateConnection = (Connection) Proxy.newProxyInstance(PooledXAConnection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, handler);
+		this.logicalConnection = handler;
+
+		ConnectionImpl connection = new ConnectionImpl();
+		connection.setManagedConnection(this.managedConnection);
+		connection.setDelegate(delegateConnection);
+		return connection;
+	}
+
+	public XAResource getXAResource() throws SQLException {
+		return this.managedConnection.getXAResource();
+	}
+
+	public void close() throws SQLException {
+		synchronized (this) {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+			if (this.logicalConnection != null) {
+				this.logicalConnection.closeQuietly();
+			} // end-if (this.logicalConnection != null)
+		}
+
+		this.managedConnection.removeConnectionEventListener(this);
+		for (Iterator<StatementEventListener> itr = this.statementEventListeners.iterator(); itr.hasNext();) {
+			this.managedConnection.removeStatementEventListener(itr.next());
+		}
+		this.statementEventListeners.clear();
+		synchronized (this) {
+			this.connectionEventListeners.clear();
+		}
+
+		this.connectionPool.releaseConnection(this.managedConnection);
+	}
+
+	/**
+	 * Close events of the shared logical connection are not forwarded, each handle fires its own.
+	 */
+	public void connectionClosed(ConnectionEvent event) {
+	}
+
+	public void connectionErrorOccurred(ConnectionEvent event) {
+		this.fireConnectionEvent(event.getSQLException(), true);
+	}
+
+	private void fireConnectionEvent(SQLException sqlException, boolean error) {
+		ConnectionEventListener[] listeners = null;
+		synchronized (this) {
+			listeners = this.connectionEventListeners.toArray(new ConnectionEventListener[0]);
+		}
+
+		ConnectionEvent connectionEvent = new ConnectionEvent(this, sqlException);
+		for (int i = 0; i < listeners.length; i++) {
+			try {
+				if (error) {
+					listeners[i].connectionErrorOccurred(connectionEvent);
+				} else {
+					listeners[i].connectionClosed(connectionEvent);
+				}
+			} catch (RuntimeException rex) {
+				logger.warn("Error occurred!", rex);
+			}
+		}
+	}
+
+	public synchronized void addConnectionEventListener(ConnectionEventListener listener) {
+		this.connectionEventListeners.add(listener);
+	}
+
+	public synchronized void removeConnectionEventListener(ConnectionEventListener listener) {
+		Iterator<ConnectionEventListener> itr = this.connectionEventListeners.iterator();
+		while (itr.hasNext()) {
+			if (itr.next() == listener) {
+				itr.remove();
+			}
+		}
+	}
+
+	public void addStatementEventListener(StatementEventListener listener) {
+		this.statementEventListeners.add(listener);
+		this.managedConnection.addStatementEventListener(listener);
+	}
+
+	public void removeStatementEventListener(StatementEventListener listener) {
+		this.statementEventListeners.remove(listener);
+		this.managedConnection.removeStatementEventListener(listener);
+	}
+
+	class LogicalConnectionHandler implements InvocationHandler {
+		private final Connection delegate;
+		private boolean released;
+
+		LogicalConnectionHandler(Connection delegate) {
+			this.delegate = delegate;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String methodName = method.getName();
+			if ("close".equals(methodName) && method.getParameterTypes().length == 0) {
+				if (this.release()) {
+					fireConnectionEvent(null, false);
+				} // end-if (this.release())
+				return null;
+			} else if ("isClosed".equals(methodName) && method.getParameterTypes().length == 0) {
+				return this.isReleased() ? true : this.delegate.isClosed();
+			} else if (Object.class.equals(method.getDeclaringClass())) {
+				return this.invokeDelegate(proxy, method, args);
+			} else if (this.isReleased()) {
+				throw new SQLException("Connection has already been closed!");
+			} else if (this.isSessionStateChanged(methodName)) {
+				managedConnection.snapshotSessionStateIfNecessary(this.delegate);
+			}
+
+			return this.invokeDelegate(proxy, method, args);
+		}
+
+		private Object invokeDelegate(Object proxy, Method method, Object[] args) throws Throwable {
+			if ("equals".equals(method.getName()) && method.getParameterTypes().length == 1) {
+				return proxy == args[0];
+			} else if ("hashCode".equals(method.getName()) && method.getParameterTypes().length == 0) {
+				return System.identityHashCode(proxy);
+			}
+
+			try {
+				return method.invoke(this.delegate, args);
+			} catch (InvocationTargetException ex) {
+				throw ex.getTargetException();
+			} catch (IllegalAccessException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+
+		private boolean isSessionStateChanged(String methodName) {
+			return "setAutoCommit".equals(methodName) || "setTransactionIsolation".equals(methodName)
+					|| "setReadOnly".equals(methodName) || "setCatalog".equals(methodName);
+		}
+
+		private boolean release() {
+			synchronized (PooledXAConnection.this) {
+				if (this.released) {
+					return false;
+				}
+				this.released = true;
+				if (logicalConnection == this) {
+					logicalConnection = null;
+				} // end-if (logicalConnection == this)
+			}
+			managedConnection.releaseSharedConnection();
+			return true;
+		}
+
+		private boolean isReleased() {
+			synchronized (PooledXAConnection.this) {
+				return this.released;
+			}
+		}
+
+		void closeQuietly() {
+			this.release();
+		}
+	}
+
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright 2014-2017 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.supports.resource.jdbc;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+import org.bytesoft.transaction.supports.resource.XAResourceDescriptor;
+
+/**
+ * Reports the branch boundaries of a pooled connection to its pool: the connection is pinned to the global transaction
+ * by start and released once the branch has been committed or rolled back.
+ */
+class PooledXAResource implements XAResource {
+	private final XAConnectionPool pool;
+	private final XAConnectionImpl connection;
+	private final XAResource delegate;
+
+	PooledXAResource(XAConnectionPool pool, XAConnectionImpl connection, XAResource delegate) {
+		this.pool = pool;
+		this.connection = connection;
+		this.delegate = delegate;
+	}
+
+	public void start(Xid xid, int flags) throws XAException {
+		try {
+			this.delegate.start(xid, flags);
+		} catch (XAException ex) {
+			this.checkConnectionError(ex);
+			throw ex;
+		}
+		this.pool.pinConnection(this.connection, xid);
+	}
+
+	public void end(Xid xid, int flags) throws XAException {
+		try {
+			this.delegate.end(xid, flags);
+		} catch (XAException ex) {
+			this.checkConnectionError(ex);
+			throw ex;
+		}
+	}
+
+	public int prepare(Xid xid) throws XAException {
+		int vote = XAResource.XA_OK;
+		try {
+			vote = this.delegate.prepare(xid);
+		} catch (XAException ex) {
+			this.checkConnectionError(ex);
+			throw ex;
+		}
+
+		if (vote == XAResource.XA_RDONLY) {
+			this.pool.unpinConnection(this.connection, xid); // there is no second phase for a read-only branch
+		} // end-if (vote == XAResource.XA_RDONLY)
+		return vote;
+	}
+
+	public void commit(Xid xid, boolean onePhase) throws XAException {
+		try {
+			this.delegate.commit(xid, onePhase);
+		} catch (XAException ex) {
+			this.checkConnectionError(ex);
+			throw ex;
+		} finally {
+			this.pool.unpinConnection(this.connection, xid);
+		}
+	}
+
+	public void rollback(Xid xid) throws XAException {
+		try {
+			this.delegate.rollback(xid);
+		} catch (XAException ex) {
+			this.checkConnectionError(ex);
+			throw ex;
+		} finally {
+			this.pool.unpinConnection(this.connection, xid);
+		}
+	}
+
+	public void forget(Xid xid) throws XAException {
+		this.delegate.forget(xid);
+	}
+
+	public Xid[] recover(int flag) throws XAException {
+		return this.delegate.recover(flag);
+	}
+
+	public boolean isSameRM(XAResource xares) throws XAException {
+		XAResource target = xares;
+		if (XAResourceDescriptor.class.isInstance(target)) {
+			target = ((XAResourceDescriptor) target).getDelegate();
+		}
+		if (PooledXAResource.class.isInstance(target)) {
+			target = ((PooledXAResource) target).delegate;
+		}
+		return target == this.delegate || this.delegate.isSameRM(target);
+	}
+
+	public int getTransactionTimeout() throws XAException {
+		return this.delegate.getTransactionTimeout();
+	}
+
+	public boolean setTransactionTimeout(int seconds) throws XAException {
+		return this.delegate.setTransactionTimeout(seconds);
+	}
+
+	private void checkConnectionError(XAException ex) {
+		if (ex.errorCode == XAException.XAER_RMFAIL || ex.errorCode == XAException.XAER_RMERR) {
+			this.connection.setBroken(true);
+		}
+	}
+
+	public XAResource getDelegate() {
+		return delegate;
+	}
+
+}
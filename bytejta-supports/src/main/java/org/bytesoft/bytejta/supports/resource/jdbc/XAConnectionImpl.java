@@ -18,9 +18,9 @@ package org.bytesoft.bytejta.supports.resource.jdbc;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import javax.sql.ConnectionEvent;
 import javax.sql.ConnectionEventListener;
@@ -31,20 +31,30 @@ import javax.transaction.xa.XAResource;
 
 import org.bytesoft.bytejta.supports.resource.CommonResourceDescriptor;
 import org.bytesoft.transaction.supports.resource.XAResourceDescriptor;
+import org.bytesoft.transaction.xa.TransactionXid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class XAConnectionImpl implements XAConnection, ConnectionEventListener, StatementEventListener {
 	static final Logger logger = LoggerFactory.getLogger(XAConnectionImpl.class);
 
-	private final Set<ConnectionEventListener> connectionEventListeners = new HashSet<ConnectionEventListener>();
-	private final Set<StatementEventListener> statementEventListeners = new HashSet<StatementEventListener>();
+	private final Set<ConnectionEventListener> connectionEventListeners = new CopyOnWriteArraySet<ConnectionEventListener>();
+	private final Set<StatementEventListener> statementEventListeners = new CopyOnWriteArraySet<StatementEventListener>();
 
 	private String identifier;
 	private XAConnection delegate;
 	private boolean closed;
 	private XAResource xaResource;
 
+	private XAConnectionPool connectionPool;
+	private TransactionXid pinnedXid;
+	private int handles;
+	private long releasedTime;
+	private volatile boolean broken;
+	private Connection sharedConnection;
+	private int sharedCount;
+	private SessionState sessionState;
+
 	public void statementClosed(StatementEvent event) {
 		Iterator<StatementEventListener> itr = this.statementEventListeners.iterator();
 		while (itr.hasNext()) {
@@ -90,6 +100,8 @@ public class XAConnectionImpl implements XAConnection, ConnectionEventListener,
 	}
 
 	public void connectionErrorOccurred(ConnectionEvent event) {
+		this.broken = true;
+
 		Iterator<ConnectionEventListener> itr = this.connectionEventListeners.iterator();
 		while (itr.hasNext()) {
 			ConnectionEventListener listener = itr.next();
@@ -140,7 +152,12 @@ public class XAConnectionImpl implements XAConnection, ConnectionEventListener,
 	private synchronized void initXAResourceIfNecessary() throws SQLException {
 		if (this.xaResource == null) {
 			XAResource delegateResource = this.delegate.getXAResource();
-			if (XAResourceDescriptor.class.isInstance(delegateResource)) {
+			if (this.connectionPool != null) {
+				CommonResourceDescriptor descriptor = new CommonResourceDescriptor();
+				descriptor.setDelegate(new PooledXAResource(this.connectionPool, this, delegateResource));
+				descriptor.setIdentifier(this.identifier);
+				this.xaResource = descriptor;
+			} else if (XAResourceDescriptor.class.isInstance(delegateResource)) {
 				this.xaResource = delegateResource;
 			} else {
 				CommonResourceDescriptor descriptor = new CommonResourceDescriptor();
@@ -152,12 +169,85 @@ public class XAConnectionImpl implements XAConnection, ConnectionEventListener,
 	}
 
 	public void close() throws SQLException {
-		if (this.closed == false) {
+		if (this.connectionPool != null) {
+			this.connectionPool.releaseConnection(this);
+		} else if (this.closed == false) {
 			this.delegate.close();
 			this.closed = true;
 		} // end-if (this.closed == false)
 	}
 
+	/**
+	 * Returns the logical connection of the vendor connection shared by the handles of the pool, opening it on first
+	 * use. Requesting another one from the vendor would close the one still in use.
+	 */
+	synchronized Connection getSharedConnection() throws SQLException {
+		if (this.sharedConnection == null) {
+			this.sharedConnection = this.delegate.getConnection();
+		} // end-if (this.sharedConnection == null)
+		this.sharedCount++;
+		return this.sharedConnection;
+	}
+
+	synchronized void releaseSharedConnection() {
+		if (this.sharedCount > 0 && --this.sharedCount == 0) {
+			Connection connection = this.sharedConnection;
+			this.sharedConnection = null;
+			try {
+				connection.close();
+			} catch (Exception ex) {
+				logger.debug("Error occurred while closing logical connection!", ex);
+			}
+		} // end-if (this.sharedCount > 0 && --this.sharedCount == 0)
+	}
+
+	/**
+	 * Remembers the session state of the logical connection before a handle changes it for the first time since the
+	 * connection was checked out of the pool.
+	 */
+	synchronized void snapshotSessionStateIfNecessary(Connection connection) throws SQLException {
+		if (this.sessionState == null) {
+			this.sessionState = new SessionState(connection);
+		} // end-if (this.sessionState == null)
+	}
+
+	/**
+	 * Restores the session state changed by the handles, returns false if the connection cannot be pooled any more.
+	 */
+	boolean restoreSessionState() {
+		SessionState state = null;
+		synchronized (this) {
+			state = this.sessionState;
+			this.sessionState = null;
+		}
+
+		if (state == null) {
+			return true;
+		}
+
+		Connection connection = null;
+		try {
+			connection = this.getSharedConnection();
+			state.restore(connection);
+			return true;
+		} catch (SQLException ex) {
+			logger.debug("Error occurred while restoring the session state of connection {}!", this.identifier, ex);
+			return false;
+		} catch (RuntimeException ex) {
+			logger.debug("Error occurred while restoring the session state of connection {}!", this.identifier, ex);
+			return false;
+		} finally {
+			if (connection != null) {
+				this.releaseSharedConnection();
+			} // end-if (connection != null)
+		}
+	}
+
+	void clearEventListeners() {
+		this.connectionEventListeners.clear();
+		this.statementEventListeners.clear();
+	}
+
 	public String getIdentifier() {
 		return identifier;
 	}
@@ -174,4 +264,79 @@ public class XAConnectionImpl implements XAConnection, ConnectionEventListener,
 		this.delegate = delegate;
 	}
 
+	public XAConnectionPool getConnectionPool() {
+		return connectionPool;
+	}
+
+	public void setConnectionPool(XAConnectionPool connectionPool) {
+		this.connectionPool = connectionPool;
+	}
+
+	TransactionXid getPinnedXid() {
+		return pinnedXid;
+	}
+
+	void setPinnedXid(TransactionXid pinnedXid) {
+		this.pinnedXid = pinnedXid;
+	}
+
+	int getHandles() {
+		return handles;
+	}
+
+	void setHandles(int handles) {
+		this.handles = handles;
+	}
+
+	long getReleasedTime() {
+		return releasedTime;
+	}
+
+	void setReleasedTime(long releasedTime) {
+		this.releasedTime = releasedTime;
+	}
+
+	boolean isBroken() {
+		return broken;
+	}
+
+	void setBroken(boolean broken) {
+		this.broken = broken;
+	}
+
+	static class SessionState {
+		private final boolean autoCommit;
+		private final int transactionIsolation;
+		private final boolean readOnly;
+		private final String catalog;
+
+		SessionState(Connection connection) throws SQLException {
+			this.autoCommit = connection.getAutoCommit();
+			this.transactionIsolation = connection.getTransactionIsolation();
+			this.readOnly = connection.isReadOnly();
+			this.catalog = connection.getCatalog();
+		}
+
+		void restore(Connection connection) throws SQLException {
+			if (connection.getAutoCommit() != this.autoCommit) {
+				if (this.autoCommit) {
+					connection.rollback(); // enabling auto-commit would commit the work left behind
+				} // end-if (this.autoCommit)
+				connection.setAutoCommit(this.autoCommit);
+			} // end-if (connection.getAutoCommit() != this.autoCommit)
+
+			if (connection.getTransactionIsolation() != this.transactionIsolation) {
+				connection.setTransactionIsolation(this.transactionIsolation);
+			} // end-if (connection.getTransactionIsolation() != this.transactionIsolation)
+
+			if (connection.isReadOnly() != this.readOnly) {
+				connection.setReadOnly(this.readOnly);
+			} // end-if (connection.isReadOnly() != this.readOnly)
+
+			if (this.catalog != null && this.catalog.equals(connection.getCatalog()) == false) {
+				connection.setCatalog(this.catalog);
+			} // end-if (this.catalog != null && this.catalog.equals(connection.getCatalog()) == false)
+		}
+	}
+
 }
@@ -0,0 +1,609 @@
+/**
+ * Copyright 2014-2017 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.supports.resource.jdbc;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import javax.sql.XAConnection;
+import javax.sql.XADataSource;
+import javax.transaction.xa.Xid;
+
+import org.bytesoft.bytejta.TransactionBeanFactoryImpl;
+import org.bytesoft.transaction.Transaction;
+import org.bytesoft.transaction.TransactionManager;
+import org.bytesoft.transaction.xa.TransactionXid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pools the physical XA connections of an {@link XADataSourceImpl}. A connection whose XA resource has been started
+ * stays pinned to that global transaction until its branch is committed or rolled back, closing it before that only
+ * releases the handle. While pinned it is handed out again to every request made within the same transaction, so a
+ * second enlistment joins the branch on the same physical connection. Each request gets its own handle, the handles
+ * share one logical connection of the vendor, whose session state is restored before it goes back to the pool. Idle
+ * connections are kept in LIFO order, the ones idle for longer than idleTimeoutMillis are evicted down to minIdle and
+ * a connection idle for longer than validationIntervalMillis is validated before it is handed out.
+ */
+public class XAConnectionPool implements XAConnectionPoolMBean {
+	static final Logger logger = LoggerFactory.getLogger(XAConnectionPool.class);
+	static final String OBJECT_NAME_PREFIX = "org.bytesoft.bytejta:type=XAConnectionPool,name=";
+
+	private final ArrayDeque<XAConnectionImpl> idleConnections = new ArrayDeque<XAConnectionImpl>();
+	private final Map<TransactionXid, XAConnectionImpl> pinnedConnections = new HashMap<TransactionXid, XAConnectionImpl>();
+	private int totalCount;
+	private volatile boolean started;
+	private boolean closed;
+	private ScheduledExecutorService evictionExecutor;
+	private ObjectName objectName;
+
+	private final LongAdder createdCount = new LongAdder();
+	private final LongAdder destroyedCount = new LongAdder();
+	private final LongAdder joinedCount = new LongAdder();
+	private final LongAdder waitCount = new LongAdder();
+	private final LongAdder waitTimeoutCount = new LongAdder();
+	private final LongAdder waitNanos = new LongAdder();
+	private final LongAccumulator maxWaitNanos = new LongAccumulator(new LongBinaryOperator() {
+		public long applyAsLong(long left, long right) {
+			return Math.max(left, right);
+		}
+	}, 0);
+
+	private String identifier;
+	private XADataSource xaDataSource;
+	private int minIdle = 0;
+	private int maxIdle = 8;
+	private int maxTotal = 16;
+	private long maxWaitMillis = 30 * 1000L;
+	private long idleTimeoutMillis = 10 * 60 * 1000L;
+	private long evictionIntervalMillis = 30 * 1000L;
+	private long validationIntervalMillis = 30 * 1000L;
+	private int validationTimeoutSeconds = 5;
+
+	public XAConnection getXAConnection() throws SQLException {
+		this.startIfNecessary();
+
+		TransactionXid globalXid = this.getCurrentTransactionXid();
+		long beginNanos = System.nanoTime();
+		long deadline = beginNanos + TimeUnit.MILLISECONDS.toNanos(this.maxWaitMillis);
+		boolean waited = false;
+		while (true) {
+			XAConnectionImpl connection = null;
+			synchronized (this) {
+				if (this.closed) {
+					throw new SQLException(String.format("Connection pool %s has been closed!", this.identifier));
+				}
+
+				XAConnectionImpl pinned = globalXid == null ? null : this.pinnedConnections.get(globalXid);
+				if (pinned != null && pinned.isBroken() == false) {
+					pinned.setHandles(pinned.getHandles() + 1);
+					this.joinedCount.increment();
+					this.recordWaitIfNecessary(waited, beginNanos);
+					return new PooledXAConnection(this, pinned);
+				} // end-if (pinned != null && pinned.isBroken() == false)
+
+				connection = this.idleConnections.pollFirst();
+				if (connection != null) {
+					connection.setHandles(1);
+				} else if (this.totalCount < this.maxTotal) {
+					this.totalCount++;
+				} else {
+					long remains = deadline - System.nanoTime();
+					if (remains <= 0) {
+						this.waitTimeoutCount.increment();
+						this.recordWaitIfNecessary(true, beginNanos);
+						throw new SQLException(String.format("Timed out waiting for a connection of %s, %s connections are in use!",
+								this.identifier, this.totalCount));
+					}
+
+					waited = true;
+					try {
+						this.wait(TimeUnit.NANOSECONDS.toMillis(remains) + 1);
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						throw new SQLException("Interrupted while waiting for a connection!", ex);
+					}
+					continue;
+				}
+			}
+
+			if (connection == null) {
+				connection = this.createConnection();
+				synchronized (this) {
+					connection.setHandles(1);
+				}
+			} else if (this.validateConnection(connection) == false) {
+				synchronized (this) {
+					connection.setHandles(0);
+					this.totalCount--;
+					this.notify();
+				}
+				this.destroyConnection(connection);
+				continue;
+			}
+
+			this.recordWaitIfNecessary(waited, beginNanos);
+			return new PooledXAConnection(this, connection);
+		}
+	}
+
+	private TransactionXid getCurrentTransactionXid() {
+		TransactionManager transactionManager = TransactionBeanFactoryImpl.getInstance().getTransactionManager();
+		Transaction transaction = transactionManager == null ? null : transactionManager.getTransactionQuietly();
+		if (transaction == null) {
+			return null;
+		}
+		TransactionXid transactionXid = transaction.getTransactionContext().getXid();
+		return new TransactionXid(transactionXid.getFormatId(), transactionXid.getGlobalTransactionId());
+	}
+
+	private void recordWaitIfNecessary(boolean waited, long beginNanos) {
+		if (waited) {
+			long elapsed = System.nanoTime() - beginNanos;
+			this.waitCount.increment();
+			this.waitNanos.add(elapsed);
+			this.maxWaitNanos.accumulate(elapsed);
+		}
+	}
+
+	/**
+	 * Creates a connection for a slot that has already been counted in totalCount, the slot is given back on failure.
+	 */
+	private XAConnectionImpl createConnection() throws SQLException {
+		try {
+			XAConnection delegate = this.xaDataSource.getXAConnection();
+
+			XAConnectionImpl connection = new XAConnectionImpl();
+			connection.setIdentifier(this.identifier);
+			connection.setDelegate(delegate);
+			connection.setConnectionPool(this);
+
+			delegate.addConnectionEventListener(connection);
+			delegate.addStatementEventListener(connection);
+
+			this.createdCount.increment();
+			return connection;
+		} catch (SQLException ex) {
+			synchronized (this) {
+				this.totalCount--;
+				this.notify();
+			}
+			throw ex;
+		} catch (RuntimeException ex) {
+			synchronized (this) {
+				this.totalCount--;
+				this.notify();
+			}
+			throw ex;
+		}
+	}
+
+	private boolean validateConnection(XAConnectionImpl connection) {
+		if (connection.isBroken()) {
+			return false;
+		} else if (this.validationTimeoutSeconds <= 0) {
+			return true;
+		} else if (System.currentTimeMillis() - connection.getReleasedTime() < this.validationIntervalMillis) {
+			return true;
+		}
+
+		Connection physicalConnection = null;
+		try {
+			physicalConnection = connection.getDelegate().getConnection();
+			return physicalConnection.isValid(this.validationTimeoutSeconds);
+		} catch (SQLException ex) {
+			logger.debug("Error occurred while validating connection of {}!", this.identifier, ex);
+			return false;
+		} finally {
+			this.closeQuietly(physicalConnection);
+		}
+	}
+
+	private void destroyConnection(XAConnectionImpl connection) {
+		this.destroyedCount.increment();
+		try {
+			connection.getDelegate().close();
+		} catch (Exception ex) {
+			logger.debug("Error occurred while closing connection of {}!", this.identifier, ex);
+		}
+	}
+
+	private void closeQuietly(Connection connection) {
+		if (connection != null) {
+			try {
+				connection.close();
+			} catch (Exception ex) {
+				logger.debug(ex.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Puts a connection that is neither in use nor pinned back to the idle list, returns false if it has to be
+	 * destroyed instead. Must be called with the pool locked.
+	 */
+	private boolean returnConnection(XAConnectionImpl connection) {
+		connection.clearEventListeners();
+		this.notify();
+		if (this.closed || connection.isBroken() || this.idleConnections.size() >= this.maxIdle) {
+			this.totalCount--;
+			return false;
+		}
+
+		connection.setReleasedTime(System.currentTimeMillis());
+		this.idleConnections.offerFirst(connection);
+		return true;
+	}
+
+	/**
+	 * Restores the session state of a connection that is neither in use nor pinned any more, outside the lock, and then
+	 * returns it to the pool. A connection whose state cannot be restored is destroyed.
+	 */
+	private void recycleConnection(XAConnectionImpl connection) {
+		boolean restored = connection.restoreSessionState();
+		boolean destroyRequired = false;
+		synchronized (this) {
+			if (connection.getHandles() > 0 || connection.getPinnedXid() != null) {
+				return; // in use again
+			} else if (restored == false) {
+				connection.setBroken(true);
+			}
+
+			destroyRequired = this.returnConnection(connection) == false;
+		}
+
+		if (destroyRequired) {
+			this.destroyConnection(connection);
+		} // end-if (destroyRequired)
+	}
+
+	/**
+	 * Invoked when a handle of the connection is closed.
+	 */
+	void releaseConnection(XAConnectionImpl connection) {
+		synchronized (this) {
+			int handles = connection.getHandles();
+			if (handles <= 0) {
+				return; // closed more than once
+			}
+
+			connection.setHandles(handles - 1);
+			if (handles > 1 || connection.getPinnedXid() != null) {
+				return;
+			} // end-if (handles > 1 || connection.getPinnedXid() != null)
+		}
+
+		this.recycleConnection(connection);
+	}
+
+	synchronized void pinConnection(XAConnectionImpl connection, Xid xid) {
+		if (connection.getPinnedXid() == null) {
+			TransactionXid globalXid = new TransactionXid(xid.getFormatId(), xid.getGlobalTransactionId());
+			connection.setPinnedXid(globalXid);
+			this.pinnedConnections.put(globalXid, connection);
+		} // end-if (connection.getPinnedXid() == null)
+	}
+
+	void unpinConnection(XAConnectionImpl connection, Xid xid) {
+		synchronized (this) {
+			TransactionXid globalXid = connection.getPinnedXid();
+			if (globalXid == null) {
+				return;
+			} else if (Arrays.equals(globalXid.getGlobalTransactionId(), xid.getGlobalTransactionId()) == false) {
+				return;
+			}
+
+			connection.setPinnedXid(null);
+			this.pinnedConnections.remove(globalXid);
+			if (connection.getHandles() > 0) {
+				return; // still in use, returned to the pool when closed
+			} // end-if (connection.getHandles() > 0)
+		}
+
+		this.recycleConnection(connection);
+	}
+
+	/**
+	 * Closes the connections idle for longer than idleTimeoutMillis beyond minIdle, and tops the idle list up to minIdle.
+	 */
+	public void evictConnections() {
+		List<XAConnectionImpl> evictedList = new ArrayList<XAConnectionImpl>();
+		int required = 0;
+		synchronized (this) {
+			if (this.closed) {
+				return;
+			}
+
+			long current = System.currentTimeMillis();
+			while (this.idleConnections.size() > this.minIdle) {
+				XAConnectionImpl connection = this.idleConnections.peekLast();
+				if (current - connection.getReleasedTime() < this.idleTimeoutMillis) {
+					break;
+				}
+				this.idleConnections.pollLast();
+				this.totalCount--;
+				evictedList.add(connection);
+			}
+
+			required = Math.min(this.minIdle - this.idleConnections.size(), this.maxTotal - this.totalCount);
+			this.totalCount += Math.max(required, 0);
+		}
+
+		for (int i = 0; i < evictedList.size(); i++) {
+			this.destroyConnection(evictedList.get(i));
+		}
+
+		for (int i = 0; i < required; i++) {
+			XAConnectionImpl connection = null;
+			try {
+				connection = this.createConnection();
+			} catch (Exception ex) {
+				logger.warn("Error occurred while creating connection of {}!", this.identifier, ex);
+				synchronized (this) {
+					this.totalCount -= required - i - 1; // createConnection has given back the current slot
+				}
+				break;
+			}
+
+			boolean destroyRequired = false;
+			synchronized (this) {
+				destroyRequired = this.returnConnection(connection) == false;
+			}
+			if (destroyRequired) {
+				this.destroyConnection(connection);
+			} // end-if (destroyRequired)
+		}
+	}
+
+	private void startIfNecessary() {
+		if (this.started == false) {
+			this.start();
+		} // end-if (this.started == false)
+	}
+
+	private synchronized void start() {
+		if (this.started) {
+			return;
+		}
+
+		if (this.evictionIntervalMillis > 0) {
+			final String threadName = "bytejta-pool-evictor-" + this.identifier;
+			ThreadFactory threadFactory = new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, threadName);
+					thread.setDaemon(true);
+					return thread;
+				}
+			};
+			ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, threadFactory);
+			executor.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					try {
+						evictConnections();
+					} catch (RuntimeException ex) {
+						logger.warn("Error occurred while evicting connections of {}!", identifier, ex);
+					}
+				}
+			}, this.evictionIntervalMillis, this.evictionIntervalMillis, TimeUnit.MILLISECONDS);
+			this.evictionExecutor = executor;
+		} // end-if (this.evictionIntervalMillis > 0)
+
+		if (this.identifier != null) {
+			try {
+				MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+				ObjectName name = new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(this.identifier));
+				if (mbeanServer.isRegistered(name) == false) {
+					mbeanServer.registerMBean(new StandardMBean(this, XAConnectionPoolMBean.class), name);
+					this.objectName = name;
+				}
+			} catch (Exception ex) {
+				logger.warn("Error occurred while registering mbean of connection pool {}!", this.identifier, ex);
+			}
+		} // end-if (this.identifier != null)
+
+		this.started = true;
+	}
+
+	/**
+	 * Closes the idle connections, the connections still in use are closed as soon as they are released.
+	 */
+	public void close() {
+		List<XAConnectionImpl> connectionList = new ArrayList<XAConnectionImpl>();
+		ScheduledExecutorService executor = null;
+		ObjectName name = null;
+		synchronized (this) {
+			this.closed = true;
+			connectionList.addAll(this.idleConnections);
+			this.totalCount -= this.idleConnections.size();
+			this.idleConnections.clear();
+			executor = this.evictionExecutor;
+			name = this.objectName;
+			this.evictionExecutor = null;
+			this.objectName = null;
+			this.notifyAll();
+		}
+
+		if (executor != null) {
+			executor.shutdownNow();
+		} // end-if (executor != null)
+
+		for (int i = 0; i < connectionList.size(); i++) {
+			this.destroyConnection(connectionList.get(i));
+		}
+
+		if (name != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+			} catch (Exception ex) {
+				logger.debug("Error occurred while unregistering mbean {}!", name, ex);
+			}
+		} // end-if (name != null)
+	}
+
+	public synchronized int getTotalCount() {
+		return this.totalCount;
+	}
+
+	public synchronized int getIdleCount() {
+		return this.idleConnections.size();
+	}
+
+	public synchronized int getActiveCount() {
+		return this.totalCount - this.idleConnections.size();
+	}
+
+	public synchronized int getPinnedCount() {
+		return this.pinnedConnections.size();
+	}
+
+	public double getSaturation() {
+		return this.maxTotal <= 0 ? 0D : (double) this.getActiveCount() / this.maxTotal;
+	}
+
+	public long getCreatedCount() {
+		return this.createdCount.sum();
+	}
+
+	public long getDestroyedCount() {
+		return this.destroyedCount.sum();
+	}
+
+	public long getJoinedCount() {
+		return this.joinedCount.sum();
+	}
+
+	public long getWaitCount() {
+		return this.waitCount.sum();
+	}
+
+	public long getWaitTimeoutCount() {
+		return this.waitTimeoutCount.sum();
+	}
+
+	public double getWaitTimeMean() {
+		long count = this.waitCount.sum();
+		return count == 0 ? 0D : this.waitNanos.sum() / (count * 1000000D);
+	}
+
+	public double getWaitTimeMax() {
+		return this.maxWaitNanos.get() / 1000000D;
+	}
+
+	public void resetStatistics() {
+		this.waitCount.reset();
+		this.waitTimeoutCount.reset();
+		this.waitNanos.reset();
+		this.maxWaitNanos.reset();
+	}
+
+	public String getIdentifier() {
+		return identifier;
+	}
+
+	public void setIdentifier(String identifier) {
+		this.identifier = identifier;
+	}
+
+	public XADataSource getXaDataSource() {
+		return xaDataSource;
+	}
+
+	public void setXaDataSource(XADataSource xaDataSource) {
+		this.xaDataSource = xaDataSource;
+	}
+
+	public int getMinIdle() {
+		return minIdle;
+	}
+
+	public void setMinIdle(int minIdle) {
+		this.minIdle = minIdle;
+	}
+
+	public int getMaxIdle() {
+		return maxIdle;
+	}
+
+	public void setMaxIdle(int maxIdle) {
+		this.maxIdle = maxIdle;
+	}
+
+	public int getMaxTotal() {
+		return maxTotal;
+	}
+
+	public void setMaxTotal(int maxTotal) {
+		this.maxTotal = maxTotal;
+	}
+
+	public long getMaxWaitMillis() {
+		return maxWaitMillis;
+	}
+
+	public void setMaxWaitMillis(long maxWaitMillis) {
+		this.maxWaitMillis = maxWaitMillis;
+	}
+
+	public long getIdleTimeoutMillis() {
+		return idleTimeoutMillis;
+	}
+
+	public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+		this.idleTimeoutMillis = idleTimeoutMillis;
+	}
+
+	public long getEvictionIntervalMillis() {
+		return evictionIntervalMillis;
+	}
+
+	public void setEvictionIntervalMillis(long evictionIntervalMillis) {
+		this.evictionIntervalMillis = evictionIntervalMillis;
+	}
+
+	public long getValidationIntervalMillis() {
+		return validationIntervalMillis;
+	}
+
+	public void setValidationIntervalMillis(long validationIntervalMillis) {
+		this.validationIntervalMillis = validationIntervalMillis;
+	}
+
+	public int getValidationTimeoutSeconds() {
+		return validationTimeoutSeconds;
+	}
+
+	public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+		this.validationTimeoutSeconds = validationTimeoutSeconds;
+	}
+
+}
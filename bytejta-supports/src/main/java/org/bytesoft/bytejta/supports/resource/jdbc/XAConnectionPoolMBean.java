@@ -0,0 +1,51 @@
+/**
+ * Copyright 2014-2017 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.supports.resource.jdbc;
+
+/**
+ * JMX view of {@link XAConnectionPool}, wait times are reported in milliseconds.
+ */
+public interface XAConnectionPoolMBean {
+
+	public int getTotalCount();
+
+	public int getIdleCount();
+
+	public int getActiveCount();
+
+	public int getPinnedCount();
+
+	public int getMaxTotal();
+
+	public double getSaturation();
+
+	public long getCreatedCount();
+
+	public long getDestroyedCount();
+
+	public long getJoinedCount();
+
+	public long getWaitCount();
+
+	public long getWaitTimeoutCount();
+
+	public double getWaitTimeMean();
+
+	public double getWaitTimeMax();
+
+	public void resetStatistics();
+
+}
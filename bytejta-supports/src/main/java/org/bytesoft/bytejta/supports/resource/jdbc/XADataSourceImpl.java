@@ -24,10 +24,12 @@ import javax.sql.XAConnection;
 import javax.sql.XADataSource;
 
 import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.beans.factory.DisposableBean;
 
-public class XADataSourceImpl implements XADataSource, BeanNameAware {
+public class XADataSourceImpl implements XADataSource, BeanNameAware, DisposableBean {
 	private String identifier;
 	private XADataSource xaDataSource;
+	private XAConnectionPool connectionPool;
 
 	public PrintWriter getLogWriter() throws SQLException {
 		return this.xaDataSource.getLogWriter();
@@ -50,6 +52,10 @@ public class XADataSourceImpl implements XADataSource, BeanNameAware {
 	}
 
 	public XAConnection getXAConnection() throws SQLException {
+		if (this.connectionPool != null) {
+			return this.connectionPool.getXAConnection();
+		} // end-if (this.connectionPool != null)
+
 		XAConnection delegate = this.xaDataSource.getXAConnection();
 
 		XAConnectionImpl managed = new XAConnectionImpl();
@@ -79,12 +85,26 @@ public class XADataSourceImpl implements XADataSource, BeanNameAware {
 		this.setIdentifier(name);
 	}
 
+	public void destroy() {
+		if (this.connectionPool != null) {
+			this.connectionPool.close();
+		} // end-if (this.connectionPool != null)
+	}
+
+	private void initializeConnectionPoolIfNecessary() {
+		if (this.connectionPool != null) {
+			this.connectionPool.setIdentifier(this.identifier);
+			this.connectionPool.setXaDataSource(this.xaDataSource);
+		} // end-if (this.connectionPool != null)
+	}
+
 	public String getIdentifier() {
 		return identifier;
 	}
 
 	public void setIdentifier(String identifier) {
 		this.identifier = identifier;
+		this.initializeConnectionPoolIfNecessary();
 	}
 
 	public XADataSource getXaDataSource() {
@@ -93,6 +113,20 @@ public class XADataSourceImpl implements XADataSource, BeanNameAware {
 
 	public void setXaDataSource(XADataSource xaDataSource) {
 		this.xaDataSource = xaDataSource;
+		this.initializeConnectionPoolIfNecessary();
+	}
+
+	public XAConnectionPool getConnectionPool() {
+		return connectionPool;
+	}
+
+	/**
+	 * Pools the connections of the vendor data source, connections are opened on each request if not set. The
+	 * connections requested with a user and password are never pooled.
+	 */
+	public void setConnectionPool(XAConnectionPool connectionPool) {
+		this.connectionPool = connectionPool;
+		this.initializeConnectionPoolIfNecessary();
 	}
 
 }
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.supports.rpc;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import org.apache.commons.lang3.StringUtils;
+import org.bytesoft.common.utils.SerializeUtils;
+import org.bytesoft.transaction.TransactionContext;
+import org.bytesoft.transaction.xa.TransactionXid;
+
+/**
+ * Binary format of a propagated TransactionContext: a format byte (0x10 | version), a flags byte, the xid (format id,
+ * gtrid and bqual, each with a length byte), the created and expired time and, if flagged, the config flags. The
+ * first byte never collides with the serializer tag of SerializeUtils, so both formats are accepted while decoding.
+ * Later versions may only append fields.
+ */
+public class TransactionContextCodec {
+	static final int FORMAT_BINARY = 0x10;
+	static final int FORMAT_VERSION = 0x1;
+
+	static final int FLAG_ROLLBACK_ONLY = 0x1;
+	static final int FLAG_CONFIG_FLAGS = 0x2;
+
+	static boolean ENCODING_ENABLED = false;
+	static {
+		String serializer = StringUtils.trimToNull(System.getProperty("bytejta.serializer.context"));
+		ENCODING_ENABLED = StringUtils.equalsIgnoreCase("binary", serializer);
+	}
+
+	/**
+	 * Encodes with this codec if -Dbytejta.serializer.context=binary is set, otherwise with SerializeUtils. Every
+	 * node must be able to decode the binary format before it is enabled.
+	 */
+	public static byte[] serialize(TransactionContext transactionContext) throws IOException {
+		if (isEncodingPreferred(transactionContext)) {
+			return encode(transactionContext);
+		} else {
+			return SerializeUtils.serializeObject(transactionContext);
+		}
+	}
+
+	public static TransactionContext deserialize(byte[] byteArray) throws IOException {
+		if (isEncoded(byteArray)) {
+			return decode(byteArray);
+		} else {
+			return (TransactionContext) SerializeUtils.deserializeObject(byteArray);
+		}
+	}
+
+	/**
+	 * Subclasses carry fields this codec does not know, they are left to the serializers.
+	 */
+	public static boolean isEncodingPreferred(TransactionContext transactionContext) {
+		return ENCODING_ENABLED && transactionContext != null
+				&& TransactionContext.class.equals(transactionContext.getClass()) && transactionContext.getXid() != null;
+	}
+
+	public static boolean isEncoded(byte[] byteArray) {
+		return byteArray != null && byteArray.length > 0 && (byteArray[0] & 0xF0) == FORMAT_BINARY;
+	}
+
+	public static byte[] encode(TransactionContext transactionContext) {
+		TransactionXid xid = transactionContext.getXid();
+		byte[] globalTransactionId = xid.getGlobalTransactionId();
+		byte[] branchQualifier = xid.getBranchQualifier();
+		int globalLength = globalTransactionId == null ? 0 : globalTransactionId.length;
+		int branchLength = branchQualifier == null ? 0 : branchQualifier.length;
+		long configFlags = transactionContext.getConfigFlags();
+
+		int flags = transactionContext.isRollbackOnly() ? FLAG_ROLLBACK_ONLY : 0;
+		flags |= configFlags == 0 ? 0 : FLAG_CONFIG_FLAGS;
+
+		int size = 1 + 1 + 4 + 1 + globalLength + 1 + branchLength + 8 + 8 + (configFlags == 0 ? 0 : 8);
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.put((byte) (FORMAT_BINARY | FORMAT_VERSION));
+		buffer.put((byte) flags);
+		buffer.putInt(xid.getFormatId());
+		buffer.put((byte) globalLength);
+		if (globalLength > 0) {
+			buffer.put(globalTransactionId);
+		}
+		buffer.put((byte) branchLength);
+		if (branchLength > 0) {
+			buffer.put(branchQualifier);
+		}
+		buffer.putLong(transactionContext.getCreatedTime());
+		buffer.putLong(transactionContext.getExpiredTime());
+		if (configFlags != 0) {
+			buffer.putLong(configFlags);
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * A truncated or otherwise malformed context is reported as an IOException, like the serializers do.
+	 */
+	public static TransactionContext decode(byte[] byteArray) throws IOException {
+		try {
+			return decode(ByteBuffer.wrap(byteArray));
+		} catch (BufferUnderflowException ex) {
+			throw new IOException("Truncated transaction context!", ex);
+		} catch (IllegalArgumentException ex) {
+			throw new IOException("Malformed transaction context!", ex);
+		}
+	}
+
+	private static TransactionContext decode(ByteBuffer buffer) throws IOException {
+		int format = buffer.get();
+		if ((format & 0xF0) != FORMAT_BINARY || (format & 0x0F) < FORMAT_VERSION) {
+			throw new IOException(String.format("Unsupported transaction context format: %s!", format));
+		}
+
+		int flags = buffer.get();
+		int formatId = buffer.getInt();
+		byte[] globalTransactionId = new byte[buffer.get() & 0xFF];
+		buffer.get(globalTransactionId);
+		byte[] branchQualifier = new byte[buffer.get() & 0xFF];
+		buffer.get(branchQualifier);
+
+		TransactionContext transactionContext = new TransactionContext();
+		transactionContext.setXid(new TransactionXid(formatId, globalTransactionId, branchQualifier));
+		transactionContext.setCreatedTime(buffer.getLong());
+		transactionContext.setExpiredTime(buffer.getLong());
+		transactionContext.setRollbackOnly((flags & FLAG_ROLLBACK_ONLY) != 0);
+		if ((flags & FLAG_CONFIG_FLAGS) != 0) {
+			transactionContext.setConfigFlags(buffer.getLong());
+		}
+		return transactionContext;
+	}
+
+}
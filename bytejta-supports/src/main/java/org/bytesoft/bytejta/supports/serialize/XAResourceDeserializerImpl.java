@@ -76,6 +76,7 @@ public class XAResourceDeserializerImpl implements XAResourceDeserializer, Appli
 			DataSourceHolder holder = (DataSourceHolder) bean;
 			RecoveredResource xares = new RecoveredResource();
 			xares.setDataSource(holder.getDataSource());
+			xares.setResourceId(identifier);
 
 			LocalXAResourceDescriptor descriptor = new LocalXAResourceDescriptor();
 			descriptor.setDelegate(xares);
@@ -86,6 +87,7 @@ public class XAResourceDeserializerImpl implements XAResourceDeserializer, Appli
 			javax.sql.DataSource dataSource = (javax.sql.DataSource) bean;
 			RecoveredResource xares = new RecoveredResource();
 			xares.setDataSource(dataSource);
+			xares.setResourceId(identifier);
 
 			LocalXAResourceDescriptor descriptor = new LocalXAResourceDescriptor();
 			descriptor.setDelegate(xares);
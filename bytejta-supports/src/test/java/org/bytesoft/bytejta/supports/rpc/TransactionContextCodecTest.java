@@ -0,0 +1,125 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.supports.rpc;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.bytesoft.common.utils.SerializeUtils;
+import org.bytesoft.transaction.TransactionContext;
+import org.bytesoft.transaction.xa.TransactionXid;
+import org.bytesoft.transaction.xa.XidFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TransactionContextCodecTest {
+	private boolean encodingEnabled;
+
+	@Before
+	public void setUp() {
+		this.encodingEnabled = TransactionContextCodec.ENCODING_ENABLED;
+	}
+
+	@After
+	public void tearDown() {
+		TransactionContextCodec.ENCODING_ENABLED = this.encodingEnabled;
+	}
+
+	@Test
+	public void testEncodeAndDecode() throws Exception {
+		TransactionContext transactionContext = this.createTransactionContext();
+		transactionContext.setRollbackOnly(true);
+		transactionContext.setConfigFlags(0x5L);
+
+		byte[] byteArray = TransactionContextCodec.encode(transactionContext);
+		Assert.assertTrue(TransactionContextCodec.isEncoded(byteArray));
+		this.assertTransactionContext(transactionContext, TransactionContextCodec.deserialize(byteArray));
+
+		transactionContext.setRollbackOnly(false);
+		transactionContext.setConfigFlags(0);
+		byte[] shortArray = TransactionContextCodec.encode(transactionContext);
+		Assert.assertEquals(byteArray.length - 8, shortArray.length);
+		this.assertTransactionContext(transactionContext, TransactionContextCodec.decode(shortArray));
+	}
+
+	@Test
+	public void testSerializerFallback() throws Exception {
+		TransactionContext transactionContext = this.createTransactionContext();
+		transactionContext.setConfigFlags(0x3L);
+
+		byte[] byteArray = SerializeUtils.serializeObject(transactionContext);
+		Assert.assertFalse(TransactionContextCodec.isEncoded(byteArray));
+		this.assertTransactionContext(transactionContext, TransactionContextCodec.deserialize(byteArray));
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnsupportedVersion() throws IOException {
+		byte[] byteArray = TransactionContextCodec.encode(this.createTransactionContext());
+		byteArray[0] = (byte) TransactionContextCodec.FORMAT_BINARY;
+		TransactionContextCodec.decode(byteArray);
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedContext() throws IOException {
+		byte[] byteArray = TransactionContextCodec.encode(this.createTransactionContext());
+		TransactionContextCodec.deserialize(Arrays.copyOf(byteArray, byteArray.length - 1));
+	}
+
+	@Test
+	public void testEncodingPreferred() throws Exception {
+		TransactionContext transactionContext = this.createTransactionContext();
+
+		TransactionContextCodec.ENCODING_ENABLED = false;
+		Assert.assertFalse(TransactionContextCodec.isEncodingPreferred(transactionContext));
+		Assert.assertFalse(TransactionContextCodec.isEncoded(TransactionContextCodec.serialize(transactionContext)));
+
+		TransactionContextCodec.ENCODING_ENABLED = true;
+		Assert.assertTrue(TransactionContextCodec.isEncodingPreferred(transactionContext));
+		Assert.assertTrue(TransactionContextCodec.isEncoded(TransactionContextCodec.serialize(transactionContext)));
+		Assert.assertFalse(TransactionContextCodec.isEncodingPreferred(new TransactionContext() {
+			private static final long serialVersionUID = 1L;
+		}));
+		Assert.assertFalse(TransactionContextCodec.isEncodingPreferred(new TransactionContext()));
+	}
+
+	private TransactionContext createTransactionContext() {
+		byte[] globalTransactionId = new byte[XidFactory.GLOBAL_TRANSACTION_LENGTH];
+		byte[] branchQualifier = new byte[XidFactory.BRANCH_QUALIFIER_LENGTH];
+		for (int i = 0; i < globalTransactionId.length; i++) {
+			globalTransactionId[i] = (byte) i;
+		}
+		branchQualifier[0] = 0x1;
+
+		long created = System.currentTimeMillis();
+		TransactionContext transactionContext = new TransactionContext();
+		transactionContext.setXid(new TransactionXid(XidFactory.JTA_FORMAT_ID, globalTransactionId, branchQualifier));
+		transactionContext.setCreatedTime(created);
+		transactionContext.setExpiredTime(created + 30000L);
+		return transactionContext;
+	}
+
+	private void assertTransactionContext(TransactionContext expected, TransactionContext actual) {
+		Assert.assertEquals(expected.getXid(), actual.getXid());
+		Assert.assertArrayEquals(expected.getXid().getBranchQualifier(), actual.getXid().getBranchQualifier());
+		Assert.assertEquals(expected.getCreatedTime(), actual.getCreatedTime());
+		Assert.assertEquals(expected.getExpiredTime(), actual.getExpiredTime());
+		Assert.assertEquals(expected.getConfigFlags(), actual.getConfigFlags());
+		Assert.assertEquals(expected.isRollbackOnly(), actual.isRollbackOnly());
+	}
+
+}